@@ -0,0 +1,177 @@
+package no.ssb.vtl.connectors;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.List;
+import java.util.Optional;
+import no.ssb.vtl.model.ColumnarFile;
+import no.ssb.vtl.model.ColumnarFileDataset;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connector that reads and writes {@link ColumnarFile}s in a directory.
+ * <p>
+ * The identifiers are the paths of the files relative to the directory and must end with {@link #EXTENSION}, for
+ * instance {@code get("registers/population.vtlc")}. The files are opened as {@link ColumnarFileDataset}s and
+ * written in the default order of their structure.
+ */
+public class ColumnarFileConnector implements Connector {
+
+    public static final String EXTENSION = ".vtlc";
+
+    private final Path directory;
+
+    public ColumnarFileConnector(Path directory) {
+        this.directory = checkNotNull(directory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the path of the file of an identifier, or null if the identifier is not a file of the directory.
+     */
+    private Path resolve(String identifier) {
+        if (identifier == null || !identifier.endsWith(EXTENSION))
+            return null;
+        try {
+            Path path = directory.resolve(identifier).normalize();
+            return path.startsWith(directory) && !path.equals(directory) ? path : null;
+        } catch (InvalidPathException ipe) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean canHandle(String identifier) {
+        return resolve(identifier) != null;
+    }
+
+    @Override
+    public Dataset getDataset(String identifier) throws ConnectorException {
+        Path path = checkNotNull(resolve(identifier), "cannot handle %s", identifier);
+        try {
+            return ColumnarFileDataset.open(path);
+        } catch (NoSuchFileException nsfe) {
+            throw new NotFoundException(identifier, nsfe);
+        } catch (IOException ioe) {
+            throw new ConnectorException("could not open " + identifier, ioe);
+        }
+    }
+
+    /**
+     * The files are read in the order they were written in and only the requested columns are read. Filtering at
+     * the source would not read less, so the conditions are evaluated by the engine.
+     */
+    @Override
+    public ConnectorCapabilities getCapabilities(String identifier, Dataset dataset) {
+        Statistics statistics = dataset.getStatistics();
+        return ConnectorCapabilities.builder()
+                .sortedBy(statistics.getOrder())
+                .projection(true)
+                .estimatedSize(statistics.getRowCount().orElse(null))
+                .build();
+    }
+
+    @Override
+    public Dataset putDataset(String identifier, Dataset dataset) throws ConnectorException {
+        Path path = checkNotNull(resolve(identifier), "cannot handle %s", identifier);
+        try {
+            Files.createDirectories(path.getParent());
+            ColumnarFile.write(dataset, path);
+            return ColumnarFileDataset.open(path);
+        } catch (IOException ioe) {
+            throw new ConnectorException("could not write " + identifier, ioe);
+        }
+    }
+
+    /**
+     * Writes the data points in the order they arrive; the file does not declare an order.
+     */
+    @Override
+    public Optional<DataPointSink> openSink(String identifier, DataStructure structure) throws ConnectorException {
+        Path path = checkNotNull(resolve(identifier), "cannot handle %s", identifier);
+        try {
+            Files.createDirectories(path.getParent());
+            return Optional.of(new FileSink(identifier, path,
+                    ColumnarFile.newWriter(structure, Order.create(structure).build(), path)));
+        } catch (IOException ioe) {
+            throw new ConnectorException("could not write " + identifier, ioe);
+        }
+    }
+
+    private static final class FileSink implements DataPointSink {
+
+        private final String identifier;
+        private final Path path;
+        private final ColumnarFile.Writer writer;
+
+        private FileSink(String identifier, Path path, ColumnarFile.Writer writer) {
+            this.identifier = identifier;
+            this.path = path;
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(List<DataPoint> batch) throws ConnectorException {
+            try {
+                for (DataPoint dataPoint : batch) {
+                    writer.write(dataPoint);
+                }
+            } catch (IOException ioe) {
+                throw new ConnectorException("could not write " + identifier, ioe);
+            }
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return writer.getBytesWritten();
+        }
+
+        @Override
+        public Dataset commit() throws ConnectorException {
+            try {
+                writer.commit();
+                return ColumnarFileDataset.open(path);
+            } catch (IOException ioe) {
+                throw new ConnectorException("could not write " + identifier, ioe);
+            }
+        }
+
+        @Override
+        public void close() throws ConnectorException {
+            try {
+                writer.close();
+            } catch (IOException ioe) {
+                throw new ConnectorException("could not close " + identifier, ioe);
+            }
+        }
+    }
+}
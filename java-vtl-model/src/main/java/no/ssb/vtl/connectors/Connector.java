@@ -41,7 +41,11 @@ package no.ssb.vtl.connectors;
  */
 
 
+import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+
+import java.util.Optional;
 
 /**
  * Interface that allows the dataset
@@ -54,4 +58,45 @@ public interface Connector {
 
     Dataset putDataset(String identifier, Dataset dataset) throws ConnectorException;
 
+    /**
+     * Returns what a dataset returned by {@link #getDataset(String)} can do at the source.
+     * <p>
+     * The engine adapts the dataset using a {@link ConnectorDataset} so that it is only asked for the
+     * {@link Order}s, conditions and components it supports. The default implementation returns
+     * {@link ConnectorCapabilities#ALL}: the dataset is given every order, condition and component, and the data
+     * points it returns are only restricted to the requested components.
+     *
+     * @param identifier the identifier of the dataset.
+     * @param dataset    the dataset returned by {@link #getDataset(String)}.
+     */
+    default ConnectorCapabilities getCapabilities(String identifier, Dataset dataset) {
+        return ConnectorCapabilities.ALL;
+    }
+
+    /**
+     * Opens a sink to write a dataset one batch at a time.
+     * <p>
+     * Connectors that can write the data points as they arrive return a sink so that the engine does not need to
+     * keep the dataset in memory. The default implementation returns {@link Optional#empty()}: the engine calls
+     * {@link #putDataset(String, Dataset)} instead.
+     *
+     * @param identifier the identifier of the dataset.
+     * @param structure  the structure of the data points.
+     */
+    default Optional<DataPointSink> openSink(String identifier, DataStructure structure) throws ConnectorException {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the current version of a dataset, an ETag for instance.
+     * <p>
+     * Engines that cache the datasets compare the versions to decide whether a cached dataset is still valid. The
+     * default implementation returns {@link Optional#empty()}: the cached datasets are only evicted by time or size.
+     *
+     * @param identifier the identifier of the dataset.
+     */
+    default Optional<String> getVersion(String identifier) throws ConnectorException {
+        return Optional.empty();
+    }
+
 }
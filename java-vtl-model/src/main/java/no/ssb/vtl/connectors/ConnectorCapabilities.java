@@ -0,0 +1,218 @@
+package no.ssb.vtl.connectors;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.StructuredFiltering;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes what the {@link Dataset}s of a {@link Connector} can do at the source.
+ * <p>
+ * The engine only gives the datasets the orders, the conditions and the components they support (see
+ * {@link ConnectorDataset}) and sorts, filters and projects the data points itself otherwise. A source can
+ * declare:
+ * <ul>
+ * <li>the orders it can return its data points in, either any order or the order the data points are stored in
+ * and its prefixes</li>
+ * <li>the {@link StructuredFiltering} conditions it can evaluate</li>
+ * <li>whether it can only return the requested components</li>
+ * <li>an estimation of its size when the exact size is not known</li>
+ * </ul>
+ */
+public final class ConnectorCapabilities {
+
+    /**
+     * The datasets sort, filter and project the data points themselves. This is what connectors that do not declare
+     * capabilities support.
+     */
+    public static final ConnectorCapabilities ALL = builder()
+            .orders(order -> true)
+            .filters(condition -> true)
+            .projection(true)
+            .build();
+
+    /**
+     * The datasets only return their data points; the engine does the rest.
+     */
+    public static final ConnectorCapabilities NONE = builder().build();
+
+    private final Predicate<? super Order> orders;
+    private final ImmutableMap<String, Order.Direction> storedOrder;
+    private final Predicate<? super StructuredFiltering> filters;
+    private final boolean projection;
+    private final Long estimatedSize;
+
+    private ConnectorCapabilities(Builder builder) {
+        this.orders = builder.orders;
+        this.storedOrder = ImmutableMap.copyOf(builder.storedOrder);
+        this.filters = builder.filters;
+        this.projection = builder.projection;
+        this.estimatedSize = builder.estimatedSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns true if the datasets can return their data points in the given order. Empty orders are always
+     * supported.
+     *
+     * @param order     the requested order.
+     * @param structure the structure the order applies to.
+     */
+    public boolean canSort(Order order, DataStructure structure) {
+        if (order.isEmpty() || orders.test(order))
+            return true;
+        if (order.size() > storedOrder.size())
+            return false;
+        Iterator<Map.Entry<String, Order.Direction>> stored = storedOrder.entrySet().iterator();
+        for (Map.Entry<Component, Order.Direction> entry : order.entrySet()) {
+            Map.Entry<String, Order.Direction> next = stored.next();
+            if (!next.getKey().equals(structure.getName(entry.getKey())) || next.getValue() != entry.getValue())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the datasets can evaluate the given condition. The {@code bloom} conditions are evaluated in
+     * memory and never supported.
+     */
+    public boolean canFilter(StructuredFiltering condition) {
+        return !containsBloom(condition) && filters.test(condition);
+    }
+
+    private static boolean containsBloom(StructuredFiltering condition) {
+        if (condition.getOperator() == StructuredFiltering.Operator.BLOOM)
+            return true;
+        for (StructuredFiltering operand : condition.getOperands()) {
+            if (containsBloom(operand))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the datasets can return only the requested components.
+     */
+    public boolean canProject() {
+        return projection;
+    }
+
+    /**
+     * Returns the estimated number of data points, used when the datasets do not know their size.
+     */
+    public Optional<Long> getEstimatedSize() {
+        return Optional.ofNullable(estimatedSize);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("storedOrder", storedOrder)
+                .add("projection", projection)
+                .add("estimatedSize", estimatedSize)
+                .toString();
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Order.Direction> storedOrder = Maps.newLinkedHashMap();
+        private Predicate<? super Order> orders = order -> false;
+        private Predicate<? super StructuredFiltering> filters = condition -> false;
+        private boolean projection;
+        private Long estimatedSize;
+
+        private Builder() {
+        }
+
+        /**
+         * The orders the datasets can sort their data points in.
+         */
+        public Builder orders(Predicate<? super Order> supported) {
+            this.orders = checkNotNull(supported);
+            return this;
+        }
+
+        /**
+         * Add a column to the order the data points are stored in. The order and its prefixes are supported.
+         */
+        public Builder sortedBy(String name, Order.Direction direction) {
+            storedOrder.put(checkNotNull(name), checkNotNull(direction));
+            return this;
+        }
+
+        /**
+         * Add the columns of an order to the order the data points are stored in.
+         */
+        public Builder sortedBy(Map<String, Order.Direction> order) {
+            for (Map.Entry<String, Order.Direction> entry : order.entrySet()) {
+                sortedBy(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * The conditions the datasets can evaluate.
+         */
+        public Builder filters(Predicate<? super StructuredFiltering> supported) {
+            this.filters = checkNotNull(supported);
+            return this;
+        }
+
+        /**
+         * The conditions on the given columns.
+         */
+        public Builder filters(Set<String> columns) {
+            checkNotNull(columns);
+            return filters(condition -> columns.containsAll(condition.getColumns()));
+        }
+
+        public Builder projection(boolean projection) {
+            this.projection = projection;
+            return this;
+        }
+
+        public Builder estimatedSize(Long estimatedSize) {
+            this.estimatedSize = estimatedSize;
+            return this;
+        }
+
+        public ConnectorCapabilities build() {
+            return new ConnectorCapabilities(this);
+        }
+    }
+}
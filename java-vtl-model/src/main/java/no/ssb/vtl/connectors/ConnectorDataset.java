@@ -0,0 +1,183 @@
+package no.ssb.vtl.connectors;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Sets;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
+import no.ssb.vtl.model.DataPointProjection;
+import no.ssb.vtl.model.DataPointSorter;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Adapts a {@link Dataset} of a {@link Connector} to its {@link ConnectorCapabilities}.
+ * <p>
+ * {@link #getData(Order, Filtering, Set)} only gives the source the order, the conditions and the components it
+ * supports. The data points are then filtered with the other conditions, sorted if the source could not sort them
+ * and restricted to the requested components. Data points that have neither the requested nor the full width are
+ * rejected.
+ */
+public final class ConnectorDataset implements Dataset {
+
+    private final Dataset source;
+    private final ConnectorCapabilities capabilities;
+
+    private ConnectorDataset(Dataset source, ConnectorCapabilities capabilities) {
+        this.source = checkNotNull(source);
+        this.capabilities = checkNotNull(capabilities);
+    }
+
+    /**
+     * Adapts a dataset to the given capabilities.
+     * <p>
+     * The dataset is wrapped even if it supports everything, so the data points it returns are always checked and
+     * restricted to the requested components.
+     */
+    public static Dataset of(Dataset source, ConnectorCapabilities capabilities) {
+        return new ConnectorDataset(source, capabilities);
+    }
+
+    public Dataset getSource() {
+        return source;
+    }
+
+    public ConnectorCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    @Override
+    public Stream<DataPoint> getData() {
+        return source.getData();
+    }
+
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        DataStructure structure = getDataStructure();
+        Filtering pushed = StructuredFiltering.supported(filtering, capabilities::canFilter);
+        Filtering residual = StructuredFiltering.unsupported(filtering, capabilities::canFilter);
+        boolean sortedBySource = capabilities.canSort(orders, structure);
+
+        // The source also returns the components needed to filter and sort here.
+        Set<String> needed = components;
+        if (residual instanceof StructuredFiltering)
+            needed = Sets.union(needed, ((StructuredFiltering) residual).getColumns());
+        else if (residual != Filtering.ALL)
+            needed = structure.keySet();
+        if (!sortedBySource) {
+            for (Component component : orders.keySet()) {
+                needed = Sets.union(needed, Sets.newHashSet(structure.getName(component)));
+            }
+        }
+        DataStructure intermediate = capabilities.canProject() ? structure.project(needed) : structure;
+
+        Optional<Stream<DataPoint>> sourceData = source.getData(
+                sortedBySource ? orders : Order.create(structure).build(), pushed, intermediate.keySet()
+        );
+        if (!sourceData.isPresent())
+            return Dataset.super.getData(orders, filtering, components);
+
+        // Sources written before the projection contract return all their components.
+        Stream<DataPoint> data = sourceData.get().map(
+                DataPointProjection.normalize(structure, intermediate, intermediate)
+        );
+        if (residual instanceof StructuredFiltering)
+            data = data.filter(((StructuredFiltering) residual).withDataStructure(intermediate));
+        else if (residual != Filtering.ALL)
+            data = data.filter(residual);
+        if (!sortedBySource && !orders.isEmpty())
+            data = DataPointSorter.sorted(data, intermediate == structure ? orders : reorder(orders, intermediate));
+
+        DataStructure projected = structure.project(components);
+        if (projected != intermediate)
+            data = data.map(new DataPointProjection(intermediate, projected));
+        return Optional.of(data);
+    }
+
+    private Order reorder(Order orders, DataStructure intermediate) {
+        DataStructure structure = getDataStructure();
+        Order.Builder builder = Order.create(intermediate);
+        for (Map.Entry<Component, Order.Direction> entry : orders.entrySet()) {
+            builder.put(structure.getName(entry.getKey()), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        return source.getBatches();
+    }
+
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        return source.getPartitions(count);
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        return source.getDistinctValuesCount();
+    }
+
+    @Override
+    public Optional<Long> getSize() {
+        return source.getSize();
+    }
+
+    /**
+     * Returns the statistics of the source, with the estimated size of the capabilities if the source does not
+     * know its size.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics statistics = source.getStatistics();
+        Optional<Long> estimatedSize = capabilities.getEstimatedSize();
+        if (!statistics.getRowCount().isPresent() && estimatedSize.isPresent())
+            return Statistics.copyOf(statistics).rowCount(estimatedSize.get()).build();
+        return statistics;
+    }
+
+    @Override
+    public DataStructure getDataStructure() {
+        return source.getDataStructure();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("source", source)
+                .add("capabilities", capabilities)
+                .toString();
+    }
+}
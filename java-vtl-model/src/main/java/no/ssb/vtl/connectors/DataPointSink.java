@@ -0,0 +1,58 @@
+package no.ssb.vtl.connectors;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+
+import java.util.List;
+
+/**
+ * Receives the data points of a dataset written through {@link Connector#openSink(String, DataStructure)}.
+ * <p>
+ * The data points are written in batches, one batch at a time. {@link #commit()} completes the dataset; closing a
+ * sink that was not committed discards what was written.
+ */
+public interface DataPointSink extends AutoCloseable {
+
+    /**
+     * Writes a batch of data points. The sink must not keep a reference to the list.
+     */
+    void write(List<DataPoint> batch) throws ConnectorException;
+
+    /**
+     * Returns the number of bytes written so far, or -1 if the sink does not know it.
+     */
+    default long getBytesWritten() {
+        return -1;
+    }
+
+    /**
+     * Completes the dataset.
+     *
+     * @return the written dataset.
+     */
+    Dataset commit() throws ConnectorException;
+
+    @Override
+    void close() throws ConnectorException;
+}
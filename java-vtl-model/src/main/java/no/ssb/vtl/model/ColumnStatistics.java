@@ -0,0 +1,184 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Statistics of a column of a {@link Dataset}.
+ * <p>
+ * The values are estimations and any of them can be unknown.
+ *
+ * @see Statistics
+ */
+public final class ColumnStatistics {
+
+    public static final ColumnStatistics UNKNOWN = new ColumnStatistics(null, null, null, null);
+
+    private final Long distinctCount;
+    private final VTLObject min;
+    private final VTLObject max;
+    private final Double nullFraction;
+
+    private ColumnStatistics(Long distinctCount, VTLObject min, VTLObject max, Double nullFraction) {
+        checkArgument(distinctCount == null || distinctCount >= 0, "negative distinct count %s", distinctCount);
+        checkArgument(
+                nullFraction == null || (nullFraction >= 0 && nullFraction <= 1),
+                "null fraction %s was not between 0 and 1", nullFraction
+        );
+        this.distinctCount = distinctCount;
+        this.min = min;
+        this.max = max;
+        this.nullFraction = nullFraction;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static Builder copyOf(ColumnStatistics statistics) {
+        return new Builder()
+                .distinctCount(statistics.distinctCount)
+                .min(statistics.min)
+                .max(statistics.max)
+                .nullFraction(statistics.nullFraction);
+    }
+
+    /**
+     * Returns the number of distinct values, null excluded.
+     */
+    public Optional<Long> getDistinctCount() {
+        return Optional.ofNullable(distinctCount);
+    }
+
+    public Optional<VTLObject> getMin() {
+        return Optional.ofNullable(min);
+    }
+
+    public Optional<VTLObject> getMax() {
+        return Optional.ofNullable(max);
+    }
+
+    /**
+     * Returns the fraction of the rows where the value is null.
+     */
+    public Optional<Double> getNullFraction() {
+        return Optional.ofNullable(nullFraction);
+    }
+
+    /**
+     * Limit the distinct count to the given number of rows.
+     */
+    public ColumnStatistics limitTo(long rowCount) {
+        if (distinctCount == null || distinctCount <= rowCount)
+            return this;
+        return copyOf(this).distinctCount(rowCount).build();
+    }
+
+    /**
+     * Combine the statistics of two columns whose values end up in the same column (union for instance).
+     * <p>
+     * The distinct counts are added since nothing tells whether the values overlap.
+     *
+     * @param weight the fraction of the rows that come from this column, used for the null fraction.
+     */
+    public ColumnStatistics merge(ColumnStatistics other, double weight) {
+        Builder builder = new Builder();
+        if (distinctCount != null && other.distinctCount != null)
+            builder.distinctCount(distinctCount + other.distinctCount);
+        if (min != null && other.min != null)
+            builder.min(min.compareTo(other.min) <= 0 ? min : other.min);
+        if (max != null && other.max != null)
+            builder.max(max.compareTo(other.max) >= 0 ? max : other.max);
+        if (nullFraction != null && other.nullFraction != null)
+            builder.nullFraction(nullFraction * weight + other.nullFraction * (1 - weight));
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ColumnStatistics that = (ColumnStatistics) o;
+        return Objects.equals(distinctCount, that.distinctCount) &&
+                Objects.equals(min, that.min) &&
+                Objects.equals(max, that.max) &&
+                Objects.equals(nullFraction, that.nullFraction);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(distinctCount, min, max, nullFraction);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("distinctCount", distinctCount)
+                .add("min", min)
+                .add("max", max)
+                .add("nullFraction", nullFraction)
+                .omitNullValues()
+                .toString();
+    }
+
+    public static final class Builder {
+
+        private Long distinctCount;
+        private VTLObject min;
+        private VTLObject max;
+        private Double nullFraction;
+
+        private Builder() {
+        }
+
+        public Builder distinctCount(Long distinctCount) {
+            this.distinctCount = distinctCount;
+            return this;
+        }
+
+        public Builder min(VTLObject min) {
+            this.min = min;
+            return this;
+        }
+
+        public Builder max(VTLObject max) {
+            this.max = max;
+            return this;
+        }
+
+        public Builder nullFraction(Double nullFraction) {
+            this.nullFraction = nullFraction;
+            return this;
+        }
+
+        public ColumnStatistics build() {
+            if (distinctCount == null && min == null && max == null && nullFraction == null)
+                return UNKNOWN;
+            return new ColumnStatistics(distinctCount, min, max, nullFraction);
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The values of one {@link Component} for a {@link DataPointBatch}.
+ * <p>
+ * Values of {@link Long}, {@link Double} and {@link Boolean} components are kept in primitive arrays, every other
+ * type is kept as {@link VTLObject}. Null values are tracked in a bitmap so that the primitive arrays never need
+ * to box.
+ * <p>
+ * String columns whose values all come from the same {@link StringDictionary} are stored as int codes.
+ */
+public final class ColumnVector {
+
+    private final Class<?> type;
+    private final Storage storage;
+    private final int size;
+    private final BitSet nulls;
+
+    private final long[] longs;
+    private final double[] doubles;
+    private final BitSet booleans;
+    private final VTLObject[] objects;
+    private final int[] codes;
+    private final StringDictionary dictionary;
+
+    private ColumnVector(Class<?> type, Storage storage, int size, BitSet nulls, long[] longs, double[] doubles,
+                         BitSet booleans, VTLObject[] objects, int[] codes, StringDictionary dictionary) {
+        this.type = type;
+        this.storage = storage;
+        this.size = size;
+        this.nulls = nulls;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.booleans = booleans;
+        this.objects = objects;
+        this.codes = codes;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Create a new builder for a column of the given type.
+     */
+    public static Builder builder(Class<?> type, int expectedSize) {
+        return new Builder(type, expectedSize);
+    }
+
+    /**
+     * Create a string column from codes of a dictionary. Negative codes are null values.
+     *
+     * @param dictionary the dictionary used to encode the values.
+     * @param codes      the codes, the array is not copied.
+     * @param size       the number of codes to use.
+     */
+    public static ColumnVector encoded(StringDictionary dictionary, int[] codes, int size) {
+        checkNotNull(dictionary);
+        checkArgument(size <= codes.length, "size %s was greater than the number of codes", size);
+        BitSet nulls = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (codes[i] < 0)
+                nulls.set(i);
+            else
+                checkElementIndex(codes[i], dictionary.size(), "code");
+        }
+        return new ColumnVector(String.class, Storage.DICTIONARY, size, nulls, null, null, null, null, codes,
+                dictionary);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int index) {
+        checkElementIndex(index, size);
+        return nulls.get(index);
+    }
+
+    /**
+     * Returns the amount of null values in this column.
+     */
+    public int getNullCount() {
+        return nulls.cardinality();
+    }
+
+    /**
+     * Returns true if the values are stored as primitive longs.
+     */
+    public boolean isLong() {
+        return storage == Storage.LONG;
+    }
+
+    /**
+     * Returns true if the values are stored as primitive doubles.
+     */
+    public boolean isDouble() {
+        return storage == Storage.DOUBLE;
+    }
+
+    /**
+     * Returns true if the values are stored as primitive booleans.
+     */
+    public boolean isBoolean() {
+        return storage == Storage.BOOLEAN;
+    }
+
+    /**
+     * Returns true if the values are stored as codes of a {@link StringDictionary}.
+     */
+    public boolean isEncoded() {
+        return storage == Storage.DICTIONARY;
+    }
+
+    /**
+     * Returns the dictionary of an encoded column.
+     */
+    public StringDictionary getDictionary() {
+        if (storage != Storage.DICTIONARY)
+            throw new UnsupportedOperationException("column of type " + type + " is not encoded");
+        return dictionary;
+    }
+
+    /**
+     * Returns the dictionary code at the given index, or -1 if the value is null.
+     */
+    public int getCode(int index) {
+        checkElementIndex(index, size);
+        if (storage != Storage.DICTIONARY)
+            throw new UnsupportedOperationException("column of type " + type + " is not encoded");
+        return nulls.get(index) ? -1 : codes[index];
+    }
+
+    public long getLong(int index) {
+        checkElementIndex(index, size);
+        if (storage != Storage.LONG)
+            throw new UnsupportedOperationException("column of type " + type + " is not stored as long");
+        return longs[index];
+    }
+
+    public double getDouble(int index) {
+        checkElementIndex(index, size);
+        if (storage != Storage.DOUBLE)
+            throw new UnsupportedOperationException("column of type " + type + " is not stored as double");
+        return doubles[index];
+    }
+
+    public boolean getBoolean(int index) {
+        checkElementIndex(index, size);
+        if (storage != Storage.BOOLEAN)
+            throw new UnsupportedOperationException("column of type " + type + " is not stored as boolean");
+        return booleans.get(index);
+    }
+
+    /**
+     * Returns the value at the given index as a {@link VTLObject}.
+     * <p>
+     * Primitive columns create a new instance on each call.
+     */
+    public VTLObject get(int index) {
+        checkElementIndex(index, size);
+        if (nulls.get(index)) {
+            return storage == Storage.OBJECT && objects[index] != null ? objects[index] : VTLObject.NULL;
+        }
+        switch (storage) {
+            case LONG:
+                return VTLInteger.of(longs[index]);
+            case DOUBLE:
+                return VTLFloat.of(doubles[index]);
+            case BOOLEAN:
+                return VTLBoolean.of(booleans.get(index));
+            case DICTIONARY:
+                return dictionary.get(codes[index]);
+            default:
+                return objects[index];
+        }
+    }
+
+    /**
+     * Create a new column that contains the values at the given positions.
+     *
+     * @param positions the positions to copy, in order.
+     * @param length    the number of positions to use.
+     */
+    public ColumnVector select(int[] positions, int length) {
+        Builder builder = new Builder(type, length);
+        for (int i = 0; i < length; i++) {
+            builder.addFrom(this, positions[i]);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("type", type.getSimpleName())
+                .add("size", size)
+                .add("nulls", getNullCount())
+                .toString();
+    }
+
+    private enum Storage {
+        LONG, DOUBLE, BOOLEAN, DICTIONARY, OBJECT
+    }
+
+    private static Storage storageFor(Class<?> type) {
+        if (type == Long.class)
+            return Storage.LONG;
+        if (type == Double.class)
+            return Storage.DOUBLE;
+        if (type == Boolean.class)
+            return Storage.BOOLEAN;
+        return Storage.OBJECT;
+    }
+
+    /**
+     * Builder for {@link ColumnVector}s.
+     * <p>
+     * Values are appended one by one. The builder cannot be reused after {@link #build()}.
+     */
+    public static final class Builder {
+
+        private final Class<?> type;
+        private Storage storage;
+        private final BitSet nulls = new BitSet();
+        private long[] longs;
+        private double[] doubles;
+        private BitSet booleans;
+        private VTLObject[] objects;
+        private int[] codes;
+        private StringDictionary dictionary;
+        private int size;
+
+        private Builder(Class<?> type, int expectedSize) {
+            this.type = checkNotNull(type);
+            this.storage = storageFor(type);
+            int capacity = Math.max(expectedSize, 16);
+            switch (storage) {
+                case LONG:
+                    longs = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubles = new double[capacity];
+                    break;
+                case BOOLEAN:
+                    booleans = new BitSet(capacity);
+                    break;
+                default:
+                    objects = new VTLObject[capacity];
+            }
+        }
+
+        private void ensureCapacity() {
+            switch (storage) {
+                case LONG:
+                    if (size == longs.length)
+                        longs = Arrays.copyOf(longs, size * 2);
+                    break;
+                case DOUBLE:
+                    if (size == doubles.length)
+                        doubles = Arrays.copyOf(doubles, size * 2);
+                    break;
+                case DICTIONARY:
+                    if (size == codes.length)
+                        codes = Arrays.copyOf(codes, size * 2);
+                    break;
+                case OBJECT:
+                    if (size == objects.length)
+                        objects = Arrays.copyOf(objects, size * 2);
+                    break;
+                default:
+                    // BitSet grows by itself.
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Builder addNull() {
+            ensureCapacity();
+            nulls.set(size++);
+            return this;
+        }
+
+        public Builder addLong(long value) {
+            if (storage != Storage.LONG)
+                return add(VTLInteger.of(value));
+            ensureCapacity();
+            longs[size++] = value;
+            return this;
+        }
+
+        public Builder addDouble(double value) {
+            if (storage != Storage.DOUBLE)
+                return add(VTLFloat.of(value));
+            ensureCapacity();
+            doubles[size++] = value;
+            return this;
+        }
+
+        public Builder addBoolean(boolean value) {
+            if (storage != Storage.BOOLEAN)
+                return add(VTLBoolean.of(value));
+            ensureCapacity();
+            booleans.set(size++, value);
+            return this;
+        }
+
+        /**
+         * Append a value. Values that do not fit the primitive storage switch the column to object storage.
+         */
+        public Builder add(VTLObject value) {
+            // Avoid boxing for the primitive value classes.
+            if (storage == Storage.LONG && value instanceof VTLInteger && !((VTLInteger) value).isNull())
+                return addLong(((VTLInteger) value).longValue());
+            if (storage == Storage.DOUBLE && value instanceof VTLFloat && !((VTLFloat) value).isNull())
+                return addDouble(((VTLFloat) value).doubleValue());
+            if (value instanceof VTLString && ((VTLString) value).isEncoded() && toDictionaryStorage((VTLString) value))
+                return addCode(((VTLString) value).getCode());
+            Object object = value == null ? null : value.get();
+            if (object == null) {
+                if (storage == Storage.OBJECT && value != null && value != VTLObject.NULL) {
+                    // Keep typed nulls (VTLString.of(null) etc.) as is.
+                    ensureCapacity();
+                    objects[size] = value;
+                    nulls.set(size++);
+                    return this;
+                }
+                return addNull();
+            }
+            switch (storage) {
+                case LONG:
+                    if (object instanceof Long)
+                        return addLong((Long) object);
+                    break;
+                case DOUBLE:
+                    if (object instanceof Double)
+                        return addDouble((Double) object);
+                    break;
+                case BOOLEAN:
+                    if (object instanceof Boolean)
+                        return addBoolean((Boolean) object);
+                    break;
+                default:
+            }
+            // Values that do not match the primitive storage are kept as is.
+            toObjectStorage();
+            ensureCapacity();
+            objects[size++] = value;
+            return this;
+        }
+
+        /**
+         * Try to use the dictionary of the given value. Only possible if the column is empty or already uses it.
+         */
+        private boolean toDictionaryStorage(VTLString value) {
+            if (storage == Storage.DICTIONARY)
+                return dictionary == value.getDictionary();
+            if (storage != Storage.OBJECT || size != nulls.cardinality())
+                return false;
+            // Only nulls so far.
+            codes = new int[objects.length];
+            dictionary = value.getDictionary();
+            objects = null;
+            storage = Storage.DICTIONARY;
+            return true;
+        }
+
+        private Builder addCode(int code) {
+            ensureCapacity();
+            codes[size++] = code;
+            return this;
+        }
+
+        /**
+         * Convert the values appended so far to {@link VTLObject}s.
+         */
+        private void toObjectStorage() {
+            if (storage == Storage.OBJECT)
+                return;
+            ColumnVector current = build();
+            objects = new VTLObject[Math.max(size * 2, 16)];
+            for (int i = 0; i < size; i++) {
+                objects[i] = current.get(i);
+            }
+            longs = null;
+            doubles = null;
+            booleans = null;
+            codes = null;
+            dictionary = null;
+            storage = Storage.OBJECT;
+        }
+
+        /**
+         * Append the value found at the given index of another column without converting it.
+         */
+        public Builder addFrom(ColumnVector column, int index) {
+            if (column.storage != storage || column.dictionary != dictionary)
+                return add(column.get(index));
+            if (column.nulls.get(index)) {
+                if (storage == Storage.OBJECT) {
+                    ensureCapacity();
+                    objects[size] = column.objects[index];
+                    nulls.set(size++);
+                    return this;
+                }
+                return addNull();
+            }
+            switch (storage) {
+                case LONG:
+                    return addLong(column.longs[index]);
+                case DOUBLE:
+                    return addDouble(column.doubles[index]);
+                case BOOLEAN:
+                    return addBoolean(column.booleans.get(index));
+                case DICTIONARY:
+                    return addCode(column.codes[index]);
+                default:
+                    ensureCapacity();
+                    objects[size++] = column.objects[index];
+                    return this;
+            }
+        }
+
+        public ColumnVector build() {
+            return new ColumnVector(type, storage, size, nulls, longs, doubles, booleans, objects, codes, dictionary);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.CountingOutputStream;
+import no.ssb.vtl.model.DataPointCodec.ColumnType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Columnar file format read by {@link ColumnarFileDataset}.
+ * <p>
+ * A file starts with the magic bytes {@code VTLC} and the version, followed by one section per column and ends
+ * with a footer, the length of the footer and the magic bytes again. The footer contains the row count, the
+ * name, role and type of each column with the position of its section and its statistics, and the order the rows
+ * were written in.
+ * <p>
+ * Columns of fixed width types start with a null bitmap and store their values at a fixed position so that they
+ * can be read in place:
+ * <ul>
+ * <li>{@link Long} and {@link Double}: 8 bytes</li>
+ * <li>{@link Instant}: 8 bytes of epoch seconds and 4 bytes of nanoseconds</li>
+ * <li>{@link Boolean}: a second bitmap</li>
+ * <li>{@link String}: 4 bytes code in a dictionary of the distinct values, sorted like the strings</li>
+ * </ul>
+ * Columns of other types contain the values one after another, preceded by their type.
+ */
+public final class ColumnarFile {
+
+    static final byte[] MAGIC = {'V', 'T', 'L', 'C'};
+    static final int VERSION = 1;
+
+    /**
+     * Columns stop counting their distinct values exactly after this many values. The count of non null values is
+     * used instead.
+     */
+    static final int MAX_TRACKED_DISTINCT_VALUES = 1 << 20;
+
+    private ColumnarFile() {
+        // static.
+    }
+
+    /**
+     * Writes the data points of a dataset sorted by the default order of its structure.
+     *
+     * @see #write(Dataset, Order, Path)
+     */
+    public static void write(Dataset dataset, Path path) throws IOException {
+        write(dataset, Order.createDefault(dataset.getDataStructure()), path);
+    }
+
+    /**
+     * Writes the data points of a dataset to a file.
+     * <p>
+     * The data points are written in the given order so that {@link ColumnarFileDataset} can return them in that
+     * order without sorting them. The columns are written to temporary files next to the file first, and the file is
+     * replaced once it is complete.
+     *
+     * @param dataset the dataset to write.
+     * @param order   the order of the rows in the file.
+     * @param path    the file to write.
+     */
+    public static void write(Dataset dataset, Order order, Path path) throws IOException {
+        checkNotNull(dataset);
+        checkNotNull(order);
+        Stream<DataPoint> data = dataset.getData(order)
+                .orElseGet(() -> DataPointSorter.sorted(dataset.getData(), order));
+
+        try (Writer writer = newWriter(dataset.getDataStructure(), order, path);
+             Stream<DataPoint> closed = data) {
+            Iterator<DataPoint> iterator = closed.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+            }
+            writer.commit();
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Creates a writer that writes a file one data point at a time.
+     *
+     * @param structure the structure of the data points.
+     * @param order     the order the data points are written in, an empty order if they are not sorted.
+     * @param path      the file to write.
+     */
+    public static Writer newWriter(DataStructure structure, Order order, Path path) throws IOException {
+        return new Writer(structure, order, path);
+    }
+
+    /**
+     * Writes a file one data point at a time.
+     * <p>
+     * The columns are written to temporary files next to the file. {@link #commit()} writes the file and replaces
+     * the existing one, {@link #close()} deletes the temporary files; closing a writer that was not committed leaves
+     * the existing file untouched.
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataStructure structure;
+        private final Order order;
+        private final Path path;
+        private final List<ColumnWriter> columns;
+
+        private DataPoint previous;
+        private long rowCount;
+        private boolean committed;
+        private boolean closed;
+
+        private Writer(DataStructure structure, Order order, Path path) throws IOException {
+            this.structure = checkNotNull(structure);
+            this.order = checkNotNull(order);
+            this.path = path.toAbsolutePath();
+            this.columns = Lists.newArrayListWithCapacity(structure.size());
+            try {
+                for (Component component : structure.values()) {
+                    columns.add(new ColumnWriter(component.getType(), this.path.getParent()));
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Writes a data point.
+         *
+         * @throws IllegalArgumentException if the data point does not match the structure or the order.
+         */
+        public void write(DataPoint dataPoint) throws IOException {
+            checkState(!committed && !closed, "writer is closed");
+            checkArgument(dataPoint.size() == columns.size(), "data point %s does not match %s", dataPoint,
+                    structure);
+            checkArgument(previous == null || order.compare(previous, dataPoint) <= 0,
+                    "data point %s is not in the order %s", dataPoint, order);
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).add(dataPoint.get(i));
+            }
+            if (!order.isEmpty())
+                previous = dataPoint;
+            rowCount++;
+        }
+
+        /**
+         * Returns the number of data points written.
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Returns the number of bytes written to the temporary files of the columns.
+         */
+        public long getBytesWritten() {
+            long bytes = 0;
+            for (ColumnWriter column : columns) {
+                bytes += column.counting.getCount();
+            }
+            return bytes;
+        }
+
+        /**
+         * Writes the file.
+         */
+        public void commit() throws IOException {
+            checkState(!committed && !closed, "writer is closed");
+            Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                try (CountingOutputStream counting = new CountingOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temporary)));
+                     DataOutputStream output = new DataOutputStream(counting)) {
+
+                    output.write(MAGIC);
+                    output.writeByte(VERSION);
+                    for (ColumnWriter column : columns) {
+                        column.writeTo(output, counting);
+                    }
+
+                    DataOutputStream footer = new DataOutputStream(counting);
+                    long footerStart = counting.getCount();
+                    DataPointCodec.writeVarLong(footer, rowCount);
+                    DataPointCodec.writeVarLong(footer, structure.size());
+                    Iterator<ColumnWriter> columnIterator = columns.iterator();
+                    for (Map.Entry<String, Component> entry : structure.entrySet()) {
+                        DataPointCodec.writeString(footer, entry.getKey());
+                        DataPointCodec.writeString(footer, entry.getValue().getRole().name());
+                        DataPointCodec.writeString(footer, entry.getValue().getType().getName());
+                        columnIterator.next().writeFooter(footer);
+                    }
+                    DataPointCodec.writeVarLong(footer, order.size());
+                    for (Map.Entry<Component, Order.Direction> entry : order.entrySet()) {
+                        DataPointCodec.writeString(footer, structure.getName(entry.getKey()));
+                        DataPointCodec.writeString(footer, entry.getValue().name());
+                    }
+
+                    output.writeInt((int) (counting.getCount() - footerStart));
+                    output.write(MAGIC);
+                }
+
+                try {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException amnse) {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+                temporary = null;
+                committed = true;
+            } finally {
+                if (temporary != null)
+                    Files.deleteIfExists(temporary);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            for (ColumnWriter column : columns) {
+                column.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the values of a column to a temporary file and keeps track of its statistics.
+     */
+    private static final class ColumnWriter implements Closeable {
+
+        private final Class<?> type;
+        private final ColumnType columnType;
+        private final Path values;
+        private final CountingOutputStream counting;
+        private final DataOutputStream output;
+
+        private final BitSet nulls = new BitSet();
+        private final BitSet booleans = new BitSet();
+        private final Map<String, Integer> codes = Maps.newHashMap();
+        private Set<VTLObject> distinct = Sets.newHashSet();
+        private VTLObject min;
+        private VTLObject max;
+        private int rowCount;
+        private long nullCount;
+
+        private long offset;
+        private long length;
+        private long dictionaryOffset;
+        private long dictionaryLength;
+
+        private ColumnWriter(Class<?> type, Path directory) throws IOException {
+            this.type = type;
+            this.columnType = ColumnType.of(type);
+            this.values = Files.createTempFile(directory, "vtl-column-", ".tmp");
+            this.counting = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(values)));
+            this.output = new DataOutputStream(counting);
+        }
+
+        private void add(VTLObject value) throws IOException {
+            checkArgument(rowCount < Integer.MAX_VALUE, "too many rows");
+            Object object = value == null ? null : value.get();
+            if (object == null) {
+                nulls.set(rowCount);
+                nullCount++;
+            } else {
+                checkArgument(type.isInstance(object) || columnType == ColumnType.TAGGED,
+                        "value %s is not a %s", value, type.getSimpleName());
+            }
+
+            switch (columnType) {
+                case LONG:
+                    output.writeLong(object == null ? 0 : (Long) object);
+                    break;
+                case DOUBLE:
+                    output.writeDouble(object == null ? 0 : (Double) object);
+                    break;
+                case INSTANT:
+                    Instant instant = object == null ? Instant.EPOCH : (Instant) object;
+                    output.writeLong(instant.getEpochSecond());
+                    output.writeInt(instant.getNano());
+                    break;
+                case BOOLEAN:
+                    booleans.set(rowCount, Boolean.TRUE.equals(object));
+                    break;
+                case STRING:
+                    int code = -1;
+                    if (object != null) {
+                        code = codes.computeIfAbsent((String) object, string -> codes.size());
+                    }
+                    output.writeInt(code);
+                    break;
+                default:
+                    DataPointCodec.writeTagged(output, value);
+            }
+
+            if (object != null && columnType != ColumnType.STRING)
+                track(value);
+            rowCount++;
+        }
+
+        private void track(VTLObject value) {
+            if (distinct != null) {
+                distinct.add(value);
+                if (distinct.size() > MAX_TRACKED_DISTINCT_VALUES)
+                    distinct = null;
+            }
+            // Values of the other types can be of different classes.
+            if (columnType != ColumnType.TAGGED) {
+                if (min == null || value.compareTo(min) < 0)
+                    min = value;
+                if (max == null || value.compareTo(max) > 0)
+                    max = value;
+            }
+        }
+
+        private long getDistinctCount() {
+            if (columnType == ColumnType.STRING)
+                return codes.size();
+            return distinct != null ? distinct.size() : rowCount - nullCount;
+        }
+
+        /**
+         * Writes the section of the column. The string codes are replaced by the codes of the sorted dictionary.
+         */
+        private void writeTo(DataOutputStream file, CountingOutputStream counting) throws IOException {
+            output.close();
+            offset = counting.getCount();
+
+            if (columnType != ColumnType.TAGGED)
+                file.write(toBytes(nulls, rowCount));
+
+            if (columnType == ColumnType.BOOLEAN) {
+                file.write(toBytes(booleans, rowCount));
+            } else if (columnType == ColumnType.STRING) {
+                List<String> sorted = Lists.newArrayList(codes.keySet());
+                sorted.sort(null);
+                int[] remap = new int[sorted.size()];
+                for (int i = 0; i < sorted.size(); i++) {
+                    remap[codes.get(sorted.get(i))] = i;
+                }
+                try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(values)))) {
+                    for (int i = 0; i < rowCount; i++) {
+                        int code = input.readInt();
+                        file.writeInt(code < 0 ? code : remap[code]);
+                    }
+                }
+                if (!sorted.isEmpty()) {
+                    min = VTLString.of(sorted.get(0));
+                    max = VTLString.of(sorted.get(sorted.size() - 1));
+                }
+
+                length = counting.getCount() - offset;
+                dictionaryOffset = counting.getCount();
+                DataPointCodec.writeVarLong(file, sorted.size());
+                for (String string : sorted) {
+                    DataPointCodec.writeString(file, string);
+                }
+                dictionaryLength = counting.getCount() - dictionaryOffset;
+                return;
+            } else {
+                Files.copy(values, file);
+            }
+            length = counting.getCount() - offset;
+        }
+
+        private void writeFooter(DataOutputStream footer) throws IOException {
+            DataPointCodec.writeVarLong(footer, offset);
+            DataPointCodec.writeVarLong(footer, length);
+            DataPointCodec.writeVarLong(footer, nullCount);
+            DataPointCodec.writeVarLong(footer, getDistinctCount());
+            DataPointCodec.writeTagged(footer, min);
+            DataPointCodec.writeTagged(footer, max);
+            if (columnType == ColumnType.STRING) {
+                DataPointCodec.writeVarLong(footer, dictionaryOffset);
+                DataPointCodec.writeVarLong(footer, dictionaryLength);
+            }
+        }
+
+        private static byte[] toBytes(BitSet bits, int size) {
+            byte[] bytes = new byte[(size + 7) / 8];
+            byte[] set = bits.toByteArray();
+            System.arraycopy(set, 0, bytes, 0, Math.min(set.length, bytes.length));
+            return bytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+            Files.deleteIfExists(values);
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Streams;
+import no.ssb.vtl.model.DataPointCodec.ColumnType;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link Dataset} backed by a {@link ColumnarFile}.
+ * <p>
+ * The sections of the columns are mapped in memory with {@link FileChannel#map} and the values are read in place
+ * when the data points are created. The size, the distinct values count and the other {@link Statistics} come from
+ * the footer of the file.
+ * <p>
+ * {@link #getData(Order, Filtering, Set)} only reads the columns it needs and does not sort the data points when the
+ * file was written in the requested order.
+ */
+public final class ColumnarFileDataset implements Dataset {
+
+    private final Path path;
+    private final DataStructure structure;
+    private final int rowCount;
+    private final Column[] columns;
+    private final Statistics statistics;
+
+    private ColumnarFileDataset(Path path, DataStructure structure, int rowCount, Column[] columns,
+                                Statistics statistics) {
+        this.path = path;
+        this.structure = structure;
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Opens a file written by {@link ColumnarFile}.
+     * <p>
+     * The channel is closed once the columns are mapped; the mappings are released when the dataset is garbage
+     * collected.
+     *
+     * @throws IOException if the file cannot be read or is not a columnar file.
+     */
+    public static ColumnarFileDataset open(Path path) throws IOException {
+        checkNotNull(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int prefixLength = ColumnarFile.MAGIC.length + 1;
+            int suffixLength = 4 + ColumnarFile.MAGIC.length;
+            if (size < prefixLength + suffixLength)
+                throw new IOException(path + " is not a columnar file");
+
+            ByteBuffer prefix = read(channel, 0, prefixLength);
+            ByteBuffer suffix = read(channel, size - suffixLength, suffixLength);
+            if (!hasMagic(prefix) || !hasMagic((ByteBuffer) suffix.position(4)))
+                throw new IOException(path + " is not a columnar file");
+            int version = prefix.get(ColumnarFile.MAGIC.length);
+            if (version != ColumnarFile.VERSION)
+                throw new IOException("unsupported version " + version + " of " + path);
+
+            int footerLength = suffix.getInt(0);
+            if (footerLength < 0 || footerLength > size - prefixLength - suffixLength)
+                throw new IOException("invalid footer length " + footerLength + " in " + path);
+            ByteBuffer footerBuffer = read(channel, size - suffixLength - footerLength, footerLength);
+            DataInputStream footer = new DataInputStream(
+                    new ByteArrayInputStream(footerBuffer.array(), 0, footerLength)
+            );
+
+            long rowCount = DataPointCodec.readVarLong(footer);
+            if (rowCount > Integer.MAX_VALUE)
+                throw new IOException("too many rows in " + path);
+            int columnCount = (int) DataPointCodec.readVarLong(footer);
+
+            DataStructure.Builder builder = DataStructure.builder();
+            Statistics.Builder statistics = Statistics.builder().rowCount(rowCount);
+            Column[] columns = new Column[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                String name = DataPointCodec.readString(footer);
+                Component.Role role = Component.Role.valueOf(DataPointCodec.readString(footer));
+                Class<?> type = readType(DataPointCodec.readString(footer));
+                builder.put(name, role, type);
+
+                ColumnType columnType = ColumnType.of(type);
+                ByteBuffer section = map(channel, DataPointCodec.readVarLong(footer), DataPointCodec.readVarLong(footer));
+                long nullCount = DataPointCodec.readVarLong(footer);
+                long distinctCount = DataPointCodec.readVarLong(footer);
+                VTLObject min = DataPointCodec.readTagged(footer);
+                VTLObject max = DataPointCodec.readTagged(footer);
+                statistics.column(name, ColumnStatistics.builder()
+                        .distinctCount(distinctCount)
+                        .min(min == VTLObject.NULL ? null : min)
+                        .max(max == VTLObject.NULL ? null : max)
+                        .nullFraction(rowCount == 0 ? 0.0 : (double) nullCount / rowCount)
+                        .build());
+
+                VTLString[] dictionary = null;
+                if (columnType == ColumnType.STRING) {
+                    ByteBuffer dictionarySection = map(channel, DataPointCodec.readVarLong(footer),
+                            DataPointCodec.readVarLong(footer));
+                    dictionary = readDictionary(dictionarySection);
+                }
+                columns[i] = new Column(columnType, section, (int) rowCount, dictionary);
+            }
+
+            DataStructure structure = builder.build();
+            int orderSize = (int) DataPointCodec.readVarLong(footer);
+            for (int i = 0; i < orderSize; i++) {
+                String name = DataPointCodec.readString(footer);
+                statistics.order(name, Order.Direction.valueOf(DataPointCodec.readString(footer)));
+            }
+
+            return new ColumnarFileDataset(path, structure, (int) rowCount, columns, statistics.build());
+        } catch (IllegalArgumentException iae) {
+            throw new IOException("invalid columnar file " + path, iae);
+        }
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer) {
+        for (byte magic : ColumnarFile.MAGIC) {
+            if (buffer.get() != magic)
+                return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("unexpected end of file");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > channel.size())
+            throw new IOException("invalid section [" + offset + ", " + (offset + length) + "]");
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("section of " + length + " bytes is too large to be mapped");
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static Class<?> readType(String name) throws IOException {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("unknown type " + name, cnfe);
+        }
+    }
+
+    /**
+     * Decodes the strings of a dictionary. The strings are encoded with a {@link StringDictionary} so that their
+     * codes can be compared directly.
+     */
+    private static VTLString[] readDictionary(ByteBuffer section) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteBufferInputStream(section));
+        int size = (int) DataPointCodec.readVarLong(input);
+        List<String> strings = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(DataPointCodec.readString(input));
+        }
+        StringDictionary dictionary = StringDictionary.of(strings);
+        VTLString[] values = new VTLString[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = dictionary.encode(strings.get(i));
+        }
+        return values;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public Stream<DataPoint> getData() {
+        boolean[] all = new boolean[columns.length];
+        Arrays.fill(all, true);
+        return read(all);
+    }
+
+    /**
+     * Splits the rows in ranges. Files with columns of variable width are read in a single partition.
+     */
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        for (Column column : columns) {
+            if (column.type == ColumnType.TAGGED)
+                return Collections.singletonList(this::getData);
+        }
+        boolean[] all = new boolean[columns.length];
+        Arrays.fill(all, true);
+        return DataPartitions.split(rowCount, count, (from, to) -> read(all, from, to));
+    }
+
+    /**
+     * Reads the columns used by the order, the filtering and the requested components. The data points are only
+     * sorted if the file was not written in the requested order.
+     */
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        boolean[] needed = new boolean[columns.length];
+        for (String name : components) {
+            need(needed, structure.get(name));
+        }
+        for (Component component : orders.keySet()) {
+            need(needed, component);
+        }
+        if (filtering instanceof StructuredFiltering) {
+            for (String name : ((StructuredFiltering) filtering).getColumns()) {
+                need(needed, structure.get(name));
+            }
+        } else if (filtering != Filtering.ALL) {
+            Arrays.fill(needed, true);
+        }
+
+        Stream<DataPoint> data = read(needed);
+        if (filtering != Filtering.ALL)
+            data = data.filter(filtering);
+        if (!orders.isEmpty() && !statistics.isSortedBy(orders, structure))
+            data = DataPointSorter.sorted(data, orders);
+
+        DataStructure projected = structure.project(components);
+        if (projected != structure)
+            data = data.map(new DataPointProjection(structure, projected));
+        return Optional.of(data);
+    }
+
+    /**
+     * Marks a column as needed. Unknown columns read all of them.
+     */
+    private void need(boolean[] needed, Component component) {
+        int index = component == null ? -1 : structure.indexOf(component);
+        if (index < 0)
+            Arrays.fill(needed, true);
+        else
+            needed[index] = true;
+    }
+
+    /**
+     * Creates data points with the values of the given columns. The other columns are null.
+     */
+    private Stream<DataPoint> read(boolean[] needed) {
+        return read(needed, 0, rowCount);
+    }
+
+    /**
+     * Creates the data points of a range of rows. Columns of variable width can only be read from the first row.
+     */
+    private Stream<DataPoint> read(boolean[] needed, int from, int to) {
+        Iterator<DataPoint> iterator = new AbstractIterator<DataPoint>() {
+
+            private final Cursor[] cursors = new Cursor[columns.length];
+            private int row = from;
+
+            {
+                for (int i = 0; i < columns.length; i++) {
+                    if (needed[i]) {
+                        cursors[i] = columns[i].cursor();
+                        cursors[i].row = from;
+                    }
+                }
+            }
+
+            @Override
+            protected DataPoint computeNext() {
+                if (row >= to)
+                    return endOfData();
+                DataPoint dataPoint = DataPoint.create(cursors.length);
+                for (int i = 0; i < cursors.length; i++) {
+                    if (cursors[i] != null)
+                        dataPoint.set(i, cursors[i].next());
+                }
+                row++;
+                return dataPoint;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(
+                iterator, to - from, Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL
+        ), false);
+    }
+
+    /**
+     * Creates the batches from the columns directly. String columns are encoded with the dictionary of the file.
+     */
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        Iterator<DataPointBatch> iterator = new AbstractIterator<DataPointBatch>() {
+
+            private final Cursor[] cursors = new Cursor[columns.length];
+            private int row;
+
+            {
+                for (int i = 0; i < columns.length; i++) {
+                    cursors[i] = columns[i].cursor();
+                }
+            }
+
+            @Override
+            protected DataPointBatch computeNext() {
+                if (row >= rowCount)
+                    return endOfData();
+                int size = Math.min(DataPointBatch.DEFAULT_SIZE, rowCount - row);
+                List<ColumnVector> vectors = Lists.newArrayListWithCapacity(columns.length);
+                Iterator<Component> components = structure.values().iterator();
+                for (Cursor cursor : cursors) {
+                    vectors.add(cursor.next(components.next().getType(), size));
+                }
+                row += size;
+                return DataPointBatch.of(structure, vectors);
+            }
+        };
+        return Streams.stream(iterator);
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        ImmutableMap.Builder<String, Integer> counts = ImmutableMap.builder();
+        for (Map.Entry<String, ColumnStatistics> entry : statistics.getColumns().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getDistinctCount().get().intValue());
+        }
+        return Optional.of(counts.build());
+    }
+
+    @Override
+    public Optional<Long> getSize() {
+        return Optional.of((long) rowCount);
+    }
+
+    @Override
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public DataStructure getDataStructure() {
+        return structure;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("path", path)
+                .add("rows", rowCount)
+                .toString();
+    }
+
+    /**
+     * The mapped section of a column.
+     */
+    private static final class Column {
+
+        private final ColumnType type;
+        private final ByteBuffer section;
+        private final int rowCount;
+        private final int valuesOffset;
+        private final VTLString[] dictionary;
+        private final boolean encoded;
+
+        private Column(ColumnType type, ByteBuffer section, int rowCount, VTLString[] dictionary) throws IOException {
+            this.type = type;
+            this.section = section;
+            this.rowCount = rowCount;
+            this.valuesOffset = type == ColumnType.TAGGED ? 0 : (rowCount + 7) / 8;
+            this.dictionary = dictionary;
+            // The empty strings cannot be encoded.
+            this.encoded = dictionary != null && (dictionary.length == 0 || dictionary[0].isEncoded());
+
+            long expected = valuesOffset + (long) rowCount * width(type);
+            if (type == ColumnType.BOOLEAN)
+                expected = 2L * valuesOffset;
+            if (type != ColumnType.TAGGED && section.capacity() != expected)
+                throw new IOException("invalid column length " + section.capacity() + ", expected " + expected);
+        }
+
+        private static int width(ColumnType type) {
+            switch (type) {
+                case LONG:
+                case DOUBLE:
+                    return 8;
+                case INSTANT:
+                    return 12;
+                case STRING:
+                    return 4;
+                default:
+                    return 0;
+            }
+        }
+
+        private boolean isNull(int row) {
+            return (section.get(row >>> 3) & (1 << (row & 7))) != 0;
+        }
+
+        private VTLObject get(int row) {
+            if (isNull(row))
+                return VTLObject.NULL;
+            switch (type) {
+                case LONG:
+                    return VTLInteger.of(section.getLong(valuesOffset + row * 8));
+                case DOUBLE:
+                    return VTLFloat.of(section.getDouble(valuesOffset + row * 8));
+                case INSTANT:
+                    int position = valuesOffset + row * 12;
+                    return VTLDate.of(Instant.ofEpochSecond(section.getLong(position), section.getInt(position + 8)));
+                case BOOLEAN:
+                    return VTLBoolean.of((section.get(valuesOffset + (row >>> 3)) & (1 << (row & 7))) != 0);
+                case STRING:
+                    return dictionary[section.getInt(valuesOffset + row * 4)];
+                default:
+                    throw new IllegalStateException("column of type " + type + " is not indexed");
+            }
+        }
+
+        private Cursor cursor() {
+            if (type != ColumnType.TAGGED)
+                return new Cursor(this, null);
+            return new Cursor(this, new DataInputStream(new ByteBufferInputStream(section.duplicate())));
+        }
+    }
+
+    /**
+     * Reads the values of a column in order.
+     */
+    private static final class Cursor {
+
+        private final Column column;
+        private final DataInputStream tagged;
+        private int row;
+
+        private Cursor(Column column, DataInputStream tagged) {
+            this.column = column;
+            this.tagged = tagged;
+        }
+
+        private VTLObject next() {
+            if (tagged == null)
+                return column.get(row++);
+            try {
+                row++;
+                return DataPointCodec.readTagged(tagged);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        private ColumnVector next(Class<?> type, int size) {
+            if (column.encoded) {
+                int[] codes = new int[size];
+                ByteBuffer values = column.section.duplicate();
+                values.position(column.valuesOffset + row * 4);
+                values.asIntBuffer().get(codes);
+                StringDictionary dictionary = column.dictionary.length == 0
+                        ? StringDictionary.of() : column.dictionary[0].getDictionary();
+                row += size;
+                return ColumnVector.encoded(dictionary, codes, size);
+            }
+            ColumnVector.Builder builder = ColumnVector.builder(type, size);
+            for (int i = 0; i < size; i++) {
+                if (column.type == ColumnType.LONG && !column.isNull(row)) {
+                    builder.addLong(column.section.getLong(column.valuesOffset + row++ * 8));
+                } else if (column.type == ColumnType.DOUBLE && !column.isNull(row)) {
+                    builder.addDouble(column.section.getDouble(column.valuesOffset + row++ * 8));
+                } else {
+                    builder.add(next());
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * Input stream over a mapped section.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads and writes the value of a {@link Component} in the {@link DataPoint}s of a {@link DataStructure}.
+ * <p>
+ * The position of the component is resolved once when the accessor is created, accessing the value is then
+ * a direct index in the data point. Accessors are obtained with {@link DataStructure#getAccessor(Component)}
+ * or {@link DataStructure#getAccessor(String)} when the operation is created, not for each row.
+ */
+public final class ComponentAccessor {
+
+    private final String name;
+    private final Component component;
+    private final int index;
+
+    ComponentAccessor(String name, Component component, int index) {
+        this.name = checkNotNull(name);
+        this.component = checkNotNull(component);
+        checkArgument(index >= 0, "invalid index %s", index);
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Component getComponent() {
+        return component;
+    }
+
+    /**
+     * Returns the position of the component in the data points.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public VTLObject get(DataPoint dataPoint) {
+        return dataPoint.get(index);
+    }
+
+    /**
+     * Set the value and return the previous one.
+     */
+    public VTLObject set(DataPoint dataPoint, VTLObject value) {
+        return dataPoint.set(index, value);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("index", index)
+                .toString();
+    }
+}
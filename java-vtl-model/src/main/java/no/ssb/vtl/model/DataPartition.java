@@ -0,0 +1,38 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.util.stream.Stream;
+
+/**
+ * A contiguous part of the data points of a dataset.
+ *
+ * @see Dataset#getPartitions(int)
+ */
+@FunctionalInterface
+public interface DataPartition {
+
+    /**
+     * Returns the data points of the partition in the order of {@link Dataset#getData()}. The partitions of a
+     * dataset can be read concurrently.
+     */
+    Stream<DataPoint> getData();
+}
@@ -0,0 +1,368 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+
+/**
+ * Reads the {@link DataPartition}s of datasets in parallel.
+ * <p>
+ * The partitions are read by the tasks of a {@link ForkJoinPool} and their data points are returned in the order
+ * of the partitions, so the result is the same as a sequential read. The tasks hand over the data points in small
+ * batches through bounded queues: a partition that is read faster than it is consumed waits for the consumer.
+ * <p>
+ * Reads started from a task of a pool are sequential.
+ */
+public final class DataPartitions {
+
+    /**
+     * The minimum number of rows of the partitions created by {@link #split(long, int, RangeReader)}.
+     */
+    public static final int MIN_PARTITION_SIZE = 1024;
+
+    static final int BATCH_SIZE = 256;
+    static final int BUFFERED_BATCHES = 4;
+    static final int MAP_CHUNK_SIZE = 64;
+
+    private DataPartitions() {
+        // static.
+    }
+
+    /**
+     * Reads a range of rows.
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+
+        /**
+         * Returns the rows from {@code from} inclusive to {@code to} exclusive.
+         */
+        Stream<DataPoint> read(int from, int to);
+    }
+
+    /**
+     * Splits rows in at most {@code count} ranges of about the same size, of at least {@link #MIN_PARTITION_SIZE}
+     * rows.
+     *
+     * @param size   the number of rows.
+     * @param count  the maximum number of partitions.
+     * @param reader reads the rows of a partition.
+     */
+    public static List<DataPartition> split(long size, int count, RangeReader reader) {
+        checkArgument(size >= 0 && size <= Integer.MAX_VALUE, "invalid size %s", size);
+        checkArgument(count > 0, "invalid count %s", count);
+        checkNotNull(reader);
+        int partitions = (int) Math.max(1, Math.min(count, size / MIN_PARTITION_SIZE));
+        ImmutableList.Builder<DataPartition> builder = ImmutableList.builder();
+        for (int i = 0; i < partitions; i++) {
+            int from = (int) (size * i / partitions);
+            int to = (int) (size * (i + 1) / partitions);
+            builder.add(() -> reader.read(from, to));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Transforms the data of each partition.
+     */
+    public static List<DataPartition> map(List<DataPartition> partitions, UnaryOperator<Stream<DataPoint>> operator) {
+        checkNotNull(operator);
+        return Lists.transform(partitions, partition -> (DataPartition) () -> operator.apply(partition.getData()));
+    }
+
+    private static Optional<ForkJoinPool> usablePool(ForkJoinPool pool) {
+        if (pool == null || ForkJoinTask.inForkJoinPool())
+            return Optional.empty();
+        return Optional.of(pool);
+    }
+
+    /**
+     * Reads the partitions of a dataset in parallel with the given pool.
+     *
+     * @param pool the pool, null to read the dataset sequentially.
+     * @return the data points in the order of the dataset, or empty if the pool is null or the dataset has a single
+     * partition.
+     */
+    public static Optional<Stream<DataPoint>> parallel(Dataset dataset, ForkJoinPool pool) {
+        Optional<ForkJoinPool> usablePool = usablePool(pool);
+        if (!usablePool.isPresent())
+            return Optional.empty();
+        // The operations compute their structure lazily, before the partitions are read.
+        dataset.getDataStructure();
+        List<DataPartition> partitions = dataset.getPartitions(usablePool.get().getParallelism());
+        if (partitions.size() < 2)
+            return Optional.empty();
+        return Optional.of(parallel(partitions, usablePool.get()));
+    }
+
+    /**
+     * Reads partitions in parallel. At most as many partitions as the parallelism of the pool are read at the same
+     * time.
+     *
+     * @return the data points of the partitions, in order.
+     */
+    public static Stream<DataPoint> parallel(List<DataPartition> partitions, ForkJoinPool pool) {
+        checkNotNull(pool);
+        if (partitions.size() == 1)
+            return partitions.get(0).getData();
+        ParallelIterator iterator = new ParallelIterator(ImmutableList.copyOf(partitions), pool);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false
+        ).onClose(iterator::close);
+    }
+
+    /**
+     * Applies a function to the elements of a stream in parallel with the given pool, or sequentially if the pool
+     * is null. The elements are read sequentially and the results are returned in the same order.
+     */
+    public static <T, R> Stream<R> parallelMap(Stream<T> stream, Function<? super T, ? extends R> function,
+                                               ForkJoinPool pool) {
+        Optional<ForkJoinPool> usablePool = usablePool(pool);
+        if (!usablePool.isPresent())
+            return stream.map(function);
+        OrderedMapIterator<T, R> iterator = new OrderedMapIterator<>(stream.iterator(), function, usablePool.get());
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false
+        ).onClose(iterator::close).onClose(stream::close);
+    }
+
+    private static RuntimeException propagate(Throwable throwable) {
+        throwIfUnchecked(throwable);
+        throw new RuntimeException(throwable);
+    }
+
+    /**
+     * Returns the data points of the partitions in order and starts reading the next partitions when one is done.
+     */
+    private static final class ParallelIterator extends AbstractIterator<DataPoint> {
+
+        private final List<DataPartition> partitions;
+        private final ForkJoinPool pool;
+        private final Deque<Reader> readers = new ArrayDeque<>();
+        private int started;
+        private Iterator<DataPoint> batch = Collections.emptyIterator();
+        private volatile boolean closed;
+
+        private ParallelIterator(List<DataPartition> partitions, ForkJoinPool pool) {
+            this.partitions = partitions;
+            this.pool = pool;
+            int window = Math.max(1, pool.getParallelism());
+            while (started < Math.min(window, partitions.size())) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            Reader reader = new Reader(partitions.get(started++));
+            readers.add(reader);
+            pool.execute(reader);
+        }
+
+        @Override
+        protected DataPoint computeNext() {
+            while (!batch.hasNext()) {
+                Reader reader = readers.peek();
+                if (reader == null)
+                    return endOfData();
+                List<DataPoint> next = reader.take();
+                if (next == null) {
+                    readers.remove();
+                    if (started < partitions.size())
+                        startNext();
+                } else {
+                    batch = next.iterator();
+                }
+            }
+            return batch.next();
+        }
+
+        private void close() {
+            closed = true;
+            for (Reader reader : readers) {
+                reader.queue.clear();
+            }
+        }
+
+        private final class Reader implements Runnable {
+
+            private final List<DataPoint> end = new ArrayList<>(0);
+            private final DataPartition partition;
+            private final BlockingQueue<List<DataPoint>> queue = new ArrayBlockingQueue<>(BUFFERED_BATCHES);
+            private volatile Throwable failure;
+
+            private Reader(DataPartition partition) {
+                this.partition = partition;
+            }
+
+            @Override
+            public void run() {
+                try (Stream<DataPoint> data = partition.getData()) {
+                    Iterator<DataPoint> iterator = data.iterator();
+                    List<DataPoint> batch = new ArrayList<>(BATCH_SIZE);
+                    while (!closed && iterator.hasNext()) {
+                        batch.add(iterator.next());
+                        if (batch.size() == BATCH_SIZE) {
+                            put(batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                    if (!batch.isEmpty())
+                        put(batch);
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    put(end);
+                }
+            }
+
+            /**
+             * Waits for room in the queue until the iterator is closed. The pool can start another worker while the
+             * reader waits, so that the tasks that the consumer waits for still run.
+             */
+            private void put(List<DataPoint> batch) {
+                try {
+                    ForkJoinPool.managedBlock(new Handoff(batch));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            /**
+             * Returns the next batch, or null at the end of the partition.
+             */
+            private List<DataPoint> take() {
+                List<DataPoint> batch = Uninterruptibles.takeUninterruptibly(queue);
+                if (batch != end)
+                    return batch;
+                if (failure != null)
+                    throw propagate(failure);
+                return null;
+            }
+
+            private final class Handoff implements ForkJoinPool.ManagedBlocker {
+
+                private final List<DataPoint> batch;
+                private boolean done;
+
+                private Handoff(List<DataPoint> batch) {
+                    this.batch = batch;
+                }
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    while (!closed && !queue.offer(batch, 10, TimeUnit.MILLISECONDS)) {
+                        // Waits for the consumer.
+                    }
+                    done = true;
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return done || closed || (done = queue.offer(batch));
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps chunks of elements on the pool and returns the results in order.
+     */
+    private static final class OrderedMapIterator<T, R> extends AbstractIterator<R> {
+
+        private final Iterator<T> input;
+        private final Function<? super T, ? extends R> function;
+        private final ForkJoinPool pool;
+        private final int window;
+        private final Deque<Future<List<R>>> pending = new ArrayDeque<>();
+        private Iterator<R> results = Collections.emptyIterator();
+
+        private OrderedMapIterator(Iterator<T> input, Function<? super T, ? extends R> function, ForkJoinPool pool) {
+            this.input = input;
+            this.function = function;
+            this.pool = pool;
+            this.window = 2 * Math.max(1, pool.getParallelism());
+        }
+
+        @Override
+        protected R computeNext() {
+            while (!results.hasNext()) {
+                while (pending.size() < window && input.hasNext()) {
+                    List<T> chunk = new ArrayList<>(MAP_CHUNK_SIZE);
+                    while (chunk.size() < MAP_CHUNK_SIZE && input.hasNext()) {
+                        chunk.add(input.next());
+                    }
+                    pending.add(pool.submit(() -> {
+                        List<R> mapped = new ArrayList<>(chunk.size());
+                        for (T element : chunk) {
+                            mapped.add(function.apply(element));
+                        }
+                        return mapped;
+                    }));
+                }
+                Future<List<R>> next = pending.poll();
+                if (next == null)
+                    return endOfData();
+                try {
+                    results = Uninterruptibles.getUninterruptibly(next).iterator();
+                } catch (ExecutionException ee) {
+                    throw propagate(ee.getCause());
+                }
+            }
+            return results.next();
+        }
+
+        private void close() {
+            for (Future<List<R>> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+}
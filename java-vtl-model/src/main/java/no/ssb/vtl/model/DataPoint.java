@@ -24,9 +24,21 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * A row of {@link VTLObject}s.
+ * <p>
+ * Data points are mutable by default. Datasets can hand out immutable data points (see {@link #immutableCopyOf(Collection)})
+ * to share the same rows between several streams. The consumers of a stream own the mutable data points they receive
+ * but must not modify the immutable ones; operations that need to modify their input call {@link #mutable(DataPoint)}
+ * that only copies the immutable data points.
+ */
 public class DataPoint extends ArrayList<VTLObject> {
 
     protected DataPoint(int initialCapacity) {
@@ -57,10 +69,131 @@ public class DataPoint extends ArrayList<VTLObject> {
         return new DataPoint(Stream.of(values).map(VTLObject::of).collect(Collectors.toList()));
     }
 
+    /**
+     * Creates an immutable copy of the values.
+     * <p>
+     * All the methods that modify the returned data point throw {@link UnsupportedOperationException}. Cloning it
+     * returns a mutable copy.
+     */
+    public static DataPoint immutableCopyOf(Collection<? extends VTLObject> values) {
+        if (values instanceof ImmutableDataPoint)
+            return (DataPoint) values;
+        return new ImmutableDataPoint(values);
+    }
+
+    /**
+     * Returns the data point if it is mutable or a mutable copy of it.
+     */
+    public static DataPoint mutable(DataPoint dataPoint) {
+        return dataPoint.isMutable() ? dataPoint : new DataPoint(dataPoint);
+    }
+
+    /**
+     * Returns false if the data point is shared and cannot be modified.
+     */
+    public boolean isMutable() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return this.stream()
                 .map((vtlObject) -> vtlObject == null ? "<null>" : vtlObject.toString())
                 .collect(Collectors.joining(", ", "[", "]"));
     }
+
+    /**
+     * Data point that can be shared between streams.
+     */
+    private static final class ImmutableDataPoint extends DataPoint {
+
+        private ImmutableDataPoint(Collection<? extends VTLObject> c) {
+            super(c);
+        }
+
+        @Override
+        public boolean isMutable() {
+            return false;
+        }
+
+        @Override
+        public Object clone() {
+            return new DataPoint(this);
+        }
+
+        @Override
+        public VTLObject set(int index, VTLObject element) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean add(VTLObject vtlObject) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(int index, VTLObject element) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends VTLObject> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends VTLObject> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VTLObject remove(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super VTLObject> filter) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<VTLObject> operator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sort(Comparator<? super VTLObject> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<VTLObject> subList(int fromIndex, int toIndex) {
+            return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
+        }
+    }
 }
@@ -0,0 +1,296 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Streams;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A batch of {@link DataPoint}s stored by column.
+ * <p>
+ * The batch contains one {@link ColumnVector} per {@link Component} of its {@link DataStructure}, in the same
+ * order as the structure. Batches are immutable; operations that change the content return a new batch that
+ * shares the columns that did not change.
+ */
+public final class DataPointBatch {
+
+    /**
+     * The number of rows the row adapters put in each batch.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final DataStructure structure;
+    private final ImmutableList<ColumnVector> columns;
+    private final int size;
+
+    private DataPointBatch(DataStructure structure, ImmutableList<ColumnVector> columns, int size) {
+        this.structure = checkNotNull(structure);
+        this.columns = checkNotNull(columns);
+        this.size = size;
+    }
+
+    /**
+     * Create a batch from columns.
+     *
+     * @param structure the structure of the batch.
+     * @param columns   one column per component of the structure, all of the same size.
+     */
+    public static DataPointBatch of(DataStructure structure, List<ColumnVector> columns) {
+        checkArgument(
+                structure.size() == columns.size(),
+                "inconsistent column count %s, expected %s", columns.size(), structure.size()
+        );
+        int size = columns.isEmpty() ? 0 : columns.get(0).size();
+        for (ColumnVector column : columns) {
+            checkArgument(column.size() == size, "columns were not of the same size");
+        }
+        return new DataPointBatch(structure, ImmutableList.copyOf(columns), size);
+    }
+
+    public static Builder builder(DataStructure structure, int expectedSize) {
+        return new Builder(structure, expectedSize);
+    }
+
+    /**
+     * Group the rows of a stream into batches.
+     * <p>
+     * This is the adapter used by {@link Dataset}s that only provide rows.
+     */
+    public static Stream<DataPointBatch> fromDataPoints(Stream<DataPoint> stream, DataStructure structure, int batchSize) {
+        checkArgument(batchSize > 0, "batch size must be positive");
+        Iterator<DataPoint> rows = stream.iterator();
+        Iterator<DataPointBatch> batches = new AbstractIterator<DataPointBatch>() {
+            @Override
+            protected DataPointBatch computeNext() {
+                if (!rows.hasNext())
+                    return endOfData();
+                Builder builder = new Builder(structure, batchSize);
+                while (builder.size() < batchSize && rows.hasNext()) {
+                    builder.add(rows.next());
+                }
+                return builder.build();
+            }
+        };
+        return Streams.stream(batches).onClose(stream::close);
+    }
+
+    /**
+     * Convert a stream of batches back to a stream of rows.
+     */
+    public static Stream<DataPoint> toDataPoints(Stream<DataPointBatch> batches) {
+        return batches.flatMap(DataPointBatch::stream);
+    }
+
+    public DataStructure getDataStructure() {
+        return structure;
+    }
+
+    public List<ColumnVector> getColumns() {
+        return columns;
+    }
+
+    public ColumnVector getColumn(int index) {
+        return columns.get(index);
+    }
+
+    public ColumnVector getColumn(String name) {
+        return getColumn(checkNotNull(structure.get(name), "unknown column %s", name));
+    }
+
+    public ColumnVector getColumn(Component component) {
+        int index = structure.indexOf(component);
+        checkArgument(index >= 0, "unknown component %s", component);
+        return columns.get(index);
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Create a new {@link DataPoint} containing the values of the given row.
+     */
+    public DataPoint getDataPoint(int row) {
+        checkElementIndex(row, size);
+        DataPoint dataPoint = DataPoint.create(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            dataPoint.set(i, columns.get(i).get(row));
+        }
+        return dataPoint;
+    }
+
+    /**
+     * Copy the values of the given row into an existing {@link DataPoint}.
+     * <p>
+     * Useful to evaluate expressions on every row without allocating a new DataPoint each time.
+     */
+    public DataPoint fill(int row, DataPoint target) {
+        checkElementIndex(row, size);
+        checkArgument(target.size() >= columns.size(), "data point was too small");
+        for (int i = 0; i < columns.size(); i++) {
+            target.set(i, columns.get(i).get(row));
+        }
+        return target;
+    }
+
+    /**
+     * Returns the rows of this batch.
+     */
+    public Stream<DataPoint> stream() {
+        return IntStream.range(0, size).mapToObj(this::getDataPoint);
+    }
+
+    /**
+     * Create a new batch that only contains the rows at the given positions.
+     */
+    public DataPointBatch select(int[] positions, int length) {
+        if (length == size) {
+            boolean identity = true;
+            for (int i = 0; i < length && identity; i++)
+                identity = positions[i] == i;
+            if (identity)
+                return this;
+        }
+        ImmutableList.Builder<ColumnVector> selected = ImmutableList.builder();
+        for (ColumnVector column : columns) {
+            selected.add(column.select(positions, length));
+        }
+        return new DataPointBatch(structure, selected.build(), length);
+    }
+
+    /**
+     * Create a new batch with the columns of the given structure.
+     * <p>
+     * The components of the new structure must exist in the structure of this batch. The columns are shared.
+     */
+    public DataPointBatch project(DataStructure newStructure) {
+        ImmutableList.Builder<ColumnVector> projected = ImmutableList.builder();
+        for (Component component : newStructure.values()) {
+            projected.add(getColumn(component));
+        }
+        return new DataPointBatch(newStructure, projected.build(), size);
+    }
+
+    /**
+     * Create a new batch with the same columns but using another structure.
+     * <p>
+     * Used by operations that only change the names or roles of the components.
+     */
+    public DataPointBatch withDataStructure(DataStructure newStructure) {
+        checkArgument(
+                newStructure.size() == structure.size(),
+                "inconsistent structure size %s, expected %s", newStructure.size(), structure.size()
+        );
+        return new DataPointBatch(newStructure, columns, size);
+    }
+
+    @Override
+    public String toString() {
+        MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
+        helper.add("size", size);
+        Iterator<ColumnVector> iterator = columns.iterator();
+        for (Map.Entry<String, Component> entry : structure.entrySet()) {
+            helper.add(entry.getKey(), Iterators.getNext(iterator, null));
+        }
+        return helper.toString();
+    }
+
+    /**
+     * Builds {@link DataPointBatch}es row by row or column by column.
+     */
+    public static final class Builder {
+
+        private final DataStructure structure;
+        private final ImmutableList<ColumnVector.Builder> columns;
+        private int size;
+
+        private Builder(DataStructure structure, int expectedSize) {
+            this.structure = checkNotNull(structure);
+            ImmutableList.Builder<ColumnVector.Builder> builders = ImmutableList.builder();
+            for (Component component : structure.values()) {
+                builders.add(ColumnVector.builder(component.getType(), expectedSize));
+            }
+            this.columns = builders.build();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the builder of the column at the given index.
+         * <p>
+         * When adding values by column, {@link #endRow()} must be called after each row.
+         */
+        public ColumnVector.Builder getColumn(int index) {
+            return columns.get(index);
+        }
+
+        /**
+         * Mark the end of a row that was added using the column builders.
+         */
+        public Builder endRow() {
+            size++;
+            return this;
+        }
+
+        public Builder add(DataPoint dataPoint) {
+            checkArgument(
+                    dataPoint.size() >= columns.size(),
+                    "inconsistent data point size %s, expected %s", dataPoint.size(), columns.size()
+            );
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).add(dataPoint.get(i));
+            }
+            size++;
+            return this;
+        }
+
+        public DataPointBatch build() {
+            ImmutableList.Builder<ColumnVector> built = ImmutableList.builder();
+            for (ColumnVector.Builder column : columns) {
+                checkArgument(column.size() == size, "column size %s was inconsistent with %s", column.size(), size);
+                built.add(column.build());
+            }
+            return new DataPointBatch(structure, built.build(), size);
+        }
+    }
+}
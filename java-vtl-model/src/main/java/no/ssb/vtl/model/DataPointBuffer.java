@@ -0,0 +1,218 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A list of {@link DataPoint}s that can be read several times within a memory budget.
+ * <p>
+ * The data points are kept in memory until their estimated size exceeds the budget. The next data points are
+ * appended to a temporary file, in the format of the runs of {@link DataPointSorter}, and each iteration reads
+ * the file again. Data points that contain values of unknown types cannot be written to the file; they and the
+ * data points added after them are kept in memory. Closing the buffer deletes the file.
+ * <p>
+ * The buffer is not thread safe and data points cannot be added while it is iterated.
+ */
+public final class DataPointBuffer implements Iterable<DataPoint>, Closeable {
+
+    private final long memoryBudget;
+    private final List<DataPoint> head = Lists.newArrayList();
+    private final List<DataPoint> tail = Lists.newArrayList();
+    private final List<Closeable> readers = Lists.newArrayList();
+    private final ByteArrayOutputStream row = new ByteArrayOutputStream();
+    private final DataOutputStream rowOutput = new DataOutputStream(row);
+
+    private long memoryUsage;
+    private long size;
+    private long spilledSize;
+    private Path file;
+    private DataOutputStream output;
+    private boolean spillable = true;
+    private boolean closed;
+
+    /**
+     * Creates a buffer that uses the default memory budget of the sorts.
+     *
+     * @see DataPointSorter#DEFAULT_MEMORY_BUDGET
+     */
+    public DataPointBuffer() {
+        this(DataPointSorter.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param memoryBudget the estimated size in bytes of the data points kept in memory.
+     */
+    public DataPointBuffer(long memoryBudget) {
+        checkArgument(memoryBudget > 0, "invalid memory budget %s", memoryBudget);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Adds a data point at the end of the buffer.
+     */
+    public void add(DataPoint dataPoint) {
+        checkNotNull(dataPoint);
+        checkState(!closed, "buffer is closed");
+        size++;
+        if (spillable && memoryUsage >= memoryBudget && spill(dataPoint))
+            return;
+        // The data points that could not be written are read after the file.
+        (isSpilled() ? tail : head).add(dataPoint);
+        memoryUsage += DataPointSorter.estimateSize(dataPoint);
+    }
+
+    /**
+     * Appends a data point to the file. Returns false if the data point cannot be written.
+     */
+    private boolean spill(DataPoint dataPoint) {
+        try {
+            row.reset();
+            DataPointSorter.RowFormat.write(rowOutput, dataPoint);
+        } catch (IllegalArgumentException iae) {
+            // Unknown value type, continue in memory.
+            spillable = false;
+            return false;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        try {
+            if (output == null) {
+                file = Files.createTempFile("vtl-buffer-", ".rows");
+                output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            }
+            row.writeTo(output);
+            spilledSize++;
+            return true;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Rough estimation of the heap used by a data point, the one used to account the memory of the buffer.
+     */
+    public static long estimateSize(DataPoint dataPoint) {
+        return DataPointSorter.estimateSize(dataPoint);
+    }
+
+    /**
+     * Returns the number of data points.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns true if some data points were written to the temporary file.
+     */
+    public boolean isSpilled() {
+        return spilledSize > 0;
+    }
+
+    /**
+     * Returns the estimated size in bytes of the data points kept in memory.
+     */
+    public long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    @Override
+    public Iterator<DataPoint> iterator() {
+        checkState(!closed, "buffer is closed");
+        if (!isSpilled())
+            return Iterators.unmodifiableIterator(head.iterator());
+        return Iterators.unmodifiableIterator(Iterators.concat(
+                head.iterator(), read(spilledSize), tail.iterator()
+        ));
+    }
+
+    private Iterator<DataPoint> read(long count) {
+        try {
+            output.flush();
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            readers.add(input);
+            return new AbstractIterator<DataPoint>() {
+
+                private long remaining = count;
+
+                @Override
+                protected DataPoint computeNext() {
+                    try {
+                        if (remaining == 0) {
+                            input.close();
+                            readers.remove(input);
+                            return endOfData();
+                        }
+                        remaining--;
+                        return DataPointSorter.RowFormat.read(input);
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }
+            };
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Removes the data points and deletes the temporary file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        head.clear();
+        tail.clear();
+        try {
+            for (Closeable reader : readers) {
+                reader.close();
+            }
+            if (output != null)
+                output.close();
+        } finally {
+            readers.clear();
+            if (file != null)
+                Files.deleteIfExists(file);
+        }
+    }
+}
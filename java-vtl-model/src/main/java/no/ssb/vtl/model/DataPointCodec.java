@@ -0,0 +1,232 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Binary format of the {@link DataPointWriter} and {@link DataPointReader}.
+ * <p>
+ * A stream starts with the magic bytes {@code VTLD}, the version and the length of the header. The header contains
+ * the flags and the name, role and type of each column. The data points follow in blocks; each block starts with
+ * its number of data points and its length in bytes, and an empty block ends the stream.
+ * <p>
+ * A data point starts with a bitmap of its null values followed by the other values, encoded by column type:
+ * <ul>
+ * <li>{@link Long}: zigzag varint</li>
+ * <li>{@link Double}: 8 bytes</li>
+ * <li>{@link String}: varint length and UTF-8 bytes, or a reference to a previous value when the dictionary is
+ * enabled</li>
+ * <li>{@link Boolean}: 1 byte</li>
+ * <li>{@link Instant}: epoch milliseconds as zigzag varint</li>
+ * <li>other types: a tag followed by the value</li>
+ * </ul>
+ */
+final class DataPointCodec {
+
+    static final byte[] MAGIC = {'V', 'T', 'L', 'D'};
+    static final int VERSION = 1;
+
+    /**
+     * Flag of the streams that encode the strings with a dictionary.
+     */
+    static final int FLAG_STRING_DICTIONARY = 1;
+
+    /**
+     * Maximum number of strings in the dictionary of a column. Strings are written literally once it is full.
+     */
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_LONG = 1;
+    private static final int TAG_DOUBLE = 2;
+    private static final int TAG_STRING = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_INSTANT = 6;
+    private static final int TAG_NULL_LONG = 7;
+    private static final int TAG_NULL_DOUBLE = 8;
+    private static final int TAG_NULL_STRING = 9;
+    private static final int TAG_NULL_BOOLEAN = 10;
+    private static final int TAG_NULL_INSTANT = 11;
+
+    private DataPointCodec() {
+        // static.
+    }
+
+    /**
+     * Encoding of the values of a column.
+     */
+    enum ColumnType {
+        TAGGED, LONG, DOUBLE, STRING, BOOLEAN, INSTANT;
+
+        static ColumnType of(Class<?> type) {
+            if (type == Long.class)
+                return LONG;
+            if (type == Double.class)
+                return DOUBLE;
+            if (type == String.class)
+                return STRING;
+            if (type == Boolean.class)
+                return BOOLEAN;
+            if (type == Instant.class)
+                return INSTANT;
+            return TAGGED;
+        }
+    }
+
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput input) throws IOException {
+        return readVarLong(input, input.readUnsignedByte());
+    }
+
+    /**
+     * Reads a varint whose first byte was already read.
+     */
+    static long readVarLong(DataInput input, int first) throws IOException {
+        long result = first & 0x7F;
+        int shift = 7;
+        int current = first;
+        while ((current & 0x80) != 0) {
+            if (shift > 63)
+                throw new IOException("malformed varint");
+            current = input.readUnsignedByte();
+            result |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        }
+        return result;
+    }
+
+    static void writeZigZag(DataOutput output, long value) throws IOException {
+        writeVarLong(output, (value << 1) ^ (value >> 63));
+    }
+
+    static long readZigZag(DataInput input) throws IOException {
+        long zigzag = readVarLong(input);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a value of any supported type preceded by its tag. Typed nulls keep their type.
+     *
+     * @throws IllegalArgumentException if the type of the value is not supported.
+     */
+    static void writeTagged(DataOutput output, VTLObject value) throws IOException {
+        if (value == null || value == VTLObject.NULL) {
+            output.writeByte(TAG_NULL);
+        } else if (value instanceof VTLInteger) {
+            Long longValue = ((VTLInteger) value).get();
+            if (longValue == null) {
+                output.writeByte(TAG_NULL_LONG);
+            } else {
+                output.writeByte(TAG_LONG);
+                writeZigZag(output, longValue);
+            }
+        } else if (value instanceof VTLFloat) {
+            Double doubleValue = ((VTLFloat) value).get();
+            if (doubleValue == null) {
+                output.writeByte(TAG_NULL_DOUBLE);
+            } else {
+                output.writeByte(TAG_DOUBLE);
+                output.writeDouble(doubleValue);
+            }
+        } else if (value instanceof VTLString) {
+            String stringValue = ((VTLString) value).get();
+            if (stringValue == null) {
+                output.writeByte(TAG_NULL_STRING);
+            } else {
+                output.writeByte(TAG_STRING);
+                writeString(output, stringValue);
+            }
+        } else if (value instanceof VTLBoolean) {
+            Boolean booleanValue = ((VTLBoolean) value).get();
+            output.writeByte(booleanValue == null ? TAG_NULL_BOOLEAN : booleanValue ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof VTLDate) {
+            Instant instant = ((VTLDate) value).get();
+            if (instant == null) {
+                output.writeByte(TAG_NULL_INSTANT);
+            } else {
+                output.writeByte(TAG_INSTANT);
+                output.writeLong(instant.getEpochSecond());
+                output.writeInt(instant.getNano());
+            }
+        } else if (value.get() == null) {
+            output.writeByte(TAG_NULL);
+        } else {
+            throw new IllegalArgumentException("cannot write value of type " + value.getClass());
+        }
+    }
+
+    static VTLObject readTagged(DataInput input) throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return VTLObject.NULL;
+            case TAG_LONG:
+                return VTLInteger.of(readZigZag(input));
+            case TAG_DOUBLE:
+                return VTLFloat.of(input.readDouble());
+            case TAG_STRING:
+                return VTLString.of(readString(input));
+            case TAG_TRUE:
+                return VTLBoolean.of(true);
+            case TAG_FALSE:
+                return VTLBoolean.of(false);
+            case TAG_INSTANT:
+                return VTLDate.of(Instant.ofEpochSecond(input.readLong(), input.readInt()));
+            case TAG_NULL_LONG:
+                return VTLInteger.of((Long) null);
+            case TAG_NULL_DOUBLE:
+                return VTLFloat.of((Double) null);
+            case TAG_NULL_STRING:
+                return VTLString.of((String) null);
+            case TAG_NULL_BOOLEAN:
+                return VTLBoolean.of((Boolean) null);
+            case TAG_NULL_INSTANT:
+                return VTLDate.of((Instant) null);
+            default:
+                throw new IOException("invalid value tag " + tag);
+        }
+    }
+}
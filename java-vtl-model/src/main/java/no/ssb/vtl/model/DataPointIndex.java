@@ -0,0 +1,221 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Indexes the {@link DataPoint}s of a materialized dataset.
+ * <p>
+ * The sorted permutations of the data points are cached by {@link Order} so that repeated ordered reads do not
+ * sort the data points again. Comparisons of identifiers with literals in a {@link StructuredFiltering} use a
+ * sorted index of the identifier and only read the matching data points. Without an order, the matching data
+ * points are returned in the order of the data.
+ * <p>
+ * The data points are shared, they must not be modified (see {@link DataPoint#immutableCopyOf(java.util.Collection)}).
+ */
+public final class DataPointIndex {
+
+    /**
+     * Maximum number of sorted permutations kept by an index.
+     */
+    static final int MAX_CACHED_ORDERS = 16;
+
+    private final DataStructure structure;
+    private final List<DataPoint> data;
+    private final Cache<Order, List<DataPoint>> permutations = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_ORDERS)
+            .build();
+    private final Map<Integer, int[]> identifierIndexes = new ConcurrentHashMap<>();
+
+    public DataPointIndex(DataStructure structure, List<DataPoint> data) {
+        this.structure = checkNotNull(structure);
+        this.data = ImmutableList.copyOf(data);
+    }
+
+    /**
+     * Returns the data points that match the filtering sorted using the order, or in the order of the data if the
+     * order is empty.
+     *
+     * @see Dataset#getData(Order, Dataset.Filtering, java.util.Set)
+     */
+    public Stream<DataPoint> getData(Order order, Dataset.Filtering filtering) {
+        List<DataPoint> rows = data;
+        if (filtering instanceof StructuredFiltering) {
+            Optional<int[]> candidates = lookup((StructuredFiltering) filtering);
+            if (candidates.isPresent())
+                rows = select(candidates.get());
+        }
+
+        if (!order.isEmpty()) {
+            if (rows == data) {
+                rows = getSorted(order);
+            } else {
+                // The candidates are a copy.
+                rows.sort(order);
+            }
+        }
+
+        Stream<DataPoint> stream = rows.stream();
+        return filtering == Dataset.Filtering.ALL ? stream : stream.filter(filtering);
+    }
+
+    /**
+     * Returns the data points sorted using the order. The permutation is cached.
+     */
+    List<DataPoint> getSorted(Order order) {
+        try {
+            return permutations.get(order, () -> {
+                List<DataPoint> sorted = Lists.newArrayList(data);
+                sorted.sort(order);
+                return Collections.unmodifiableList(sorted);
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the data points at the given positions, in the order of the data.
+     */
+    private List<DataPoint> select(int[] positions) {
+        Arrays.sort(positions);
+        List<DataPoint> rows = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            rows.add(data.get(position));
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the positions of the smallest set of candidates that the conditions on the identifiers give, if any.
+     */
+    private Optional<int[]> lookup(StructuredFiltering filtering) {
+        int[] best = null;
+        for (StructuredFiltering conjunct : filtering.getConjuncts()) {
+            Optional<int[]> candidates = lookupConjunct(conjunct);
+            if (candidates.isPresent() && (best == null || candidates.get().length < best.length))
+                best = candidates.get();
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private Optional<int[]> lookupConjunct(StructuredFiltering conjunct) {
+        String column = conjunct.getColumn();
+        if (column == null || !structure.containsKey(column))
+            return Optional.empty();
+        Component component = structure.get(column);
+        if (!component.isIdentifier())
+            return Optional.empty();
+
+        // The index is sorted with the natural order of the values, the literals must have the same type.
+        for (VTLObject value : conjunct.getValues()) {
+            if (value.get() == null || value.get().getClass() != component.getType())
+                return Optional.empty();
+        }
+
+        int index = structure.indexOf(component);
+        int[] sorted = getIdentifierIndex(index);
+        switch (conjunct.getOperator()) {
+            case EQ:
+                return Optional.of(range(sorted, index, conjunct.getValue(), true, conjunct.getValue(), true));
+            case LT:
+                return Optional.of(range(sorted, index, null, false, conjunct.getValue(), false));
+            case LE:
+                return Optional.of(range(sorted, index, null, false, conjunct.getValue(), true));
+            case GT:
+                return Optional.of(range(sorted, index, conjunct.getValue(), false, null, false));
+            case GE:
+                return Optional.of(range(sorted, index, conjunct.getValue(), true, null, false));
+            case IN:
+                List<int[]> ranges = Lists.newArrayList();
+                for (VTLObject value : ImmutableSortedSet.copyOf(VTLObject::compareTo, conjunct.getValues())) {
+                    ranges.add(range(sorted, index, value, true, value, true));
+                }
+                return Optional.of(Ints.concat(ranges.toArray(new int[0][])));
+            default:
+                return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the positions of the data points sorted by the value of the column.
+     */
+    private int[] getIdentifierIndex(int index) {
+        return identifierIndexes.computeIfAbsent(index, i -> IntStream.range(0, data.size()).boxed()
+                .sorted(Comparator.comparing(position -> data.get(position).get(i), VTLObject::compareTo))
+                .mapToInt(Integer::intValue)
+                .toArray());
+    }
+
+    /**
+     * Returns the positions of the data points whose value is between the bounds. A null bound is unbounded but
+     * null values are always excluded.
+     */
+    private int[] range(int[] sorted, int index, VTLObject lower, boolean lowerInclusive,
+                        VTLObject upper, boolean upperInclusive) {
+        // Nulls are sorted first.
+        int from = lower == null
+                ? search(sorted, index, VTLObject.NULL, true)
+                : search(sorted, index, lower, !lowerInclusive);
+        int to = upper == null
+                ? sorted.length
+                : search(sorted, index, upper, upperInclusive);
+        return from < to ? Arrays.copyOfRange(sorted, from, to) : new int[0];
+    }
+
+    /**
+     * Returns the position in the index of the first value greater (or greater or equal if after is false) than
+     * the given value.
+     */
+    private int search(int[] sorted, int index, VTLObject value, boolean after) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int result = data.get(sorted[middle]).get(index).compareTo(value);
+            if (result < 0 || (after && result == 0))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
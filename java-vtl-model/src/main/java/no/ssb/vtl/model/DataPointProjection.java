@@ -0,0 +1,99 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.function.UnaryOperator;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Support class that copies the values of a {@link DataPoint} into a {@link DataPoint} of another structure.
+ * <p>
+ * The columns are matched by name. Columns of the target structure that are missing in the source structure are
+ * set to {@link VTLObject#NULL}. When both structures have the same columns the data points are returned as is.
+ */
+public class DataPointProjection implements UnaryOperator<DataPoint> {
+
+    private static final String ERROR_INVALID_DATA_POINT_SIZE = "data point of size %s, expected %s or %s";
+
+    private final int[] indices;
+    private final boolean identity;
+
+    public DataPointProjection(DataStructure from, DataStructure to) {
+        checkNotNull(from);
+        checkNotNull(to);
+
+        ImmutableList<String> fromList = ImmutableList.copyOf(from.keySet());
+        ImmutableList<String> toList = ImmutableList.copyOf(to.keySet());
+
+        this.indices = new int[toList.size()];
+        for (int i = 0; i < toList.size(); i++) {
+            indices[i] = fromList.indexOf(toList.get(i));
+        }
+        this.identity = fromList.equals(toList);
+    }
+
+    /**
+     * Returns an operator that converts the data points a dataset returned for the requested components to the
+     * target structure.
+     * <p>
+     * {@link Dataset#getData(Order, Dataset.Filtering, java.util.Set)} returns the requested components only, but
+     * datasets written before this contract return all their components. Both are accepted; data points of any
+     * other size are rejected with an {@link IllegalStateException}.
+     *
+     * @param structure the structure of the dataset.
+     * @param requested the requested projection of the structure.
+     * @param target    the structure of the converted data points.
+     */
+    public static UnaryOperator<DataPoint> normalize(DataStructure structure, DataStructure requested,
+                                                     DataStructure target) {
+        DataPointProjection fromStructure = new DataPointProjection(structure, target);
+        if (requested.size() == structure.size())
+            return fromStructure;
+
+        DataPointProjection fromRequested = new DataPointProjection(requested, target);
+        int requestedSize = requested.size();
+        int structureSize = structure.size();
+        return dataPoint -> {
+            if (dataPoint.size() == requestedSize)
+                return fromRequested.apply(dataPoint);
+            if (dataPoint.size() == structureSize)
+                return fromStructure.apply(dataPoint);
+            throw new IllegalStateException(String.format(ERROR_INVALID_DATA_POINT_SIZE,
+                    dataPoint.size(), requestedSize, structureSize));
+        };
+    }
+
+    @Override
+    public DataPoint apply(DataPoint dataPoint) {
+        if (identity)
+            return dataPoint;
+
+        DataPoint result = DataPoint.create(indices.length);
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] >= 0)
+                result.set(i, dataPoint.get(indices[i]));
+        }
+        return result;
+    }
+}
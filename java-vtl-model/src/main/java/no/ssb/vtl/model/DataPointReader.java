@@ -0,0 +1,309 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.DataPointCodec.ColumnType;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads the {@link DataPoint}s written by a {@link DataPointWriter}.
+ * <p>
+ * The structure of the data points is read from the header of the stream. When the reader is created with a
+ * {@link DataStructure}, the header must have the same names, roles and types and the given structure is used.
+ */
+public final class DataPointReader implements Closeable {
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(DataPointWriter.DEFAULT_BLOCK_SIZE);
+    private final DataStructure structure;
+    private final ColumnType[] types;
+    private final List<VTLString>[] dictionaries;
+    private final int nullsLength;
+
+    private byte[] block = new byte[0];
+    private DataInputStream blockInput;
+    private int blockRowCount;
+    private long rowCount;
+    private boolean ended;
+
+    public DataPointReader(ReadableByteChannel channel) throws IOException {
+        this(channel, null);
+    }
+
+    /**
+     * Create a new reader.
+     *
+     * @param channel   the channel to read from.
+     * @param structure the expected structure, or null to use the structure of the header.
+     * @throws IOException              if the header cannot be read.
+     * @throws IllegalArgumentException if the header does not match the given structure.
+     */
+    @SuppressWarnings("unchecked")
+    public DataPointReader(ReadableByteChannel channel, DataStructure structure) throws IOException {
+        this.channel = checkNotNull(channel);
+        this.buffer.flip();
+
+        byte[] magic = new byte[DataPointCodec.MAGIC.length];
+        readFully(magic);
+        if (!Arrays.equals(magic, DataPointCodec.MAGIC))
+            throw new IOException("not a data point stream");
+        int version = readByte();
+        if (version != DataPointCodec.VERSION)
+            throw new IOException("unsupported version " + version);
+
+        byte[] header = new byte[(int) readVarLong()];
+        readFully(header);
+        DataInputStream headerInput = new DataInputStream(new ByteArrayInputStream(header));
+        int flags = headerInput.readUnsignedByte();
+        int size = (int) DataPointCodec.readVarLong(headerInput);
+        DataStructure.Builder builder = DataStructure.builder();
+        for (int i = 0; i < size; i++) {
+            String name = DataPointCodec.readString(headerInput);
+            Component.Role role = Component.Role.valueOf(DataPointCodec.readString(headerInput));
+            builder.put(name, role, readType(DataPointCodec.readString(headerInput)));
+        }
+        DataStructure written = builder.build();
+        if (structure != null) {
+            checkArgument(sameColumns(written, structure), "structure %s does not match %s", written, structure);
+            this.structure = structure;
+        } else {
+            this.structure = written;
+        }
+
+        boolean stringDictionary = (flags & DataPointCodec.FLAG_STRING_DICTIONARY) != 0;
+        this.types = new ColumnType[size];
+        this.dictionaries = new List[size];
+        int i = 0;
+        for (Component component : this.structure.values()) {
+            types[i] = ColumnType.of(component.getType());
+            if (stringDictionary && types[i] == ColumnType.STRING)
+                dictionaries[i] = Lists.newArrayList();
+            i++;
+        }
+        this.nullsLength = (size + 7) / 8;
+    }
+
+    private static boolean sameColumns(DataStructure left, DataStructure right) {
+        return ImmutableList.copyOf(left.getRoles().entrySet()).equals(ImmutableList.copyOf(right.getRoles().entrySet()))
+                && ImmutableList.copyOf(left.getTypes().entrySet()).equals(ImmutableList.copyOf(right.getTypes().entrySet()));
+    }
+
+    private static Class<?> readType(String name) throws IOException {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("unknown type " + name, cnfe);
+        }
+    }
+
+    public DataStructure getDataStructure() {
+        return structure;
+    }
+
+    /**
+     * Returns the number of data points read.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads the next data point.
+     *
+     * @return the data point or null at the end of the stream.
+     */
+    public DataPoint read() throws IOException {
+        while (blockRowCount == 0) {
+            if (ended || !readBlock())
+                return null;
+        }
+
+        byte[] nulls = new byte[nullsLength];
+        blockInput.readFully(nulls);
+        DataPoint dataPoint = DataPoint.create(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if ((nulls[i >>> 3] & (1 << (i & 7))) == 0)
+                dataPoint.set(i, readValue(i));
+        }
+
+        blockRowCount--;
+        rowCount++;
+        return dataPoint;
+    }
+
+    /**
+     * Returns a stream of the remaining data points. Closing the stream closes the reader.
+     */
+    public Stream<DataPoint> stream() {
+        Iterator<DataPoint> iterator = new Iterator<DataPoint>() {
+
+            private DataPoint next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = read();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public DataPoint next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                DataPoint current = next;
+                next = null;
+                return current;
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false
+        ).onClose(() -> {
+            try {
+                close();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+    }
+
+    private VTLObject readValue(int column) throws IOException {
+        switch (types[column]) {
+            case LONG:
+                return VTLInteger.of(DataPointCodec.readZigZag(blockInput));
+            case DOUBLE:
+                return VTLFloat.of(blockInput.readDouble());
+            case STRING:
+                List<VTLString> dictionary = dictionaries[column];
+                if (dictionary == null)
+                    return VTLString.of(DataPointCodec.readString(blockInput));
+                int code = (int) DataPointCodec.readVarLong(blockInput);
+                if (code > 0) {
+                    if (code > dictionary.size())
+                        throw new IOException("invalid string reference " + code);
+                    return dictionary.get(code - 1);
+                }
+                VTLString value = VTLString.of(DataPointCodec.readString(blockInput));
+                if (dictionary.size() < DataPointCodec.MAX_DICTIONARY_SIZE)
+                    dictionary.add(value);
+                return value;
+            case BOOLEAN:
+                return VTLBoolean.of(blockInput.readBoolean());
+            case INSTANT:
+                return VTLDate.of(Instant.ofEpochMilli(DataPointCodec.readZigZag(blockInput)));
+            default:
+                return DataPointCodec.readTagged(blockInput);
+        }
+    }
+
+    /**
+     * Reads the next block. Returns false at the end of the stream.
+     */
+    private boolean readBlock() throws IOException {
+        blockRowCount = (int) readVarLong();
+        int length = (int) readVarLong();
+        if (blockRowCount == 0) {
+            ended = true;
+            return false;
+        }
+        if (block.length < length)
+            block = new byte[length];
+        readFully(block, length);
+        blockInput = new DataInputStream(new ByteArrayInputStream(block, 0, length));
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        buffer.compact();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } finally {
+            buffer.flip();
+        }
+        return read >= 0;
+    }
+
+    private int readByte() throws IOException {
+        while (!buffer.hasRemaining()) {
+            if (!fill())
+                throw new EOFException("unexpected end of stream");
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int current = readByte();
+            result |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0)
+                return result;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private void readFully(byte[] bytes) throws IOException {
+        readFully(bytes, bytes.length);
+    }
+
+    private void readFully(byte[] bytes, int length) throws IOException {
+        int position = 0;
+        while (position < length) {
+            if (!buffer.hasRemaining() && !fill())
+                throw new EOFException("unexpected end of stream");
+            int count = Math.min(buffer.remaining(), length - position);
+            buffer.get(bytes, position, count);
+            position += count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,328 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sorts streams of {@link DataPoint}s within a memory budget.
+ * <p>
+ * The data points are sorted in memory until their estimated size exceeds the budget. The sorted run is then
+ * written to a temporary file and the runs are merged when the stream is consumed. The sort is stable and happens
+ * lazily, when the terminal operation of the returned stream starts. Closing the returned stream closes the
+ * input and deletes the temporary files.
+ * <p>
+ * Data points that contain values of unknown types cannot be written to the files; they are sorted in memory.
+ */
+public final class DataPointSorter {
+
+    /**
+     * Memory budget used when none is configured, 64MB.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private final Comparator<? super DataPoint> comparator;
+    private final long memoryBudget;
+
+    public DataPointSorter(Comparator<? super DataPoint> comparator) {
+        this(comparator, DEFAULT_MEMORY_BUDGET);
+    }
+
+    public DataPointSorter(Comparator<? super DataPoint> comparator, long memoryBudget) {
+        checkArgument(memoryBudget > 0, "invalid memory budget %s", memoryBudget);
+        this.comparator = checkNotNull(comparator);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Sorts the data using the default memory budget.
+     * <p>
+     * Use this method instead of {@link Stream#sorted(Comparator)} when the size of the data is unknown.
+     */
+    public static Stream<DataPoint> sorted(Stream<DataPoint> data, Comparator<? super DataPoint> comparator) {
+        return new DataPointSorter(comparator).sort(data);
+    }
+
+    /**
+     * Returns a stream of the data sorted using the comparator.
+     */
+    public Stream<DataPoint> sort(Stream<DataPoint> data) {
+        Sort sort = new Sort(data);
+        return StreamSupport.stream(
+                () -> Spliterators.spliteratorUnknownSize(sort.iterator(), Spliterator.ORDERED | Spliterator.NONNULL),
+                Spliterator.ORDERED | Spliterator.NONNULL,
+                false
+        ).onClose(sort::closeUnchecked);
+    }
+
+    /**
+     * Rough estimation of the heap used by a data point.
+     */
+    static long estimateSize(DataPoint dataPoint) {
+        long size = 64 + 8L * dataPoint.size();
+        for (VTLObject value : dataPoint) {
+            if (value instanceof VTLString && value.get() != null) {
+                size += 56 + 2L * ((VTLString) value).get().length();
+            } else if (value != null && value.get() != null) {
+                size += 24;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * State of one sort.
+     */
+    private final class Sort implements Closeable {
+
+        private final Stream<DataPoint> data;
+        private final List<Path> runs = Lists.newArrayList();
+        private final List<Closeable> readers = Lists.newArrayList();
+        private boolean spillable = true;
+
+        private Sort(Stream<DataPoint> data) {
+            this.data = checkNotNull(data);
+        }
+
+        private Iterator<DataPoint> iterator() {
+            List<DataPoint> buffer = Lists.newArrayList();
+            long used = 0;
+            Iterator<DataPoint> iterator = data.iterator();
+            while (iterator.hasNext()) {
+                DataPoint dataPoint = iterator.next();
+                buffer.add(dataPoint);
+                used += estimateSize(dataPoint);
+                if (spillable && used >= memoryBudget) {
+                    buffer.sort(comparator);
+                    if (spill(buffer)) {
+                        buffer = Lists.newArrayList();
+                        used = 0;
+                    }
+                }
+            }
+            buffer.sort(comparator);
+            if (runs.isEmpty())
+                return buffer.iterator();
+
+            // Runs are merged in the order they were written, the buffer is the last run.
+            List<Iterator<DataPoint>> iterators = Lists.newArrayListWithCapacity(runs.size() + 1);
+            for (Path run : runs) {
+                iterators.add(read(run));
+            }
+            iterators.add(buffer.iterator());
+            return merge(iterators);
+        }
+
+        /**
+         * Writes a sorted run. Returns false if the data points cannot be written.
+         */
+        private boolean spill(List<DataPoint> buffer) {
+            Path run = null;
+            try {
+                run = Files.createTempFile("vtl-sort-", ".run");
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                    for (DataPoint dataPoint : buffer) {
+                        RowFormat.write(output, dataPoint);
+                    }
+                }
+                runs.add(run);
+                return true;
+            } catch (IllegalArgumentException iae) {
+                // Unknown value type, continue in memory.
+                spillable = false;
+                deleteQuietly(run);
+                return false;
+            } catch (IOException ioe) {
+                deleteQuietly(run);
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        private Iterator<DataPoint> read(Path run) {
+            try {
+                DataInputStream input = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+                readers.add(input);
+                return new Iterator<DataPoint>() {
+
+                    private DataPoint next = readNext();
+
+                    private DataPoint readNext() {
+                        try {
+                            return RowFormat.read(input);
+                        } catch (IOException ioe) {
+                            throw new UncheckedIOException(ioe);
+                        }
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public DataPoint next() {
+                        if (next == null)
+                            throw new NoSuchElementException();
+                        DataPoint current = next;
+                        next = readNext();
+                        return current;
+                    }
+                };
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        /**
+         * K-way merge of sorted iterators. Equal data points are returned in the order of the iterators.
+         */
+        private Iterator<DataPoint> merge(List<Iterator<DataPoint>> iterators) {
+            List<PeekingIterator<DataPoint>> sources = Lists.newArrayListWithCapacity(iterators.size());
+            for (Iterator<DataPoint> iterator : iterators) {
+                sources.add(Iterators.peekingIterator(iterator));
+            }
+            PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, sources.size()), (left, right) -> {
+                int result = comparator.compare(sources.get(left).peek(), sources.get(right).peek());
+                return result != 0 ? result : Integer.compare(left, right);
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                if (sources.get(i).hasNext())
+                    queue.add(i);
+            }
+            return new Iterator<DataPoint>() {
+                @Override
+                public boolean hasNext() {
+                    return !queue.isEmpty();
+                }
+
+                @Override
+                public DataPoint next() {
+                    Integer index = queue.poll();
+                    if (index == null)
+                        throw new NoSuchElementException();
+                    PeekingIterator<DataPoint> source = sources.get(index);
+                    DataPoint next = source.next();
+                    if (source.hasNext())
+                        queue.add(index);
+                    return next;
+                }
+            };
+        }
+
+        private void closeUnchecked() {
+            try {
+                close();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                data.close();
+            } finally {
+                for (Closeable reader : readers) {
+                    reader.close();
+                }
+                for (Path run : runs) {
+                    deleteQuietly(run);
+                }
+                readers.clear();
+                runs.clear();
+            }
+        }
+
+        private void deleteQuietly(Path path) {
+            if (path == null)
+                return;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                path.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Binary format of the runs.
+     * <p>
+     * Each row starts with the number of values followed by the tagged values (see {@link DataPointCodec}). The
+     * runs do not need the structure of the data points.
+     */
+    static final class RowFormat {
+
+        private RowFormat() {
+            // static.
+        }
+
+        /**
+         * @throws IllegalArgumentException if a value is not of a supported type.
+         */
+        static void write(DataOutputStream output, DataPoint dataPoint) throws IOException {
+            DataPointCodec.writeVarLong(output, dataPoint.size());
+            for (VTLObject value : dataPoint) {
+                DataPointCodec.writeTagged(output, value);
+            }
+        }
+
+        /**
+         * Returns the next data point or null at the end of the input.
+         */
+        static DataPoint read(DataInputStream input) throws IOException {
+            int first = input.read();
+            if (first < 0)
+                return null;
+            int size = (int) DataPointCodec.readVarLong(input, first);
+            DataPoint dataPoint = DataPoint.create(size);
+            for (int i = 0; i < size; i++) {
+                dataPoint.set(i, DataPointCodec.readTagged(input));
+            }
+            return dataPoint;
+        }
+    }
+}
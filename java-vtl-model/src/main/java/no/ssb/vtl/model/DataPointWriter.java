@@ -0,0 +1,307 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Maps;
+import no.ssb.vtl.model.DataPointCodec.ColumnType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes {@link DataPoint}s of a {@link DataStructure} to a channel in a compact binary format.
+ * <p>
+ * The data points are encoded using the type of their components (see {@link DataPointCodec}) and written in
+ * blocks of about {@link #DEFAULT_BLOCK_SIZE} bytes. The strings can be encoded with a dictionary, so that repeated
+ * values are only written once. Dates are written with a millisecond precision.
+ * <p>
+ * {@link #close()} ends the stream and closes the channel. The data points can be read with a
+ * {@link DataPointReader}.
+ */
+public final class DataPointWriter implements Closeable, Flushable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final DataStructure structure;
+    private final boolean stringDictionary;
+    private final ColumnType[] types;
+    private final Map<String, Integer>[] dictionaries;
+    private final int blockSize;
+
+    private final Block block = new Block();
+    private final DataOutputStream output = new DataOutputStream(block);
+    private final byte[] nulls;
+
+    private boolean headerWritten;
+    private boolean closed;
+    private int blockRowCount;
+    private long rowCount;
+    private long bytesWritten;
+
+    public DataPointWriter(WritableByteChannel channel, DataStructure structure) {
+        this(channel, structure, false);
+    }
+
+    /**
+     * Create a new writer.
+     *
+     * @param channel          the channel to write to.
+     * @param structure        the structure of the data points.
+     * @param stringDictionary true to encode the strings with a dictionary.
+     */
+    public DataPointWriter(WritableByteChannel channel, DataStructure structure, boolean stringDictionary) {
+        this(channel, structure, stringDictionary, DEFAULT_BLOCK_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    DataPointWriter(WritableByteChannel channel, DataStructure structure, boolean stringDictionary, int blockSize) {
+        checkArgument(blockSize > 0, "invalid block size %s", blockSize);
+        this.channel = checkNotNull(channel);
+        this.structure = checkNotNull(structure);
+        this.stringDictionary = stringDictionary;
+        this.blockSize = blockSize;
+
+        int size = structure.size();
+        this.types = new ColumnType[size];
+        this.dictionaries = new Map[size];
+        int i = 0;
+        for (Component component : structure.values()) {
+            types[i] = ColumnType.of(component.getType());
+            if (stringDictionary && types[i] == ColumnType.STRING)
+                dictionaries[i] = Maps.newHashMap();
+            i++;
+        }
+        this.nulls = new byte[(size + 7) / 8];
+    }
+
+    public DataStructure getDataStructure() {
+        return structure;
+    }
+
+    /**
+     * Returns the number of data points written.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of bytes written to the channel.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes a data point.
+     *
+     * @throws IllegalArgumentException if the data point does not match the structure.
+     */
+    public void write(DataPoint dataPoint) throws IOException {
+        checkState(!closed, "writer is closed");
+        checkArgument(dataPoint.size() == types.length, "data point %s does not match %s", dataPoint, structure);
+        writeHeader();
+
+        // Null bitmap.
+        for (int i = 0; i < nulls.length; i++) {
+            nulls[i] = 0;
+        }
+        for (int i = 0; i < types.length; i++) {
+            VTLObject value = dataPoint.get(i);
+            if (value == null || value.get() == null)
+                nulls[i >>> 3] |= 1 << (i & 7);
+        }
+        output.write(nulls);
+
+        for (int i = 0; i < types.length; i++) {
+            VTLObject value = dataPoint.get(i);
+            if (value == null || value.get() == null)
+                continue;
+            writeValue(i, value);
+        }
+
+        blockRowCount++;
+        rowCount++;
+        if (block.size() >= blockSize)
+            writeBlock();
+    }
+
+    /**
+     * Writes all the data points of a stream and closes it.
+     *
+     * @return the number of data points written.
+     */
+    public long writeAll(Stream<DataPoint> data) throws IOException {
+        long count = 0;
+        try (Stream<DataPoint> closed = data) {
+            Iterator<DataPoint> iterator = closed.iterator();
+            while (iterator.hasNext()) {
+                write(iterator.next());
+                count++;
+            }
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+        return count;
+    }
+
+    private void writeValue(int column, VTLObject value) throws IOException {
+        Object object = value.get();
+        switch (types[column]) {
+            case LONG:
+                DataPointCodec.writeZigZag(output, checkType(column, object, Long.class));
+                break;
+            case DOUBLE:
+                output.writeDouble(checkType(column, object, Double.class));
+                break;
+            case STRING:
+                String string = checkType(column, object, String.class);
+                Map<String, Integer> dictionary = dictionaries[column];
+                if (dictionary == null) {
+                    DataPointCodec.writeString(output, string);
+                    break;
+                }
+                // 0 is followed by a new value, otherwise the code of a previous value plus one.
+                Integer code = dictionary.get(string);
+                if (code != null) {
+                    DataPointCodec.writeVarLong(output, code + 1);
+                } else {
+                    DataPointCodec.writeVarLong(output, 0);
+                    DataPointCodec.writeString(output, string);
+                    if (dictionary.size() < DataPointCodec.MAX_DICTIONARY_SIZE)
+                        dictionary.put(string, dictionary.size());
+                }
+                break;
+            case BOOLEAN:
+                output.writeBoolean(checkType(column, object, Boolean.class));
+                break;
+            case INSTANT:
+                DataPointCodec.writeZigZag(output, checkType(column, object, Instant.class).toEpochMilli());
+                break;
+            default:
+                DataPointCodec.writeTagged(output, value);
+        }
+    }
+
+    private <T> T checkType(int column, Object value, Class<T> type) {
+        checkArgument(type.isInstance(value), "value %s of column %s is not a %s", value, column, type.getSimpleName());
+        return type.cast(value);
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten)
+            return;
+        headerWritten = true;
+
+        Block header = new Block();
+        DataOutputStream headerOutput = new DataOutputStream(header);
+        headerOutput.writeByte(stringDictionary ? DataPointCodec.FLAG_STRING_DICTIONARY : 0);
+        DataPointCodec.writeVarLong(headerOutput, structure.size());
+        for (Map.Entry<String, Component> entry : structure.entrySet()) {
+            DataPointCodec.writeString(headerOutput, entry.getKey());
+            DataPointCodec.writeString(headerOutput, entry.getValue().getRole().name());
+            DataPointCodec.writeString(headerOutput, entry.getValue().getType().getName());
+        }
+
+        Block prefix = new Block();
+        DataOutputStream prefixOutput = new DataOutputStream(prefix);
+        prefixOutput.write(DataPointCodec.MAGIC);
+        prefixOutput.writeByte(DataPointCodec.VERSION);
+        DataPointCodec.writeVarLong(prefixOutput, header.size());
+
+        writeFully(prefix.toByteBuffer());
+        writeFully(header.toByteBuffer());
+    }
+
+    private void writeBlock() throws IOException {
+        Block prefix = new Block();
+        DataOutputStream prefixOutput = new DataOutputStream(prefix);
+        DataPointCodec.writeVarLong(prefixOutput, blockRowCount);
+        DataPointCodec.writeVarLong(prefixOutput, block.size());
+        writeFully(prefix.toByteBuffer());
+        writeFully(block.toByteBuffer());
+        block.reset();
+        blockRowCount = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the data points of the current block to the channel.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkState(!closed, "writer is closed");
+        writeHeader();
+        if (blockRowCount > 0)
+            writeBlock();
+    }
+
+    /**
+     * Writes the remaining data points, ends the stream and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            flush();
+            // Empty block.
+            writeFully(ByteBuffer.wrap(new byte[]{0, 0}));
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * Output that exposes its buffer.
+     */
+    private static final class Block extends ByteArrayOutputStream {
+
+        private Block() {
+            super(1024);
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
@@ -76,6 +76,7 @@ public class DataStructure extends ForwardingMap<String, Component> {
     private final ImmutableMap<String, Component.Role> roleCache;
     private final ImmutableMap<String, Class<?>> typeCache;
     private final ImmutableList<Component> indexListCache;
+    private final IdentityHashMap<Component, ComponentAccessor> accessorCache;
 
     protected DataStructure(BiFunction<Object, Class<?>, ?> converter, ImmutableMap<String, Component> map) {
         this.converter = checkNotNull(converter);
@@ -84,6 +85,7 @@ public class DataStructure extends ForwardingMap<String, Component> {
         this.roleCache = computeRoleCache(delegate);
         this.typeCache = computeTypeCache(delegate);
         this.indexListCache = computeIndexCache(delegate);
+        this.accessorCache = computeAccessorCache(delegate);
     }
 
     private static ImmutableMap<String, Component.Role> computeRoleCache(ImmutableMap<String, Component> delegate) {
@@ -107,6 +109,17 @@ public class DataStructure extends ForwardingMap<String, Component> {
 
     }
 
+    private static IdentityHashMap<Component, ComponentAccessor> computeAccessorCache(ImmutableMap<String, Component> delegate) {
+        IdentityHashMap<Component, ComponentAccessor> map = Maps.newIdentityHashMap();
+        int index = 0;
+        for (Entry<String, Component> entry : delegate.entrySet()) {
+            // Keep the first index, like List.indexOf().
+            map.putIfAbsent(entry.getValue(), new ComponentAccessor(entry.getKey(), entry.getValue(), index));
+            index++;
+        }
+        return map;
+    }
+
     public static DataStructure.Builder builder() {
         return new DataStructure.Builder();
     }
@@ -213,6 +226,18 @@ public class DataStructure extends ForwardingMap<String, Component> {
         return this.inverseCache.get(component);
     }
 
+    /**
+     * Returns a structure that only contains the components with the given names.
+     * <p>
+     * The components are the same instances and keep their order. Unknown names are ignored. Returns this structure
+     * if it does not contain any other component.
+     */
+    public DataStructure project(Set<String> names) {
+        if (names.containsAll(delegate.keySet()))
+            return this;
+        return copyOf(Maps.filterKeys(delegate, names::contains)).build();
+    }
+
     public Map<String, Component.Role> getRoles() {
         return this.roleCache;
     }
@@ -243,13 +268,14 @@ public class DataStructure extends ForwardingMap<String, Component> {
 
             @Override
             public VTLObject put(Component key, VTLObject value) {
-                int index = indexListCache.indexOf(key);
+                int index = indexOf(key);
                 return index < 0 ? null : dataPoint.set(index, value);
             }
 
             @Override
             public VTLObject get(Object key) {
-                int index = indexListCache.indexOf(key);
+                ComponentAccessor accessor = accessorCache.get(key);
+                int index = accessor == null ? -1 : accessor.getIndex();
                 return index < 0 ? null : dataPoint.get(index);
             }
 
@@ -300,7 +326,30 @@ public class DataStructure extends ForwardingMap<String, Component> {
     }
 
     public int indexOf(Component component) {
-        return indexListCache.indexOf(component);
+        ComponentAccessor accessor = accessorCache.get(component);
+        return accessor == null ? -1 : accessor.getIndex();
+    }
+
+    /**
+     * Returns an accessor for the given component.
+     *
+     * @throws IllegalArgumentException if the component is not part of this structure.
+     */
+    public ComponentAccessor getAccessor(Component component) {
+        ComponentAccessor accessor = accessorCache.get(component);
+        checkArgument(accessor != null, "the component %s was not found in %s", component, this);
+        return accessor;
+    }
+
+    /**
+     * Returns an accessor for the component with the given name.
+     *
+     * @throws IllegalArgumentException if there is no component with this name.
+     */
+    public ComponentAccessor getAccessor(String name) {
+        Component component = delegate.get(name);
+        checkArgument(component != null, "the component %s was not found in %s", name, this);
+        return accessorCache.get(component);
     }
 
 
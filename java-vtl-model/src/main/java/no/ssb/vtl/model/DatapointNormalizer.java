@@ -80,10 +80,12 @@ public class DatapointNormalizer implements UnaryOperator<DataPoint> {
         if (fromIndices.length == 0)
             return datapoint;
 
-        DataPoint copy = (DataPoint) datapoint.clone();
+        // Immutable data points are copied once and read directly.
+        DataPoint result = DataPoint.mutable(datapoint);
+        DataPoint source = result == datapoint ? (DataPoint) datapoint.clone() : datapoint;
         for (int i = 0; i < fromIndices.length; i++)
-            datapoint.set(toIndices[i], copy.get(fromIndices[i]));
+            result.set(toIndices[i], source.get(fromIndices[i]));
 
-        return datapoint;
+        return result;
     }
 }
@@ -42,10 +42,13 @@ package no.ssb.vtl.model;
 
 import com.google.common.base.Predicate;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Spliterator;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 /**
@@ -84,6 +87,11 @@ import java.util.stream.Stream;
  * Independent sorting and filtering of the data points for a stream can be requested with the
  * {@link Dataset#getData(Order, Filtering, Set)} methods. This allows optimized implementations of operations like
  * join or union.
+ * <p>
+ * Batches:
+ * <p>
+ * The observations can also be requested by column using the {@link #getBatches()} functions. Datasets that only
+ * implement the row based functions are adapted automatically.
  */
 public interface Dataset {
     
@@ -99,6 +107,9 @@ public interface Dataset {
      * </ul>
      * <p>
      * Other characteristics are left at the discretion of the implementers.
+     * <p>
+     * The returned {@link DataPoint}s can be immutable and shared between streams. Callers that modify them
+     * must use {@link DataPoint#mutable(DataPoint)} first.
      */
     Stream<DataPoint> getData();
 
@@ -113,23 +124,44 @@ public interface Dataset {
      */
     Optional<Long> getSize();
 
+    /**
+     * Returns the estimated {@link Statistics} of the data points.
+     * <p>
+     * The default implementation uses {@link #getSize()} and {@link #getDistinctValuesCount()}. Operations derive
+     * their statistics from the statistics of their children.
+     */
+    default Statistics getStatistics() {
+        return Statistics.of(getSize(), getDistinctValuesCount());
+    }
+
     /**
      * Creates a new independent, immutable stream of DataPoints.
      * <p>
      * Implementations can decide not to allow sorting by returning {@link Optional#empty()}.
      * <p>
      * If supported, the {@link Spliterator} of the returned {@link Stream} <b>must</b> be {@link Spliterator#SORTED}
-     * using the given {@link Order}.
+     * using the given {@link Order}. An empty order does not require any sorting.
+     * <p>
+     * The returned {@link DataPoint}s <b>must</b> only contain the values of the requested components, in the
+     * order of {@link #getDataStructure()} (see {@link DataStructure#project(Set)}). The order and the filtering
+     * apply to the whole structure, so implementations should sort and filter before removing the other components.
      *
-     * @param orders    the order in which the {@link DataPoint}s should be returned.
-     * @param filtering the filtering on the {@link Component}s of the {@link DataPoint}s
+     * @param orders     the order in which the {@link DataPoint}s should be returned.
+     * @param filtering  the filtering on the {@link Component}s of the {@link DataPoint}s
+     * @param components the names of the components the returned {@link DataPoint}s contain.
      * @return a <b>sorted</b> stream of {@link DataPoint}s if sorting is supported.
      */
     default Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
-        return Optional.of(getData().sorted(orders).filter(filtering).map(o -> {
-            // TODO
-            return o;
-        }));
+        Stream<DataPoint> data = getData().filter(filtering);
+        if (!orders.isEmpty())
+            data = DataPointSorter.sorted(data, orders);
+
+        DataStructure structure = getDataStructure();
+        DataStructure projected = structure.project(components);
+        if (projected != structure)
+            data = data.map(new DataPointProjection(structure, projected));
+
+        return Optional.of(data);
     }
 
     /**
@@ -162,13 +194,57 @@ public interface Dataset {
      * Creates a new independent, immutable stream of DataPoints.
      * <p>
      * Calling this method is equivalent to
-     * <code>getData(Ordering.DEFAULT, filtering, getDataStructure.keySet())</code>
+     * <code>getData(Ordering.DEFAULT, Filtering.ALL, components)</code>
      *
      * @see Filtering#getData(Order, Filtering, Set)
      */
     default Optional<Stream<DataPoint>> getData(Set<String> components) {
         DataStructure dataStructure = getDataStructure();
-        return getData(Order.createDefault(dataStructure), Filtering.ALL, dataStructure.keySet());
+        return getData(Order.createDefault(dataStructure), Filtering.ALL, components);
+    }
+
+    /**
+     * Creates a new independent, immutable stream of {@link DataPointBatch}es.
+     * <p>
+     * The batches contain the same {@link DataPoint}s, in the same order, as the stream returned by
+     * {@link #getData()}. The default implementation groups the rows of {@link #getData()}; implementations
+     * that can produce columns directly should override it.
+     */
+    default Stream<DataPointBatch> getBatches() {
+        return DataPointBatch.fromDataPoints(getData(), getDataStructure(), DataPointBatch.DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a new independent, immutable stream of {@link DataPointBatch}es.
+     * <p>
+     * The batch equivalent of {@link #getData(Order, Filtering, Set)}. The rows of the returned batches are
+     * sorted using the given {@link Order} and the batches only contain the columns of the requested components.
+     *
+     * @param orders     the order in which the {@link DataPoint}s should be returned.
+     * @param filtering  the filtering on the {@link Component}s of the {@link DataPoint}s
+     * @param components the names of the components the returned batches contain.
+     * @return a <b>sorted</b> stream of {@link DataPointBatch}es if sorting is supported.
+     */
+    default Optional<Stream<DataPointBatch>> getBatches(Order orders, Filtering filtering, Set<String> components) {
+        DataStructure structure = getDataStructure().project(components);
+        UnaryOperator<DataPoint> normalizer = DataPointProjection.normalize(getDataStructure(), structure, structure);
+        return getData(orders, filtering, components).map(stream -> DataPointBatch.fromDataPoints(
+                stream.map(normalizer), structure, DataPointBatch.DEFAULT_SIZE
+        ));
+    }
+
+    /**
+     * Splits the data points of {@link #getData()} in at most {@code count} contiguous partitions that can be read
+     * concurrently.
+     * <p>
+     * Reading the partitions one after another returns the data points of {@link #getData()} in the same order.
+     * The default implementation returns a single partition; {@link DataPartitions} reads the partitions of the
+     * datasets that can be split in parallel.
+     *
+     * @param count the maximum number of partitions.
+     */
+    default List<DataPartition> getPartitions(int count) {
+        return Collections.singletonList(this::getData);
     }
 
     /**
@@ -26,12 +26,16 @@ import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
+import com.google.common.primitives.UnsignedBytes;
 
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static no.ssb.vtl.model.Order.Direction.ASC;
 
@@ -41,7 +45,21 @@ import static no.ssb.vtl.model.Order.Direction.ASC;
 public final class Order extends ForwardingMap<Component, Order.Direction> implements Comparator<DataPoint> {
 
     public static final Comparator<Comparable> NULLS_FIRST = Comparator.<Comparable>nullsFirst(Comparator.naturalOrder());
-    public static final Comparator<VTLObject> VTL_OBJECT_COMPARATOR = Comparator.comparing(vtlObject -> (Comparable) vtlObject.get(), NULLS_FIRST);
+    private static final Comparator<VTLObject> VALUE_COMPARATOR = Comparator.comparing(vtlObject -> (Comparable) vtlObject.get(), NULLS_FIRST);
+
+    /**
+     * Compares the values of {@link VTLObject}s, nulls first. Strings encoded by the same {@link StringDictionary}
+     * are compared using their codes.
+     */
+    public static final Comparator<VTLObject> VTL_OBJECT_COMPARATOR = (left, right) ->
+            VTLString.isSameDictionary(left, right)
+                    ? Integer.compare(((VTLString) left).getCode(), ((VTLString) right).getCode())
+                    : VALUE_COMPARATOR.compare(left, right);
+
+    /**
+     * Compares the keys created by {@link #sortKey(DataPoint)}.
+     */
+    public static final Comparator<byte[]> SORT_KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
 
     public static final Comparator<Entry<String, Component>> BY_ROLE = Comparator.comparing(
             entry -> entry.getValue().getRole(),
@@ -58,7 +76,10 @@ public final class Order extends ForwardingMap<Component, Order.Direction> imple
     private final ImmutableMap<Component, Direction> delegate;
     private final int[] indices;
     private final Direction[] directions;
+    private final Comparator<VTLObject>[] comparators;
+    private final Class<?>[] types;
 
+    @SuppressWarnings("unchecked")
     Order(DataStructure structure, ImmutableMap<Component, Direction> orders) {
         this.delegate = ImmutableMap.copyOf(orders);
         this.structure = checkNotNull(structure);
@@ -73,7 +94,15 @@ public final class Order extends ForwardingMap<Component, Order.Direction> imple
         this.indices = Ints.toArray(indices);
         this.directions = directions.toArray(new Direction[]{});
 
-
+        // Resolve the comparator of each column once instead of dispatching on every value.
+        this.comparators = new Comparator[this.indices.length];
+        this.types = new Class<?>[this.indices.length];
+        int i = 0;
+        for (Component component : orders.keySet()) {
+            types[i] = component.getType();
+            comparators[i] = ValueComparators.forType(types[i]);
+            i++;
+        }
     }
 
     public Component get(String column) {
@@ -136,7 +165,7 @@ public final class Order extends ForwardingMap<Component, Order.Direction> imple
         int result;
 
         for (int i = 0; i < indices.length; i++) {
-            result = VTL_OBJECT_COMPARATOR.compare(o1.get(indices[i]), o2.get(indices[i]));
+            result = comparators[i].compare(o1.get(indices[i]), o2.get(indices[i]));
             if (result != 0) {
                 return directions[i] == ASC ? result : -result;
             }
@@ -144,6 +173,55 @@ public final class Order extends ForwardingMap<Component, Order.Direction> imple
         return 0;
     }
 
+    /**
+     * Compares two data points that do not have the structure of this order.
+     * <p>
+     * The value at position {@code p} of the structure is read at position {@code leftIndices[p]} of the left
+     * data point and {@code rightIndices[p]} of the right one. This compares the values in place instead of
+     * copying them to data points of the structure first.
+     */
+    public int compare(DataPoint left, int[] leftIndices, DataPoint right, int[] rightIndices) {
+        int result;
+
+        for (int i = 0; i < indices.length; i++) {
+            int index = indices[i];
+            result = comparators[i].compare(left.get(leftIndices[index]), right.get(rightIndices[index]));
+            if (result != 0) {
+                return directions[i] == ASC ? result : -result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns true if {@link #sortKey(DataPoint)} supports the types of the components of this order.
+     */
+    public boolean hasSortKey() {
+        for (Class<?> type : types) {
+            if (!SortKeyEncoder.canEncode(type))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encode the values of a {@link DataPoint} to a binary key.
+     * <p>
+     * Comparing two keys with {@link #SORT_KEY_COMPARATOR} gives the same result as {@link #compare(DataPoint,
+     * DataPoint)} on the data points, so that sorts can work on the keys only.
+     *
+     * @throws IllegalArgumentException if a type is not supported (see {@link #hasSortKey()}) or a value is not
+     *                                  of the type of its component.
+     */
+    public byte[] sortKey(DataPoint dataPoint) {
+        ByteArrayDataOutput output = ByteStreams.newDataOutput(indices.length * 9);
+        for (int i = 0; i < indices.length; i++) {
+            checkArgument(SortKeyEncoder.canEncode(types[i]), "cannot create sort key for type %s", types[i]);
+            SortKeyEncoder.encode(output, types[i], dataPoint.get(indices[i]), directions[i] != ASC);
+        }
+        return output.toByteArray();
+    }
+
     @Override
     protected Map<Component, Direction> delegate() {
         return delegate;
@@ -0,0 +1,99 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.io.ByteArrayDataOutput;
+
+import java.time.Instant;
+
+/**
+ * Encodes values so that the unsigned lexicographical order of the bytes is the order of the values.
+ * <p>
+ * Each value starts with a null marker (nulls first) followed by a fixed size encoding for numbers, dates and
+ * booleans, or a terminated encoding for strings. The encoding of a descending column is inverted.
+ */
+final class SortKeyEncoder {
+
+    private static final byte NULL = 0x00;
+    private static final byte NOT_NULL = 0x01;
+
+    private static final byte END_OF_STRING = 0x00;
+    private static final byte CHARACTER = 0x01;
+
+    private SortKeyEncoder() {
+        // static.
+    }
+
+    /**
+     * Returns true if values of the given type can be encoded.
+     */
+    static boolean canEncode(Class<?> type) {
+        return type == Long.class || type == Double.class || type == String.class
+                || type == Instant.class || type == Boolean.class;
+    }
+
+    static void encode(ByteArrayDataOutput output, Class<?> type, VTLObject object, boolean descending) {
+        int mask = descending ? 0xFF : 0x00;
+        Object value = object == null ? null : object.get();
+        if (value == null) {
+            output.write(NULL ^ mask);
+            return;
+        }
+        output.write(NOT_NULL ^ mask);
+        if (type == Long.class && value instanceof Long) {
+            writeLong(output, (Long) value ^ Long.MIN_VALUE, mask);
+        } else if (type == Double.class && value instanceof Double) {
+            long bits = Double.doubleToLongBits((Double) value);
+            // Flip all the bits of negative values, only the sign of positive ones.
+            bits ^= (bits >> 63) | Long.MIN_VALUE;
+            writeLong(output, bits, mask);
+        } else if (type == String.class && value instanceof String) {
+            String string = (String) value;
+            // Two bytes per UTF-16 unit to keep the order of String.compareTo().
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                output.write(CHARACTER ^ mask);
+                output.write((c >>> 8) ^ mask);
+                output.write(c ^ mask);
+            }
+            output.write(END_OF_STRING ^ mask);
+        } else if (type == Instant.class && value instanceof Instant) {
+            Instant instant = (Instant) value;
+            writeLong(output, instant.getEpochSecond() ^ Long.MIN_VALUE, mask);
+            int nanos = instant.getNano();
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                output.write((nanos >>> shift) ^ mask);
+            }
+        } else if (type == Boolean.class && value instanceof Boolean) {
+            output.write(((Boolean) value ? 1 : 0) ^ mask);
+        } else {
+            throw new IllegalArgumentException(
+                    String.format("cannot encode %s (%s) as %s", value, value.getClass(), type)
+            );
+        }
+    }
+
+    private static void writeLong(ByteArrayDataOutput output, long value, int mask) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            output.write((int) (value >>> shift) ^ mask);
+        }
+    }
+}
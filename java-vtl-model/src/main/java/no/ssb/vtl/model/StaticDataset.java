@@ -42,15 +42,41 @@ public class StaticDataset implements Dataset {
 
     private final DataStructure structure;
     private final List<DataPoint> data;
+    private final DataPointIndex index;
 
     private StaticDataset(DataStructure structure, List<DataPoint> data) {
         this.structure = structure;
         this.data = data;
+        this.index = new DataPointIndex(structure, data);
     }
 
+    /**
+     * Returns the data points of the dataset. The data points are immutable and shared by all the streams.
+     */
     @Override
     public Stream<DataPoint> getData() {
-        return data.stream().map(DataPoint::create);
+        return data.stream();
+    }
+
+    /**
+     * Returns the data points using the {@link DataPointIndex} of the dataset. Sorted permutations are cached and
+     * conditions on the identifiers only read the matching data points.
+     */
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        Stream<DataPoint> data = index.getData(orders, filtering);
+        DataStructure projected = structure.project(components);
+        if (projected != structure)
+            data = data.map(new DataPointProjection(structure, projected));
+        return Optional.of(data);
+    }
+
+    /**
+     * Splits the data points in ranges of the list.
+     */
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        return DataPartitions.split(data.size(), count, (from, to) -> data.subList(from, to).stream());
     }
 
     @Override
@@ -86,6 +112,47 @@ public class StaticDataset implements Dataset {
         return Optional.of((long) data.size());
     }
 
+    /**
+     * Computes the exact statistics of the data points.
+     */
+    @Override
+    public Statistics getStatistics() {
+        int size = structure.size();
+        List<Set<VTLObject>> distinct = Lists.newArrayListWithCapacity(size);
+        VTLObject[] min = new VTLObject[size];
+        VTLObject[] max = new VTLObject[size];
+        long[] nulls = new long[size];
+        for (int i = 0; i < size; i++)
+            distinct.add(Sets.newHashSet());
+
+        for (DataPoint dataPoint : data) {
+            for (int i = 0; i < size; i++) {
+                VTLObject value = dataPoint.get(i);
+                if (value == null || value.get() == null) {
+                    nulls[i]++;
+                    continue;
+                }
+                distinct.get(i).add(value);
+                if (min[i] == null || value.compareTo(min[i]) < 0)
+                    min[i] = value;
+                if (max[i] == null || value.compareTo(max[i]) > 0)
+                    max[i] = value;
+            }
+        }
+
+        Statistics.Builder statistics = Statistics.builder().rowCount((long) data.size());
+        Iterator<String> names = structure.keySet().iterator();
+        for (int i = 0; i < size; i++) {
+            statistics.column(names.next(), ColumnStatistics.builder()
+                    .distinctCount((long) distinct.get(i).size())
+                    .min(min[i])
+                    .max(max[i])
+                    .nullFraction(data.isEmpty() ? 0.0 : (double) nulls[i] / data.size())
+                    .build());
+        }
+        return statistics.build();
+    }
+
     @Override
     public DataStructure getDataStructure() {
         return structure;
@@ -196,7 +263,7 @@ public class StaticDataset implements Dataset {
 
         public ValueBuilder addPoints(DataPoint point) {
             structure.asMap(point); // only to check.
-            data.add(point);
+            data.add(DataPoint.immutableCopyOf(point));
             return this;
         }
 
@@ -0,0 +1,409 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Estimated statistics of a {@link Dataset}: the number of rows, the {@link ColumnStatistics} of each column and the
+ * order of the data points returned by {@link Dataset#getData()}.
+ * <p>
+ * Operations derive their statistics from the statistics of their children using the estimation functions of this
+ * class. Unknown values stay unknown; the estimations are meant to choose between strategies (join algorithm,
+ * buffer sizes) and should never be used to compute results.
+ */
+public final class Statistics {
+
+    /**
+     * Selectivity of an equality when the distinct count of the column is unknown.
+     */
+    public static final double DEFAULT_EQUALITY_SELECTIVITY = 0.1;
+
+    /**
+     * Selectivity of a range when the bounds of the column are unknown.
+     */
+    public static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+    /**
+     * Selectivity of a filtering that cannot be inspected.
+     */
+    public static final double DEFAULT_SELECTIVITY = 0.5;
+
+    private static final Statistics UNKNOWN = new Statistics(null, ImmutableMap.of(), ImmutableMap.of());
+
+    private final Long rowCount;
+    private final ImmutableMap<String, ColumnStatistics> columns;
+    private final ImmutableMap<String, Order.Direction> order;
+
+    private Statistics(Long rowCount, ImmutableMap<String, ColumnStatistics> columns,
+                       ImmutableMap<String, Order.Direction> order) {
+        checkArgument(rowCount == null || rowCount >= 0, "negative row count %s", rowCount);
+        this.rowCount = rowCount;
+        this.columns = checkNotNull(columns);
+        this.order = checkNotNull(order);
+    }
+
+    public static Statistics unknown() {
+        return UNKNOWN;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static Builder copyOf(Statistics statistics) {
+        Builder builder = new Builder().rowCount(statistics.rowCount);
+        builder.columns.putAll(statistics.columns);
+        builder.order.putAll(statistics.order);
+        return builder;
+    }
+
+    /**
+     * Create statistics from the values returned by {@link Dataset#getSize()} and
+     * {@link Dataset#getDistinctValuesCount()}.
+     */
+    public static Statistics of(Optional<Long> size, Optional<Map<String, Integer>> distinctValuesCount) {
+        Builder builder = builder().rowCount(size.orElse(null));
+        if (distinctValuesCount.isPresent()) {
+            for (Map.Entry<String, Integer> entry : distinctValuesCount.get().entrySet()) {
+                builder.column(
+                        entry.getKey(),
+                        ColumnStatistics.builder().distinctCount(entry.getValue().longValue()).build()
+                );
+            }
+        }
+        return builder.build();
+    }
+
+    public Optional<Long> getRowCount() {
+        return Optional.ofNullable(rowCount);
+    }
+
+    /**
+     * Returns the statistics of a column, {@link ColumnStatistics#UNKNOWN} if the column has none.
+     */
+    public ColumnStatistics getColumn(String name) {
+        return columns.getOrDefault(name, ColumnStatistics.UNKNOWN);
+    }
+
+    public Map<String, ColumnStatistics> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the names and directions of the columns the data points are sorted by, the first column first.
+     * Empty if the order is not known.
+     */
+    public Map<String, Order.Direction> getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns true if the data points are sorted by the given order or by an order that starts with it.
+     */
+    public boolean isSortedBy(Order requested, DataStructure structure) {
+        if (requested.size() > order.size())
+            return false;
+        Iterator<Map.Entry<String, Order.Direction>> iterator = order.entrySet().iterator();
+        for (Map.Entry<Component, Order.Direction> entry : requested.entrySet()) {
+            Map.Entry<String, Order.Direction> sorted = iterator.next();
+            if (!sorted.getKey().equals(structure.getName(entry.getKey())) || sorted.getValue() != entry.getValue())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Estimate the statistics after the given number of rows is kept.
+     * <p>
+     * The distinct counts are limited to the number of rows.
+     */
+    public Statistics withRowCount(Long newRowCount) {
+        Builder builder = copyOf(this).rowCount(newRowCount);
+        if (newRowCount != null) {
+            for (Map.Entry<String, ColumnStatistics> entry : columns.entrySet()) {
+                builder.column(entry.getKey(), entry.getValue().limitTo(newRowCount));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Keep the statistics of the columns of the given structure.
+     * <p>
+     * The order is kept up to the first column that is not in the structure.
+     */
+    public Statistics project(DataStructure structure) {
+        Builder builder = builder().rowCount(rowCount);
+        for (Map.Entry<String, ColumnStatistics> entry : columns.entrySet()) {
+            if (structure.containsKey(entry.getKey()))
+                builder.column(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Order.Direction> entry : order.entrySet()) {
+            if (!structure.containsKey(entry.getKey()))
+                break;
+            builder.order(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Rename the columns.
+     *
+     * @param names the new name of each column. Columns without new name are removed.
+     */
+    public Statistics rename(Map<String, String> names) {
+        Builder builder = builder().rowCount(rowCount);
+        for (Map.Entry<String, ColumnStatistics> entry : columns.entrySet()) {
+            String name = names.get(entry.getKey());
+            if (name != null)
+                builder.column(name, entry.getValue());
+        }
+        for (Map.Entry<String, Order.Direction> entry : order.entrySet()) {
+            String name = names.get(entry.getKey());
+            if (name == null)
+                break;
+            builder.order(name, entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Estimate the statistics of the data points described by this and the other statistics (a union for instance).
+     * <p>
+     * Only the columns that both statistics have are kept. The order is lost.
+     */
+    public Statistics union(Statistics other) {
+        Long newRowCount = rowCount != null && other.rowCount != null ? rowCount + other.rowCount : null;
+        double weight = newRowCount == null || newRowCount == 0 ? 0.5 : (double) rowCount / newRowCount;
+        Builder builder = builder().rowCount(newRowCount);
+        for (Map.Entry<String, ColumnStatistics> entry : columns.entrySet()) {
+            ColumnStatistics otherColumn = other.columns.get(entry.getKey());
+            if (otherColumn != null)
+                builder.column(entry.getKey(), entry.getValue().merge(otherColumn, weight));
+        }
+        return builder.build().withRowCount(newRowCount);
+    }
+
+    /**
+     * Estimate the statistics of the data points that the filtering keeps.
+     */
+    public Statistics filter(Dataset.Filtering filtering) {
+        if (filtering == Dataset.Filtering.ALL)
+            return this;
+        double selectivity = selectivity(filtering);
+        Statistics filtered = withRowCount(rowCount == null ? null : Math.round(rowCount * selectivity));
+        if (!(filtering instanceof StructuredFiltering))
+            return filtered;
+
+        // Equalities fix the value of the column.
+        Builder builder = copyOf(filtered);
+        for (StructuredFiltering conjunct : ((StructuredFiltering) filtering).getConjuncts()) {
+            if (conjunct.getOperator() == StructuredFiltering.Operator.EQ) {
+                builder.column(conjunct.getColumn(), ColumnStatistics.builder()
+                        .distinctCount(1L).min(conjunct.getValue()).max(conjunct.getValue()).nullFraction(0.0)
+                        .build());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Estimate the fraction of the data points that the filtering keeps.
+     */
+    public double selectivity(Dataset.Filtering filtering) {
+        if (filtering == Dataset.Filtering.ALL)
+            return 1.0;
+        if (!(filtering instanceof StructuredFiltering))
+            return DEFAULT_SELECTIVITY;
+
+        StructuredFiltering structured = (StructuredFiltering) filtering;
+        switch (structured.getOperator()) {
+            case AND:
+                double and = 1.0;
+                for (StructuredFiltering operand : structured.getOperands())
+                    and *= selectivity(operand);
+                return and;
+            case OR:
+                double or = 0.0;
+                for (StructuredFiltering operand : structured.getOperands()) {
+                    double selectivity = selectivity(operand);
+                    or = or + selectivity - or * selectivity;
+                }
+                return or;
+            case NOT:
+                return 1.0 - selectivity(structured.getOperands().get(0));
+            case IS_NULL:
+                return getColumn(structured.getColumn()).getNullFraction().orElse(DEFAULT_EQUALITY_SELECTIVITY);
+            case IS_NOT_NULL:
+                return 1.0 - getColumn(structured.getColumn()).getNullFraction().orElse(DEFAULT_EQUALITY_SELECTIVITY);
+            case EQ:
+                return equalitySelectivity(structured.getColumn());
+            case NE:
+                return 1.0 - equalitySelectivity(structured.getColumn());
+            case IN:
+                return Math.min(1.0, structured.getValues().size() * equalitySelectivity(structured.getColumn()));
+            case BLOOM:
+                return Math.min(1.0, structured.getBloomFilter().getValueCount()
+                        * equalitySelectivity(structured.getColumn()));
+            default:
+                return rangeSelectivity(structured);
+        }
+    }
+
+    private double equalitySelectivity(String column) {
+        Optional<Long> distinctCount = getColumn(column).getDistinctCount();
+        if (!distinctCount.isPresent() || distinctCount.get() == 0)
+            return DEFAULT_EQUALITY_SELECTIVITY;
+        return 1.0 / distinctCount.get();
+    }
+
+    /**
+     * Interpolate the value between the min and max of the column.
+     */
+    private double rangeSelectivity(StructuredFiltering range) {
+        ColumnStatistics column = getColumn(range.getColumn());
+        if (!column.getMin().isPresent() || !column.getMax().isPresent())
+            return DEFAULT_RANGE_SELECTIVITY;
+
+        Double min = toDouble(column.getMin().get());
+        Double max = toDouble(column.getMax().get());
+        Double value = toDouble(range.getValue());
+        if (min == null || max == null || value == null)
+            return DEFAULT_RANGE_SELECTIVITY;
+        if (max <= min) {
+            // All the values are the same.
+            switch (range.getOperator()) {
+                case LT:
+                    return min < value ? 1.0 : 0.0;
+                case LE:
+                    return min <= value ? 1.0 : 0.0;
+                case GT:
+                    return min > value ? 1.0 : 0.0;
+                default:
+                    return min >= value ? 1.0 : 0.0;
+            }
+        }
+
+        double below = Math.max(0.0, Math.min(1.0, (value - min) / (max - min)));
+        switch (range.getOperator()) {
+            case LT:
+            case LE:
+                return below;
+            default:
+                return 1.0 - below;
+        }
+    }
+
+    private static Double toDouble(VTLObject object) {
+        Object value = object.get();
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        if (value instanceof Instant)
+            return (double) ((Instant) value).toEpochMilli();
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Statistics that = (Statistics) o;
+        return Objects.equals(rowCount, that.rowCount) &&
+                columns.equals(that.columns) &&
+                order.equals(that.order);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rowCount, columns, order);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("rowCount", rowCount)
+                .add("columns", columns)
+                .add("order", order)
+                .toString();
+    }
+
+    public static final class Builder {
+
+        private final Map<String, ColumnStatistics> columns = Maps.newLinkedHashMap();
+        private final Map<String, Order.Direction> order = Maps.newLinkedHashMap();
+        private Long rowCount;
+
+        private Builder() {
+        }
+
+        public Builder rowCount(Long rowCount) {
+            this.rowCount = rowCount;
+            return this;
+        }
+
+        public Builder column(String name, ColumnStatistics statistics) {
+            if (statistics == ColumnStatistics.UNKNOWN)
+                columns.remove(name);
+            else
+                columns.put(checkNotNull(name), statistics);
+            return this;
+        }
+
+        /**
+         * Add a column to the order of the data points.
+         */
+        public Builder order(String name, Order.Direction direction) {
+            order.put(checkNotNull(name), checkNotNull(direction));
+            return this;
+        }
+
+        /**
+         * Add the components of the order to the order of the data points.
+         */
+        public Builder order(Order order, DataStructure structure) {
+            for (Map.Entry<Component, Order.Direction> entry : order.entrySet()) {
+                order(structure.getName(entry.getKey()), entry.getValue());
+            }
+            return this;
+        }
+
+        public Builder clearOrder() {
+            order.clear();
+            return this;
+        }
+
+        public Statistics build() {
+            return new Statistics(rowCount, ImmutableMap.copyOf(columns), ImmutableMap.copyOf(order));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * An immutable dictionary that maps the values of a string {@link Component} to int codes.
+ * <p>
+ * Codes are assigned in the natural order of the strings so that comparing two codes gives the same result as
+ * comparing the strings. The {@link VTLString} instances returned by the dictionary are created once and carry
+ * their code; {@link Order}, joins and union compare them using only the codes.
+ * <p>
+ * Connectors that know the domain of a column (code lists for instance) can create a dictionary and emit the
+ * encoded values, either in {@link DataPoint}s or as {@link ColumnVector#encoded(StringDictionary, int[], int)}
+ * columns.
+ */
+public final class StringDictionary {
+
+    private final VTLString[] values;
+    private final ImmutableMap<String, Integer> codes;
+
+    private StringDictionary(ImmutableSortedSet<String> strings) {
+        this.values = new VTLString[strings.size()];
+        ImmutableMap.Builder<String, Integer> codes = ImmutableMap.builder();
+        int code = 0;
+        for (String string : strings) {
+            values[code] = new VTLString(string, this, code);
+            codes.put(string, code);
+            code++;
+        }
+        this.codes = codes.build();
+    }
+
+    /**
+     * Create a dictionary containing the given strings. Null and empty values are ignored.
+     */
+    public static StringDictionary of(Iterable<String> strings) {
+        ImmutableSortedSet.Builder<String> sorted = ImmutableSortedSet.naturalOrder();
+        for (String string : strings) {
+            if (string != null && !string.isEmpty())
+                sorted.add(string);
+        }
+        return new StringDictionary(sorted.build());
+    }
+
+    public static StringDictionary of(String... strings) {
+        return of(Arrays.asList(strings));
+    }
+
+    /**
+     * Returns the number of values in the dictionary.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns the code of a string, or -1 if the string is not in the dictionary.
+     */
+    public int getCode(String string) {
+        Integer code = string == null ? null : codes.get(string);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Returns the encoded value for a code.
+     */
+    public VTLString get(int code) {
+        checkElementIndex(code, values.length);
+        return values[code];
+    }
+
+    /**
+     * Returns the encoded value of a string.
+     * <p>
+     * Strings that are not in the dictionary are returned as non encoded {@link VTLString}s.
+     */
+    public VTLString encode(String string) {
+        int code = getCode(string);
+        return code < 0 ? VTLString.of(string) : values[code];
+    }
+
+    /**
+     * Returns the encoded value of a {@link VTLObject}, or the object itself if it is not in the dictionary.
+     */
+    public VTLObject encode(VTLObject object) {
+        if (object instanceof VTLString && ((VTLString) object).getDictionary() == this)
+            return object;
+        Object value = object.get();
+        if (value instanceof String) {
+            int code = getCode((String) value);
+            if (code >= 0)
+                return values[code];
+        }
+        return object;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", values.length)
+                .toString();
+    }
+}
@@ -0,0 +1,58 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * A pool of {@link VTLString} instances.
+ * <p>
+ * Equal strings obtained from the same pool are the same instance, so comparing them for equality is a
+ * reference check. The pool only keeps weak references to its values and can be shared between threads.
+ * <p>
+ * Unlike a {@link StringDictionary}, the pool does not need to know the values in advance but it does not speed
+ * up ordering.
+ */
+public final class StringPool {
+
+    private final Interner<VTLString> interner = Interners.newWeakInterner();
+
+    /**
+     * Returns the pooled instance for the given string.
+     */
+    public VTLString of(String string) {
+        VTLString value = VTLString.of(string);
+        return value == VTLString.NULL ? value : interner.intern(value);
+    }
+
+    /**
+     * Returns the pooled instance if the object is a non encoded string, the object itself otherwise.
+     */
+    public VTLObject intern(VTLObject object) {
+        if (object instanceof VTLString) {
+            VTLString value = (VTLString) object;
+            if (value != VTLString.NULL && !value.isEncoded())
+                return interner.intern(value);
+        }
+        return object;
+    }
+}
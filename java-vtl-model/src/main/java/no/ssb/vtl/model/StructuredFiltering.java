@@ -0,0 +1,411 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link Dataset.Filtering} that can be inspected.
+ * <p>
+ * The filtering is a tree of comparisons between a column and constant values, combined with {@code and},
+ * {@code or} and {@code not}. Datasets that can evaluate some of the conditions at the source (an index lookup
+ * for instance) can use {@link #supported(Dataset.Filtering, Predicate)} and
+ * {@link #unsupported(Dataset.Filtering, Predicate)} to split the filtering they receive.
+ * <p>
+ * The evaluation follows the VTL three valued logic: comparisons with null are null, and only the data points
+ * for which the filtering is true are kept.
+ */
+public final class StructuredFiltering implements Dataset.Filtering {
+
+    private final Operator operator;
+    private final DataStructure structure;
+    private final String column;
+    private final int index;
+    private final ImmutableList<VTLObject> values;
+    private final ValueBloomFilter bloomFilter;
+    private final ImmutableList<StructuredFiltering> operands;
+
+    private StructuredFiltering(DataStructure structure, Operator operator, String column, List<VTLObject> values) {
+        this(structure, operator, column, values, null);
+    }
+
+    private StructuredFiltering(DataStructure structure, Operator operator, String column, List<VTLObject> values,
+                                ValueBloomFilter bloomFilter) {
+        this.structure = checkNotNull(structure);
+        this.operator = checkNotNull(operator);
+        this.column = checkNotNull(column);
+        checkArgument(structure.containsKey(column), "unknown column %s", column);
+        this.index = structure.indexOf(structure.get(column));
+        this.values = ImmutableList.copyOf(values);
+        this.bloomFilter = bloomFilter;
+        this.operands = ImmutableList.of();
+    }
+
+    private StructuredFiltering(Operator operator, List<StructuredFiltering> operands) {
+        checkArgument(!operands.isEmpty(), "no operand");
+        this.operator = checkNotNull(operator);
+        this.operands = ImmutableList.copyOf(operands);
+        this.structure = this.operands.get(0).getDataStructure();
+        for (StructuredFiltering operand : this.operands) {
+            checkArgument(operand.getDataStructure() == structure, "operands were using different structures");
+        }
+        this.column = null;
+        this.index = -1;
+        this.values = ImmutableList.of();
+        this.bloomFilter = null;
+    }
+
+    public static StructuredFiltering equal(DataStructure structure, String column, VTLObject value) {
+        return new StructuredFiltering(structure, Operator.EQ, column, ImmutableList.of(value));
+    }
+
+    public static StructuredFiltering notEqual(DataStructure structure, String column, VTLObject value) {
+        return new StructuredFiltering(structure, Operator.NE, column, ImmutableList.of(value));
+    }
+
+    public static StructuredFiltering lessThan(DataStructure structure, String column, VTLObject value) {
+        return new StructuredFiltering(structure, Operator.LT, column, ImmutableList.of(value));
+    }
+
+    public static StructuredFiltering lessOrEqual(DataStructure structure, String column, VTLObject value) {
+        return new StructuredFiltering(structure, Operator.LE, column, ImmutableList.of(value));
+    }
+
+    public static StructuredFiltering greaterThan(DataStructure structure, String column, VTLObject value) {
+        return new StructuredFiltering(structure, Operator.GT, column, ImmutableList.of(value));
+    }
+
+    public static StructuredFiltering greaterOrEqual(DataStructure structure, String column, VTLObject value) {
+        return new StructuredFiltering(structure, Operator.GE, column, ImmutableList.of(value));
+    }
+
+    public static StructuredFiltering in(DataStructure structure, String column, Collection<? extends VTLObject> values) {
+        checkArgument(!values.isEmpty(), "empty list of values");
+        return new StructuredFiltering(structure, Operator.IN, column, ImmutableList.copyOf(values));
+    }
+
+    /**
+     * Keep the data points whose value might be in the filter. Unlike {@code in}, some values that are not in the
+     * set can be kept.
+     * <p>
+     * The condition is only evaluated in memory: it is never given to the datasets of connectors.
+     */
+    public static StructuredFiltering bloom(DataStructure structure, String column, ValueBloomFilter filter) {
+        return new StructuredFiltering(structure, Operator.BLOOM, column, ImmutableList.of(), checkNotNull(filter));
+    }
+
+    public static StructuredFiltering isNull(DataStructure structure, String column) {
+        return new StructuredFiltering(structure, Operator.IS_NULL, column, ImmutableList.of());
+    }
+
+    public static StructuredFiltering isNotNull(DataStructure structure, String column) {
+        return new StructuredFiltering(structure, Operator.IS_NOT_NULL, column, ImmutableList.of());
+    }
+
+    /**
+     * Combine the operands with and. Nested and are flattened.
+     */
+    public static StructuredFiltering and(List<StructuredFiltering> operands) {
+        if (operands.size() == 1)
+            return operands.get(0);
+        List<StructuredFiltering> flattened = Lists.newArrayList();
+        for (StructuredFiltering operand : operands) {
+            flattened.addAll(operand.getConjuncts());
+        }
+        return new StructuredFiltering(Operator.AND, flattened);
+    }
+
+    public static StructuredFiltering and(StructuredFiltering... operands) {
+        return and(ImmutableList.copyOf(operands));
+    }
+
+    public static StructuredFiltering or(List<StructuredFiltering> operands) {
+        if (operands.size() == 1)
+            return operands.get(0);
+        return new StructuredFiltering(Operator.OR, operands);
+    }
+
+    public static StructuredFiltering or(StructuredFiltering... operands) {
+        return or(ImmutableList.copyOf(operands));
+    }
+
+    public static StructuredFiltering not(StructuredFiltering operand) {
+        return new StructuredFiltering(Operator.NOT, ImmutableList.of(operand));
+    }
+
+    /**
+     * Combine two filtering with and.
+     * <p>
+     * The result is a {@link StructuredFiltering} when both are structured (or {@link Dataset.Filtering#ALL}).
+     */
+    public static Dataset.Filtering combine(Dataset.Filtering left, Dataset.Filtering right) {
+        if (left == Dataset.Filtering.ALL)
+            return right;
+        if (right == Dataset.Filtering.ALL)
+            return left;
+        if (left instanceof StructuredFiltering && right instanceof StructuredFiltering)
+            return and(ImmutableList.of((StructuredFiltering) left, (StructuredFiltering) right));
+        return dataPoint -> left.apply(dataPoint) && right.apply(dataPoint);
+    }
+
+    /**
+     * Returns the conditions of the filtering that the given predicate accepts, or {@link Dataset.Filtering#ALL}.
+     * <p>
+     * The filtering is split on its top level {@code and}. Filtering that are not structured are never supported.
+     */
+    public static Dataset.Filtering supported(Dataset.Filtering filtering, Predicate<? super StructuredFiltering> predicate) {
+        if (!(filtering instanceof StructuredFiltering))
+            return Dataset.Filtering.ALL;
+        List<StructuredFiltering> supported = Lists.newArrayList();
+        for (StructuredFiltering conjunct : ((StructuredFiltering) filtering).getConjuncts()) {
+            if (predicate.test(conjunct))
+                supported.add(conjunct);
+        }
+        return supported.isEmpty() ? Dataset.Filtering.ALL : and(supported);
+    }
+
+    /**
+     * Returns the conditions of the filtering that the given predicate does not accept, or
+     * {@link Dataset.Filtering#ALL}.
+     *
+     * @see #supported(Dataset.Filtering, Predicate)
+     */
+    public static Dataset.Filtering unsupported(Dataset.Filtering filtering, Predicate<? super StructuredFiltering> predicate) {
+        if (!(filtering instanceof StructuredFiltering))
+            return filtering;
+        return supported(filtering, predicate.negate());
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public DataStructure getDataStructure() {
+        return structure;
+    }
+
+    /**
+     * Returns the name of the column of a comparison, null for {@code and}, {@code or} and {@code not}.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the value a column is compared to.
+     */
+    public VTLObject getValue() {
+        checkArgument(values.size() == 1, "%s does not have a single value", operator);
+        return values.get(0);
+    }
+
+    public List<VTLObject> getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the filter of a {@code bloom} condition, null otherwise.
+     */
+    public ValueBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    public List<StructuredFiltering> getOperands() {
+        return operands;
+    }
+
+    /**
+     * Returns the operands of an {@code and}, or a list that contains this filtering.
+     */
+    public List<StructuredFiltering> getConjuncts() {
+        return operator == Operator.AND ? operands : ImmutableList.of(this);
+    }
+
+    /**
+     * Returns the names of the columns this filtering uses.
+     */
+    public Set<String> getColumns() {
+        ImmutableSet.Builder<String> columns = ImmutableSet.builder();
+        collectColumns(columns);
+        return columns.build();
+    }
+
+    private void collectColumns(ImmutableSet.Builder<String> columns) {
+        if (column != null)
+            columns.add(column);
+        for (StructuredFiltering operand : operands) {
+            operand.collectColumns(columns);
+        }
+    }
+
+    /**
+     * Create a copy of this filtering that applies to another structure.
+     *
+     * @param newStructure the structure the copy applies to.
+     * @param names        the new name of each column.
+     */
+    public StructuredFiltering withDataStructure(DataStructure newStructure, Function<String, String> names) {
+        if (column != null) {
+            String newName = names.apply(column);
+            checkArgument(newName != null, "no column for %s", column);
+            return new StructuredFiltering(newStructure, operator, newName, values, bloomFilter);
+        }
+        List<StructuredFiltering> newOperands = Lists.newArrayListWithCapacity(operands.size());
+        for (StructuredFiltering operand : operands) {
+            newOperands.add(operand.withDataStructure(newStructure, names));
+        }
+        return new StructuredFiltering(operator, newOperands);
+    }
+
+    /**
+     * Create a copy of this filtering that applies to another structure with the same column names.
+     */
+    public StructuredFiltering withDataStructure(DataStructure newStructure) {
+        return withDataStructure(newStructure, Function.identity());
+    }
+
+    /**
+     * Evaluate the filtering.
+     *
+     * @return true, false or null if the result is unknown.
+     */
+    public Boolean evaluate(DataPoint dataPoint) {
+        switch (operator) {
+            case IS_NULL:
+                return dataPoint.get(index).get() == null;
+            case IS_NOT_NULL:
+                return dataPoint.get(index).get() != null;
+            case AND:
+                Boolean and = Boolean.TRUE;
+                for (StructuredFiltering operand : operands) {
+                    Boolean result = operand.evaluate(dataPoint);
+                    if (result == null)
+                        and = null;
+                    else if (!result)
+                        return false;
+                }
+                return and;
+            case OR:
+                Boolean or = Boolean.FALSE;
+                for (StructuredFiltering operand : operands) {
+                    Boolean result = operand.evaluate(dataPoint);
+                    if (result == null)
+                        or = null;
+                    else if (result)
+                        return true;
+                }
+                return or;
+            case NOT:
+                Boolean result = operands.get(0).evaluate(dataPoint);
+                return result == null ? null : !result;
+            case BLOOM:
+                VTLObject value = dataPoint.get(index);
+                return value.get() == null ? null : bloomFilter.mightContain(value);
+            default:
+                return compare(dataPoint.get(index));
+        }
+    }
+
+    private Boolean compare(VTLObject value) {
+        if (value.get() == null)
+            return null;
+        if (operator == Operator.IN) {
+            for (VTLObject candidate : values) {
+                if (candidate.get() != null && value.compareTo(candidate) == 0)
+                    return true;
+            }
+            return false;
+        }
+        VTLObject other = values.get(0);
+        if (other.get() == null)
+            return null;
+        int result = value.compareTo(other);
+        switch (operator) {
+            case EQ:
+                return result == 0;
+            case NE:
+                return result != 0;
+            case LT:
+                return result < 0;
+            case LE:
+                return result <= 0;
+            case GT:
+                return result > 0;
+            case GE:
+                return result >= 0;
+            default:
+                throw new IllegalStateException("unknown operator " + operator);
+        }
+    }
+
+    @Override
+    public boolean apply(DataPoint dataPoint) {
+        return Boolean.TRUE.equals(evaluate(dataPoint));
+    }
+
+    @Override
+    public String toString() {
+        switch (operator) {
+            case IS_NULL:
+            case IS_NOT_NULL:
+                return column + " " + operator.getSymbol();
+            case IN:
+                return column + " in (" + Joiner.on(", ").join(values) + ")";
+            case BLOOM:
+                return column + " in " + bloomFilter;
+            case AND:
+            case OR:
+                return "(" + Joiner.on(" " + operator.getSymbol() + " ").join(operands) + ")";
+            case NOT:
+                return "not " + operands.get(0);
+            default:
+                return column + " " + operator.getSymbol() + " " + values.get(0);
+        }
+    }
+
+    public enum Operator {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="),
+        IN("in"), BLOOM("in bloom"), IS_NULL("is null"), IS_NOT_NULL("is not null"),
+        AND("and"), OR("or"), NOT("not");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+}
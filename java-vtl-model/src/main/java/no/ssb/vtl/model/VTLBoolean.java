@@ -20,10 +20,19 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
-public abstract class VTLBoolean extends VTLObject<Boolean> implements VTLTyped<VTLBoolean> {
+/**
+ * Boolean value. Only three instances exist: {@link #TRUE}, {@link #FALSE} and {@link #NULL}.
+ */
+public final class VTLBoolean extends VTLObject<Boolean> implements VTLTyped<VTLBoolean> {
+
+    public static final VTLBoolean TRUE = new VTLBoolean(Boolean.TRUE);
+    public static final VTLBoolean FALSE = new VTLBoolean(Boolean.FALSE);
+    public static final VTLBoolean NULL = new VTLBoolean(null);
 
-    private VTLBoolean() {
-        // private.
+    private final Boolean value;
+
+    private VTLBoolean(Boolean value) {
+        this.value = value;
     }
 
     @Override
@@ -32,12 +41,28 @@ public abstract class VTLBoolean extends VTLObject<Boolean> implements VTLTyped<
     }
 
     public static VTLBoolean of(Boolean value) {
-        return new VTLBoolean() {
-            @Override
-            public Boolean get() {
-                return value;
-            }
-        };
+        return value != null ? VTLBoolean.of(value.booleanValue()) : NULL;
     }
 
+    public static VTLBoolean of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    @Override
+    public Boolean get() {
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof VTLBoolean) {
+            return this == o;
+        }
+        return super.equals(o);
+    }
 }
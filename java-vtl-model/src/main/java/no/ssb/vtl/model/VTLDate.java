@@ -27,11 +27,22 @@ import java.util.TimeZone;
 
 import static java.lang.String.*;
 
+/**
+ * Date value backed by the epoch second and nanosecond adjustment of an {@link Instant}.
+ */
 // TODO: The spec specifies that date format should be configurable.
-public abstract class VTLDate extends VTLObject<Instant> implements VTLTyped<VTLDate> {
+public final class VTLDate extends VTLObject<Instant> implements VTLTyped<VTLDate> {
+
+    public static final VTLDate NULL = new VTLDate(0L, 0, true);
+
+    private final long seconds;
+    private final int nanos;
+    private final boolean isNull;
 
-    private VTLDate() {
-        // private
+    private VTLDate(long seconds, int nanos, boolean isNull) {
+        this.seconds = seconds;
+        this.nanos = nanos;
+        this.isNull = isNull;
     }
 
     @Override
@@ -46,29 +57,49 @@ public abstract class VTLDate extends VTLObject<Instant> implements VTLTyped<VTL
                     format("Date format %s unsupported", dateFormat));
         }
 
-        return new VTLDate() {
-
-            @Override
-            public Instant get() {
-                DateTimeFormatter formatter =
-                        DateTimeFormatter.ofPattern("yyyy");
-                Year year = Year.parse(input, formatter);
-                return year.atDay(1).atStartOfDay(timeZone.toZoneId()).toInstant();
-            }
-        };
+        DateTimeFormatter formatter =
+                DateTimeFormatter.ofPattern("yyyy");
+        Year year = Year.parse(input, formatter);
+        return VTLDate.of(year.atDay(1).atStartOfDay(timeZone.toZoneId()).toInstant());
 
     }
 
     public static VTLDate of(Instant instant) {
+        return instant != null ? new VTLDate(instant.getEpochSecond(), instant.getNano(), false) : NULL;
+    }
 
-        return new VTLDate() {
+    @Override
+    public Instant get() {
+        return isNull ? null : Instant.ofEpochSecond(seconds, nanos);
+    }
 
-            @Override
-            public Instant get() {
-                return instant;
-            }
-        };
+    public boolean isNull() {
+        return isNull;
+    }
 
+    @Override
+    public int compareTo(Object o) {
+        if (o instanceof VTLDate && !isNull && !((VTLDate) o).isNull) {
+            VTLDate other = (VTLDate) o;
+            int result = Long.compare(seconds, other.seconds);
+            return result != 0 ? result : Integer.compare(nanos, other.nanos);
+        }
+        return super.compareTo(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // Same as Instant.hashCode().
+        return isNull ? 0 : ((int) (seconds ^ (seconds >>> 32))) + 51 * nanos;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof VTLDate) {
+            VTLDate other = (VTLDate) o;
+            return isNull ? other.isNull : !other.isNull && seconds == other.seconds && nanos == other.nanos;
+        }
+        return super.equals(o);
     }
 
     public static boolean canParse(String dateFormat) {
@@ -18,11 +18,19 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
-public abstract class VTLFloat extends VTLNumber<Double>  implements VTLTyped<VTLFloat> {
+/**
+ * Float value backed by a primitive double.
+ */
+public final class VTLFloat extends VTLNumber<Double> implements VTLTyped<VTLFloat> {
+
+    public static final VTLFloat NULL = new VTLFloat(0D, true);
 
-    public static final VTLFloat NULL = VTLFloat.of((Float) null);
+    private final double value;
+    private final boolean isNull;
 
-    private VTLFloat() {
+    private VTLFloat(double value, boolean isNull) {
+        this.value = value;
+        this.isNull = isNull;
     }
 
     @Override
@@ -31,16 +39,60 @@ public abstract class VTLFloat extends VTLNumber<Double>  implements VTLTyped<VT
     }
 
     public static VTLFloat of(Float value) {
-        return VTLFloat.of(value != null ? value.doubleValue() : null);
+        return value != null ? VTLFloat.of(value.doubleValue()) : NULL;
     }
 
     public static VTLFloat of(Double value) {
-        return new VTLFloat() {
-            @Override
-            public Double get() {
-                return value;
-            }
-        };
+        return value != null ? VTLFloat.of(value.doubleValue()) : NULL;
+    }
+
+    public static VTLFloat of(double value) {
+        return new VTLFloat(value, false);
+    }
+
+    @Override
+    public Double get() {
+        return isNull ? null : value;
+    }
+
+    @Override
+    public boolean isNull() {
+        return isNull;
+    }
+
+    @Override
+    public long longValue() {
+        checkNotNullValue();
+        return (long) value;
+    }
+
+    @Override
+    public double doubleValue() {
+        checkNotNullValue();
+        return value;
+    }
+
+    @Override
+    public int compareTo(Object o) {
+        if (o instanceof VTLFloat && !isNull && !((VTLFloat) o).isNull) {
+            return Double.compare(value, ((VTLFloat) o).value);
+        }
+        return super.compareTo(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return isNull ? 0 : Double.hashCode(value);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof VTLFloat) {
+            VTLFloat other = (VTLFloat) o;
+            // Same semantic as Double.equals().
+            return isNull ? other.isNull
+                    : !other.isNull && Double.doubleToLongBits(value) == Double.doubleToLongBits(other.value);
+        }
+        return super.equals(o);
+    }
 }
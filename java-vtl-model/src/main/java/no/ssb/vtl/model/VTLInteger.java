@@ -18,11 +18,31 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
-public abstract class VTLInteger extends VTLNumber<Long>  implements VTLTyped<VTLInteger> {
+/**
+ * Integer value backed by a primitive long.
+ * <p>
+ * Values between {@value #CACHE_LOW} and {@value #CACHE_HIGH} are cached.
+ */
+public final class VTLInteger extends VTLNumber<Long> implements VTLTyped<VTLInteger> {
+
+    public static final VTLInteger NULL = new VTLInteger(0L, true);
 
-    public static final VTLInteger NULL = VTLInteger.of((Integer) null);
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final VTLInteger[] CACHE = new VTLInteger[CACHE_HIGH - CACHE_LOW + 1];
 
-    private VTLInteger() {
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new VTLInteger(i + CACHE_LOW, false);
+        }
+    }
+
+    private final long value;
+    private final boolean isNull;
+
+    private VTLInteger(long value, boolean isNull) {
+        this.value = value;
+        this.isNull = isNull;
     }
 
     @Override
@@ -31,15 +51,61 @@ public abstract class VTLInteger extends VTLNumber<Long>  implements VTLTyped<VT
     }
 
     public static VTLInteger of(Integer value) {
-        return VTLInteger.of(value != null ? value.longValue() : null);
+        return value != null ? VTLInteger.of(value.longValue()) : NULL;
     }
 
     public static VTLInteger of(Long value) {
-        return new VTLInteger() {
-            @Override
-            public Long get() {
-                return value;
-            }
-        };
+        return value != null ? VTLInteger.of(value.longValue()) : NULL;
+    }
+
+    public static VTLInteger of(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[(int) value - CACHE_LOW];
+        }
+        return new VTLInteger(value, false);
+    }
+
+    @Override
+    public Long get() {
+        return isNull ? null : value;
+    }
+
+    @Override
+    public boolean isNull() {
+        return isNull;
+    }
+
+    @Override
+    public long longValue() {
+        checkNotNullValue();
+        return value;
+    }
+
+    @Override
+    public double doubleValue() {
+        checkNotNullValue();
+        return value;
+    }
+
+    @Override
+    public int compareTo(Object o) {
+        if (o instanceof VTLInteger && !isNull && !((VTLInteger) o).isNull) {
+            return Long.compare(value, ((VTLInteger) o).value);
+        }
+        return super.compareTo(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return isNull ? 0 : Long.hashCode(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof VTLInteger) {
+            VTLInteger other = (VTLInteger) o;
+            return isNull ? other.isNull : !other.isNull && value == other.value;
+        }
+        return super.equals(o);
     }
 }
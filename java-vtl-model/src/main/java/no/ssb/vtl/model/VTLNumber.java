@@ -30,8 +30,48 @@ public abstract class VTLNumber<T extends Number> extends VTLObject<T> {
 
     @Override
     public abstract T get();
-    
+
+    /**
+     * Returns true if this number is null.
+     */
+    public abstract boolean isNull();
+
+    /**
+     * Returns the value as a primitive long.
+     *
+     * @throws NullPointerException if the number is null.
+     */
+    public abstract long longValue();
+
+    /**
+     * Returns the value as a primitive double.
+     *
+     * @throws NullPointerException if the number is null.
+     */
+    public abstract double doubleValue();
+
+    void checkNotNullValue() {
+        if (isNull())
+            throw new NullPointerException("the number was null");
+    }
+
+    /**
+     * Returns true if the operation can be computed on primitive values.
+     */
+    private boolean isPrimitive(VTLNumber other) {
+        return !isNull() && !other.isNull();
+    }
+
+    private boolean isFloat(VTLNumber other) {
+        return this instanceof VTLFloat || other instanceof VTLFloat;
+    }
+
     public VTLNumber add(VTLNumber addend) {
+        if (isPrimitive(addend)) {
+            return isFloat(addend)
+                    ? VTLFloat.of(doubleValue() + addend.doubleValue())
+                    : VTLInteger.of(longValue() + addend.longValue());
+        }
         return add(addend.get());
     }
     
@@ -50,6 +90,11 @@ public abstract class VTLNumber<T extends Number> extends VTLObject<T> {
     }
     
     public VTLNumber subtract(VTLNumber subtrahend) {
+        if (isPrimitive(subtrahend)) {
+            return isFloat(subtrahend)
+                    ? VTLFloat.of(doubleValue() - subtrahend.doubleValue())
+                    : VTLInteger.of(longValue() - subtrahend.longValue());
+        }
         return subtract((Number) subtrahend.get());
     }
     
@@ -67,6 +112,11 @@ public abstract class VTLNumber<T extends Number> extends VTLObject<T> {
     }
     
     public VTLNumber multiply(VTLNumber multiplicand) {
+        if (isPrimitive(multiplicand)) {
+            return isFloat(multiplicand)
+                    ? VTLFloat.of(doubleValue() * multiplicand.doubleValue())
+                    : VTLInteger.of(longValue() * multiplicand.longValue());
+        }
         return multiply((Number) multiplicand.get());
     }
     
@@ -81,6 +131,9 @@ public abstract class VTLNumber<T extends Number> extends VTLObject<T> {
     }
     
     public VTLNumber divide(VTLNumber divisor) {
+        if (isPrimitive(divisor)) {
+            return VTLFloat.of(doubleValue() / divisor.doubleValue());
+        }
         return divide((Number) divisor.get());
     }
     
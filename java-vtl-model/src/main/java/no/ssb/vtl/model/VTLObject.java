@@ -179,7 +179,7 @@ public abstract class VTLObject<V> implements Supplier<V>, Comparable<Object> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(get());
+        return Objects.hashCode(get());
     }
 
     @Override
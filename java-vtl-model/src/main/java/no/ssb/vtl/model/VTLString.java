@@ -20,27 +20,99 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
-public abstract class VTLString extends VTLObject<String> implements VTLTyped<VTLString> {
+import java.util.Objects;
+
+/**
+ * String value.
+ * <p>
+ * Values created by a {@link StringDictionary} are encoded: they carry the code of the string in the dictionary.
+ * Encoded values of the same dictionary are compared using their codes.
+ */
+public final class VTLString extends VTLObject<String> implements VTLTyped<VTLString> {
+
+    public static final VTLString NULL = new VTLString(null, null, -1);
+
+    private final String value;
+    private final StringDictionary dictionary;
+    private final int code;
+
+    VTLString(String value, StringDictionary dictionary, int code) {
+        this.value = value;
+        this.dictionary = dictionary;
+        this.code = code;
+    }
 
     @Override
     public Class<VTLString> getVTLType() {
         return VTLString.class;
     }
 
-    private VTLString() {
-        // private.
+    public static VTLString of(String string) {
+        return string == null || string.isEmpty() ? NULL : new VTLString(string, null, -1);
     }
 
-    public static VTLString of(String string) {
-        return new VTLString() {
-            /**
-             * Returns the value of the data point.
-             */
-            @Override
-            public String get() {
-                return "".equals(string) ? null : string;
-            }
-        };
+    /**
+     * Returns the value of the data point.
+     */
+    @Override
+    public String get() {
+        return value;
+    }
+
+    /**
+     * Returns true if this value was created by a {@link StringDictionary}.
+     */
+    public boolean isEncoded() {
+        return dictionary != null;
+    }
+
+    /**
+     * Returns the dictionary that encoded this value, or null.
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
     }
 
+    /**
+     * Returns the code of this value in its dictionary, or -1 if the value is not encoded.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns true if both objects are strings encoded with the same dictionary.
+     */
+    static boolean isSameDictionary(Object left, Object right) {
+        return left instanceof VTLString && right instanceof VTLString
+                && ((VTLString) left).dictionary != null
+                && ((VTLString) left).dictionary == ((VTLString) right).dictionary;
+    }
+
+    @Override
+    public int compareTo(Object o) {
+        if (isSameDictionary(this, o)) {
+            return Integer.compare(code, ((VTLString) o).code);
+        }
+        return super.compareTo(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (isSameDictionary(this, o)) {
+            return code == ((VTLString) o).code;
+        }
+        if (o instanceof VTLString) {
+            return Objects.equals(value, ((VTLString) o).value);
+        }
+        return super.equals(o);
+    }
 }
@@ -0,0 +1,110 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+import java.time.Instant;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A set of values that can return false positives.
+ * <p>
+ * Used with {@link StructuredFiltering#bloom(DataStructure, String, ValueBloomFilter)} to keep the data points whose
+ * value might be in a set too large to be compared with {@code in}. Values are hashed by their type and content so
+ * only values of the same type match.
+ */
+public final class ValueBloomFilter {
+
+    private final BloomFilter<Object> filter;
+    private long valueCount;
+
+    private ValueBloomFilter(BloomFilter<Object> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Create an empty filter.
+     *
+     * @param expectedValues          the number of distinct values that will be added.
+     * @param falsePositiveProbability the probability that a value that was not added is contained.
+     */
+    public static ValueBloomFilter create(long expectedValues, double falsePositiveProbability) {
+        checkArgument(expectedValues >= 0, "invalid number of values %s", expectedValues);
+        return new ValueBloomFilter(BloomFilter.create(
+                ValueFunnel.INSTANCE, Math.max(1, expectedValues), falsePositiveProbability
+        ));
+    }
+
+    /**
+     * Add a value. Null values cannot be added.
+     */
+    public void put(VTLObject value) {
+        checkArgument(checkNotNull(value).get() != null, "null value");
+        if (filter.put(value.get()))
+            valueCount++;
+    }
+
+    /**
+     * Returns true if the value might have been added, false if it was not.
+     */
+    public boolean mightContain(VTLObject value) {
+        return value.get() != null && filter.mightContain(value.get());
+    }
+
+    /**
+     * Returns an estimate of the number of distinct values that were added.
+     */
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    @Override
+    public String toString() {
+        return "bloom(" + valueCount + " values)";
+    }
+
+    private enum ValueFunnel implements Funnel<Object> {
+        INSTANCE;
+
+        @Override
+        public void funnel(Object value, PrimitiveSink into) {
+            if (value instanceof String) {
+                into.putByte((byte) 0).putUnencodedChars((String) value);
+            } else if (value instanceof Long) {
+                into.putByte((byte) 1).putLong((Long) value);
+            } else if (value instanceof Double) {
+                into.putByte((byte) 2).putDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                into.putByte((byte) 3).putBoolean((Boolean) value);
+            } else if (value instanceof Instant) {
+                Instant instant = (Instant) value;
+                into.putByte((byte) 4).putLong(instant.getEpochSecond()).putInt(instant.getNano());
+            } else {
+                into.putByte((byte) 5).putInt(value.hashCode());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import java.time.Instant;
+import java.util.Comparator;
+
+/**
+ * {@link VTLObject} comparators specialized by component type.
+ * <p>
+ * Nulls are handled first, using the primitive value classes when possible. Values that are not of the expected
+ * class fall back to {@link Order#VTL_OBJECT_COMPARATOR}.
+ */
+final class ValueComparators {
+
+    static final Comparator<VTLObject> LONG = (left, right) -> {
+        if (left instanceof VTLInteger && right instanceof VTLInteger) {
+            VTLInteger l = (VTLInteger) left, r = (VTLInteger) right;
+            if (l.isNull() || r.isNull())
+                return Boolean.compare(!l.isNull(), !r.isNull());
+            return Long.compare(l.longValue(), r.longValue());
+        }
+        return Order.VTL_OBJECT_COMPARATOR.compare(left, right);
+    };
+
+    static final Comparator<VTLObject> DOUBLE = (left, right) -> {
+        if (left instanceof VTLFloat && right instanceof VTLFloat) {
+            VTLFloat l = (VTLFloat) left, r = (VTLFloat) right;
+            if (l.isNull() || r.isNull())
+                return Boolean.compare(!l.isNull(), !r.isNull());
+            return Double.compare(l.doubleValue(), r.doubleValue());
+        }
+        return Order.VTL_OBJECT_COMPARATOR.compare(left, right);
+    };
+
+    static final Comparator<VTLObject> STRING = (left, right) -> {
+        if (left instanceof VTLString && right instanceof VTLString) {
+            VTLString l = (VTLString) left, r = (VTLString) right;
+            if (VTLString.isSameDictionary(l, r))
+                return Integer.compare(l.getCode(), r.getCode());
+            String ls = l.get(), rs = r.get();
+            if (ls == null || rs == null)
+                return Boolean.compare(ls != null, rs != null);
+            return ls.compareTo(rs);
+        }
+        return Order.VTL_OBJECT_COMPARATOR.compare(left, right);
+    };
+
+    static final Comparator<VTLObject> INSTANT = (left, right) -> {
+        if (left instanceof VTLDate && right instanceof VTLDate) {
+            VTLDate l = (VTLDate) left, r = (VTLDate) right;
+            if (l.isNull() || r.isNull())
+                return Boolean.compare(!l.isNull(), !r.isNull());
+            return l.compareTo(r);
+        }
+        return Order.VTL_OBJECT_COMPARATOR.compare(left, right);
+    };
+
+    static final Comparator<VTLObject> BOOLEAN = (left, right) -> {
+        if (left instanceof VTLBoolean && right instanceof VTLBoolean) {
+            Boolean l = ((VTLBoolean) left).get(), r = ((VTLBoolean) right).get();
+            if (l == null || r == null)
+                return Boolean.compare(l != null, r != null);
+            return Boolean.compare(l, r);
+        }
+        return Order.VTL_OBJECT_COMPARATOR.compare(left, right);
+    };
+
+    private ValueComparators() {
+        // static.
+    }
+
+    /**
+     * Returns the comparator to use for the values of the given type.
+     */
+    static Comparator<VTLObject> forType(Class<?> type) {
+        if (type == Long.class)
+            return LONG;
+        if (type == Double.class)
+            return DOUBLE;
+        if (type == String.class)
+            return STRING;
+        if (type == Instant.class)
+            return INSTANT;
+        if (type == Boolean.class)
+            return BOOLEAN;
+        return Order.VTL_OBJECT_COMPARATOR;
+    }
+}
@@ -0,0 +1,100 @@
+package no.ssb.vtl.connectors;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ColumnarFileConnectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCanHandle() throws Exception {
+        ColumnarFileConnector connector = new ColumnarFileConnector(folder.getRoot().toPath());
+        assertThat(connector.canHandle("population.vtlc")).isTrue();
+        assertThat(connector.canHandle("registers/population.vtlc")).isTrue();
+        assertThat(connector.canHandle("population.csv")).isFalse();
+        assertThat(connector.canHandle("../population.vtlc")).isFalse();
+        assertThat(connector.canHandle("/tmp/population.vtlc")).isFalse();
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        ColumnarFileConnector connector = new ColumnarFileConnector(folder.getRoot().toPath());
+        assertThatThrownBy(() -> connector.getDataset("registers/population.vtlc"))
+                .isInstanceOf(NotFoundException.class);
+
+        StaticDataset dataset = StaticDataset.create()
+                .addComponent("id", IDENTIFIER, String.class)
+                .addComponent("value", MEASURE, Long.class)
+                .addPoints("b", 2L)
+                .addPoints("a", 1L)
+                .build();
+
+        Dataset written = connector.putDataset("registers/population.vtlc", dataset);
+        Dataset read = connector.getDataset("registers/population.vtlc");
+        assertThat(written.getData().collect(Collectors.toList()))
+                .containsExactlyElementsOf(read.getData().collect(Collectors.toList()));
+        assertThat(read.getData().map(dataPoint -> dataPoint.get(0).get()).collect(Collectors.toList()))
+                .containsExactly("a", "b");
+    }
+
+    @Test
+    public void testSink() throws Exception {
+        ColumnarFileConnector connector = new ColumnarFileConnector(folder.getRoot().toPath());
+        DataStructure structure = DataStructure.builder()
+                .put("id", IDENTIFIER, String.class)
+                .put("value", MEASURE, Long.class)
+                .build();
+
+        Dataset written;
+        try (DataPointSink sink = connector.openSink("population.vtlc", structure).get()) {
+            sink.write(Arrays.asList(DataPoint.create("b", 2L), DataPoint.create("a", 1L)));
+            sink.write(Arrays.asList(DataPoint.create("c", 3L)));
+            assertThat(sink.getBytesWritten()).isGreaterThan(0);
+            written = sink.commit();
+        }
+        assertThat(written.getData().map(dataPoint -> dataPoint.get(0).get()).collect(Collectors.toList()))
+                .containsExactly("b", "a", "c");
+        assertThat(connector.getDataset("population.vtlc").getSize()).contains(3L);
+
+        // Not committed.
+        try (DataPointSink sink = connector.openSink("other.vtlc", structure).get()) {
+            sink.write(Arrays.asList(DataPoint.create("a", 1L)));
+        }
+        assertThat(folder.getRoot().list()).containsExactly("population.vtlc");
+    }
+}
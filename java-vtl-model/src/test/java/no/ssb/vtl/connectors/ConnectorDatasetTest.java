@@ -0,0 +1,208 @@
+package no.ssb.vtl.connectors;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.model.VTLObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.ATTRIBUTE;
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConnectorDatasetTest {
+
+    private final StaticDataset dataset = StaticDataset.create()
+            .addComponent("id1", IDENTIFIER, String.class)
+            .addComponent("id2", IDENTIFIER, Long.class)
+            .addComponent("m", MEASURE, Long.class)
+            .addComponent("a", ATTRIBUTE, String.class)
+            .addPoints("b", 2L, 20L, "x")
+            .addPoints("a", 2L, 10L, "y")
+            .addPoints("b", 1L, 30L, "x")
+            .addPoints("a", 1L, 40L, "z")
+            .build();
+
+    private final DataStructure structure = dataset.getDataStructure();
+
+    private final RecordingDataset source = new RecordingDataset(dataset);
+
+    private List<DataPoint> getData(Dataset dataset, Order order, Dataset.Filtering filtering, Set<String> components) {
+        return dataset.getData(order, filtering, components).get().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testAll() {
+        Dataset adapted = ConnectorDataset.of(source, ConnectorCapabilities.ALL);
+
+        Order order = Order.create(structure).put("m", Order.Direction.DESC).build();
+        StructuredFiltering filtering = StructuredFiltering.equal(structure, "a", VTLObject.of("x"));
+        ImmutableSet<String> components = ImmutableSet.of("id1");
+
+        assertThat(getData(adapted, order, filtering, components))
+                .containsExactlyElementsOf(getData(dataset, order, filtering, components));
+        assertThat(source.order).isSameAs(order);
+        assertThat(source.filtering).isSameAs(filtering);
+        assertThat(source.components).isEqualTo(components);
+    }
+
+    @Test
+    public void testAllProjectsFullWidthData() {
+        // The source returns all its components.
+        Dataset fullWidth = new RecordingDataset(dataset) {
+            @Override
+            public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+                return super.getData(orders, filtering, structure.keySet());
+            }
+        };
+        Dataset adapted = ConnectorDataset.of(fullWidth, ConnectorCapabilities.ALL);
+
+        Order order = Order.create(structure).put("m", Order.Direction.ASC).build();
+        assertThat(getData(adapted, order, Dataset.Filtering.ALL, ImmutableSet.of("id2", "a"))).containsExactly(
+                DataPoint.create(2L, "y"),
+                DataPoint.create(2L, "x"),
+                DataPoint.create(1L, "x"),
+                DataPoint.create(1L, "z")
+        );
+    }
+
+    @Test
+    public void testNone() {
+        Dataset adapted = ConnectorDataset.of(source, ConnectorCapabilities.NONE);
+
+        Order order = Order.create(structure).put("m", Order.Direction.DESC).build();
+        StructuredFiltering filtering = StructuredFiltering.equal(structure, "a", VTLObject.of("x"));
+        ImmutableSet<String> components = ImmutableSet.of("id1");
+
+        assertThat(getData(adapted, order, filtering, components))
+                .containsExactlyElementsOf(getData(dataset, order, filtering, components));
+        assertThat(source.order).isEmpty();
+        assertThat(source.filtering).isSameAs(Dataset.Filtering.ALL);
+        assertThat(source.components).isEqualTo(structure.keySet());
+    }
+
+    @Test
+    public void testPartial() {
+        ConnectorCapabilities capabilities = ConnectorCapabilities.builder()
+                .sortedBy("id1", Order.Direction.ASC)
+                .sortedBy("id2", Order.Direction.ASC)
+                .filters(ImmutableSet.of("id1", "id2"))
+                .projection(true)
+                .build();
+        Dataset adapted = ConnectorDataset.of(source, capabilities);
+
+        StructuredFiltering onIdentifier = StructuredFiltering.equal(structure, "id1", VTLObject.of("a"));
+        StructuredFiltering onMeasure = StructuredFiltering.greaterThan(structure, "m", VTLObject.of(15L));
+        StructuredFiltering filtering = StructuredFiltering.and(onIdentifier, onMeasure);
+        ImmutableSet<String> components = ImmutableSet.of("id2");
+
+        // Prefix of the stored order.
+        Order prefix = Order.create(structure).put("id1", Order.Direction.ASC).build();
+        assertThat(getData(adapted, prefix, filtering, components))
+                .containsExactlyElementsOf(getData(dataset, prefix, filtering, components));
+        assertThat(source.order).isSameAs(prefix);
+        assertThat(source.filtering).isEqualTo(onIdentifier);
+        assertThat(source.components).containsOnly("id2", "m");
+
+        // Other order.
+        Order other = Order.create(structure).put("a", Order.Direction.DESC).build();
+        assertThat(getData(adapted, other, filtering, components))
+                .containsExactlyElementsOf(getData(dataset, other, filtering, components));
+        assertThat(source.order).isEmpty();
+        assertThat(source.components).containsOnly("id2", "m", "a");
+    }
+
+    @Test
+    public void testEstimatedSize() {
+        ConnectorCapabilities capabilities = ConnectorCapabilities.builder().estimatedSize(100L).build();
+        Dataset unknownSize = new RecordingDataset(dataset) {
+            @Override
+            public Statistics getStatistics() {
+                return Statistics.unknown();
+            }
+        };
+        assertThat(ConnectorDataset.of(unknownSize, capabilities).getStatistics().getRowCount()).contains(100L);
+        assertThat(ConnectorDataset.of(source, capabilities).getStatistics().getRowCount()).contains(4L);
+    }
+
+    /**
+     * Records the last requested order, filtering and components.
+     */
+    private static class RecordingDataset implements Dataset {
+
+        private final Dataset delegate;
+        private Order order;
+        private Filtering filtering;
+        private Set<String> components;
+
+        private RecordingDataset(Dataset delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Stream<DataPoint> getData() {
+            return delegate.getData();
+        }
+
+        @Override
+        public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+            this.order = orders;
+            this.filtering = filtering;
+            this.components = components;
+            return delegate.getData(orders, filtering, components);
+        }
+
+        @Override
+        public Optional<Map<String, Integer>> getDistinctValuesCount() {
+            return delegate.getDistinctValuesCount();
+        }
+
+        @Override
+        public Optional<Long> getSize() {
+            return delegate.getSize();
+        }
+
+        @Override
+        public Statistics getStatistics() {
+            return delegate.getStatistics();
+        }
+
+        @Override
+        public DataStructure getDataStructure() {
+            return delegate.getDataStructure();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static no.ssb.vtl.model.Component.Role.ATTRIBUTE;
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ColumnarFileDatasetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DataStructure structure = DataStructure.builder()
+            .put("id1", IDENTIFIER, String.class)
+            .put("id2", IDENTIFIER, Long.class)
+            .put("m1", MEASURE, Double.class)
+            .put("m2", MEASURE, Boolean.class)
+            .put("m3", MEASURE, Instant.class)
+            .put("m4", MEASURE, Number.class)
+            .put("a1", ATTRIBUTE, String.class)
+            .build();
+
+    private StaticDataset createDataset(int size) {
+        Random random = new Random(42);
+        StaticDataset.ValueBuilder builder = StaticDataset.create(structure);
+        for (int i = 0; i < size; i++) {
+            builder.addPoints(
+                    "code-" + random.nextInt(20),
+                    (long) i,
+                    random.nextInt(10) == 0 ? null : random.nextDouble(),
+                    random.nextInt(10) == 0 ? null : random.nextBoolean(),
+                    Instant.ofEpochSecond(random.nextInt(), random.nextInt(1000000000)),
+                    random.nextInt(10) == 0 ? null : (Number) (long) random.nextInt(),
+                    random.nextInt(10) == 0 ? null : random.nextInt(10) == 0 ? "" : "æøå " + random.nextInt(5)
+            );
+        }
+        return builder.build();
+    }
+
+    private ColumnarFileDataset writeAndOpen(Dataset dataset) throws IOException {
+        Path path = folder.getRoot().toPath().resolve("dataset.vtlc");
+        ColumnarFile.write(dataset, path);
+        return ColumnarFileDataset.open(path);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StaticDataset dataset = createDataset(3000);
+        ColumnarFileDataset file = writeAndOpen(dataset);
+
+        Order order = Order.createDefault(structure);
+        List<DataPoint> expected = dataset.getData(order).get().collect(Collectors.toList());
+
+        assertThat(file.getDataStructure().getRoles().entrySet())
+                .containsExactlyElementsOf(structure.getRoles().entrySet());
+        assertThat(file.getDataStructure().getTypes().entrySet())
+                .containsExactlyElementsOf(structure.getTypes().entrySet());
+        assertThat(file.getData().collect(Collectors.toList())).containsExactlyElementsOf(expected);
+        assertThat(DataPointBatch.toDataPoints(file.getBatches()).collect(Collectors.toList()))
+                .containsExactlyElementsOf(expected);
+
+        // Only the temporary columns of the writer are removed.
+        assertThat(Files.list(folder.getRoot().toPath()).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        StaticDataset dataset = createDataset(1000);
+        ColumnarFileDataset file = writeAndOpen(dataset);
+
+        assertThat(file.getSize()).contains(1000L);
+        assertThat(file.getDistinctValuesCount().get()).containsEntry("id1", 20).containsEntry("id2", 1000);
+
+        Statistics expected = dataset.getStatistics();
+        Statistics statistics = file.getStatistics();
+        for (String name : ImmutableSet.of("id1", "id2", "m1", "m2", "m3", "a1")) {
+            assertThat(statistics.getColumn(name)).isEqualTo(expected.getColumn(name));
+        }
+        assertThat(statistics.getColumn("m4").getDistinctCount())
+                .isEqualTo(expected.getColumn("m4").getDistinctCount());
+        assertThat(statistics.getOrder()).containsOnlyKeys("id1", "id2");
+    }
+
+    @Test
+    public void testOrderAndProjection() throws Exception {
+        StaticDataset dataset = createDataset(1000);
+        ColumnarFileDataset file = writeAndOpen(dataset);
+
+        // Stored order, only the requested columns are read.
+        Order stored = Order.create(structure).put("id1", Order.Direction.ASC).build();
+        ImmutableSet<String> components = ImmutableSet.of("id2", "a1");
+        assertThat(file.getData(stored, Dataset.Filtering.ALL, components).get().collect(Collectors.toList()))
+                .containsExactlyElementsOf(dataset.getData(stored, Dataset.Filtering.ALL, components).get()
+                        .collect(Collectors.toList()));
+
+        // Other order and structured filtering.
+        Order other = Order.create(structure)
+                .put("m1", Order.Direction.DESC)
+                .put("id2", Order.Direction.ASC)
+                .build();
+        StructuredFiltering filtering = StructuredFiltering.greaterThan(structure, "m1", VTLFloat.of(0.5));
+        assertThat(file.getData(other, filtering, structure.keySet()).get().collect(Collectors.toList()))
+                .containsExactlyElementsOf(dataset.getData(other, filtering, structure.keySet()).get()
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ColumnarFileDataset file = writeAndOpen(createDataset(0));
+        assertThat(file.getSize()).contains(0L);
+        assertThat(file.getData().count()).isZero();
+        assertThat(file.getBatches().count()).isZero();
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        Path path = folder.newFile("invalid.vtlc").toPath();
+        Files.write(path, "not a columnar file".getBytes());
+        assertThatThrownBy(() -> ColumnarFileDataset.open(path)).isInstanceOf(IOException.class);
+
+        Path truncated = folder.getRoot().toPath().resolve("truncated.vtlc");
+        ColumnarFile.write(createDataset(10), truncated);
+        byte[] bytes = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThatThrownBy(() -> ColumnarFileDataset.open(truncated)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testPartitions() throws Exception {
+        StaticDataset dataset = createDataset(5000);
+        assertThat(writeAndOpen(dataset).getPartitions(4)).hasSize(1);
+
+        // Without the column of variable width.
+        DataStructure fixed = structure.project(ImmutableSet.of("id1", "id2", "m1", "m2", "m3", "a1"));
+        DataPointProjection projection = new DataPointProjection(structure, fixed);
+        StaticDataset.ValueBuilder builder = StaticDataset.create(fixed);
+        dataset.getData().map(projection).forEach(builder::addPoints);
+        ColumnarFileDataset file = writeAndOpen(builder.build());
+
+        List<DataPartition> partitions = file.getPartitions(4);
+        assertThat(partitions).hasSize(4);
+        assertThat(partitions.stream().flatMap(DataPartition::getData).collect(Collectors.toList()))
+                .containsExactlyElementsOf(file.getData().collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,180 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataPartitionsTest {
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static StaticDataset createDataset(int size) {
+        StaticDataset.ValueBuilder builder = StaticDataset.create(DataStructure.of(
+                "id", IDENTIFIER, Long.class,
+                "m", MEASURE, String.class
+        ));
+        for (long i = 0; i < size; i++) {
+            builder.addPoints(i, "value " + i);
+        }
+        return builder.build();
+    }
+
+    private static List<DataPoint> collect(Stream<DataPoint> stream) {
+        try (Stream<DataPoint> closed = stream) {
+            return closed.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testSplit() {
+        StaticDataset dataset = createDataset(10_000);
+        List<DataPoint> expected = collect(dataset.getData());
+
+        assertThat(dataset.getPartitions(1)).hasSize(1);
+        assertThat(dataset.getPartitions(4)).hasSize(4);
+        // Partitions have at least MIN_PARTITION_SIZE rows.
+        assertThat(dataset.getPartitions(100)).hasSize(10_000 / DataPartitions.MIN_PARTITION_SIZE);
+        assertThat(createDataset(10).getPartitions(4)).hasSize(1);
+        assertThat(createDataset(0).getPartitions(4)).hasSize(1);
+
+        for (int count : new int[]{1, 3, 4, 100}) {
+            List<DataPartition> partitions = dataset.getPartitions(count);
+            assertThat(collect(partitions.stream().flatMap(DataPartition::getData)))
+                    .containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        StaticDataset dataset = createDataset(20_000);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        // More partitions than threads.
+        List<DataPartition> partitions = DataPartitions.map(dataset.getPartitions(10), data -> data.peek(
+                dataPoint -> threads.add(Thread.currentThread().getName())
+        ));
+        assertThat(partitions).hasSize(10);
+
+        assertThat(collect(DataPartitions.parallel(partitions, pool)))
+                .containsExactlyElementsOf(collect(dataset.getData()));
+        assertThat(threads).doesNotContain(Thread.currentThread().getName());
+    }
+
+    @Test
+    public void testParallelDataset() {
+        StaticDataset dataset = createDataset(10_000);
+        assertThat(DataPartitions.parallel(dataset, null)).isEmpty();
+
+        assertThat(collect(DataPartitions.parallel(dataset, pool).get()))
+                .containsExactlyElementsOf(collect(dataset.getData()));
+        assertThat(DataPartitions.parallel(createDataset(10), pool)).isEmpty();
+
+        // Sequential inside the pool.
+        assertThat(pool.submit(() -> DataPartitions.parallel(dataset, pool).isPresent()).join()).isFalse();
+    }
+
+    @Test
+    public void testFailureAndClose() {
+        StaticDataset dataset = createDataset(10_000);
+        List<DataPartition> failing = DataPartitions.map(dataset.getPartitions(4), data -> data.peek(dataPoint -> {
+            if ((Long) dataPoint.get(0).get() == 6000L)
+                throw new IllegalStateException("failed");
+        }));
+        assertThatThrownBy(() -> collect(DataPartitions.parallel(failing, pool)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("failed");
+
+        // Closing the stream early stops the partitions.
+        AtomicInteger closed = new AtomicInteger();
+        List<DataPartition> partitions = DataPartitions.map(dataset.getPartitions(4),
+                data -> data.onClose(closed::incrementAndGet));
+        try (Stream<DataPoint> data = DataPartitions.parallel(partitions, pool)) {
+            assertThat(data.limit(10).count()).isEqualTo(10);
+        }
+        // The readers waiting for room in their queue are not active for the pool, so awaitQuiescence could
+        // return before they see the close.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (closed.get() < 3 && System.nanoTime() < deadline) {
+            Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+        }
+        assertThat(closed.get()).isEqualTo(3);
+    }
+
+    @Test(timeout = 10_000)
+    public void testReadersDoNotStallThePool() {
+        // The reader of the first partition uses the only worker and waits for the consumer, which waits for the
+        // map tasks of the same pool.
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            StaticDataset dataset = createDataset(4 * DataPartitions.MIN_PARTITION_SIZE);
+            Stream<DataPoint> data = DataPartitions.parallel(dataset.getPartitions(2), single);
+            assertThat(collect(DataPartitions.parallelMap(data, dataPoint -> dataPoint, single)))
+                    .isEqualTo(collect(dataset.getData()));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelMap() {
+        List<Integer> input = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        List<Integer> expected = Lists.transform(input, i -> i * 2);
+
+        assertThat(DataPartitions.parallelMap(input.stream(), i -> i * 2, null).collect(Collectors.toList()))
+                .containsExactlyElementsOf(expected);
+
+        assertThat(DataPartitions.parallelMap(input.stream(), i -> i * 2, pool).collect(Collectors.toList()))
+                .containsExactlyElementsOf(expected);
+        assertThatThrownBy(() -> DataPartitions.parallelMap(input.stream(), i -> {
+            if (i == 500)
+                throw new IllegalArgumentException("failed");
+            return i;
+        }, pool).count()).isInstanceOf(IllegalArgumentException.class);
+    }
+}
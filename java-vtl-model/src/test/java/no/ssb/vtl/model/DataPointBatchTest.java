@@ -0,0 +1,128 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointBatchTest {
+
+    private static final DataStructure STRUCTURE = DataStructure.builder()
+            .put("id", Role.IDENTIFIER, String.class)
+            .put("m1", Role.MEASURE, Long.class)
+            .put("m2", Role.MEASURE, Double.class)
+            .put("m3", Role.MEASURE, Boolean.class)
+            .build();
+
+    private static List<DataPoint> points() {
+        return Stream.of(
+                DataPoint.create("a", 1L, 1.5D, true),
+                DataPoint.create("b", null, 2.5D, false),
+                DataPoint.create("c", 3L, null, null),
+                DataPoint.create("d", 4L, 4.5D, true),
+                DataPoint.create("e", 5L, 5.5D, false)
+        ).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<DataPointBatch> batches = DataPointBatch.fromDataPoints(points().stream(), STRUCTURE, 2)
+                .collect(Collectors.toList());
+
+        assertThat(batches).extracting(DataPointBatch::size).containsExactly(2, 2, 1);
+        assertThat(DataPointBatch.toDataPoints(batches.stream()))
+                .containsExactlyElementsOf(points());
+    }
+
+    @Test
+    public void testPrimitiveColumns() {
+        DataPointBatch batch = DataPointBatch.fromDataPoints(points().stream(), STRUCTURE, 10)
+                .findFirst().get();
+
+        ColumnVector m1 = batch.getColumn("m1");
+        assertThat(m1.isLong()).isTrue();
+        assertThat(m1.getLong(0)).isEqualTo(1L);
+        assertThat(m1.isNull(1)).isTrue();
+        assertThat(m1.getNullCount()).isEqualTo(1);
+
+        ColumnVector m2 = batch.getColumn("m2");
+        assertThat(m2.isDouble()).isTrue();
+        assertThat(m2.getDouble(1)).isEqualTo(2.5D);
+        assertThat(m2.isNull(2)).isTrue();
+
+        ColumnVector m3 = batch.getColumn("m3");
+        assertThat(m3.isBoolean()).isTrue();
+        assertThat(m3.getBoolean(0)).isTrue();
+        assertThat(m3.isNull(2)).isTrue();
+    }
+
+    @Test
+    public void testMixedValuesFallBackToObjects() {
+        ColumnVector column = ColumnVector.builder(Long.class, 2)
+                .addLong(1L)
+                .add(VTLObject.of("not a long"))
+                .addNull()
+                .build();
+
+        assertThat(column.isLong()).isFalse();
+        assertThat(column.get(0)).isEqualTo(VTLObject.of(1L));
+        assertThat(column.get(1)).isEqualTo(VTLObject.of("not a long"));
+        assertThat(column.get(2)).isEqualTo(VTLObject.NULL);
+    }
+
+    @Test
+    public void testSelect() {
+        DataPointBatch batch = DataPointBatch.fromDataPoints(points().stream(), STRUCTURE, 10)
+                .findFirst().get();
+
+        DataPointBatch selected = batch.select(new int[]{0, 2, 4}, 3);
+        assertThat(selected.stream()).containsExactly(
+                points().get(0), points().get(2), points().get(4)
+        );
+
+        assertThat(batch.select(new int[]{0, 1, 2, 3, 4}, 5)).isSameAs(batch);
+    }
+
+    @Test
+    public void testProject() {
+        DataPointBatch batch = DataPointBatch.fromDataPoints(points().stream(), STRUCTURE, 10)
+                .findFirst().get();
+
+        DataStructure projection = DataStructure.builder()
+                .put("m2", STRUCTURE.get("m2"))
+                .put("id", STRUCTURE.get("id"))
+                .build();
+
+        DataPointBatch projected = batch.project(projection);
+        assertThat(projected.getColumns()).containsExactly(
+                batch.getColumn("m2"), batch.getColumn("id")
+        );
+        assertThat(projected.getDataPoint(0)).containsExactly(
+                VTLObject.of(1.5D), VTLObject.of("a")
+        );
+    }
+}
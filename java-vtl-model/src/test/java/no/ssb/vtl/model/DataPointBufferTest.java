@@ -0,0 +1,88 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataPointBufferTest {
+
+    private List<DataPoint> createData(int size) {
+        List<DataPoint> data = Lists.newArrayList();
+        for (int i = 0; i < size; i++) {
+            data.add(DataPoint.create((long) i, "value" + i));
+        }
+        return data;
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        List<DataPoint> data = createData(100);
+        try (DataPointBuffer buffer = new DataPointBuffer()) {
+            data.forEach(buffer::add);
+            assertThat(buffer.size()).isEqualTo(100);
+            assertThat(buffer.isSpilled()).isFalse();
+            assertThat(buffer.getMemoryUsage()).isPositive();
+            assertThat(buffer).containsExactlyElementsOf(data);
+        }
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        List<DataPoint> data = createData(1000);
+        DataPointBuffer buffer = new DataPointBuffer(1024);
+        data.forEach(buffer::add);
+        assertThat(buffer.size()).isEqualTo(1000);
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(buffer.getMemoryUsage()).isLessThan(2048);
+
+        // The buffer can be read several times, also at the same time.
+        assertThat(buffer).containsExactlyElementsOf(data);
+        assertThat(buffer).containsExactlyElementsOf(data);
+        assertThat(buffer.iterator().next()).isEqualTo(data.get(0));
+
+        buffer.close();
+        assertThatThrownBy(buffer::iterator).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testUnknownType() throws Exception {
+        VTLObject unknown = new VTLObject() {
+            @Override
+            public Object get() {
+                return "unknown";
+            }
+        };
+        List<DataPoint> data = createData(100);
+        data.add(50, DataPoint.create(VTLObject.of(0L), unknown));
+
+        try (DataPointBuffer buffer = new DataPointBuffer(512)) {
+            data.forEach(buffer::add);
+            assertThat(buffer.isSpilled()).isTrue();
+            assertThat(buffer).containsExactlyElementsOf(data);
+        }
+    }
+}
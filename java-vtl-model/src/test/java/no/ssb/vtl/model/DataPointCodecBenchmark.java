@@ -0,0 +1,141 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static no.ssb.vtl.model.Component.Role.ATTRIBUTE;
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+
+/**
+ * Measures the write and read throughput of the {@link DataPointWriter} and {@link DataPointReader}, with and
+ * without the string dictionary.
+ */
+public class DataPointCodecBenchmark {
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public Object write(CodecState state) throws IOException {
+        return state.write(false);
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public Object writeWithDictionary(CodecState state) throws IOException {
+        return state.write(true);
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public long read(CodecState state) throws IOException {
+        return state.read(state.plain);
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public long readWithDictionary(CodecState state) throws IOException {
+        return state.read(state.dictionary);
+    }
+
+    @State(Scope.Benchmark)
+    public static class CodecState {
+
+        private DataStructure structure;
+        private List<DataPoint> dataPoints;
+        private byte[] plain;
+        private byte[] dictionary;
+
+        @Setup
+        public void setup() throws IOException {
+            structure = DataStructure.builder()
+                    .put("id1", IDENTIFIER, String.class)
+                    .put("id2", IDENTIFIER, Long.class)
+                    .put("id3", IDENTIFIER, Instant.class)
+                    .put("measure", MEASURE, Double.class)
+                    .put("attribute", ATTRIBUTE, String.class)
+                    .build();
+
+            Random random = new Random(42);
+            dataPoints = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                dataPoints.add(DataPoint.create(
+                        "id-" + random.nextInt(10),
+                        (long) random.nextInt(100),
+                        Instant.ofEpochSecond(random.nextInt(1000)),
+                        random.nextInt(10) == 0 ? null : random.nextDouble(),
+                        random.nextBoolean() ? "provisional" : "final"
+                ));
+            }
+            plain = write(false);
+            dictionary = write(true);
+        }
+
+        private byte[] write(boolean stringDictionary) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataPointWriter writer = new DataPointWriter(Channels.newChannel(bytes), structure, stringDictionary)) {
+                for (DataPoint dataPoint : dataPoints) {
+                    writer.write(dataPoint);
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private long read(byte[] bytes) throws IOException {
+            try (DataPointReader reader = new DataPointReader(Channels.newChannel(new ByteArrayInputStream(bytes)), structure)) {
+                long count = 0;
+                while (reader.read() != null) {
+                    count++;
+                }
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointIndexTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id1", IDENTIFIER, Long.class,
+            "id2", IDENTIFIER, String.class,
+            "m", MEASURE, Long.class
+    );
+
+    private final DataPointIndex index = new DataPointIndex(structure, ImmutableList.of(
+            DataPoint.create(3L, "a", 30L),
+            DataPoint.create(1L, "b", 10L),
+            DataPoint.create(VTLObject.NULL, VTLObject.of("c"), VTLObject.of(0L)),
+            DataPoint.create(2L, "a", 20L),
+            DataPoint.create(5L, "b", 50L),
+            DataPoint.create(4L, "c", 40L)
+    ));
+
+    private final Order unordered = Order.create(structure).build();
+
+    private ImmutableList<Object> measures(Order order, Dataset.Filtering filtering) {
+        return index.getData(order, filtering)
+                .map(dataPoint -> dataPoint.get(2).get())
+                .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
+    }
+
+    @Test
+    public void testEqual() {
+        assertThat(measures(unordered, StructuredFiltering.equal(structure, "id1", VTLObject.of(2L))))
+                .containsExactly(20L);
+        assertThat(measures(unordered, StructuredFiltering.equal(structure, "id1", VTLObject.of(6L))))
+                .isEmpty();
+        assertThat(measures(unordered, StructuredFiltering.equal(structure, "id2", VTLObject.of("a"))))
+                .containsExactly(30L, 20L);
+    }
+
+    @Test
+    public void testRange() {
+        assertThat(measures(unordered, StructuredFiltering.lessThan(structure, "id1", VTLObject.of(3L))))
+                .containsExactlyInAnyOrder(10L, 20L);
+        assertThat(measures(unordered, StructuredFiltering.lessOrEqual(structure, "id1", VTLObject.of(3L))))
+                .containsExactlyInAnyOrder(10L, 20L, 30L);
+        assertThat(measures(unordered, StructuredFiltering.greaterThan(structure, "id1", VTLObject.of(3L))))
+                .containsExactlyInAnyOrder(40L, 50L);
+        assertThat(measures(unordered, StructuredFiltering.greaterOrEqual(structure, "id1", VTLObject.of(3L))))
+                .containsExactlyInAnyOrder(30L, 40L, 50L);
+        assertThat(measures(unordered, StructuredFiltering.and(
+                StructuredFiltering.greaterThan(structure, "id1", VTLObject.of(1L)),
+                StructuredFiltering.lessThan(structure, "id1", VTLObject.of(5L))
+        ))).containsExactlyInAnyOrder(20L, 30L, 40L);
+    }
+
+    @Test
+    public void testIn() {
+        assertThat(measures(unordered, StructuredFiltering.in(structure, "id1", ImmutableList.of(
+                VTLObject.of(4L), VTLObject.of(1L), VTLObject.of(4L), VTLObject.of(7L)
+        )))).containsExactlyInAnyOrder(10L, 40L);
+    }
+
+    @Test
+    public void testDataOrder() {
+        // Without an order the data points found with the index keep the order of the data.
+        assertThat(measures(unordered, StructuredFiltering.greaterThan(structure, "id1", VTLObject.of(1L))))
+                .containsExactly(30L, 20L, 50L, 40L);
+        assertThat(measures(unordered, StructuredFiltering.in(structure, "id2", ImmutableList.of(
+                VTLObject.of("c"), VTLObject.of("a")
+        )))).containsExactly(30L, 0L, 20L, 40L);
+    }
+
+    @Test
+    public void testOtherConditions() {
+        // Measures and literals of another type are evaluated on all the data points.
+        assertThat(measures(unordered, StructuredFiltering.greaterThan(structure, "m", VTLObject.of(30L))))
+                .containsExactlyInAnyOrder(40L, 50L);
+        assertThat(measures(unordered, StructuredFiltering.and(
+                StructuredFiltering.equal(structure, "id2", VTLObject.of("b")),
+                StructuredFiltering.greaterThan(structure, "m", VTLObject.of(30L))
+        ))).containsExactly(50L);
+        assertThat(measures(unordered, StructuredFiltering.isNull(structure, "id1")))
+                .containsExactly(0L);
+    }
+
+    @Test
+    public void testOrder() {
+        Order order = Order.create(structure)
+                .put("id2", Order.Direction.DESC)
+                .put("id1", Order.Direction.ASC)
+                .build();
+
+        assertThat(measures(order, Dataset.Filtering.ALL))
+                .containsExactly(0L, 40L, 10L, 50L, 20L, 30L);
+        assertThat(measures(order, StructuredFiltering.greaterThan(structure, "id1", VTLObject.of(1L))))
+                .containsExactly(40L, 50L, 20L, 30L);
+
+        // The permutation is cached.
+        Order same = Order.create(structure)
+                .put("id2", Order.Direction.DESC)
+                .put("id1", Order.Direction.ASC)
+                .build();
+        assertThat(index.getSorted(same)).isSameAs(index.getSorted(order));
+    }
+}
@@ -0,0 +1,140 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataPointSorterTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", IDENTIFIER, Long.class,
+            "m", MEASURE, String.class
+    );
+
+    private final Order order = Order.create(structure).put("id", Order.Direction.ASC).build();
+
+    private List<DataPoint> createData(int size) {
+        Random random = new Random(42);
+        List<DataPoint> data = Lists.newArrayList();
+        for (int i = 0; i < size; i++) {
+            data.add(DataPoint.create((long) random.nextInt(size / 10), "value" + i));
+        }
+        return data;
+    }
+
+    @Test
+    public void testInMemory() {
+        List<DataPoint> data = createData(1000);
+        List<DataPoint> expected = Lists.newArrayList(data);
+        expected.sort(order);
+
+        try (Stream<DataPoint> sorted = new DataPointSorter(order).sort(data.stream())) {
+            assertThat(sorted.collect(Collectors.toList())).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testSpill() {
+        List<DataPoint> data = createData(10000);
+        List<DataPoint> expected = Lists.newArrayList(data);
+        expected.sort(order);
+
+        // About a hundred rows by run, the sort is stable.
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<DataPoint> input = data.stream().onClose(() -> closed.set(true));
+        try (Stream<DataPoint> sorted = new DataPointSorter(order, 20000).sort(input)) {
+            assertThat(sorted.collect(Collectors.toList())).containsExactlyElementsOf(expected);
+        }
+        assertThat(closed.get()).isTrue();
+    }
+
+    @Test
+    public void testLazy() {
+        AtomicBoolean read = new AtomicBoolean();
+        Stream<DataPoint> input = Stream.of(DataPoint.create(1L, "a")).peek(dataPoint -> read.set(true));
+        Stream<DataPoint> sorted = DataPointSorter.sorted(input, order);
+        assertThat(read.get()).isFalse();
+        assertThat(sorted.count()).isEqualTo(1);
+        assertThat(read.get()).isTrue();
+    }
+
+    @Test
+    public void testEmpty() {
+        try (Stream<DataPoint> sorted = new DataPointSorter(order, 1).sort(Stream.empty())) {
+            assertThat(sorted.collect(Collectors.toList())).isEmpty();
+        }
+        try (Stream<DataPoint> sorted = new DataPointSorter(order, 1).sort(Collections.<DataPoint>emptyList().stream())) {
+            assertThat(sorted.count()).isZero();
+        }
+    }
+
+    @Test
+    public void testRowFormat() throws Exception {
+        DataPoint dataPoint = DataPoint.create(
+                VTLObject.of(-123456789L),
+                VTLObject.of(0.5),
+                VTLObject.of("æøå"),
+                VTLObject.of(true),
+                VTLObject.of(false),
+                VTLObject.of(Instant.ofEpochSecond(1234, 5678)),
+                VTLObject.NULL,
+                VTLInteger.of((Long) null),
+                VTLFloat.of((Double) null),
+                VTLString.of((String) null),
+                VTLBoolean.of((Boolean) null),
+                VTLDate.of((Instant) null)
+        );
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            DataPointSorter.RowFormat.write(output, dataPoint);
+            DataPointSorter.RowFormat.write(output, DataPoint.create(Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        DataPoint read = DataPointSorter.RowFormat.read(input);
+        assertThat(read).isEqualTo(dataPoint);
+        for (int i = 0; i < read.size(); i++) {
+            assertThat(read.get(i)).isInstanceOf(dataPoint.get(i).getClass());
+        }
+        assertThat(DataPointSorter.RowFormat.read(input)).containsExactly(
+                VTLObject.of(Long.MIN_VALUE), VTLObject.of(Long.MAX_VALUE)
+        );
+        assertThat(DataPointSorter.RowFormat.read(input)).isNull();
+    }
+}
@@ -24,9 +24,11 @@ import org.junit.Test;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 
 public class DataPointTest {
@@ -113,4 +115,50 @@ public class DataPointTest {
                 source
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testImmutableCopy() {
+        DataPoint source = DataPoint.create("a", 1L);
+        DataPoint immutable = DataPoint.immutableCopyOf(source);
+
+        assertThat(immutable).isEqualTo(source);
+        assertThat(immutable.isMutable()).isFalse();
+        assertThat(DataPoint.immutableCopyOf(immutable)).isSameAs(immutable);
+
+        assertThatThrownBy(() -> immutable.set(0, VTLObject.NULL))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> immutable.add(VTLObject.NULL))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> immutable.remove(0))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> immutable.subList(0, 1).set(0, VTLObject.NULL))
+                .isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> {
+            Iterator<VTLObject> iterator = immutable.iterator();
+            iterator.next();
+            iterator.remove();
+        }).isInstanceOf(UnsupportedOperationException.class);
+
+        // Modifying the source does not change the copy.
+        source.set(0, VTLObject.NULL);
+        assertThat(immutable).containsExactly(VTLObject.of("a"), VTLObject.of(1L));
+    }
+
+    @Test
+    public void testMutable() {
+        DataPoint mutable = DataPoint.create("a", 1L);
+        assertThat(DataPoint.mutable(mutable)).isSameAs(mutable);
+
+        DataPoint immutable = DataPoint.immutableCopyOf(mutable);
+        DataPoint copy = DataPoint.mutable(immutable);
+        assertThat(copy).isNotSameAs(immutable).isEqualTo(immutable);
+        assertThat(copy.isMutable()).isTrue();
+        copy.set(0, VTLObject.NULL);
+        assertThat(immutable).containsExactly(VTLObject.of("a"), VTLObject.of(1L));
+
+        DataPoint clone = (DataPoint) immutable.clone();
+        assertThat(clone.isMutable()).isTrue();
+        clone.add(VTLObject.NULL);
+        assertThat(immutable).hasSize(2);
+    }
+}
@@ -0,0 +1,150 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.ATTRIBUTE;
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataPointWriterTest {
+
+    private final DataStructure structure = DataStructure.builder()
+            .put("id1", IDENTIFIER, String.class)
+            .put("id2", IDENTIFIER, Long.class)
+            .put("id3", IDENTIFIER, Instant.class)
+            .put("m1", MEASURE, Double.class)
+            .put("m2", MEASURE, Boolean.class)
+            .put("m3", MEASURE, Number.class)
+            .put("a1", ATTRIBUTE, String.class)
+            .put("a2", ATTRIBUTE, Long.class)
+            .put("a3", ATTRIBUTE, String.class)
+            .build();
+
+    private List<DataPoint> createData(int size) {
+        Random random = new Random(42);
+        List<DataPoint> data = Lists.newArrayList();
+        for (int i = 0; i < size; i++) {
+            data.add(DataPoint.create(
+                    "code-" + random.nextInt(20),
+                    random.nextLong(),
+                    Instant.ofEpochMilli(random.nextInt()),
+                    random.nextDouble(),
+                    random.nextBoolean(),
+                    random.nextBoolean() ? (Object) (long) random.nextInt() : (Object) random.nextDouble(),
+                    random.nextInt(5) == 0 ? null : "æøå " + random.nextInt(),
+                    random.nextInt(5) == 0 ? null : (long) i,
+                    null
+            ));
+        }
+        return data;
+    }
+
+    private byte[] write(List<DataPoint> data, boolean dictionary, int blockSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataPointWriter writer = new DataPointWriter(Channels.newChannel(bytes), structure, dictionary, blockSize)) {
+            assertThat(writer.writeAll(data.stream())).isEqualTo(data.size());
+            assertThat(writer.getRowCount()).isEqualTo(data.size());
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<DataPoint> read(byte[] bytes, DataStructure expected) throws IOException {
+        DataPointReader reader = new DataPointReader(Channels.newChannel(new ByteArrayInputStream(bytes)), expected);
+        try (Stream<DataPoint> stream = reader.stream()) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<DataPoint> data = createData(1000);
+        for (boolean dictionary : new boolean[]{false, true}) {
+            for (int blockSize : new int[]{1, 1024, DataPointWriter.DEFAULT_BLOCK_SIZE}) {
+                assertThat(read(write(data, dictionary, blockSize), structure))
+                        .as("dictionary %s, block size %s", dictionary, blockSize)
+                        .containsExactlyElementsOf(data);
+            }
+        }
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        List<DataPoint> data = createData(1000);
+        byte[] plain = write(data, false, DataPointWriter.DEFAULT_BLOCK_SIZE);
+        byte[] encoded = write(data, true, DataPointWriter.DEFAULT_BLOCK_SIZE);
+        assertThat(encoded.length).isLessThan(plain.length);
+
+        // Repeated strings are the same instances.
+        List<DataPoint> read = read(encoded, structure);
+        assertThat(read.get(0).get(0)).isSameAs(read.stream()
+                .filter(dataPoint -> dataPoint.get(0).equals(read.get(0).get(0)))
+                .reduce((first, second) -> second).get().get(0));
+    }
+
+    @Test
+    public void testStructure() throws Exception {
+        byte[] bytes = write(createData(10), false, DataPointWriter.DEFAULT_BLOCK_SIZE);
+
+        DataPointReader reader = new DataPointReader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        assertThat(reader.getDataStructure().getRoles().entrySet())
+                .containsExactlyElementsOf(structure.getRoles().entrySet());
+        assertThat(reader.getDataStructure().getTypes().entrySet())
+                .containsExactlyElementsOf(structure.getTypes().entrySet());
+
+        DataStructure other = DataStructure.of("id1", IDENTIFIER, String.class);
+        assertThatThrownBy(() -> read(bytes, other)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testEmptyAndInvalid() throws Exception {
+        assertThat(read(write(Lists.newArrayList(), true, 1), structure)).isEmpty();
+
+        assertThatThrownBy(() -> read(new byte[]{'V', 'T', 'L', 'X', 1}, structure))
+                .isInstanceOf(IOException.class);
+
+        byte[] bytes = write(createData(100), false, DataPointWriter.DEFAULT_BLOCK_SIZE);
+        byte[] truncated = new byte[bytes.length - 10];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertThatThrownBy(() -> read(truncated, structure)).hasRootCauseInstanceOf(IOException.class);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DataPointWriter writer = new DataPointWriter(Channels.newChannel(output), structure)) {
+            DataPoint invalid = createData(1).get(0);
+            invalid.set(1, VTLObject.of("not a long"));
+            assertThatThrownBy(() -> writer.write(invalid)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package no.ssb.vtl.model;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
 
 import java.util.LinkedHashMap;
@@ -53,4 +54,48 @@ public class DataStructureTest {
                 );
     }
 
+    @Test
+    public void testAccessor() throws Exception {
+        DataStructure structure = DataStructure.of(
+                "number", Component.Role.MEASURE, Double.class,
+                "period", Component.Role.IDENTIFIER, String.class,
+                "region", Component.Role.IDENTIFIER, String.class
+        );
+
+        ComponentAccessor period = structure.getAccessor("period");
+        assertThat(period.getIndex()).isEqualTo(1);
+        assertThat(period.getComponent()).isSameAs(structure.get("period"));
+        assertThat(structure.getAccessor(structure.get("region"))).isSameAs(structure.getAccessor("region"));
+        assertThat(structure.indexOf(structure.get("region"))).isEqualTo(2);
+        assertThat(structure.indexOf(new Component(String.class, Component.Role.IDENTIFIER))).isEqualTo(-1);
+
+        DataPoint point = DataPoint.create(1.0, "2015", "0101");
+        assertThat(period.get(point)).isEqualTo(VTLObject.of("2015"));
+        period.set(point, VTLObject.of("2016"));
+        assertThat(point.get(1)).isEqualTo(VTLObject.of("2016"));
+
+        assertThatThrownBy(() -> structure.getAccessor("unknown"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testProject() throws Exception {
+        DataStructure structure = DataStructure.of(
+                "id", Component.Role.IDENTIFIER, String.class,
+                "measure", Component.Role.MEASURE, Long.class,
+                "attribute", Component.Role.ATTRIBUTE, String.class
+        );
+
+        DataStructure projected = structure.project(ImmutableSet.of("attribute", "id", "unknown"));
+
+        assertThat(projected.keySet()).containsExactly("id", "attribute");
+        assertThat(projected.get("id")).isSameAs(structure.get("id"));
+        assertThat(structure.project(structure.keySet())).isSameAs(structure);
+
+        DataPoint dataPoint = DataPoint.create("id1", 1L, "attribute1");
+        assertThat(new DataPointProjection(structure, projected).apply(dataPoint))
+                .containsExactly(VTLObject.of("id1"), VTLObject.of("attribute1"));
+        assertThat(new DataPointProjection(projected, structure).apply(DataPoint.create("id1", "attribute1")))
+                .containsExactly(VTLObject.of("id1"), VTLObject.NULL, VTLObject.of("attribute1"));
+    }
 }
@@ -24,6 +24,7 @@ import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Order.Direction;
 import org.assertj.core.api.AutoCloseableSoftAssertions;
 import org.junit.Test;
@@ -34,11 +35,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.*;
 import static no.ssb.vtl.model.Component.Role.*;
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class DatasetTest extends RandomizedTest {
 
@@ -77,6 +80,45 @@ public class DatasetTest extends RandomizedTest {
         }
     }
 
+    @Test
+    @Repeat(iterations = 10)
+    public void testDefaultProjection() throws Exception {
+        // Checks that default implementation only returns the requested components.
+
+        DataStructure dataStructure = randomDataStructure();
+        TestableDataset dataset = randomDataset(dataStructure, randomIntBetween(10, 100));
+        Order order = randomOrder(dataStructure).build();
+
+        List<String> names = Lists.newArrayList(dataStructure.keySet());
+        Collections.shuffle(names, new Random(RandomizedTest.randomLong()));
+        Set<String> components = Sets.newHashSet(names.subList(0, randomIntBetween(1, names.size())));
+        DataStructure projected = dataStructure.project(components);
+
+        try (AutoCloseableSoftAssertions softly = new AutoCloseableSoftAssertions()) {
+
+            List<DataPoint> expected = dataset.getData(order).get()
+                    .map(new DataPointProjection(dataStructure, projected))
+                    .collect(toList());
+
+            List<DataPoint> result = dataset.getData(order, Dataset.Filtering.ALL, components).get()
+                    .collect(toList());
+
+            softly.assertThat(projected.keySet()).containsOnlyElementsOf(components);
+            softly.assertThat(result).allMatch(dataPoint -> dataPoint.size() == components.size());
+            softly.assertThat(result).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testProjectionWithDefaultOrder() throws Exception {
+        TestableDataset dataset = randomDataset(structure, 20);
+        Set<String> components = Sets.newHashSet("id1", "me2");
+
+        List<DataPoint> result = dataset.getData(components).get().collect(toList());
+
+        assertThat(result).hasSize(20).allMatch(dataPoint -> dataPoint.size() == 2);
+    }
+
     private Order.Builder randomOrder(DataStructure structure) {
         int sortedColumns = RandomizedTest.randomIntBetween(1, structure.size());
         ArrayList<Map.Entry<String, Component>> structureEntries = Lists.newArrayList(structure.entrySet());
@@ -0,0 +1,135 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+
+/**
+ * Compares the sort of data points using the type specialized {@link Order}, the comparator it replaced and the
+ * binary sort keys.
+ */
+public class OrderBenchmark {
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public Object sortWithObjectComparator(OrderState state) {
+        DataPoint[] copy = state.dataPoints.clone();
+        Arrays.sort(copy, state.objectComparator);
+        return copy;
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public Object sortWithOrder(OrderState state) {
+        DataPoint[] copy = state.dataPoints.clone();
+        Arrays.sort(copy, state.order);
+        return copy;
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public Object sortWithSortKeys(OrderState state) {
+        byte[][] copy = state.sortKeys.clone();
+        Arrays.sort(copy, Order.SORT_KEY_COMPARATOR);
+        return copy;
+    }
+
+    @State(Scope.Benchmark)
+    public static class OrderState {
+
+        private DataPoint[] dataPoints;
+        private byte[][] sortKeys;
+        private Order order;
+        private Comparator<DataPoint> objectComparator;
+
+        @Setup
+        public void setup() {
+            DataStructure structure = DataStructure.builder()
+                    .put("id1", IDENTIFIER, String.class)
+                    .put("id2", IDENTIFIER, Long.class)
+                    .put("id3", IDENTIFIER, Instant.class)
+                    .put("measure", MEASURE, Double.class)
+                    .build();
+
+            order = Order.create(structure)
+                    .put("id1", Order.Direction.ASC)
+                    .put("id2", Order.Direction.DESC)
+                    .put("id3", Order.Direction.ASC)
+                    .put("measure", Order.Direction.ASC)
+                    .build();
+
+            // The comparison loop used before the comparators were specialized by type.
+            int[] indices = {0, 1, 2, 3};
+            boolean[] descending = {false, true, false, false};
+            objectComparator = (left, right) -> {
+                for (int i = 0; i < indices.length; i++) {
+                    int result = Order.VTL_OBJECT_COMPARATOR.compare(left.get(indices[i]), right.get(indices[i]));
+                    if (result != 0)
+                        return descending[i] ? -result : result;
+                }
+                return 0;
+            };
+
+            Random random = new Random(42);
+            List<DataPoint> points = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                points.add(DataPoint.create(
+                        "id-" + random.nextInt(10),
+                        (long) random.nextInt(100),
+                        Instant.ofEpochSecond(random.nextInt(1000)),
+                        random.nextInt(10) == 0 ? null : random.nextDouble()
+                ));
+            }
+            dataPoints = points.toArray(new DataPoint[0]);
+            sortKeys = new byte[dataPoints.length][];
+            for (int i = 0; i < dataPoints.length; i++) {
+                sortKeys[i] = order.sortKey(dataPoints[i]);
+            }
+        }
+    }
+}
@@ -22,7 +22,16 @@ package no.ssb.vtl.model;
 
 import org.junit.Test;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class OrderTest {
 
@@ -35,4 +44,93 @@ public class OrderTest {
 
         assertThat(order.toString()).isEqualTo("Order{name=ASC}");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompareTypes() {
+        DataStructure structure = DataStructure.builder()
+                .put("long", IDENTIFIER, Long.class)
+                .put("double", IDENTIFIER, Double.class)
+                .put("string", IDENTIFIER, String.class)
+                .put("date", IDENTIFIER, Instant.class)
+                .put("boolean", IDENTIFIER, Boolean.class)
+                .build();
+
+        DataPoint lowest = DataPoint.create(1L, -1.5, "a", Instant.ofEpochSecond(0), false);
+        for (String column : structure.keySet()) {
+            Order order = Order.create(structure).put(column, Order.Direction.ASC).build();
+            DataPoint highest = DataPoint.create(2L, 1.5, "b", Instant.ofEpochSecond(0, 1), true);
+            DataPoint nulls = DataPoint.create(VTLObject.NULL, VTLObject.NULL, VTLObject.NULL, VTLObject.NULL, VTLObject.NULL);
+
+            assertThat(order.compare(lowest, highest)).as(column).isNegative();
+            assertThat(order.compare(highest, lowest)).as(column).isPositive();
+            assertThat(order.compare(lowest, lowest)).as(column).isZero();
+            assertThat(order.compare(nulls, lowest)).as(column).isNegative();
+            assertThat(order.compare(nulls, nulls)).as(column).isZero();
+        }
+    }
+
+    @Test
+    public void testCompareDescendingPutsNullsLast() {
+        DataStructure structure = DataStructure.of("id", IDENTIFIER, Long.class);
+        Order order = Order.create(structure).put("id", Order.Direction.DESC).build();
+
+        assertThat(order.compare(DataPoint.create(2L), DataPoint.create(1L))).isNegative();
+        assertThat(order.compare(DataPoint.create(VTLObject.NULL), DataPoint.create(1L))).isPositive();
+    }
+
+    @Test
+    public void testSortKeyHasSameOrderAsCompare() {
+        DataStructure structure = DataStructure.builder()
+                .put("string", IDENTIFIER, String.class)
+                .put("long", IDENTIFIER, Long.class)
+                .put("double", MEASURE, Double.class)
+                .put("date", MEASURE, Instant.class)
+                .put("boolean", MEASURE, Boolean.class)
+                .build();
+        Order order = Order.create(structure)
+                .put("string", Order.Direction.ASC)
+                .put("long", Order.Direction.DESC)
+                .put("double", Order.Direction.ASC)
+                .put("date", Order.Direction.DESC)
+                .put("boolean", Order.Direction.ASC)
+                .build();
+        assertThat(order.hasSortKey()).isTrue();
+
+        String[] strings = {null, "", "a", "ab", "b", "\u00e9", "\uffff"};
+        Long[] longs = {null, Long.MIN_VALUE, -1L, 0L, 1L, Long.MAX_VALUE};
+        Double[] doubles = {null, Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, 1.5, Double.MAX_VALUE};
+        Instant[] dates = {null, Instant.ofEpochSecond(-1, 999), Instant.EPOCH, Instant.ofEpochSecond(0, 1)};
+        Boolean[] booleans = {null, false, true};
+
+        Random random = new Random(42);
+        List<DataPoint> dataPoints = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            dataPoints.add(DataPoint.create(
+                    strings[random.nextInt(strings.length)],
+                    longs[random.nextInt(longs.length)],
+                    doubles[random.nextInt(doubles.length)],
+                    dates[random.nextInt(dates.length)],
+                    booleans[random.nextInt(booleans.length)]
+            ));
+        }
+
+        List<DataPoint> byOrder = new ArrayList<>(dataPoints);
+        Collections.sort(byOrder, order);
+        List<DataPoint> byKey = new ArrayList<>(dataPoints);
+        byKey.sort((left, right) -> Order.SORT_KEY_COMPARATOR.compare(order.sortKey(left), order.sortKey(right)));
+
+        for (int i = 0; i < byOrder.size(); i++) {
+            assertThat(order.compare(byOrder.get(i), byKey.get(i))).as("row %s", i).isZero();
+        }
+    }
+
+    @Test
+    public void testSortKeyUnsupportedType() {
+        DataStructure structure = DataStructure.of("id", IDENTIFIER, Object.class);
+        Order order = Order.create(structure).put("id", Order.Direction.ASC).build();
+
+        assertThat(order.hasSortKey()).isFalse();
+        assertThatThrownBy(() -> order.sortKey(DataPoint.create("value")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
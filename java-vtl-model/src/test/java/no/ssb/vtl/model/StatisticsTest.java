@@ -0,0 +1,142 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.within;
+
+public class StatisticsTest {
+
+    private final StaticDataset dataset = StaticDataset.create()
+            .addComponent("id", IDENTIFIER, String.class)
+            .addComponent("m", MEASURE, Long.class)
+            .addPoints("a", 0L)
+            .addPoints("b", 10L)
+            .addPoints("c", 10L)
+            .addPoints("d", null)
+            .build();
+
+    @Test
+    public void testStaticDataset() {
+        Statistics statistics = dataset.getStatistics();
+
+        assertThat(statistics.getRowCount()).contains(4L);
+        assertThat(statistics.getColumn("id")).isEqualTo(ColumnStatistics.builder()
+                .distinctCount(4L).min(VTLObject.of("a")).max(VTLObject.of("d")).nullFraction(0.0).build());
+        assertThat(statistics.getColumn("m")).isEqualTo(ColumnStatistics.builder()
+                .distinctCount(2L).min(VTLObject.of(0L)).max(VTLObject.of(10L)).nullFraction(0.25).build());
+        assertThat(statistics.getOrder()).isEmpty();
+    }
+
+    @Test
+    public void testDefault() {
+        Statistics statistics = Statistics.of(Optional.of(10L), Optional.of(ImmutableMap.of("id", 5)));
+        assertThat(statistics.getRowCount()).contains(10L);
+        assertThat(statistics.getColumn("id").getDistinctCount()).contains(5L);
+        assertThat(statistics.getColumn("m")).isSameAs(ColumnStatistics.UNKNOWN);
+
+        assertThat(Statistics.of(Optional.empty(), Optional.empty())).isEqualTo(Statistics.unknown());
+    }
+
+    @Test
+    public void testSelectivity() {
+        Statistics statistics = dataset.getStatistics();
+        DataStructure structure = dataset.getDataStructure();
+
+        assertThat(statistics.selectivity(Dataset.Filtering.ALL)).isEqualTo(1.0);
+        assertThat(statistics.selectivity(dataPoint -> true)).isEqualTo(Statistics.DEFAULT_SELECTIVITY);
+
+        StructuredFiltering idEqual = StructuredFiltering.equal(structure, "id", VTLObject.of("a"));
+        StructuredFiltering mGreater = StructuredFiltering.greaterThan(structure, "m", VTLObject.of(2L));
+        assertThat(statistics.selectivity(idEqual)).isEqualTo(0.25);
+        assertThat(statistics.selectivity(mGreater)).isCloseTo(0.8, within(1e-9));
+        assertThat(statistics.selectivity(StructuredFiltering.and(idEqual, mGreater))).isCloseTo(0.2, within(1e-9));
+        assertThat(statistics.selectivity(StructuredFiltering.or(idEqual, mGreater))).isCloseTo(0.85, within(1e-9));
+        assertThat(statistics.selectivity(StructuredFiltering.not(idEqual))).isEqualTo(0.75);
+        assertThat(statistics.selectivity(StructuredFiltering.isNull(structure, "m"))).isEqualTo(0.25);
+        assertThat(statistics.selectivity(StructuredFiltering.in(
+                structure, "id", ImmutableList.of(VTLObject.of("a"), VTLObject.of("b"))
+        ))).isEqualTo(0.5);
+
+        // Unknown columns use the defaults.
+        Statistics unknown = Statistics.unknown();
+        assertThat(unknown.selectivity(idEqual)).isEqualTo(Statistics.DEFAULT_EQUALITY_SELECTIVITY);
+        assertThat(unknown.selectivity(mGreater)).isEqualTo(Statistics.DEFAULT_RANGE_SELECTIVITY);
+    }
+
+    @Test
+    public void testFilter() {
+        DataStructure structure = dataset.getDataStructure();
+        Statistics filtered = dataset.getStatistics().filter(
+                StructuredFiltering.equal(structure, "id", VTLObject.of("a"))
+        );
+
+        assertThat(filtered.getRowCount()).contains(1L);
+        assertThat(filtered.getColumn("id").getDistinctCount()).contains(1L);
+        assertThat(filtered.getColumn("id").getMin()).contains(VTLObject.of("a"));
+        assertThat(filtered.getColumn("m").getDistinctCount()).contains(1L);
+    }
+
+    @Test
+    public void testProjectAndRename() {
+        Statistics statistics = Statistics.copyOf(dataset.getStatistics())
+                .order("id", Order.Direction.ASC)
+                .order("m", Order.Direction.DESC)
+                .build();
+
+        Statistics projected = statistics.project(DataStructure.of("m", MEASURE, Long.class));
+        assertThat(projected.getColumns()).containsOnlyKeys("m");
+        assertThat(projected.getOrder()).isEmpty();
+
+        Statistics renamed = statistics.rename(ImmutableMap.of("id", "newId", "m", "newM"));
+        assertThat(renamed.getColumns()).containsOnlyKeys("newId", "newM");
+        assertThat(renamed.getOrder()).containsExactly(
+                entry("newId", Order.Direction.ASC), entry("newM", Order.Direction.DESC)
+        );
+
+        DataStructure structure = DataStructure.of("newId", IDENTIFIER, String.class, "newM", MEASURE, Long.class);
+        Order byId = Order.create(structure).put("newId", Order.Direction.ASC).build();
+        Order byMeasure = Order.create(structure).put("newM", Order.Direction.DESC).build();
+        assertThat(renamed.isSortedBy(byId, structure)).isTrue();
+        assertThat(renamed.isSortedBy(byMeasure, structure)).isFalse();
+    }
+
+    @Test
+    public void testUnion() {
+        Statistics statistics = dataset.getStatistics();
+        Statistics union = statistics.union(statistics);
+
+        assertThat(union.getRowCount()).contains(8L);
+        assertThat(union.getColumn("m").getDistinctCount()).contains(4L);
+        assertThat(union.getColumn("m").getNullFraction()).contains(0.25);
+        assertThat(union.getColumn("m").getMax()).contains(VTLObject.of(10L));
+        assertThat(statistics.union(Statistics.unknown())).isEqualTo(Statistics.unknown());
+    }
+}
@@ -0,0 +1,108 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringDictionaryTest {
+
+    private final StringDictionary dictionary = StringDictionary.of("0301", "1103", "0101", "", null, "1103");
+
+    @Test
+    public void testCodesFollowStringOrder() {
+        assertThat(dictionary.size()).isEqualTo(3);
+        assertThat(dictionary.getCode("0101")).isEqualTo(0);
+        assertThat(dictionary.getCode("0301")).isEqualTo(1);
+        assertThat(dictionary.getCode("1103")).isEqualTo(2);
+        assertThat(dictionary.getCode("9999")).isEqualTo(-1);
+        assertThat(dictionary.getCode(null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testEncodedValues() {
+        VTLString encoded = dictionary.encode("0301");
+        assertThat(encoded.isEncoded()).isTrue();
+        assertThat(encoded).isSameAs(dictionary.get(1));
+        assertThat(encoded.get()).isEqualTo("0301");
+
+        // Encoded and plain values are interchangeable.
+        assertThat(encoded).isEqualTo(VTLString.of("0301"));
+        assertThat(VTLString.of("0301")).isEqualTo(encoded);
+        assertThat(encoded.hashCode()).isEqualTo(VTLString.of("0301").hashCode());
+        assertThat(encoded.compareTo(VTLString.of("1103"))).isLessThan(0);
+
+        assertThat(dictionary.encode("9999").isEncoded()).isFalse();
+        assertThat(dictionary.encode(VTLObject.of("1103"))).isSameAs(dictionary.get(2));
+    }
+
+    @Test
+    public void testOrder() {
+        DataStructure structure = DataStructure.builder()
+                .put("id", Component.Role.IDENTIFIER, String.class)
+                .build();
+        Order order = Order.createDefault(structure);
+
+        assertThat(Stream.of("1103", "0101", "0301")
+                .map(value -> DataPoint.create(dictionary.encode(value)))
+                .sorted(order)
+                .map(point -> point.get(0).get())
+                .collect(Collectors.toList())
+        ).containsExactly("0101", "0301", "1103");
+    }
+
+    @Test
+    public void testEncodedColumn() {
+        ColumnVector column = ColumnVector.encoded(dictionary, new int[]{2, -1, 0}, 3);
+        assertThat(column.isEncoded()).isTrue();
+        assertThat(column.getCode(0)).isEqualTo(2);
+        assertThat(column.isNull(1)).isTrue();
+        assertThat(column.get(2)).isSameAs(dictionary.get(0));
+
+        ColumnVector built = ColumnVector.builder(String.class, 3)
+                .addNull()
+                .add(dictionary.get(1))
+                .add(dictionary.get(2))
+                .build();
+        assertThat(built.isEncoded()).isTrue();
+        assertThat(built.getCode(2)).isEqualTo(2);
+
+        ColumnVector mixed = ColumnVector.builder(String.class, 3)
+                .add(dictionary.get(1))
+                .add(VTLString.of("other"))
+                .build();
+        assertThat(mixed.isEncoded()).isFalse();
+        assertThat(mixed.get(0)).isEqualTo(VTLString.of("0301"));
+        assertThat(mixed.get(1)).isEqualTo(VTLString.of("other"));
+    }
+
+    @Test
+    public void testStringPool() {
+        StringPool pool = new StringPool();
+        assertThat(pool.of("value")).isSameAs(pool.of("value"));
+        assertThat(pool.intern(VTLObject.of("value"))).isSameAs(pool.of("value"));
+        assertThat(pool.of(null)).isSameAs(VTLString.NULL);
+    }
+}
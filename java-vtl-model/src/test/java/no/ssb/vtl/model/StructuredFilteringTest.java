@@ -0,0 +1,154 @@
+package no.ssb.vtl.model;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import no.ssb.vtl.connectors.ConnectorCapabilities;
+import org.junit.Test;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StructuredFilteringTest {
+
+    private final DataStructure structure = DataStructure.of(
+            "id", IDENTIFIER, String.class,
+            "m", MEASURE, Long.class
+    );
+
+    @Test
+    public void testComparisons() {
+        DataPoint point = DataPoint.create("a", 2L);
+
+        assertThat(StructuredFiltering.equal(structure, "m", VTLObject.of(2L)).apply(point)).isTrue();
+        assertThat(StructuredFiltering.notEqual(structure, "m", VTLObject.of(2L)).apply(point)).isFalse();
+        assertThat(StructuredFiltering.lessThan(structure, "m", VTLObject.of(2L)).apply(point)).isFalse();
+        assertThat(StructuredFiltering.lessOrEqual(structure, "m", VTLObject.of(2L)).apply(point)).isTrue();
+        assertThat(StructuredFiltering.greaterThan(structure, "m", VTLObject.of(1L)).apply(point)).isTrue();
+        assertThat(StructuredFiltering.greaterOrEqual(structure, "m", VTLObject.of(3L)).apply(point)).isFalse();
+        assertThat(StructuredFiltering.in(structure, "id", ImmutableList.of(VTLObject.of("b"), VTLObject.of("a")))
+                .apply(point)).isTrue();
+        assertThat(StructuredFiltering.isNull(structure, "m").apply(point)).isFalse();
+        assertThat(StructuredFiltering.isNotNull(structure, "m").apply(point)).isTrue();
+    }
+
+    @Test
+    public void testNull() {
+        DataPoint point = DataPoint.create(VTLObject.of("a"), VTLObject.NULL);
+        StructuredFiltering equal = StructuredFiltering.equal(structure, "m", VTLObject.of(2L));
+        StructuredFiltering notEqual = StructuredFiltering.notEqual(structure, "m", VTLObject.of(2L));
+
+        assertThat(equal.evaluate(point)).isNull();
+        assertThat(equal.apply(point)).isFalse();
+        assertThat(StructuredFiltering.not(equal).apply(point)).isFalse();
+        assertThat(notEqual.apply(point)).isFalse();
+        assertThat(StructuredFiltering.isNull(structure, "m").apply(point)).isTrue();
+
+        StructuredFiltering id = StructuredFiltering.equal(structure, "id", VTLObject.of("a"));
+        assertThat(StructuredFiltering.or(id, equal).evaluate(point)).isTrue();
+        assertThat(StructuredFiltering.and(id, equal).evaluate(point)).isNull();
+        assertThat(StructuredFiltering.and(StructuredFiltering.not(id), equal).evaluate(point)).isFalse();
+    }
+
+    @Test
+    public void testSplit() {
+        StructuredFiltering id = StructuredFiltering.equal(structure, "id", VTLObject.of("a"));
+        StructuredFiltering m = StructuredFiltering.greaterThan(structure, "m", VTLObject.of(1L));
+        StructuredFiltering filtering = StructuredFiltering.and(id, StructuredFiltering.and(ImmutableList.of(m)));
+
+        assertThat(filtering.getConjuncts()).containsExactly(id, m);
+        assertThat(filtering.getColumns()).containsExactly("id", "m");
+        assertThat(filtering.toString()).isEqualTo("(id = a and m > 1)");
+
+        assertThat(StructuredFiltering.supported(filtering, f -> f.getColumns().contains("id"))).isEqualTo(id);
+        assertThat(StructuredFiltering.unsupported(filtering, f -> f.getColumns().contains("id"))).isEqualTo(m);
+        assertThat(StructuredFiltering.supported(filtering, f -> false)).isSameAs(Dataset.Filtering.ALL);
+
+        Dataset.Filtering opaque = dataPoint -> true;
+        assertThat(StructuredFiltering.supported(opaque, f -> true)).isSameAs(Dataset.Filtering.ALL);
+        assertThat(StructuredFiltering.unsupported(opaque, f -> true)).isSameAs(opaque);
+
+        assertThat(StructuredFiltering.combine(Dataset.Filtering.ALL, id)).isSameAs(id);
+        assertThat(StructuredFiltering.combine(id, m)).isInstanceOf(StructuredFiltering.class);
+        assertThat(StructuredFiltering.combine(id, opaque)).isNotInstanceOf(StructuredFiltering.class);
+    }
+
+    @Test
+    public void testWithDataStructure() {
+        DataStructure other = DataStructure.of(
+                "value", MEASURE, Long.class,
+                "id", IDENTIFIER, String.class,
+                "measure", MEASURE, Long.class
+        );
+        StructuredFiltering filtering = StructuredFiltering.and(
+                StructuredFiltering.equal(structure, "id", VTLObject.of("a")),
+                StructuredFiltering.greaterThan(structure, "m", VTLObject.of(1L))
+        );
+
+        StructuredFiltering renamed = filtering.withDataStructure(other, name -> name.equals("m") ? "measure" : name);
+        assertThat(renamed.getDataStructure()).isSameAs(other);
+        assertThat(renamed.getColumns()).containsExactly("id", "measure");
+        assertThat(renamed.apply(DataPoint.create(0L, "a", 2L))).isTrue();
+        assertThat(renamed.apply(DataPoint.create(2L, "a", 0L))).isFalse();
+
+        assertThatThrownBy(() -> filtering.withDataStructure(other))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testBloom() {
+        ValueBloomFilter filter = ValueBloomFilter.create(100, 0.01);
+        for (long i = 0; i < 100; i++) {
+            filter.put(VTLObject.of("a" + i));
+        }
+        StructuredFiltering bloom = StructuredFiltering.bloom(structure, "id", filter);
+
+        assertThat(bloom.apply(DataPoint.create("a42", 1L))).isTrue();
+        assertThat(bloom.evaluate(DataPoint.create(VTLObject.NULL, VTLObject.of(1L)))).isNull();
+        assertThat(filter.getValueCount()).isBetween(95L, 100L);
+
+        // A few false positives.
+        long positives = 0;
+        for (long i = 0; i < 1000; i++) {
+            if (bloom.apply(DataPoint.create("b" + i, 1L)))
+                positives++;
+        }
+        assertThat(positives).isLessThan(50);
+
+        // An empty filter contains nothing.
+        assertThat(ValueBloomFilter.create(0, 0.01).mightContain(VTLObject.of("a42"))).isFalse();
+
+        DataStructure other = DataStructure.of(
+                "value", MEASURE, Long.class,
+                "code", IDENTIFIER, String.class
+        );
+        StructuredFiltering copy = bloom.withDataStructure(other, name -> "code");
+        assertThat(copy.getBloomFilter()).isSameAs(filter);
+        assertThat(copy.apply(DataPoint.create(1L, "a42"))).isTrue();
+        assertThat(copy.toString()).startsWith("code in bloom(");
+
+        // Connectors are never given bloom conditions.
+        assertThat(ConnectorCapabilities.ALL.canFilter(bloom)).isFalse();
+        assertThat(ConnectorCapabilities.ALL.canFilter(StructuredFiltering.not(bloom))).isFalse();
+    }
+}
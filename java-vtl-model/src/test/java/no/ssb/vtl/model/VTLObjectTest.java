@@ -23,6 +23,8 @@ package no.ssb.vtl.model;
 import org.assertj.core.api.AutoCloseableSoftAssertions;
 import org.junit.Test;
 
+import java.time.Instant;
+
 import static org.assertj.core.api.Java6Assertions.assertThat;
 
 public class VTLObjectTest {
@@ -91,4 +93,46 @@ public class VTLObjectTest {
 
 
     }
+
+    @Test
+    public void testCanonicalInstances() throws Exception {
+
+        assertThat(VTLInteger.of(42L)).isSameAs(VTLInteger.of(42));
+        assertThat(VTLInteger.of((Long) null)).isSameAs(VTLInteger.NULL);
+        assertThat(VTLFloat.of((Double) null)).isSameAs(VTLFloat.NULL);
+        assertThat(VTLDate.of((Instant) null)).isSameAs(VTLDate.NULL);
+        assertThat(VTLBoolean.of(true)).isSameAs(VTLBoolean.TRUE);
+        assertThat(VTLBoolean.of(Boolean.FALSE)).isSameAs(VTLBoolean.FALSE);
+        assertThat(VTLBoolean.of((Boolean) null)).isSameAs(VTLBoolean.NULL);
+
+        assertThat(VTLInteger.of(1L << 40)).isEqualTo(VTLInteger.of(1L << 40));
+        assertThat(VTLInteger.of(1L << 40).hashCode()).isEqualTo(VTLInteger.of(1L << 40).hashCode());
+    }
+
+    @Test
+    public void testEqualsIsConsistentWithValue() throws Exception {
+
+        Instant instant = Instant.parse("2017-01-01T12:34:56.789123Z");
+        assertThat(VTLDate.of(instant).get()).isEqualTo(instant);
+        assertThat(VTLDate.of(instant)).isEqualTo(VTLDate.of(instant));
+
+        assertThat(VTLInteger.NULL).isEqualTo(VTLObject.NULL);
+        assertThat(VTLObject.NULL).isEqualTo(VTLInteger.NULL);
+        assertThat(VTLInteger.NULL.hashCode()).isEqualTo(VTLObject.NULL.hashCode());
+        assertThat(VTLInteger.of(1)).isNotEqualTo(VTLFloat.of(1D));
+        assertThat(VTLFloat.of(Double.NaN)).isEqualTo(VTLFloat.of(Double.NaN));
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+
+        assertThat(VTLInteger.of(2).add(VTLInteger.of(3).multiply(VTLInteger.of(4))))
+                .isInstanceOf(VTLInteger.class)
+                .isEqualTo(VTLInteger.of(14));
+        assertThat(VTLInteger.of(2).add(VTLFloat.of(0.5)))
+                .isInstanceOf(VTLFloat.class)
+                .isEqualTo(VTLFloat.of(2.5));
+        assertThat(VTLInteger.of(5).subtract(VTLInteger.of(7))).isEqualTo(VTLInteger.of(-2));
+        assertThat(VTLInteger.of(1).divide(VTLInteger.of(4))).isEqualTo(VTLFloat.of(0.25));
+    }
 }
@@ -99,7 +99,7 @@ function : getFunction               #withGet
          ;
 
 getFunction : 'get' LPAR stringLiteral RPAR;
-putFunction : 'put' LPAR stringLiteral RPAR;
+putFunction : 'put' LPAR datasetExpression COMMA stringLiteral RPAR;
 
 aggregationFunction
        : 'sum' '(' variableExpression ')' aggregationParams       #aggregateSum
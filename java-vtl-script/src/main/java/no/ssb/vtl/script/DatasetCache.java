@@ -0,0 +1,56 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.model.Dataset;
+
+/**
+ * Cache of the datasets returned by the {@link Connector}s of a {@link VTLScriptEngine}.
+ * <p>
+ * The datasets are cached by connector and identifier. See {@link DefaultDatasetCache} for an implementation with
+ * size and time based eviction.
+ */
+public interface DatasetCache {
+
+    /**
+     * Does not cache: the datasets are loaded on every {@code get()}.
+     */
+    DatasetCache NONE = (connector, identifier, loader) -> loader.load();
+
+    /**
+     * Returns the cached dataset or loads it.
+     *
+     * @param connector  the connector of the dataset.
+     * @param identifier the identifier of the dataset.
+     * @param loader     loads the dataset from the connector.
+     */
+    Dataset get(Connector connector, String identifier, Loader loader) throws ConnectorException;
+
+    /**
+     * Loads a dataset from its connector.
+     */
+    @FunctionalInterface
+    interface Loader {
+        Dataset load() throws ConnectorException;
+    }
+}
@@ -0,0 +1,380 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import no.ssb.vtl.connectors.ColumnarFileConnector;
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.model.ColumnarFile;
+import no.ssb.vtl.model.ColumnarFileDataset;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.StringPool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+
+/**
+ * A {@link DatasetCache} with size and time based eviction.
+ * <p>
+ * When the connector returns a version for a dataset (see {@link Connector#getVersion(String)}), the cached dataset
+ * is only used if it has the same version. The datasets can be materialized when they are loaded, either in memory
+ * as {@link StaticDataset}s whose strings are pooled or in temporary {@link ColumnarFile}s that are deleted when the
+ * datasets are evicted.
+ * <p>
+ * The cache counts the hits, the misses, the datasets reloaded because of a new version and the evictions.
+ */
+public final class DefaultDatasetCache implements DatasetCache {
+
+    private final Cache<Key, Entry> cache;
+    private final Materialization materialization;
+    private final Path directory;
+    private final StringPool stringPool;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+
+    private DefaultDatasetCache(Builder builder) {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats().ticker(builder.ticker);
+        if (builder.maximumRows >= 0) {
+            cacheBuilder.maximumWeight(builder.maximumRows).weigher((Key key, Entry entry) -> entry.weight);
+        } else if (builder.maximumSize >= 0) {
+            cacheBuilder.maximumSize(builder.maximumSize);
+        }
+        if (builder.expireAfterWrite >= 0)
+            cacheBuilder.expireAfterWrite(builder.expireAfterWrite, TimeUnit.NANOSECONDS);
+        if (builder.expireAfterAccess >= 0)
+            cacheBuilder.expireAfterAccess(builder.expireAfterAccess, TimeUnit.NANOSECONDS);
+        this.cache = cacheBuilder.removalListener(DefaultDatasetCache::onRemoval).build();
+        this.materialization = builder.materialization;
+        this.directory = builder.directory;
+        this.stringPool = builder.stringPool != null ? builder.stringPool : new StringPool();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Dataset get(Connector connector, String identifier, Loader loader) throws ConnectorException {
+        Key key = new Key(connector, identifier);
+        String version = connector.getVersion(identifier).orElse(null);
+        boolean[] loaded = new boolean[1];
+        try {
+            Entry entry = cache.get(key, () -> {
+                loaded[0] = true;
+                return load(loader, version);
+            });
+            if (!loaded[0] && version != null && !version.equals(entry.version)) {
+                stale.increment();
+                cache.asMap().remove(key, entry);
+                entry = cache.get(key, () -> {
+                    loaded[0] = true;
+                    return load(loader, version);
+                });
+            }
+            (loaded[0] ? misses : hits).increment();
+            return entry.dataset;
+        } catch (ExecutionException | UncheckedExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throwIfInstanceOf(cause, ConnectorException.class);
+            throwIfUnchecked(cause);
+            throw new ConnectorException(cause);
+        }
+    }
+
+    private Entry load(Loader loader, String version) throws ConnectorException {
+        Dataset dataset = loader.load();
+        try {
+            switch (materialization) {
+                case MEMORY:
+                    return new Entry(toMemory(dataset), version, null);
+                case FILE:
+                    Path file = directory == null
+                            ? Files.createTempFile("vtl-cache-", ColumnarFileConnector.EXTENSION)
+                            : Files.createTempFile(directory, "vtl-cache-", ColumnarFileConnector.EXTENSION);
+                    try {
+                        ColumnarFile.write(dataset, file);
+                        return new Entry(ColumnarFileDataset.open(file), version, file);
+                    } catch (IOException | RuntimeException e) {
+                        Files.deleteIfExists(file);
+                        throw e;
+                    }
+                default:
+                    return new Entry(dataset, version, null);
+            }
+        } catch (IOException ioe) {
+            throw new ConnectorException("could not materialize " + dataset, ioe);
+        }
+    }
+
+    /**
+     * Copies the data points in a {@link StaticDataset}, with pooled strings.
+     */
+    private StaticDataset toMemory(Dataset dataset) {
+        StaticDataset.ValueBuilder builder = StaticDataset.create(dataset.getDataStructure());
+        try (Stream<DataPoint> data = dataset.getData()) {
+            Iterator<DataPoint> iterator = data.iterator();
+            while (iterator.hasNext()) {
+                DataPoint dataPoint = DataPoint.mutable(iterator.next());
+                for (int i = 0; i < dataPoint.size(); i++) {
+                    dataPoint.set(i, stringPool.intern(dataPoint.get(i)));
+                }
+                builder.addPoints(dataPoint);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void onRemoval(RemovalNotification<Key, Entry> notification) {
+        Entry entry = notification.getValue();
+        if (entry == null || entry.file == null)
+            return;
+        try {
+            // The mapping of the file stays valid on the systems that allow it.
+            Files.deleteIfExists(entry.file);
+        } catch (IOException ioe) {
+            entry.file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Removes the dataset of a connector from the cache.
+     */
+    public void invalidate(Connector connector, String identifier) {
+        cache.invalidate(new Key(connector, identifier));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached datasets.
+     */
+    public long size() {
+        cache.cleanUp();
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of datasets returned from the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of datasets loaded from the connectors.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of cached datasets that were reloaded because their version changed.
+     */
+    public long getStaleCount() {
+        return stale.sum();
+    }
+
+    /**
+     * Returns the number of datasets evicted because of the size or time limits.
+     */
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", cache.size())
+                .add("hits", getHitCount())
+                .add("misses", getMissCount())
+                .add("stale", getStaleCount())
+                .add("evictions", getEvictionCount())
+                .add("materialization", materialization)
+                .toString();
+    }
+
+    /**
+     * How the datasets are kept in the cache.
+     */
+    public enum Materialization {
+        /**
+         * The datasets returned by the connectors are cached as is.
+         */
+        NONE,
+        /**
+         * The data points are copied in memory.
+         */
+        MEMORY,
+        /**
+         * The data points are written to a temporary columnar file.
+         */
+        FILE
+    }
+
+    private static final class Key {
+
+        private final Connector connector;
+        private final String identifier;
+
+        private Key(Connector connector, String identifier) {
+            this.connector = checkNotNull(connector);
+            this.identifier = checkNotNull(identifier);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return connector == key.connector && identifier.equals(key.identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(connector), identifier);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Dataset dataset;
+        private final String version;
+        private final Path file;
+        private final int weight;
+
+        private Entry(Dataset dataset, String version, Path file) {
+            this.dataset = dataset;
+            this.version = version;
+            this.file = file;
+            // Datasets of unknown size weigh one row.
+            long rows = dataset.getSize().orElse(dataset.getStatistics().getRowCount().orElse(1L));
+            this.weight = (int) Math.min(Math.max(rows, 1), Integer.MAX_VALUE);
+        }
+    }
+
+    public static final class Builder {
+
+        private long maximumSize = -1;
+        private long maximumRows = -1;
+        private long expireAfterWrite = -1;
+        private long expireAfterAccess = -1;
+        private Materialization materialization = Materialization.NONE;
+        private Path directory;
+        private StringPool stringPool;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * The maximum number of cached datasets.
+         */
+        public Builder maximumSize(long datasets) {
+            checkArgument(datasets >= 0, "maximum size was negative");
+            this.maximumSize = datasets;
+            return this;
+        }
+
+        /**
+         * The maximum number of rows of the cached datasets. Takes precedence over {@link #maximumSize(long)}.
+         */
+        public Builder maximumRows(long rows) {
+            checkArgument(rows >= 0, "maximum rows was negative");
+            this.maximumRows = rows;
+            return this;
+        }
+
+        /**
+         * Evicts the datasets the given time after they were loaded.
+         */
+        public Builder expireAfterWrite(long duration, TimeUnit unit) {
+            checkArgument(duration >= 0, "duration was negative");
+            this.expireAfterWrite = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Evicts the datasets the given time after they were last used.
+         */
+        public Builder expireAfterAccess(long duration, TimeUnit unit) {
+            checkArgument(duration >= 0, "duration was negative");
+            this.expireAfterAccess = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder materialization(Materialization materialization) {
+            this.materialization = checkNotNull(materialization);
+            return this;
+        }
+
+        /**
+         * The directory of the files of {@link Materialization#FILE}, the temporary directory by default.
+         */
+        public Builder directory(Path directory) {
+            this.directory = checkNotNull(directory);
+            return this;
+        }
+
+        /**
+         * The pool of the strings of {@link Materialization#MEMORY}, a pool of the cache by default. Use the pool of
+         * the engine, {@link VTLScriptEngine#getStringPool()}, so that the cached datasets share its strings.
+         */
+        public Builder stringPool(StringPool stringPool) {
+            this.stringPool = checkNotNull(stringPool);
+            return this;
+        }
+
+        Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        public DefaultDatasetCache build() {
+            return new DefaultDatasetCache(this);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2018 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointSorter;
+import no.ssb.vtl.script.operations.join.JoinSkewMetrics;
+import no.ssb.vtl.script.operations.join.JoinStrategy;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The settings of the operations created by a {@link VTLScriptEngine}.
+ * <p>
+ * Each engine gives its own settings to the operations it creates, so engines with different settings can run in
+ * the same JVM. The settings are immutable.
+ */
+public final class ExecutionSettings {
+
+    /**
+     * The default settings: {@link DataPointSorter#DEFAULT_MEMORY_BUDGET}, sequential evaluation and
+     * {@link JoinStrategy#AUTO}. Used by the operations that are not created by an engine.
+     */
+    public static final ExecutionSettings DEFAULT = new ExecutionSettings(
+            DataPointSorter.DEFAULT_MEMORY_BUDGET, null, JoinStrategy.AUTO, null
+    );
+
+    private final long sortMemoryBudget;
+    private final ForkJoinPool forkJoinPool;
+    private final JoinStrategy joinStrategy;
+    private final JoinSkewMetrics joinSkewMetrics;
+
+    private ExecutionSettings(long sortMemoryBudget, ForkJoinPool forkJoinPool, JoinStrategy joinStrategy,
+                              JoinSkewMetrics joinSkewMetrics) {
+        this.sortMemoryBudget = sortMemoryBudget;
+        this.forkJoinPool = forkJoinPool;
+        this.joinStrategy = joinStrategy;
+        this.joinSkewMetrics = joinSkewMetrics;
+    }
+
+    /**
+     * Returns the memory budget, in bytes, of the sorts.
+     */
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
+
+    /**
+     * Returns a copy of these settings with the given memory budget, in bytes, of the sorts.
+     */
+    public ExecutionSettings withSortMemoryBudget(long bytes) {
+        checkArgument(bytes > 0, "invalid memory budget %s", bytes);
+        return new ExecutionSettings(bytes, forkJoinPool, joinStrategy, joinSkewMetrics);
+    }
+
+    /**
+     * Returns the pool that reads the partitions of the datasets in parallel, or null if they are read sequentially.
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Returns a copy of these settings with the given pool.
+     *
+     * @param pool the pool that reads the partitions in parallel, null to read them sequentially.
+     */
+    public ExecutionSettings withForkJoinPool(ForkJoinPool pool) {
+        return new ExecutionSettings(sortMemoryBudget, pool, joinStrategy, joinSkewMetrics);
+    }
+
+    /**
+     * Returns the strategy of the join operations that do not set one, {@link JoinStrategy#AUTO} by default.
+     */
+    public JoinStrategy getJoinStrategy() {
+        return joinStrategy;
+    }
+
+    /**
+     * Returns a copy of these settings with the given strategy of the join operations.
+     */
+    public ExecutionSettings withJoinStrategy(JoinStrategy strategy) {
+        return new ExecutionSettings(sortMemoryBudget, forkJoinPool, checkNotNull(strategy), joinSkewMetrics);
+    }
+
+    /**
+     * Returns the metrics that the skew metrics of the join operations are added to, or null.
+     */
+    public JoinSkewMetrics getJoinSkewMetrics() {
+        return joinSkewMetrics;
+    }
+
+    /**
+     * Returns a copy of these settings with the given metrics, updated by the join operations.
+     */
+    public ExecutionSettings withJoinSkewMetrics(JoinSkewMetrics metrics) {
+        return new ExecutionSettings(sortMemoryBudget, forkJoinPool, joinStrategy, checkNotNull(metrics));
+    }
+
+    /**
+     * Sorts the data within the memory budget of the sorts.
+     */
+    public Stream<DataPoint> sorted(Stream<DataPoint> data, Comparator<? super DataPoint> comparator) {
+        return new DataPointSorter(comparator, getSortMemoryBudget()).sort(data);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("sortMemoryBudget", sortMemoryBudget)
+                .add("forkJoinPool", forkJoinPool)
+                .add("joinStrategy", joinStrategy)
+                .add("joinSkewMetrics", joinSkewMetrics)
+                .toString();
+    }
+}
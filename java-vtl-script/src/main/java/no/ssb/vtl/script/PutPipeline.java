@@ -0,0 +1,330 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.connectors.DataPointSink;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfInstanceOf;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+
+/**
+ * Writes the datasets of {@code put()} to the connectors.
+ * <p>
+ * When the connector opens a {@link DataPointSink}, the data points are streamed to it in batches of
+ * {@link Builder#batchSize(int)} data points. The batches are written by a separate thread while the dataset is
+ * evaluated; at most {@link Builder#bufferedBatches(int)} batches wait for the writer and the evaluation blocks
+ * when they are all full. The other connectors receive the dataset with {@link Connector#putDataset(String, Dataset)}.
+ * <p>
+ * Each put is described by a {@link Report} given to the listener of the pipeline.
+ */
+public final class PutPipeline {
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    public static final int DEFAULT_BUFFERED_BATCHES = 4;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("vtl-put-%d").setDaemon(true).build();
+
+    private final int batchSize;
+    private final int bufferedBatches;
+    private final Consumer<Report> listener;
+
+    private PutPipeline(Builder builder) {
+        this.batchSize = builder.batchSize;
+        this.bufferedBatches = builder.bufferedBatches;
+        this.listener = builder.listener;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBufferedBatches() {
+        return bufferedBatches;
+    }
+
+    /**
+     * Writes a dataset to a connector.
+     *
+     * @param connector  the connector that handles the identifier.
+     * @param identifier the identifier of the dataset.
+     * @param dataset    the dataset to write.
+     * @return the report of the put.
+     */
+    public Report put(Connector connector, String identifier, Dataset dataset) throws ConnectorException {
+        checkNotNull(connector);
+        checkNotNull(identifier);
+        checkNotNull(dataset);
+
+        long start = System.nanoTime();
+        Report report;
+        Optional<DataPointSink> sink = firstNonNull(
+                connector.openSink(identifier, dataset.getDataStructure()), Optional.empty()
+        );
+        if (sink.isPresent()) {
+            try (DataPointSink opened = sink.get()) {
+                report = bufferedBatches == 0
+                        ? write(identifier, dataset, opened)
+                        : writeBuffered(identifier, dataset, opened);
+            }
+        } else {
+            report = new Report(identifier, connector.putDataset(identifier, dataset), -1, -1, 0);
+        }
+        report.nanos = System.nanoTime() - start;
+        listener.accept(report);
+        return report;
+    }
+
+    /**
+     * Writes the batches in the current thread.
+     */
+    private Report write(String identifier, Dataset dataset, DataPointSink sink) throws ConnectorException {
+        long rowCount = 0;
+        long batchCount = 0;
+        try (Stream<DataPoint> data = dataset.getData()) {
+            Iterator<DataPoint> iterator = data.iterator();
+            while (iterator.hasNext()) {
+                List<DataPoint> batch = nextBatch(iterator);
+                sink.write(batch);
+                rowCount += batch.size();
+                batchCount++;
+            }
+        }
+        return new Report(identifier, sink.commit(), rowCount, sink.getBytesWritten(), batchCount);
+    }
+
+    /**
+     * Writes the batches in a separate thread, through a bounded queue.
+     */
+    private Report writeBuffered(String identifier, Dataset dataset, DataPointSink sink)
+            throws ConnectorException {
+        // An empty batch ends the stream.
+        BlockingQueue<List<DataPoint>> queue = new ArrayBlockingQueue<>(bufferedBatches);
+        ExecutorService executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (List<DataPoint> batch = queue.take(); !batch.isEmpty(); batch = queue.take()) {
+                    sink.write(batch);
+                }
+                return null;
+            });
+
+            long rowCount = 0;
+            long batchCount = 0;
+            try (Stream<DataPoint> data = dataset.getData()) {
+                Iterator<DataPoint> iterator = data.iterator();
+                while (iterator.hasNext()) {
+                    List<DataPoint> batch = nextBatch(iterator);
+                    enqueue(queue, batch, writer);
+                    rowCount += batch.size();
+                    batchCount++;
+                }
+            }
+            enqueue(queue, new ArrayList<>(0), writer);
+            writer.get();
+
+            return new Report(identifier, sink.commit(), rowCount, sink.getBytesWritten(), batchCount);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorException("put of " + identifier + " was interrupted", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throwIfInstanceOf(cause, ConnectorException.class);
+            throwIfUnchecked(cause);
+            throw new ConnectorException("could not put " + identifier, cause);
+        } finally {
+            // Stops the writer before the sink is closed.
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for room in the queue, unless the writer failed.
+     */
+    private static void enqueue(BlockingQueue<List<DataPoint>> queue, List<DataPoint> batch, Future<?> writer)
+            throws InterruptedException, ExecutionException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (writer.isDone()) {
+                writer.get();
+                throw new IllegalStateException("writer stopped");
+            }
+        }
+    }
+
+    private List<DataPoint> nextBatch(Iterator<DataPoint> iterator) {
+        List<DataPoint> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && iterator.hasNext()) {
+            batch.add(iterator.next());
+        }
+        return batch;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("batchSize", batchSize)
+                .add("bufferedBatches", bufferedBatches)
+                .toString();
+    }
+
+    /**
+     * The result of a put.
+     */
+    public static final class Report {
+
+        private final String identifier;
+        private final Dataset dataset;
+        private final long rowCount;
+        private final long bytesWritten;
+        private final long batchCount;
+        private long nanos;
+
+        private Report(String identifier, Dataset dataset, long rowCount, long bytesWritten, long batchCount) {
+            this.identifier = identifier;
+            this.dataset = dataset;
+            this.rowCount = rowCount;
+            this.bytesWritten = bytesWritten;
+            this.batchCount = batchCount;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * Returns the dataset returned by the connector.
+         */
+        public Dataset getDataset() {
+            return dataset;
+        }
+
+        /**
+         * Returns the number of data points written to the sink, or -1 if the connector did not open a sink.
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Returns the number of bytes written by the sink, or -1 if unknown.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Returns the number of batches written to the sink.
+         */
+        public long getBatchCount() {
+            return batchCount;
+        }
+
+        public long getDuration(TimeUnit unit) {
+            return unit.convert(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("identifier", identifier)
+                    .add("rowCount", rowCount)
+                    .add("bytesWritten", bytesWritten)
+                    .add("batchCount", batchCount)
+                    .add("duration", getDuration(TimeUnit.MILLISECONDS) + "ms")
+                    .toString();
+        }
+    }
+
+    public static final class Builder {
+
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int bufferedBatches = DEFAULT_BUFFERED_BATCHES;
+        private Consumer<Report> listener = report -> {
+        };
+
+        private Builder() {
+        }
+
+        /**
+         * The number of data points of the batches.
+         */
+        public Builder batchSize(int batchSize) {
+            checkArgument(batchSize > 0, "batch size must be positive");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * The number of batches that can wait for the writer, 0 to write the batches in the thread that evaluates
+         * the dataset.
+         */
+        public Builder bufferedBatches(int bufferedBatches) {
+            checkArgument(bufferedBatches >= 0, "buffered batches was negative");
+            this.bufferedBatches = bufferedBatches;
+            return this;
+        }
+
+        /**
+         * Called with the report of each put.
+         */
+        public Builder listener(Consumer<Report> listener) {
+            this.listener = checkNotNull(listener);
+            return this;
+        }
+
+        public PutPipeline build() {
+            return new PutPipeline(this);
+        }
+    }
+}
@@ -24,11 +24,16 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.model.DataPartitions;
+import no.ssb.vtl.model.DataPointSorter;
+import no.ssb.vtl.model.StringPool;
 import no.ssb.vtl.parser.VTLLexer;
 import no.ssb.vtl.parser.VTLParser;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.error.VTLCompileException;
 import no.ssb.vtl.script.error.VTLScriptException;
+import no.ssb.vtl.script.operations.join.JoinSkewMetrics;
+import no.ssb.vtl.script.operations.join.JoinStrategy;
 import no.ssb.vtl.script.support.SyntaxErrorListener;
 import no.ssb.vtl.script.visitors.AssignmentVisitor;
 import org.antlr.v4.runtime.ANTLRInputStream;
@@ -54,15 +59,22 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * A VTL {@link ScriptEngine} implementation.
  */
 public class VTLScriptEngine extends AbstractScriptEngine {
 
     private final ImmutableList<Connector> connectors;
+    private final StringPool stringPool = new StringPool();
     private TimeZone timeZone = TimeZone.getDefault();
+    private DatasetCache datasetCache = DatasetCache.NONE;
+    private PutPipeline putPipeline = PutPipeline.builder().build();
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT.withJoinSkewMetrics(new JoinSkewMetrics());
 
     /**
      * Create a new engine instance.
@@ -116,6 +128,141 @@ public class VTLScriptEngine extends AbstractScriptEngine {
         timeZone = tz;
     }
 
+    /**
+     * Returns the string pool of this engine.
+     * <p>
+     * Connectors can use the pool so that the string values of all the datasets of the engine share the
+     * same instances.
+     */
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * Returns the settings given to the operations created by this engine.
+     */
+    public ExecutionSettings getExecutionSettings() {
+        return settings;
+    }
+
+    /**
+     * Returns the memory budget, in bytes, of the sorts.
+     */
+    public long getSortMemoryBudget() {
+        return settings.getSortMemoryBudget();
+    }
+
+    /**
+     * Sets the memory budget, in bytes, of the sorts.
+     * <p>
+     * When the datasets cannot provide their data in the required order, operations sort it in memory until the
+     * budget is reached and then write sorted runs to temporary files. The budget applies to the operations of the
+     * scripts evaluated afterwards by this engine; until it is set, {@link DataPointSorter#DEFAULT_MEMORY_BUDGET}
+     * is used.
+     *
+     * @param bytes the memory budget.
+     * @see DataPointSorter
+     */
+    public void setSortMemoryBudget(long bytes) {
+        settings = settings.withSortMemoryBudget(bytes);
+    }
+
+    /**
+     * Returns the pool that evaluates the partitions of the datasets, or null if they are evaluated sequentially.
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return settings.getForkJoinPool();
+    }
+
+    /**
+     * Sets the pool that evaluates the partitions of the datasets.
+     * <p>
+     * Filter, calc, fold, keep, drop, rename and check read the partitions of their input in parallel and return
+     * the data points in the same order as a sequential evaluation. Aggregations aggregate their groups in
+     * parallel. The pool applies to the operations of the scripts evaluated afterwards by this engine; until it is
+     * set, the datasets are evaluated sequentially.
+     *
+     * @param pool the pool, null to evaluate the datasets sequentially.
+     * @see DataPartitions
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        settings = settings.withForkJoinPool(pool);
+    }
+
+    /**
+     * Returns the strategy of the joins.
+     */
+    public JoinStrategy getJoinStrategy() {
+        return settings.getJoinStrategy();
+    }
+
+    /**
+     * Sets the strategy of the joins.
+     * <p>
+     * With {@link JoinStrategy#AUTO}, the default, inner and outer joins load the smaller input in a hash table
+     * when it is not sorted and its size is known, instead of sorting both inputs. The strategy applies to the
+     * joins of the scripts evaluated afterwards by this engine.
+     *
+     * @param strategy the strategy.
+     */
+    public void setJoinStrategy(JoinStrategy strategy) {
+        settings = settings.withJoinStrategy(strategy);
+    }
+
+    /**
+     * Returns the skewed keys of the joins of this engine.
+     * <p>
+     * Merge joins hold the rows of each child that have the same key in memory until they exceed a quarter of the
+     * sort memory budget, and then write them to a temporary file. The metrics count these keys.
+     */
+    public JoinSkewMetrics getJoinSkewMetrics() {
+        return settings.getJoinSkewMetrics();
+    }
+
+    /**
+     * Returns the cache of the datasets of the connectors.
+     */
+    public DatasetCache getDatasetCache() {
+        return datasetCache;
+    }
+
+    /**
+     * Sets the cache of the datasets of the connectors.
+     * <p>
+     * By default the datasets are requested from the connectors every time a script uses them. With a cache,
+     * for instance a {@link DefaultDatasetCache}, the scripts evaluated by the engine share the datasets. Give
+     * the {@link #getStringPool() string pool} of the engine to the cache so that the cached datasets share its
+     * strings:
+     * <pre>
+     *     engine.setDatasetCache(DefaultDatasetCache.builder()
+     *             .materialization(DefaultDatasetCache.Materialization.MEMORY)
+     *             .stringPool(engine.getStringPool())
+     *             .build());
+     * </pre>
+     *
+     * @param datasetCache the cache, {@link DatasetCache#NONE} to disable caching.
+     */
+    public void setDatasetCache(DatasetCache datasetCache) {
+        this.datasetCache = checkNotNull(datasetCache);
+    }
+
+    /**
+     * Returns the pipeline that writes the datasets of {@code put()}.
+     */
+    public PutPipeline getPutPipeline() {
+        return putPipeline;
+    }
+
+    /**
+     * Sets the pipeline that writes the datasets of {@code put()}, to change the size of the batches or to receive
+     * the number of rows and bytes written.
+     *
+     * @param putPipeline the pipeline.
+     */
+    public void setPutPipeline(PutPipeline putPipeline) {
+        this.putPipeline = checkNotNull(putPipeline);
+    }
+
     @Override
     public Object eval(String script, ScriptContext context) throws ScriptException {
         return eval(new StringReader(script), context);
@@ -200,7 +347,8 @@ public class VTLScriptEngine extends AbstractScriptEngine {
      * Run loop
      */
     protected Object run(VTLParser.StartContext start, Consumer<VTLScriptException> errorConsumer, ScriptContext context) throws VTLScriptException {
-        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(context, connectors);
+        AssignmentVisitor assignmentVisitor = new AssignmentVisitor(context, connectors, datasetCache, putPipeline,
+                settings);
         Object last = null;
         for (VTLParser.StatementContext statementContext : start.statement()) {
             try {
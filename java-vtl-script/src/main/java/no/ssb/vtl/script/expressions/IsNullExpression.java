@@ -0,0 +1,65 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.VTLBoolean;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLObject;
+
+import javax.script.Bindings;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The <code>is null</code> and <code>is not null</code> expressions.
+ */
+public class IsNullExpression implements VTLExpression<VTLBoolean> {
+
+    private final VTLExpression operand;
+    private final boolean negated;
+
+    public IsNullExpression(VTLExpression operand, boolean negated) {
+        this.operand = checkNotNull(operand);
+        this.negated = negated;
+    }
+
+    public VTLExpression getOperand() {
+        return operand;
+    }
+
+    /**
+     * Returns true for <code>is not null</code>.
+     */
+    public boolean isNegated() {
+        return negated;
+    }
+
+    @Override
+    public VTLBoolean resolve(Bindings bindings) {
+        VTLObject object = operand.resolve(bindings);
+        return VTLBoolean.of((object.get() == null) != negated);
+    }
+
+    @Override
+    public Class<VTLBoolean> getVTLType() {
+        return VTLBoolean.class;
+    }
+}
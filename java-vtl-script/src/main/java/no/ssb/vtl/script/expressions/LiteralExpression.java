@@ -37,6 +37,10 @@ public class LiteralExpression implements VTLExpression {
         this.literal = checkNotNull(literal);
     }
 
+    public VTLObject getLiteral() {
+        return literal;
+    }
+
     @Override
     public String toString() {
         return literal.toString();
@@ -0,0 +1,63 @@
+package no.ssb.vtl.script.expressions;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.VTLTyped;
+
+import javax.script.Bindings;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reference to a variable of the bindings.
+ */
+public class VariableExpression implements VTLExpression {
+
+    private final String identifier;
+    private final Class<?> type;
+
+    public VariableExpression(String identifier, VTLTyped<?> typed) {
+        this.identifier = checkNotNull(identifier);
+        this.type = checkNotNull(typed).getVTLType();
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public Class<?> getVTLType() {
+        return type;
+    }
+
+    @Override
+    public VTLObject resolve(Bindings bindings) {
+        return (VTLObject) bindings.get(identifier);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).addValue(identifier).toString();
+    }
+}
@@ -21,27 +21,40 @@ package no.ssb.vtl.script.operations;
  */
 
 import com.codepoetics.protonpack.StreamUtils;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Streams;
+import com.google.common.math.LongMath;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.model.ColumnStatistics;
+import no.ssb.vtl.model.ColumnVector;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
+import no.ssb.vtl.model.DataPointProjection;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
 import no.ssb.vtl.model.VTLFloat;
 import no.ssb.vtl.model.VTLInteger;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.ExecutionSettings;
 import no.ssb.vtl.script.error.TypeException;
 import no.ssb.vtl.script.operations.aggregation.AbstractAggregationFunction;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public class AggregationOperation extends AbstractUnaryDatasetOperation {
 
     private final List<Component> groupBy;
@@ -53,6 +66,8 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
     private final ImmutableList<String> childColumns;
     private final ImmutableList<String> groupByColumns;
 
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     public AggregationOperation(Dataset child, List<Component> groupBy, List<Component> aggregationComponents, AbstractAggregationFunction<? extends VTLNumber> aggregationFunction) {
         super(child);
         this.groupBy = groupBy;
@@ -62,7 +77,25 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
         this.groupByColumns = computeGroupByColumns();
         this.aggregateColumns = computeColumnsToAggregate(aggregationComponents);
         this.columns = ImmutableList.copyOf(getDataStructure().keySet());
-        this.childColumns = ImmutableList.copyOf(getChild().getDataStructure().keySet());
+        this.childColumns = ImmutableList.copyOf(computeChildStructure().keySet());
+    }
+
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
+    /**
+     * The structure of the child restricted to the group by and aggregated components.
+     */
+    private DataStructure computeChildStructure() {
+        return getChild().getDataStructure().project(getDataStructure().keySet());
     }
 
     private ImmutableList<String> computeGroupByColumns() {
@@ -112,6 +145,27 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
         return newDataStructure.build();
     }
 
+    private Order computeGroupByOrder() {
+        Order.Builder builder = Order.create(getChild().getDataStructure());
+        groupBy.forEach(component -> builder.put(component, Order.Direction.ASC));
+        return builder.build();
+    }
+
+    /**
+     * Convert {@link VTLObject#NULL} to a typed null value.
+     */
+    private VTLNumber toNumber(VTLObject value, String columnName) {
+        // That's why VTLObject.NULL should be removed.
+        if (value == VTLObject.NULL) {
+            if (getChild().getDataStructure().get(columnName).getType() == Double.class) {
+                return VTLFloat.of((Double) null);
+            } else {
+                return VTLInteger.of((Long) null);
+            }
+        }
+        return (VTLNumber) value;
+    }
+
     private DataPoint aggregate(List<DataPoint> datapoints) {
 
         DataPoint result = DataPoint.create(columns.size());
@@ -122,16 +176,7 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
             int childIndex = childColumns.indexOf(columnName);
             int index = columns.indexOf(columnName);
             for (DataPoint datapoint : datapoints) {
-                VTLObject value = datapoint.get(childIndex);
-                // That's why VTLObject.NULL should be removed.
-                if (value == VTLObject.NULL) {
-                    if (getChild().getDataStructure().get(columnName).getType() == Double.class) {
-                        value = VTLFloat.of((Double) null);
-                    } else {
-                        value = VTLInteger.of((Long) null);
-                    }
-                }
-                list.add((VTLNumber) value);
+                list.add(toNumber(datapoint.get(childIndex), columnName));
             }
             result.set(index, aggregationFunction.apply(list));
         }
@@ -149,18 +194,133 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
 
     @Override
     public Stream<DataPoint> getData() {
-        DataStructure childStructure = getChild().getDataStructure();
-    
-        Order.Builder builder = Order.create(childStructure);
-        groupBy.forEach(component -> builder.put(component, Order.Direction.ASC));
-        Order order = builder.build();
-    
-        Stream<DataPoint> data = getChild().getData(order).orElseGet(() -> getChild().getData().sorted(order));
+        Order order = computeGroupByOrder();
+
+        DataStructure childStructure = computeChildStructure();
+
+        // Only the group by and aggregated components are read.
+        DataStructure fullStructure = getChild().getDataStructure();
+        Stream<DataPoint> data = getChild().getData(order, Filtering.ALL, childStructure.keySet()).map(
+                stream -> stream.map(DataPointProjection.normalize(fullStructure, childStructure, childStructure))
+        ).orElseGet(
+                () -> settings.sorted(getChild().getData(), order).map(
+                        new DataPointProjection(getChild().getDataStructure(), childStructure)
+                )
+        );
+        Order groupOrder = Order.create(childStructure).putAll(order).build();
         Stream<List<DataPoint>> groupedDataPoints = StreamUtils.aggregate(data,
-                (previous, current) -> order.compare(previous, current) == 0)
+                (previous, current) -> groupOrder.compare(previous, current) == 0)
                 .onClose(data::close);
         
-        return groupedDataPoints.map(this::aggregate);
+        // The groups are aggregated in parallel when a pool is configured.
+        return DataPartitions.parallelMap(groupedDataPoints, this::aggregate, settings.getForkJoinPool());
+    }
+
+    /**
+     * Aggregates the batches of the child column by column.
+     * <p>
+     * The batches are read sorted by the group by columns so groups can span several input batches.
+     */
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        Order order = computeGroupByOrder();
+        DataStructure childStructure = computeChildStructure();
+
+        Stream<DataPointBatch> batches = getChild().getBatches(order, Filtering.ALL, childStructure.keySet())
+                .map(stream -> stream.map(batch -> batch.project(childStructure)))
+                .orElseGet(() -> DataPointBatch.fromDataPoints(
+                        settings.sorted(getChild().getData(), order), getChild().getDataStructure(), DataPointBatch.DEFAULT_SIZE
+                ).map(batch -> batch.project(childStructure)));
+
+        return Streams.stream(new BatchAggregator(batches.iterator())).onClose(batches::close);
+    }
+
+    /**
+     * Reads sorted batches and outputs one row per group.
+     */
+    private final class BatchAggregator extends AbstractIterator<DataPointBatch> {
+
+        private final Iterator<DataPointBatch> input;
+
+        private final int[] groupByChildIndices;
+        private final int[] groupByIndices;
+        private final int[] aggregateChildIndices;
+        private final int[] aggregateIndices;
+
+        // The current group.
+        private VTLObject[] key;
+        private final List<List<VTLNumber>> values;
+
+        private BatchAggregator(Iterator<DataPointBatch> input) {
+            this.input = input;
+            this.groupByChildIndices = groupByColumns.stream().mapToInt(childColumns::indexOf).toArray();
+            this.groupByIndices = groupByColumns.stream().mapToInt(columns::indexOf).toArray();
+            this.aggregateChildIndices = aggregateColumns.stream().mapToInt(childColumns::indexOf).toArray();
+            this.aggregateIndices = aggregateColumns.stream().mapToInt(columns::indexOf).toArray();
+            this.values = Lists.newArrayListWithCapacity(aggregateColumns.size());
+            for (int i = 0; i < aggregateColumns.size(); i++) {
+                values.add(Lists.newArrayList());
+            }
+        }
+
+        private boolean isSameGroup(DataPointBatch batch, int row) {
+            for (int i = 0; i < groupByChildIndices.length; i++) {
+                VTLObject value = batch.getColumn(groupByChildIndices[i]).get(row);
+                if (Order.VTL_OBJECT_COMPARATOR.compare(key[i], value) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void startGroup(DataPointBatch batch, int row) {
+            key = new VTLObject[groupByChildIndices.length];
+            for (int i = 0; i < groupByChildIndices.length; i++) {
+                key[i] = batch.getColumn(groupByChildIndices[i]).get(row);
+            }
+            values.forEach(List::clear);
+        }
+
+        private void endGroup(DataPointBatch.Builder output) {
+            for (int i = 0; i < groupByIndices.length; i++) {
+                output.getColumn(groupByIndices[i]).add(key[i]);
+            }
+            for (int i = 0; i < aggregateIndices.length; i++) {
+                output.getColumn(aggregateIndices[i]).add(aggregationFunction.apply(values.get(i)));
+            }
+            output.endRow();
+            key = null;
+        }
+
+        @Override
+        protected DataPointBatch computeNext() {
+            DataPointBatch.Builder output = DataPointBatch.builder(getDataStructure(), DataPointBatch.DEFAULT_SIZE);
+            while (output.size() < DataPointBatch.DEFAULT_SIZE && input.hasNext()) {
+                DataPointBatch batch = input.next();
+                ColumnVector[] aggregated = new ColumnVector[aggregateChildIndices.length];
+                for (int i = 0; i < aggregateChildIndices.length; i++) {
+                    aggregated[i] = batch.getColumn(aggregateChildIndices[i]);
+                }
+                for (int row = 0; row < batch.size(); row++) {
+                    if (key != null && !isSameGroup(batch, row)) {
+                        endGroup(output);
+                    }
+                    if (key == null) {
+                        startGroup(batch, row);
+                    }
+                    for (int i = 0; i < aggregated.length; i++) {
+                        values.get(i).add(toNumber(aggregated[i].get(row), aggregateColumns.get(i)));
+                    }
+                }
+            }
+            if (!input.hasNext() && key != null) {
+                endGroup(output);
+            }
+            if (output.size() == 0) {
+                return endOfData();
+            }
+            return output.build();
+        }
     }
 
     /**
@@ -179,4 +339,39 @@ public class AggregationOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return Optional.empty();
     }
+
+    /**
+     * The number of groups is estimated as the product of the distinct counts of the group by columns, limited to
+     * the number of rows of the child.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics childStatistics = getChild().getStatistics();
+        DataStructure childStructure = getChild().getDataStructure();
+        Optional<Long> childRowCount = childStatistics.getRowCount();
+
+        Long groups = 1L;
+        Statistics.Builder statistics = Statistics.builder();
+        for (Component component : groupBy) {
+            String name = childStructure.getName(component);
+            ColumnStatistics column = childStatistics.getColumn(name);
+            statistics.column(name, column);
+            Optional<Long> distinctCount = column.getDistinctCount();
+            if (groups == null || !distinctCount.isPresent()) {
+                groups = null;
+            } else {
+                long nulls = column.getNullFraction().orElse(0.0) > 0 ? 1 : 0;
+                groups = LongMath.saturatedMultiply(groups, distinctCount.get() + nulls);
+            }
+        }
+        if (groups == null)
+            groups = childRowCount.orElse(null);
+        else if (childRowCount.isPresent())
+            groups = Math.min(groups, childRowCount.get());
+
+        return statistics
+                .order(computeGroupByOrder(), childStructure)
+                .build()
+                .withRowCount(groups);
+    }
 }
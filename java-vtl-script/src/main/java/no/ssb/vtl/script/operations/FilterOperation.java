@@ -20,18 +20,30 @@ package no.ssb.vtl.script.operations;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.Lists;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
+import no.ssb.vtl.model.DataPointProjection;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
 import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.ExecutionSettings;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
 import no.ssb.vtl.script.operations.join.DataPointBindings;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -41,6 +53,12 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
     private final VTLExpression predicate;
     private final ComponentBindings componentBindings;
 
+    // Conditions of the predicate that the child can evaluate and the remaining ones.
+    private Filtering pushedFiltering;
+    private List<VTLExpression> residualPredicates;
+
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     public FilterOperation(Dataset dataset, VTLExpression predicate, ComponentBindings componentBindings) {
         super(checkNotNull(dataset, "the dataset was null"));
         this.predicate = checkNotNull(predicate);
@@ -51,18 +69,163 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
         return getChild().getDataStructure();
     }
 
+    /**
+     * Split the predicate in a {@link StructuredFiltering} given to the child and the conditions that cannot be
+     * converted.
+     */
+    private void splitPredicate() {
+        if (residualPredicates != null)
+            return;
+        FilteringConverter converter = new FilteringConverter(getDataStructure(), componentBindings);
+        List<StructuredFiltering> pushed = Lists.newArrayList();
+        List<VTLExpression> residual = Lists.newArrayList();
+        for (VTLExpression conjunct : FilteringConverter.conjuncts(predicate)) {
+            StructuredFiltering filtering = converter.convert(conjunct);
+            if (filtering != null)
+                pushed.add(filtering);
+            else
+                residual.add(conjunct);
+        }
+        pushedFiltering = pushed.isEmpty() ? Filtering.ALL : StructuredFiltering.and(pushed);
+        residualPredicates = residual;
+    }
+
+    /**
+     * Returns the part of the predicate that is given to the child, or {@link Filtering#ALL}.
+     */
+    public Filtering getPushedFiltering() {
+        splitPredicate();
+        return pushedFiltering;
+    }
+
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     @Override
     public Stream<DataPoint> getData() {
+        DataStructure structure = getDataStructure();
+        Filtering pushed = getPushedFiltering();
+        if (pushed != Filtering.ALL) {
+            Optional<Stream<DataPoint>> data = getChild().getData(getChildOrder(), pushed, structure.keySet());
+            if (data.isPresent())
+                return filter(data.get(), residualPredicates);
+        }
+        return DataPartitions.parallel(this, settings.getForkJoinPool()).orElseGet(
+                () -> filter(getChild().getData(), Collections.singletonList(predicate))
+        );
+    }
+
+    /**
+     * Returns the order the child returns its data points in, so that the pushed filtering does not change it.
+     * Empty if the order is not known.
+     */
+    private Order getChildOrder() {
+        Order.Builder order = Order.create(getChild().getDataStructure());
+        for (Map.Entry<String, Order.Direction> entry : getChild().getStatistics().getOrder().entrySet()) {
+            order.put(entry.getKey(), entry.getValue());
+        }
+        return order.build();
+    }
+
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        return DataPartitions.map(getChild().getPartitions(count),
+                data -> filter(data, Collections.singletonList(predicate)));
+    }
+
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        // The structure of the child is the same; structured filtering can be given to the child and the
+        // others are applied after the predicate.
+        Filtering childFiltering = StructuredFiltering.combine(
+                StructuredFiltering.supported(filtering, condition -> true), getPushedFiltering()
+        );
+        Filtering remaining = StructuredFiltering.unsupported(filtering, condition -> true);
+
+        DataStructure structure = getDataStructure();
+        Optional<Stream<DataPoint>> data = getChild().getData(orders, childFiltering, structure.keySet());
+        if (!data.isPresent())
+            return super.getData(orders, filtering, components);
+
+        Stream<DataPoint> filtered = filter(data.get(), residualPredicates).filter(remaining);
+        DataStructure projected = structure.project(components);
+        if (projected != structure)
+            filtered = filtered.map(new DataPointProjection(structure, projected));
+        return Optional.of(filtered);
+    }
+
+    private Stream<DataPoint> filter(Stream<DataPoint> data, List<VTLExpression> predicates) {
+        if (predicates.isEmpty())
+            return data;
         DataPointBindings dataPointBindings = new DataPointBindings(componentBindings, getDataStructure());
-        return getChild().getData()
-                .map(dataPointBindings::setDataPoint)
-                .filter(bindings -> {
-                    VTLObject resolved = predicate.resolve(dataPointBindings);
-                    return resolved.get() == null ? false : VTLBoolean.of((Boolean) resolved.get()).get();
-                })
+        return data.map(dataPointBindings::setDataPoint)
+                .filter(bindings -> test(bindings, predicates))
                 .map(DataPointBindings::getDataPoint);
     }
 
+    private static boolean test(DataPointBindings bindings, List<VTLExpression> predicates) {
+        for (VTLExpression predicate : predicates) {
+            VTLObject resolved = predicate.resolve(bindings);
+            if (resolved.get() == null || !VTLBoolean.of((Boolean) resolved.get()).get())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the predicates and the filtering on each row of the batches and keeps the columns of the matching
+     * rows.
+     */
+    private Stream<DataPointBatch> filterBatches(Stream<DataPointBatch> batches, List<VTLExpression> predicates,
+                                                 Filtering filtering) {
+        if (predicates.isEmpty() && filtering == Filtering.ALL)
+            return batches.filter(batch -> !batch.isEmpty());
+        DataStructure structure = getDataStructure();
+        DataPointBindings dataPointBindings = new DataPointBindings(componentBindings, structure);
+        // Rows are copied in the same data point since only the result of the predicate is kept.
+        DataPoint row = DataPoint.create(structure.size());
+        return batches.map(batch -> {
+            int[] selection = new int[batch.size()];
+            int selected = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                dataPointBindings.setDataPoint(batch.fill(i, row));
+                if (test(dataPointBindings, predicates) && filtering.apply(row))
+                    selection[selected++] = i;
+            }
+            return batch.select(selection, selected);
+        }).filter(batch -> !batch.isEmpty());
+    }
+
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        return filterBatches(getChild().getBatches(), Collections.singletonList(predicate), Filtering.ALL);
+    }
+
+    @Override
+    public Optional<Stream<DataPointBatch>> getBatches(Order orders, Filtering filtering, Set<String> components) {
+        // The structure of the child is the same so the order and the structured filtering can be forwarded along
+        // with the converted part of the predicate. The others are applied after the predicate. The predicate can
+        // use any component so they are all requested.
+        Filtering childFiltering = StructuredFiltering.combine(
+                StructuredFiltering.supported(filtering, condition -> true), getPushedFiltering()
+        );
+        Filtering remaining = StructuredFiltering.unsupported(filtering, condition -> true);
+
+        DataStructure structure = getDataStructure();
+        DataStructure projected = structure.project(components);
+        return getChild().getBatches(orders, childFiltering, structure.keySet())
+                .map(batches -> filterBatches(batches, residualPredicates, remaining))
+                .map(batches -> projected == structure ? batches : batches.map(batch -> batch.project(projected)));
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         return Optional.empty();
@@ -72,4 +235,18 @@ public class FilterOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return Optional.empty();
     }
+
+    /**
+     * The selectivity of the converted conditions is estimated from the statistics of the child, the other
+     * conditions use {@link Statistics#DEFAULT_SELECTIVITY}.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics statistics = getChild().getStatistics().filter(getPushedFiltering());
+        Optional<Long> rowCount = statistics.getRowCount();
+        if (residualPredicates.isEmpty() || !rowCount.isPresent())
+            return statistics;
+        double selectivity = Math.pow(Statistics.DEFAULT_SELECTIVITY, residualPredicates.size());
+        return statistics.withRowCount(Math.round(rowCount.get() * selectivity));
+    }
 }
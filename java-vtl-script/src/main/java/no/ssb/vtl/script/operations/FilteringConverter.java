@@ -0,0 +1,236 @@
+package no.ssb.vtl.script.operations;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.model.StructuredFiltering.Operator;
+import no.ssb.vtl.model.VTLExpression;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.expressions.IsNullExpression;
+import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.MembershipExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
+import no.ssb.vtl.script.expressions.equality.AbstractEqualityExpression;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
+import no.ssb.vtl.script.expressions.equality.GreaterOrEqualExpression;
+import no.ssb.vtl.script.expressions.equality.LesserOrEqualExpression;
+import no.ssb.vtl.script.expressions.equality.LesserThanExpression;
+import no.ssb.vtl.script.expressions.equality.NotEqualExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.NotExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
+import no.ssb.vtl.script.operations.join.ComponentBindings;
+
+import javax.script.Bindings;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Converts the conditions of a predicate to {@link StructuredFiltering}.
+ * <p>
+ * Only comparisons between a component of the structure and a literal that is not null, and the logical
+ * combinations of those, can be converted.
+ */
+final class FilteringConverter {
+
+    private final DataStructure structure;
+    private final ComponentBindings bindings;
+
+    FilteringConverter(DataStructure structure, ComponentBindings bindings) {
+        this.structure = checkNotNull(structure);
+        this.bindings = checkNotNull(bindings);
+    }
+
+    /**
+     * Split the predicate on its <code>and</code> operators.
+     */
+    static List<VTLExpression> conjuncts(VTLExpression predicate) {
+        List<VTLExpression> conjuncts = Lists.newArrayList();
+        addConjuncts(predicate, conjuncts);
+        return conjuncts;
+    }
+
+    private static void addConjuncts(VTLExpression expression, List<VTLExpression> conjuncts) {
+        if (expression instanceof AndExpression) {
+            addConjuncts(((AndExpression) expression).getLeftOperand(), conjuncts);
+            addConjuncts(((AndExpression) expression).getRightOperand(), conjuncts);
+        } else {
+            conjuncts.add(expression);
+        }
+    }
+
+    /**
+     * Convert the expression.
+     *
+     * @return the filtering or null if the expression cannot be converted.
+     */
+    StructuredFiltering convert(VTLExpression expression) {
+        if (expression instanceof AndExpression) {
+            StructuredFiltering left = convert(((AndExpression) expression).getLeftOperand());
+            StructuredFiltering right = convert(((AndExpression) expression).getRightOperand());
+            return left == null || right == null ? null : StructuredFiltering.and(left, right);
+        }
+        if (expression instanceof OrExpression) {
+            StructuredFiltering left = convert(((OrExpression) expression).getLeftOperand());
+            StructuredFiltering right = convert(((OrExpression) expression).getRightOperand());
+            return left == null || right == null ? null : or(left, right);
+        }
+        if (expression instanceof NotExpression) {
+            StructuredFiltering operand = convert(((NotExpression) expression).getOperand());
+            return operand == null ? null : StructuredFiltering.not(operand);
+        }
+        if (expression instanceof IsNullExpression) {
+            IsNullExpression isNull = (IsNullExpression) expression;
+            String column = getColumn(isNull.getOperand());
+            if (column == null)
+                return null;
+            return isNull.isNegated()
+                    ? StructuredFiltering.isNotNull(structure, column)
+                    : StructuredFiltering.isNull(structure, column);
+        }
+        if (expression instanceof AbstractEqualityExpression) {
+            return convertComparison((AbstractEqualityExpression) expression);
+        }
+        return null;
+    }
+
+    private StructuredFiltering convertComparison(AbstractEqualityExpression comparison) {
+        Operator operator = getOperator(comparison);
+        if (operator == null)
+            return null;
+
+        VTLExpression left = comparison.getLeftOperand();
+        VTLExpression right = comparison.getRightOperand();
+        String column = getColumn(left);
+        VTLObject value = getLiteral(right);
+        if (column == null || value == null) {
+            // Literal on the left side.
+            column = getColumn(right);
+            value = getLiteral(left);
+            operator = flip(operator);
+        }
+        if (column == null || value == null)
+            return null;
+
+        switch (operator) {
+            case EQ:
+                return StructuredFiltering.equal(structure, column, value);
+            case NE:
+                return StructuredFiltering.notEqual(structure, column, value);
+            case LT:
+                return StructuredFiltering.lessThan(structure, column, value);
+            case LE:
+                return StructuredFiltering.lessOrEqual(structure, column, value);
+            case GT:
+                return StructuredFiltering.greaterThan(structure, column, value);
+            case GE:
+                return StructuredFiltering.greaterOrEqual(structure, column, value);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Combine with or. Equalities on the same column are merged in a single <code>in</code>.
+     */
+    private StructuredFiltering or(StructuredFiltering left, StructuredFiltering right) {
+        List<StructuredFiltering> operands = Lists.newArrayList();
+        for (StructuredFiltering operand : new StructuredFiltering[]{left, right}) {
+            if (operand.getOperator() == Operator.OR)
+                operands.addAll(operand.getOperands());
+            else
+                operands.add(operand);
+        }
+
+        String column = null;
+        List<VTLObject> values = Lists.newArrayList();
+        for (StructuredFiltering operand : operands) {
+            if (operand.getOperator() != Operator.EQ && operand.getOperator() != Operator.IN)
+                return StructuredFiltering.or(operands);
+            if (column != null && !column.equals(operand.getColumn()))
+                return StructuredFiltering.or(operands);
+            column = operand.getColumn();
+            values.addAll(operand.getValues());
+        }
+        return StructuredFiltering.in(structure, column, values);
+    }
+
+    private static Operator getOperator(AbstractEqualityExpression comparison) {
+        if (comparison instanceof EqualExpression)
+            return Operator.EQ;
+        if (comparison instanceof NotEqualExpression)
+            return Operator.NE;
+        if (comparison instanceof LesserThanExpression)
+            return Operator.LT;
+        if (comparison instanceof LesserOrEqualExpression)
+            return Operator.LE;
+        if (comparison instanceof GraterThanExpression)
+            return Operator.GT;
+        if (comparison instanceof GreaterOrEqualExpression)
+            return Operator.GE;
+        return null;
+    }
+
+    /**
+     * Returns the operator to use when the operands are swapped.
+     */
+    private static Operator flip(Operator operator) {
+        switch (operator) {
+            case LT:
+                return Operator.GT;
+            case LE:
+                return Operator.GE;
+            case GT:
+                return Operator.LT;
+            case GE:
+                return Operator.LE;
+            default:
+                return operator;
+        }
+    }
+
+    private static VTLObject getLiteral(VTLExpression expression) {
+        if (!(expression instanceof LiteralExpression))
+            return null;
+        VTLObject literal = ((LiteralExpression) expression).getLiteral();
+        // Comparisons with null are always null, converting them to in would change the result of not.
+        return literal.get() == null ? null : literal;
+    }
+
+    private String getColumn(VTLExpression expression) {
+        Object reference = null;
+        if (expression instanceof VariableExpression) {
+            reference = bindings.get(((VariableExpression) expression).getIdentifier());
+        } else if (expression instanceof MembershipExpression) {
+            MembershipExpression membership = (MembershipExpression) expression;
+            Object dataset = bindings.get(membership.getDatasetIdentifier());
+            if (dataset instanceof Bindings)
+                reference = ((Bindings) dataset).get(membership.getIdentifier());
+        }
+        if (reference instanceof ComponentBindings.ComponentReference)
+            return structure.getName(((ComponentBindings.ComponentReference) reference).getComponent());
+        return null;
+    }
+}
@@ -27,10 +27,17 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.model.ColumnStatistics;
+import no.ssb.vtl.model.ColumnVector;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Statistics;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.ExecutionSettings;
 
 import java.util.List;
 import java.util.Map;
@@ -57,6 +64,9 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
     private int dimensionIndex;
     private int size;
     private String[] elementNames;
+    private VTLObject[] elementValues;
+
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
 
     public FoldOperation(Dataset dataset, String dimension, String measure, Set<String> elements) {
         super(dataset);
@@ -172,6 +182,10 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
                 .toArray();
 
         elementNames = elements.asList().toArray(new String[]{});
+        elementValues = new VTLObject[elementIndices.length];
+        for (int i = 0; i < elementIndices.length; i++) {
+            elementValues[i] = VTLObject.of(elementNames[i]);
+        }
 
         measureIndex = columns.asList().indexOf(measure);
         dimensionIndex = columns.asList().indexOf(dimension);
@@ -201,7 +215,7 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
             //DataPoint clone = DataPoint.create(baseDatapoint);
             DataPoint clone = (DataPoint) baseDatapoint.clone();
 
-            clone.set(dimensionIndex, VTLObject.of(elementNames[i]));
+            clone.set(dimensionIndex, elementValues[i]);
             clone.set(measureIndex, elementValue);
 
             foldedDatapoints.add(clone);
@@ -211,12 +225,73 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
 
     }
 
+    /**
+     * Fold a batch, column by column.
+     */
+    private DataPointBatch fold(DataPointBatch batch) {
+        DataPointBatch.Builder result = DataPointBatch.builder(
+                getDataStructure(), batch.size() * elementIndices.length
+        );
+
+        ColumnVector[] copyColumns = new ColumnVector[copyIndices.length];
+        for (int i = 0; i < copyIndices.length; i++) {
+            copyColumns[i] = batch.getColumn(copyIndices[i]);
+        }
+        ColumnVector[] elementColumns = new ColumnVector[elementIndices.length];
+        for (int i = 0; i < elementIndices.length; i++) {
+            elementColumns[i] = batch.getColumn(elementIndices[i]);
+        }
+
+        for (int row = 0; row < batch.size(); row++) {
+            for (int i = 0; i < elementColumns.length; i++) {
+                if (elementColumns[i].isNull(row)) {
+                    continue;
+                }
+                for (int j = 0; j < copyColumns.length; j++) {
+                    result.getColumn(j).addFrom(copyColumns[j], row);
+                }
+                result.getColumn(dimensionIndex).add(elementValues[i]);
+                result.getColumn(measureIndex).addFrom(elementColumns[i], row);
+                result.endRow();
+            }
+        }
+        return result.build();
+    }
+
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     @Override
     public Stream<DataPoint> getData() {
         // To initialize the indices.
         getDataStructure();
 
-        return getChild().getData().flatMap(this::fold);
+        return DataPartitions.parallel(this, settings.getForkJoinPool())
+                .orElseGet(() -> getChild().getData().flatMap(this::fold));
+    }
+
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        // To initialize the indices.
+        getDataStructure();
+
+        return DataPartitions.map(getChild().getPartitions(count), data -> data.flatMap(this::fold));
+    }
+
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        // To initialize the indices.
+        getDataStructure();
+
+        return getChild().getBatches().map(this::fold).filter(batch -> !batch.isEmpty());
     }
 
     @Override
@@ -229,6 +304,18 @@ public class FoldOperation extends AbstractUnaryDatasetOperation {
         return getChild().getSize().map(size -> size * elements.size());
     }
 
+    /**
+     * Each row of the child is folded in one row per element.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics statistics = getChild().getStatistics().project(getDataStructure());
+        return Statistics.copyOf(statistics)
+                .rowCount(statistics.getRowCount().map(count -> count * elements.size()).orElse(null))
+                .column(dimension, ColumnStatistics.builder().distinctCount((long) elements.size()).build())
+                .build();
+    }
+
     @Override
     public String toString() {
         MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
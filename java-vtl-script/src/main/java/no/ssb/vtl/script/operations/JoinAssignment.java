@@ -21,11 +21,15 @@ package no.ssb.vtl.script.operations;
  */
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Statistics;
 import no.ssb.vtl.model.VTLBoolean;
 import no.ssb.vtl.model.VTLDate;
 import no.ssb.vtl.model.VTLExpression;
@@ -34,10 +38,12 @@ import no.ssb.vtl.model.VTLInteger;
 import no.ssb.vtl.model.VTLNumber;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.model.VTLString;
+import no.ssb.vtl.script.ExecutionSettings;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
 import no.ssb.vtl.script.operations.join.DataPointBindings;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -53,6 +59,8 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
     private final String identifier;
     private final ComponentBindings componentBindings;
 
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     public JoinAssignment(Dataset dataset, VTLExpression expression, String identifier, Component.Role role,
                           Boolean implicit) {
         super(checkNotNull(dataset));
@@ -132,8 +140,28 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
         return builder.build();
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     @Override
     public Stream<DataPoint> getData() {
+        return DataPartitions.parallel(this, settings.getForkJoinPool()).orElseGet(() -> assign(getChild().getData()));
+    }
+
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        return DataPartitions.map(getChild().getPartitions(count), this::assign);
+    }
+
+    private Stream<DataPoint> assign(Stream<DataPoint> data) {
         DataStructure childDataStructure = getChild().getDataStructure();
 
         DataStructure dataStructure = getDataStructure();
@@ -141,8 +169,7 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
 
         DataPointBindings dataPointBindings = new DataPointBindings(componentBindings, childDataStructure);
 
-        Stream<DataPoint> data = getChild().getData();
-        return data.peek(datapoint -> {
+        return data.map(DataPoint::mutable).peek(datapoint -> {
 
             if (childDataStructure.size() < dataStructure.size())
                 datapoint.add(VTLObject.NULL);
@@ -163,4 +190,20 @@ public class JoinAssignment extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return getChild().getSize();
     }
+
+    /**
+     * The rows are the same, the assigned component is unknown.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics statistics = getChild().getStatistics().project(getDataStructure());
+        if (!statistics.getColumns().containsKey(identifier) && !statistics.getOrder().containsKey(identifier))
+            return statistics;
+        Map<String, String> names = Maps.newHashMap();
+        for (String name : getDataStructure().keySet()) {
+            if (!name.equals(identifier))
+                names.put(name, name);
+        }
+        return statistics.rename(names);
+    }
 }
@@ -27,9 +27,17 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
+import no.ssb.vtl.model.DataPointProjection;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.script.ExecutionSettings;
 
 import java.util.HashSet;
 import java.util.List;
@@ -50,6 +58,8 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
 
     protected final Set<Component> components;
 
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     public KeepOperation(Dataset dataset, Set<Component> names) {
         super(checkNotNull(dataset, "the dataset was null"));
         this.components = checkNotNull(names, "the component list was null");
@@ -80,6 +90,17 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
         return helper.omitNullValues().toString();
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     @Override
     public Stream<DataPoint> getData() {
 
@@ -89,17 +110,96 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
         if (componentsToRemove.isEmpty())
             return getChild().getData();
 
+        Optional<Stream<DataPoint>> parallel = DataPartitions.parallel(this, settings.getForkJoinPool());
+        if (parallel.isPresent())
+            return parallel.get();
+
+        // Only ask the child for the components we keep.
+        DataStructure childStructure = getChild().getDataStructure();
+        DataStructure structure = getDataStructure();
+        Order unordered = Order.create(childStructure).build();
+        Optional<Stream<DataPoint>> projected = getChild().getData(unordered, Filtering.ALL, structure.keySet());
+        if (projected.isPresent())
+            return projected.get().map(DataPointProjection.normalize(childStructure, structure, structure));
+
+        return remove(getChild().getData(), componentsToRemove);
+    }
+
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        ImmutableList<Component> componentsToRemove = getComponentsToRemove();
+        if (componentsToRemove.isEmpty())
+            return getChild().getPartitions(count);
+        return DataPartitions.map(getChild().getPartitions(count), data -> remove(data, componentsToRemove));
+    }
+
+    private Stream<DataPoint> remove(Stream<DataPoint> data, ImmutableList<Component> componentsToRemove) {
         // Compute indexes to remove (in reverse order to avoid shifting).
         final ImmutableSet<Integer> indexes = computeIndexes(componentsToRemove);
 
-        return getChild().getData().peek(
-                dataPoints -> {
+        return data.map(
+                dataPoint -> {
+                    DataPoint result = DataPoint.mutable(dataPoint);
                     for (Integer index : indexes)
-                        dataPoints.remove((int) index);
+                        result.remove((int) index);
+                    return result;
                 }
         );
     }
 
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        // The filtering applies to the kept data points, only structured filtering can be used on the child.
+        if (filtering != Filtering.ALL && !(filtering instanceof StructuredFiltering))
+            return super.getData(orders, filtering, components);
+
+        // The kept components are in the same order in the child.
+        DataStructure childStructure = getChild().getDataStructure();
+        DataStructure structure = getDataStructure().project(components);
+        Optional<Stream<DataPoint>> data = getChild().getData(
+                adjustOrder(orders), adjustFiltering(filtering), structure.keySet()
+        );
+        if (!data.isPresent())
+            return super.getData(orders, filtering, components);
+        return Optional.of(data.get().map(DataPointProjection.normalize(childStructure, structure, structure)));
+    }
+
+    /**
+     * Keeps the columns without copying them.
+     */
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        DataStructure structure = getDataStructure();
+        return getChild().getBatches().map(batch -> batch.project(structure));
+    }
+
+    @Override
+    public Optional<Stream<DataPointBatch>> getBatches(Order orders, Filtering filtering, Set<String> components) {
+        // The filtering applies to the kept data points, only structured filtering can be used on the child.
+        if (filtering != Filtering.ALL && !(filtering instanceof StructuredFiltering))
+            return super.getBatches(orders, filtering, components);
+
+        DataStructure structure = getDataStructure().project(components);
+        return getChild().getBatches(adjustOrder(orders), adjustFiltering(filtering), structure.keySet())
+                .map(batches -> batches.map(batch -> batch.project(structure)));
+    }
+
+    /**
+     * Convert the {@link Order} so it uses the structure of the child. The components are the same.
+     */
+    private Order adjustOrder(Order orders) {
+        return Order.create(getChild().getDataStructure()).putAll(orders).build();
+    }
+
+    /**
+     * Convert the {@link StructuredFiltering} so it uses the structure of the child. The names are the same.
+     */
+    private Filtering adjustFiltering(Filtering filtering) {
+        if (filtering instanceof StructuredFiltering)
+            return ((StructuredFiltering) filtering).withDataStructure(getChild().getDataStructure());
+        return filtering;
+    }
+
     /**
      * Find the index of the component in the child data structure.
      */
@@ -137,4 +237,9 @@ public class KeepOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return getChild().getSize();
     }
+
+    @Override
+    public Statistics getStatistics() {
+        return getChild().getStatistics().project(getDataStructure());
+    }
 }
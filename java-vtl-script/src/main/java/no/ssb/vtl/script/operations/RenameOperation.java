@@ -41,16 +41,27 @@ package no.ssb.vtl.script.operations;
  */
 
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
 
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -112,6 +123,58 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
         return getChild().getData();
     }
 
+    /**
+     * The partitions of the child, the data points are the same.
+     */
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        return getChild().getPartitions(count);
+    }
+
+    /**
+     * Asks the child for the requested components using their original names.
+     */
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        DataStructure structure = getDataStructure();
+        DataStructure childStructure = getChild().getDataStructure();
+
+        // Both structures have the same layout.
+        List<String> names = ImmutableList.copyOf(structure.keySet());
+        List<String> childNames = ImmutableList.copyOf(childStructure.keySet());
+
+        // Other filtering do not depend on the names and can be forwarded as is.
+        Filtering childFiltering = filtering;
+        if (filtering instanceof StructuredFiltering) {
+            childFiltering = ((StructuredFiltering) filtering).withDataStructure(
+                    childStructure, name -> childNames.get(names.indexOf(name))
+            );
+        }
+
+        Order.Builder childOrder = Order.create(childStructure);
+        for (Map.Entry<Component, Order.Direction> entry : orders.entrySet()) {
+            childOrder.put(childNames.get(names.indexOf(structure.getName(entry.getKey()))), entry.getValue());
+        }
+
+        Set<String> childComponents = Sets.newHashSet();
+        for (int i = 0; i < names.size(); i++) {
+            if (components.contains(names.get(i)))
+                childComponents.add(childNames.get(i));
+        }
+
+        Optional<Stream<DataPoint>> data = getChild().getData(childOrder.build(), childFiltering, childComponents);
+        return data.isPresent() ? data : super.getData(orders, filtering, components);
+    }
+
+    /**
+     * Renaming only changes the structure; the columns are passed through.
+     */
+    @Override
+    public Stream<DataPointBatch> getBatches() {
+        DataStructure structure = getDataStructure();
+        return getChild().getBatches().map(batch -> batch.withDataStructure(structure));
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         // TODO: Adjust the names.
@@ -122,4 +185,15 @@ public class RenameOperation extends AbstractUnaryDatasetOperation {
     public Optional<Long> getSize() {
         return getChild().getSize();
     }
+
+    @Override
+    public Statistics getStatistics() {
+        // Both structures have the same layout.
+        Map<String, String> names = Maps.newHashMap();
+        Iterator<String> iterator = getDataStructure().keySet().iterator();
+        for (String childName : getChild().getDataStructure().keySet()) {
+            names.put(childName, iterator.next());
+        }
+        return getChild().getStatistics().rename(names);
+    }
 }
@@ -22,15 +22,22 @@ package no.ssb.vtl.script.operations;
 
 import com.codepoetics.protonpack.StreamUtils;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.math.LongMath;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.ComponentAccessor;
 import no.ssb.vtl.model.Component.Role;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
-import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.script.ExecutionSettings;
 
+import java.math.RoundingMode;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -47,6 +54,7 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
     private final Component dimension;
     private final Component measure;
     private final Set<String> elements;
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
 
     public UnfoldOperation(Dataset dataset, Component dimensionReference, Component measureReference, Set<String> elements) {
         super(checkNotNull(dataset, "dataset cannot be null"));
@@ -58,6 +66,17 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
         // TODO: Introduce type here. Elements should be of the type of the Component.
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     @Override
     public Stream<DataPoint> getData() {
         // TODO: Add an ANY sort option?
@@ -83,8 +102,24 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
         // Try to get data sorted as required. If impossible, sort it.
         Stream<? extends DataPoint> stream = getChild()
                 .getData(requiredOrder)
-                .orElseGet(() -> getChild().getData().sorted(requiredOrder));
-
+                .orElseGet(() -> settings.sorted(getChild().getData(), requiredOrder));
+
+
+        // Resolve the positions once.
+        ComponentAccessor dimensionAccessor = childStructure.getAccessor(dimension);
+        ComponentAccessor measureAccessor = childStructure.getAccessor(measure);
+        List<ComponentAccessor[]> identifiers = Lists.newArrayList();
+        for (Component component : childStructure.values()) {
+            if (component.isIdentifier() && !component.equals(dimension) && dataStructure.containsValue(component)) {
+                identifiers.add(new ComponentAccessor[]{
+                        childStructure.getAccessor(component), dataStructure.getAccessor(component)
+                });
+            }
+        }
+        Map<Object, ComponentAccessor> unfoldedAccessors = Maps.newHashMap();
+        for (String element : elements) {
+            unfoldedAccessors.put(element, dataStructure.getAccessor(element));
+        }
 
         return StreamUtils.aggregate(stream, (left, right) -> {
             // Checks if the previous ids (except the one with unfold on) where different.
@@ -92,27 +127,15 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
         }).map(dataPoints -> {
 
             DataPoint result = DataPoint.create(dataStructure.size());
-            Map<Component, VTLObject> resultAsMap = dataStructure.asMap(result);
 
             for (DataPoint dataPoint : dataPoints) {
-                Map<Component, VTLObject> dataPointAsMap = childStructure.asMap(dataPoint);
-
-                VTLObject unfoldedValue = null;
-                Component unfoldedComponent = null;
-
-                for (Component component : dataPointAsMap.keySet()) {
-                    if (component.equals(dimension)) {
-                        VTLObject value = dataPointAsMap.get(component);
-                        if (elements.contains(value.get())) {
-                            unfoldedComponent = dataStructure.get(value.get());
-                        }
-                    } else if (component.equals(measure)) {
-                        unfoldedValue = dataPointAsMap.get(component);
-                    } else if (component.isIdentifier()) {
-                            resultAsMap.put(component, dataPointAsMap.get(component));
-                    }
+                for (ComponentAccessor[] identifier : identifiers) {
+                    identifier[1].set(result, identifier[0].get(dataPoint));
+                }
+                ComponentAccessor unfolded = unfoldedAccessors.get(dimensionAccessor.get(dataPoint).get());
+                if (unfolded != null) {
+                    unfolded.set(result, measureAccessor.get(dataPoint));
                 }
-                resultAsMap.put(unfoldedComponent, unfoldedValue);
             }
             return result;
         });
@@ -120,12 +143,39 @@ public class UnfoldOperation extends AbstractUnaryDatasetOperation {
 
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
-        return null;
+        return Optional.empty();
     }
 
     @Override
     public Optional<Long> getSize() {
-        return null;
+        return Optional.empty();
+    }
+
+    /**
+     * The rows of the child that have the same identifiers, the dimension excepted, are unfolded in one row.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics childStatistics = getChild().getStatistics();
+        DataStructure structure = getDataStructure();
+        DataStructure childStructure = getChild().getDataStructure();
+
+        Statistics.Builder statistics = Statistics.builder();
+        for (Map.Entry<String, Component> entry : childStructure.entrySet()) {
+            Component component = entry.getValue();
+            if (component.isIdentifier() && !component.equals(dimension) && structure.containsValue(component))
+                statistics.column(entry.getKey(), childStatistics.getColumn(entry.getKey()));
+        }
+        for (Map.Entry<Component, Order.Direction> entry : Order.createDefault(childStructure).entrySet()) {
+            if (!entry.getKey().equals(dimension))
+                statistics.order(childStructure.getName(entry.getKey()), entry.getValue());
+        }
+
+        Optional<Long> rowCount = childStatistics.getRowCount();
+        Optional<Long> dimensionCount = childStatistics.getColumn(childStructure.getName(dimension)).getDistinctCount();
+        if (rowCount.isPresent() && dimensionCount.isPresent() && dimensionCount.get() > 0)
+            rowCount = Optional.of(LongMath.divide(rowCount.get(), dimensionCount.get(), RoundingMode.CEILING));
+        return statistics.build().withRowCount(rowCount.orElse(null));
     }
 
     @Override
@@ -24,11 +24,17 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.ComponentAccessor;
+import no.ssb.vtl.model.DataPartition;
+import no.ssb.vtl.model.DataPartitions;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Statistics;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.ExecutionSettings;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -49,6 +55,8 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
     private final Long errorLevel;
     private final Set<Component> conditions = Sets.newHashSet();
 
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     private CheckSingleRuleOperation(Builder builder) {
         super(checkNotNull(builder.dataset, "dataset was null"));
         this.rowsToReturn = builder.rowsToReturn;
@@ -72,30 +80,56 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
         checkArgument(noIdentifiers > 0, "dataset does not have identifier components");
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     @Override
     public Stream<DataPoint> getData() {
+        return DataPartitions.parallel(this, settings.getForkJoinPool()).orElseGet(() -> check(getChild().getData()));
+    }
+
+    @Override
+    public List<DataPartition> getPartitions(int count) {
+        return DataPartitions.map(getChild().getPartitions(count), this::check);
+    }
+
+    private Stream<DataPoint> check(Stream<DataPoint> data) {
         Dataset childDataset = getChild();
         DataStructure newStructure = getDataStructure();
         DataStructure previousStructure = childDataset.getDataStructure();
         Component conditionComponent = getConditionComponent(newStructure);
 
-        return childDataset.getData().map(dataPoint -> {
+        // Resolve the positions once.
+        int[] copyFrom = newStructure.values().stream().mapToInt(previousStructure::indexOf).toArray();
+        ComponentAccessor[] conditionAccessors = conditions.stream()
+                .map(previousStructure::getAccessor).toArray(ComponentAccessor[]::new);
+        Optional<ComponentAccessor> errorCodeAccessor = findAccessor(newStructure, getErrorCodeComponent());
+        Optional<ComponentAccessor> errorLevelAccessor = findAccessor(newStructure, getErrorLevelComponent());
+        Optional<ComponentAccessor> conditionAccessor = findAccessor(newStructure, conditionComponent);
+
+        return data.map(dataPoint -> {
 
             DataPoint resultDataPoint = DataPoint.create(newStructure.size());
-            Map<Component, VTLObject> originalMap = previousStructure.asMap(dataPoint);
-            Map<Component, VTLObject> resultMap = newStructure.asMap(resultDataPoint);
 
-            for (Component component : resultMap.keySet()) {
-                if (originalMap.containsKey(component)) {
-                    resultMap.put(component, originalMap.get(component));
+            for (int i = 0; i < copyFrom.length; i++) {
+                if (copyFrom[i] >= 0) {
+                    resultDataPoint.set(i, dataPoint.get(copyFrom[i]));
                 }
             }
 
             // Optimized and.
             // TODO: Handle nulls somewhere else (VTLBoolean?)
             Boolean combinedCondition = true;
-            for (Component condition : conditions) {
-                VTLObject value = originalMap.get(condition);
+            for (ComponentAccessor condition : conditionAccessors) {
+                VTLObject value = condition.get(dataPoint);
                 if (value.get() == null) {
                     combinedCondition = false;
                     break;
@@ -117,17 +151,21 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
                 }
             }
 
-            resultMap.computeIfPresent(getErrorCodeComponent(), (k, v) -> VTLObject.of(errorCode));
-            resultMap.computeIfPresent(getErrorLevelComponent(), (k, v) -> VTLObject.of(errorLevel));
+            errorCodeAccessor.ifPresent(accessor -> accessor.set(resultDataPoint, VTLObject.of(errorCode)));
+            errorLevelAccessor.ifPresent(accessor -> accessor.set(resultDataPoint, VTLObject.of(errorLevel)));
 
             Boolean finalPrevious = combinedCondition;
-            resultMap.computeIfPresent(conditionComponent, (k, v) -> VTLObject.of(finalPrevious));
+            conditionAccessor.ifPresent(accessor -> accessor.set(resultDataPoint, VTLObject.of(finalPrevious)));
 
 
             return resultDataPoint;
         }).filter(Objects::nonNull);
     }
 
+    private static Optional<ComponentAccessor> findAccessor(DataStructure structure, Component component) {
+        return component == null ? Optional.empty() : Optional.of(structure.getAccessor(component));
+    }
+
     private Component getConditionComponent(DataStructure structure) {
         return structure.get(CONDITION_LABEL);
     }
@@ -150,6 +188,15 @@ public class CheckSingleRuleOperation extends AbstractUnaryDatasetOperation {
         return Optional.empty();
     }
 
+    @Override
+    public Statistics getStatistics() {
+        Statistics statistics = getChild().getStatistics().project(getDataStructure());
+        Optional<Long> rowCount = statistics.getRowCount();
+        if (rowsToReturn == RowsToReturn.ALL || !rowCount.isPresent())
+            return statistics;
+        return statistics.withRowCount(Math.round(rowCount.get() * Statistics.DEFAULT_SELECTIVITY));
+    }
+
 
     @Override
     protected DataStructure computeDataStructure() {
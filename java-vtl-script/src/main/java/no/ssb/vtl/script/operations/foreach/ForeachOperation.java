@@ -31,9 +31,11 @@ import com.google.common.collect.Sets;
 import com.google.common.collect.Streams;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointProjection;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.script.ExecutionSettings;
 import no.ssb.vtl.script.VTLDataset;
 
 import javax.script.Bindings;
@@ -50,6 +52,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static no.ssb.vtl.model.Order.Direction.ASC;
 
 /**
@@ -78,16 +81,17 @@ public final class ForeachOperation implements Dataset {
     private final ImmutableSet<String> identifiers;
     private DataStructure structure;
     private Function<Bindings, VTLDataset> block;
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
 
     public ForeachOperation(Map<String, Dataset> sourceDatasets, Set<String> identifiers) {
         this.sources = ImmutableMap.copyOf(sourceDatasets);
         this.identifiers = ImmutableSet.copyOf(identifiers);
     }
 
-    public static Stream<DataPoint> sort(Stream<DataPoint> stream, Order order) {
+    private Stream<DataPoint> sort(Stream<DataPoint> stream, Order order) {
         System.out.println("WARN: needed to sort");
         Stopwatch started = Stopwatch.createStarted();
-        Stream<DataPoint> sorted = stream.sorted(order);
+        Stream<DataPoint> sorted = settings.sorted(stream, order);
         System.out.println("WARN: done sorting: " + started.stop().elapsed(TimeUnit.SECONDS));
         return sorted;
     }
@@ -96,6 +100,17 @@ public final class ForeachOperation implements Dataset {
         this.block = block;
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     private Stream<DataPoint> sortIfNeeded(Dataset dataset, Order order) {
         Order actualOrder = rearrangeOrder(order, dataset.getDataStructure());
         return dataset.getData(actualOrder).orElseGet(() -> sort(dataset.getData(), actualOrder));
@@ -146,7 +161,18 @@ public final class ForeachOperation implements Dataset {
             }
         });
 
-        return Optional.of(needSort ? stream.sorted(orders) : stream);
+        if (filtering != Filtering.ALL)
+            stream = stream.filter(filtering);
+
+        if (needSort)
+            stream = settings.sorted(stream, orders);
+
+        DataStructure structure = getDataStructure();
+        DataStructure projected = structure.project(components);
+        if (projected != structure)
+            stream = stream.map(new DataPointProjection(structure, projected));
+
+        return Optional.of(stream);
     }
 
     /**
@@ -34,14 +34,20 @@ import com.google.common.graph.ImmutableValueGraph;
 import com.google.common.graph.MutableValueGraph;
 import com.google.common.graph.ValueGraph;
 import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.math.LongMath;
 import no.ssb.vtl.model.AbstractUnaryDatasetOperation;
+import no.ssb.vtl.model.ColumnStatistics;
 import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.ComponentAccessor;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
 import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.ExecutionSettings;
 
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -82,6 +88,8 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
     // The component
     private final Component component;
 
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     public HierarchyOperation(Dataset dataset, Dataset hierarchy, Component group) {
         super(dataset);
 
@@ -129,6 +137,17 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         this.graph = ImmutableValueGraph.copyOf(graph);
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     private List<VTLObject> getGraphValues() {
         if (this.graph == null) {
             // TODO: Hierarchy should be typed.
@@ -157,6 +176,10 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         Component toComponent = checkNotNull(structure.get(TO_COLUMN_NAME), COLUMN_NOT_FOUND, TO_COLUMN_NAME);
         Component signComponent = checkNotNull(structure.get(SIGN_COLUMN_NAME), COLUMN_NOT_FOUND, SIGN_COLUMN_NAME);
 
+        ComponentAccessor fromAccessor = structure.getAccessor(fromComponent);
+        ComponentAccessor toAccessor = structure.getAccessor(toComponent);
+        ComponentAccessor signAccessor = structure.getAccessor(signComponent);
+
         // The graph.
         MutableValueGraph<VTLObject, Composition> graph = ValueGraphBuilder.directed()
                 .allowsSelfLoops(false)
@@ -166,11 +189,9 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         try (Stream<DataPoint> stream = hierarchy.getData()) {
             for (DataPoint point : (Iterable<? extends DataPoint>) stream::iterator) {
 
-                Map<Component, VTLObject> asMap = structure.asMap(point);
-
-                VTLObject from = asMap.get(fromComponent);
-                VTLObject to = asMap.get(toComponent);
-                VTLObject sign = asMap.get(signComponent);
+                VTLObject from = fromAccessor.get(point);
+                VTLObject to = toAccessor.get(point);
+                VTLObject sign = signAccessor.get(point);
 
                 Composition composition = checkNotNull(COMPOSITION_MAP.get(sign.get()), UNKNOWN_SIGN_VALUE, sign);
 
@@ -292,11 +313,12 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
         final List<VTLObject> sorted = getGraphValues();
 
-        final Map<Component, HierarchyAccumulator> accumulators = createAccumulatorMap();
+        final Map<ComponentAccessor, HierarchyAccumulator> accumulators = createAccumulatorMap();
+        final ComponentAccessor componentAccessor = structure.getAccessor(this.component);
 
         // Get the data sorted.
         Stream<DataPoint> sortedData = getChild().getData(groupOrder)
-                .orElseGet(() -> getChild().getData().sorted(groupOrder));
+                .orElseGet(() -> settings.sorted(getChild().getData(), groupOrder));
 
         Stream<ComposedDataPoint> streamToAggregate = StreamUtils.aggregate(
                 sortedData,
@@ -307,8 +329,7 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
             // to the data points so that we can use it later when we aggregate.
             Multimap<VTLObject, ComposedDataPoint> buckets = ArrayListMultimap.create();
             for (DataPoint dataPoint : dataPoints) {
-                Map<Component, VTLObject> map = structure.asMap(dataPoint);
-                VTLObject group = map.get(this.component);
+                VTLObject group = componentAccessor.get(dataPoint);
                 buckets.put(group, new ComposedDataPoint(dataPoint, Composition.UNION));
             }
 
@@ -335,7 +356,7 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
                 VTLObject group = entry.getKey();
                 ComposedDataPoint point = entry.getValue();
                 result.add(point);
-                structure.asMap(point).put(this.component, group);
+                componentAccessor.set(point, group);
             }
 
             // Not needed since we are constructing the result by component.
@@ -358,22 +379,23 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
 
                 // Won't fail since we check size.
                 aggregate = DataPoint.create(dataPoints.get(0));
-                Map<Component, VTLObject> result = structure.asMap(aggregate);
 
-                for (Map.Entry<Component, HierarchyAccumulator> entry : accumulators.entrySet()) {
-                    result.put(entry.getKey(), entry.getValue().identity());
+                for (Map.Entry<ComponentAccessor, HierarchyAccumulator> entry : accumulators.entrySet()) {
+                    entry.getKey().set(aggregate, entry.getValue().identity());
                 }
 
                 Iterator<ComposedDataPoint> iterator = dataPoints.iterator();
                 while (iterator.hasNext()) {
                     ComposedDataPoint composedDataPoint = iterator.next();
-                    Map<Component, VTLObject> next = structure.asMap(composedDataPoint);
 
-                    for (Map.Entry<Component, HierarchyAccumulator> accumulator : accumulators.entrySet()) {
-                        Component component = accumulator.getKey();
-                        VTLObject objectValue = next.get(component);
+                    for (Map.Entry<ComponentAccessor, HierarchyAccumulator> accumulator : accumulators.entrySet()) {
+                        ComponentAccessor accessor = accumulator.getKey();
+                        VTLObject objectValue = accessor.get(composedDataPoint);
+                        VTLObject previous = accessor.get(aggregate);
                         HierarchyAccumulator value = accumulator.getValue();
-                        result.merge(component, objectValue, value.accumulator(composedDataPoint.getSign()));
+                        accessor.set(aggregate, previous == null
+                                ? objectValue
+                                : (VTLObject) value.accumulator(composedDataPoint.getSign()).apply(previous, objectValue));
                     }
 
                 }
@@ -385,12 +407,12 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         });
     }
 
-    private Map<Component, HierarchyAccumulator> createAccumulatorMap() {
+    private Map<ComponentAccessor, HierarchyAccumulator> createAccumulatorMap() {
         DataStructure structure = getDataStructure();
-        ImmutableMap.Builder<Component, HierarchyAccumulator> builder = ImmutableMap.builder();
+        ImmutableMap.Builder<ComponentAccessor, HierarchyAccumulator> builder = ImmutableMap.builder();
         for (Component component : structure.values()) {
             if (component.isMeasure()) {
-                builder.put(component, sumAccumulatorFor(component.getType()));
+                builder.put(structure.getAccessor(component), sumAccumulatorFor(component.getType()));
             }
         }
         return builder.build();
@@ -407,6 +429,33 @@ public class HierarchyOperation extends AbstractUnaryDatasetOperation {
         return Optional.empty();
     }
 
+    /**
+     * Each group of rows that have the same identifiers, the hierarchy component excepted, produces at most one row
+     * per node of the hierarchy. The number of edges of the hierarchy is used if the graph was not read yet.
+     */
+    @Override
+    public Statistics getStatistics() {
+        Statistics childStatistics = getChild().getStatistics();
+        DataStructure structure = getDataStructure();
+        String name = structure.getName(component);
+
+        Optional<Long> nodeCount = graph != null
+                ? Optional.of((long) graph.nodes().size())
+                : hierarchy.getStatistics().getRowCount();
+        Optional<Long> rowCount = childStatistics.getRowCount();
+        Optional<Long> distinctCount = childStatistics.getColumn(name).getDistinctCount();
+
+        Statistics.Builder statistics = Statistics.copyOf(childStatistics.project(structure))
+                .column(name, ColumnStatistics.builder().distinctCount(nodeCount.orElse(null)).build())
+                .clearOrder()
+                .order(computeOrder(), structure);
+        if (!rowCount.isPresent() || !distinctCount.isPresent() || !nodeCount.isPresent() || distinctCount.get() == 0)
+            return statistics.rowCount(null).build();
+        long groups = LongMath.divide(rowCount.get(), distinctCount.get(), RoundingMode.CEILING);
+        return statistics.rowCount(LongMath.saturatedMultiply(groups, Math.max(nodeCount.get(), distinctCount.get())))
+                .build();
+    }
+
     static class ComposedDataPoint extends DataPoint {
         final Composition sign;
 
@@ -32,12 +32,19 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
+import com.google.common.math.LongMath;
 import no.ssb.vtl.model.AbstractDatasetOperation;
+import no.ssb.vtl.model.ColumnStatistics;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointProjection;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.model.VTLObject;
+import no.ssb.vtl.script.ExecutionSettings;
 
 import java.util.Collections;
 import java.util.List;
@@ -62,13 +69,33 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
     private static final String ERROR_EMPTY_DATASET_LIST = "join operation impossible on empty dataset list";
     private static final String ERROR_INCOMPATIBLE_TYPES = "incompatible identifier types: %s";
     private static final String ERROR_NO_COMMON_IDENTIFIERS = "could not find common identifiers in the datasets %s";
+
+    /**
+     * The maximum number of rows of the input that {@link JoinStrategy#AUTO} loads in a hash table.
+     */
+    public static final long MAX_HASH_ROWS = 1_000_000;
+
     protected final ImmutableMap<String, Dataset> datasets;
     private final Table<Component, Dataset, Component> componentMapping;
     private final ImmutableSet<Component> commonIdentifiers;
 
     private final ComponentBindings joinScope;
 
+    private JoinStrategy strategy;
+
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
+    private JoinSkewMetrics skewMetrics = new JoinSkewMetrics();
+
     AbstractJoinOperation(Map<String, Dataset> namedDatasets, Set<Component> identifiers) {
+        this(namedDatasets, identifiers, true);
+    }
+
+    /**
+     * @param requireCommonIdentifiers false if the datasets can be joined without common identifiers.
+     */
+    AbstractJoinOperation(Map<String, Dataset> namedDatasets, Set<Component> identifiers,
+                          boolean requireCommonIdentifiers) {
         super(Lists.newArrayList(checkNotNull(namedDatasets).values()));
 
         checkArgument(
@@ -91,7 +118,8 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
         // No common identifier
-        checkArgument(namedDatasets.size() == 1 || !idMap.isEmpty(), ERROR_NO_COMMON_IDENTIFIERS, namedDatasets);
+        checkArgument(!requireCommonIdentifiers || namedDatasets.size() == 1 || !idMap.isEmpty(),
+                ERROR_NO_COMMON_IDENTIFIERS, namedDatasets);
 
         this.commonIdentifiers = ImmutableSet.copyOf(idMap.keySet());
 
@@ -117,6 +145,48 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
         );
     }
 
+    public JoinStrategy getStrategy() {
+        return strategy == null ? settings.getJoinStrategy() : strategy;
+    }
+
+    /**
+     * Overrides the algorithm used to join the children.
+     *
+     * @param strategy the strategy, null to use the {@link ExecutionSettings#getJoinStrategy() strategy of the
+     *                 settings}.
+     */
+    public void setStrategy(JoinStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation. The skew metrics of the operation are reset and
+     * added to the metrics of the settings.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+        this.skewMetrics = new JoinSkewMetrics(settings.getJoinSkewMetrics());
+    }
+
+    /**
+     * Returns the memory budget of the rows of a child that have the same key in a merge join.
+     */
+    protected long getKeyGroupMemoryBudget() {
+        return KeyGroupBuffer.getMemoryBudget(settings.getSortMemoryBudget());
+    }
+
+    /**
+     * Returns the keys of the merge joins of this operation whose rows in one child exceeded the memory budget
+     * of a group, a quarter of the sort memory budget.
+     */
+    public JoinSkewMetrics getSkewMetrics() {
+        return skewMetrics;
+    }
+
     /**
      * Creates a Bindings that contains the unique components of this join operation and the
      * datasets.
@@ -253,6 +323,12 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
 
             compatibleOrder.put(key, direction);
         }
+
+        // The children must at least be sorted on all the identifiers.
+        for (Component identifier : firstComponents) {
+            if (identifiers.contains(identifier))
+                compatibleOrder.put(identifier, ASC);
+        }
         return Optional.of(compatibleOrder.build());
     }
 
@@ -334,13 +410,196 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
         return predicateBuilder.build();
     }
 
+    /**
+     * Returns the sorted data of a child.
+     * <p>
+     * Only the components of the child that are used by the given components of the join, and the common
+     * identifiers, are requested. The other components are set to {@link VTLObject#NULL} so the data points keep
+     * the structure of the child. Children that ignore the requested components and return all of them are
+     * supported; data points of any other size are rejected.
+     */
     protected Stream<DataPoint> getOrSortData(Dataset dataset, Order order, Filtering filtering, Set<String> components) {
-        Optional<Stream<DataPoint>> sortedData = dataset.getData(order, filtering, components);
+        DataStructure childStructure = dataset.getDataStructure();
+        DataStructure required = childStructure.project(computeChildComponents(dataset, components));
+        Optional<Stream<DataPoint>> sortedData = dataset.getData(order, filtering, required.keySet());
         if (sortedData.isPresent()) {
-            return sortedData.get();
+            if (required == childStructure)
+                return sortedData.get();
+            return sortedData.get().map(DataPointProjection.normalize(childStructure, required, childStructure));
         } else {
-            return dataset.getData().sorted(order).filter(filtering);
+            return settings.sorted(dataset.getData().filter(filtering), order);
+        }
+    }
+
+    /**
+     * Returns the data of a child that is loaded in a hash table, without sorting it.
+     */
+    protected Stream<DataPoint> getUnsortedData(Dataset dataset, Filtering filtering, Set<String> components) {
+        return getOrSortData(dataset, Order.create(dataset.getDataStructure()).build(), filtering, components);
+    }
+
+    /**
+     * Choose the input of a step of the join that is loaded in a hash table.
+     * <p>
+     * The rows of the hash table lose their order, so a hash join is only possible when the requested order only
+     * uses the common identifiers. With {@link JoinStrategy#AUTO}, merge join is used when both inputs are
+     * already sorted. Otherwise the smaller input that is not sorted is loaded if its size is known and smaller
+     * than {@link #MAX_HASH_ROWS}.
+     *
+     * @param left          the left child, or null if the left input is the result of the previous steps.
+     * @param right         the right child.
+     * @param requiredOrder the order of the result.
+     * @return the side to load, empty to use a merge join.
+     */
+    protected Optional<Side> chooseHashSide(Dataset left, Dataset right, Order requiredOrder) {
+        JoinStrategy strategy = getStrategy();
+        if (strategy == JoinStrategy.MERGE || !getCommonIdentifiers().containsAll(requiredOrder.keySet()))
+            return Optional.empty();
+
+        Long leftRows = left == null ? null : estimateRowCount(left);
+        Long rightRows = estimateRowCount(right);
+        if (strategy == JoinStrategy.HASH) {
+            if (leftRows != null && (rightRows == null || leftRows < rightRows))
+                return Optional.of(Side.LEFT);
+            return Optional.of(Side.RIGHT);
         }
+
+        boolean leftCandidate = leftRows != null && leftRows <= MAX_HASH_ROWS
+                && (rightRows == null || leftRows <= rightRows);
+        boolean rightCandidate = rightRows != null && rightRows <= MAX_HASH_ROWS
+                && (left == null || leftRows == null || rightRows <= leftRows);
+        if (!leftCandidate && !rightCandidate)
+            return Optional.empty();
+
+        boolean leftSorted = left == null || isSortedBy(left, requiredOrder);
+        boolean rightSorted = isSortedBy(right, requiredOrder);
+        if (leftCandidate && !leftSorted)
+            return Optional.of(Side.LEFT);
+        if (rightCandidate && !rightSorted)
+            return Optional.of(Side.RIGHT);
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the size of a dataset or the row count of its statistics, null if unknown.
+     */
+    protected Long estimateRowCount(Dataset dataset) {
+        Optional<Long> size = dataset.getSize();
+        if (size != null && size.isPresent())
+            return size.get();
+        Statistics statistics = dataset.getStatistics();
+        return statistics == null ? null : statistics.getRowCount().orElse(null);
+    }
+
+    private boolean isSortedBy(Dataset dataset, Order order) {
+        Statistics statistics = dataset.getStatistics();
+        DataStructure childStructure = dataset.getDataStructure();
+        return statistics != null
+                && statistics.isSortedBy(adjustOrderForStructure(order, childStructure), childStructure);
+    }
+
+    /**
+     * Compute the names of the components of a child that are needed to create the given components.
+     */
+    @VisibleForTesting
+    Set<String> computeChildComponents(Dataset dataset, Set<String> components) {
+        DataStructure structure = getDataStructure();
+        DataStructure childStructure = dataset.getDataStructure();
+
+        Set<Component> needed = Sets.newHashSet(getCommonIdentifiers());
+        for (String name : components) {
+            Component component = structure.get(name);
+            if (component != null)
+                needed.add(component);
+        }
+
+        Set<String> childComponents = Sets.newHashSet();
+        Map<Component, Component> mapping = componentMapping.column(dataset);
+        for (Component component : needed) {
+            Component childComponent = mapping.get(component);
+            if (childComponent != null)
+                childComponents.add(childStructure.getName(childComponent));
+        }
+        return childComponents;
+    }
+
+    /**
+     * Returns true if a condition on the given components can be evaluated by the children before the join.
+     * <p>
+     * Rows of a child that do not have a match in the other children can still appear in the result of outer
+     * joins so only the conditions on the common identifiers can be evaluated first.
+     */
+    protected boolean canFilterChildren(Set<Component> components) {
+        return getCommonIdentifiers().containsAll(components);
+    }
+
+    /**
+     * Returns the conditions of the filtering that the given child can evaluate, using the structure of the child.
+     */
+    protected Filtering computeChildFiltering(Dataset dataset, Filtering filtering) {
+        if (!(filtering instanceof StructuredFiltering))
+            return Filtering.ALL;
+        DataStructure childStructure = dataset.getDataStructure();
+        List<StructuredFiltering> conjuncts = Lists.newArrayList();
+        for (StructuredFiltering conjunct : ((StructuredFiltering) filtering).getConjuncts()) {
+            if (canFilterChild(dataset, conjunct))
+                conjuncts.add(conjunct.withDataStructure(childStructure, name -> getChildName(dataset, name)));
+        }
+        return conjuncts.isEmpty() ? Filtering.ALL : StructuredFiltering.and(conjuncts);
+    }
+
+    /**
+     * Returns the conditions of the filtering that none of the children can evaluate.
+     */
+    protected Filtering computeResidualFiltering(Filtering filtering) {
+        return StructuredFiltering.unsupported(
+                filtering, conjunct -> datasets.values().stream().anyMatch(dataset -> canFilterChild(dataset, conjunct))
+        );
+    }
+
+    /**
+     * Add the components the residual filtering needs to the requested components.
+     */
+    protected Set<String> computeFilteredComponents(Set<String> components, Filtering residualFiltering) {
+        if (residualFiltering == Filtering.ALL)
+            return components;
+        if (!(residualFiltering instanceof StructuredFiltering))
+            return getDataStructure().keySet();
+        return Sets.union(components, ((StructuredFiltering) residualFiltering).getColumns());
+    }
+
+    /**
+     * Apply the residual filtering on the result of the join.
+     */
+    protected Stream<DataPoint> filterResult(Stream<DataPoint> result, Filtering residualFiltering) {
+        return residualFiltering == Filtering.ALL ? result : result.filter(residualFiltering);
+    }
+
+    private boolean canFilterChild(Dataset dataset, StructuredFiltering conjunct) {
+        DataStructure structure = getDataStructure();
+        Set<Component> components = Sets.newHashSet();
+        for (String name : conjunct.getColumns()) {
+            if (getChildName(dataset, name) == null)
+                return false;
+            components.add(structure.get(name));
+        }
+        return canFilterChildren(components);
+    }
+
+    private String getChildName(Dataset dataset, String name) {
+        Component childComponent = componentMapping.get(getDataStructure().get(name), dataset);
+        return childComponent == null ? null : dataset.getDataStructure().getName(childComponent);
+    }
+
+    /**
+     * Remove the components that were not requested from the result of the join.
+     */
+    protected Stream<DataPoint> projectResult(Stream<DataPoint> result, Set<String> components) {
+        DataStructure structure = getDataStructure();
+        DataStructure projected = structure.project(components);
+        if (projected == structure)
+            return result;
+        return result.map(new DataPointProjection(structure, projected));
     }
 
     /**
@@ -360,6 +619,104 @@ public abstract class AbstractJoinOperation extends AbstractDatasetOperation imp
         return adjustedOrders.build();
     }
 
+    /**
+     * The children are joined one after the other. The number of rows of each step is estimated from the number
+     * of distinct keys (the combinations of common identifiers) of both sides.
+     */
+    @Override
+    public Statistics getStatistics() {
+        DataStructure structure = getDataStructure();
+
+        Long rowCount = null;
+        Long keyCount = null;
+        boolean first = true;
+        Map<String, ColumnStatistics> columns = Maps.newLinkedHashMap();
+        for (Dataset dataset : datasets.values()) {
+            Statistics statistics = dataset.getStatistics();
+            Long childRowCount = statistics.getRowCount().orElse(null);
+            Long childKeyCount = estimateKeyCount(dataset, statistics);
+            if (first) {
+                rowCount = childRowCount;
+                keyCount = childKeyCount;
+                first = false;
+            } else if (rowCount == null || childRowCount == null) {
+                rowCount = null;
+                keyCount = null;
+            } else {
+                rowCount = estimateRowCount(rowCount, keyCount, childRowCount, childKeyCount);
+                keyCount = Math.min(rowCount, estimateKeyCount(keyCount, childKeyCount));
+            }
+
+            DataStructure childStructure = dataset.getDataStructure();
+            for (Map.Entry<Component, Component> mapping : componentMapping.column(dataset).entrySet()) {
+                String name = structure.getName(mapping.getKey());
+                if (name != null && !columns.containsKey(name))
+                    columns.put(name, statistics.getColumn(childStructure.getName(mapping.getValue())));
+            }
+        }
+
+        Statistics.Builder builder = Statistics.builder();
+        columns.forEach(builder::column);
+        for (Component identifier : getCommonIdentifiers()) {
+            builder.order(structure.getName(identifier), ASC);
+        }
+        return builder.build().withRowCount(rowCount);
+    }
+
+    /**
+     * Estimate the number of rows of the join of two datasets.
+     * <p>
+     * Assumes that the keys of the side with fewer keys all exist on the other side.
+     *
+     * @param leftRowCount  the number of rows of the left side.
+     * @param leftKeyCount  the number of distinct keys of the left side.
+     * @param rightRowCount the number of rows of the right side.
+     * @param rightKeyCount the number of distinct keys of the right side.
+     */
+    protected long estimateRowCount(long leftRowCount, long leftKeyCount, long rightRowCount, long rightKeyCount) {
+        long keyCount = Math.max(leftKeyCount, rightKeyCount);
+        if (keyCount == 0)
+            return 0;
+        return Math.round((double) leftRowCount * rightRowCount / keyCount);
+    }
+
+    /**
+     * Estimate the number of distinct keys of the join of two datasets.
+     */
+    protected long estimateKeyCount(long leftKeyCount, long rightKeyCount) {
+        return Math.min(leftKeyCount, rightKeyCount);
+    }
+
+    /**
+     * Estimate the number of distinct combinations of common identifiers of a child.
+     * <p>
+     * Identifiers with an unknown distinct count are considered unique.
+     */
+    protected Long estimateKeyCount(Dataset dataset, Statistics statistics) {
+        Optional<Long> rowCount = statistics.getRowCount();
+        if (!rowCount.isPresent())
+            return null;
+        DataStructure childStructure = dataset.getDataStructure();
+        long keyCount = 1;
+        for (Component identifier : getCommonIdentifiers()) {
+            Component childIdentifier = componentMapping.get(identifier, dataset);
+            Optional<Long> distinctCount = childIdentifier == null
+                    ? Optional.empty()
+                    : statistics.getColumn(childStructure.getName(childIdentifier)).getDistinctCount();
+            if (!distinctCount.isPresent())
+                return rowCount.get();
+            keyCount = LongMath.saturatedMultiply(keyCount, distinctCount.get());
+        }
+        return Math.min(keyCount, rowCount.get());
+    }
+
+    /**
+     * The input of a join step.
+     */
+    protected enum Side {
+        LEFT, RIGHT
+    }
+
     @Override
     public Optional<Map<String, Integer>> getDistinctValuesCount() {
         if (getChildren().size() == 1) {
@@ -0,0 +1,194 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.DataPartitions;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Cartesian product of two inputs.
+ * <p>
+ * One input, the inner input, is loaded in a {@link DataPointBuffer} that writes the rows that exceed half the
+ * memory budget to a temporary file. The other input is read in blocks and the inner input is read once per
+ * block. When the inner input is in memory the blocks are small and the output is in the order of the outer
+ * input, with the rows of each outer row in the order of the inner input. Otherwise the blocks use the other
+ * half of the memory budget, so that the file is read as few times as possible.
+ * <p>
+ * The product of a block and a part of the inner input is a task of at most about {@link #TASK_ROWS} rows. The
+ * tasks are computed in parallel with the given pool, see {@link DataPartitions#parallelMap}.
+ */
+public final class BlockNestedLoopJoin implements Closeable {
+
+    /**
+     * Number of output rows of a task.
+     */
+    static final int TASK_ROWS = 4096;
+
+    private final Stream<DataPoint> outer;
+    private final Stream<DataPoint> inner;
+    private final BiFunction<DataPoint, DataPoint, DataPoint> merger;
+    private final long memoryBudget;
+    private final ForkJoinPool pool;
+    private DataPointBuffer buffer;
+
+    /**
+     * @param outer        the input that is read in blocks.
+     * @param inner        the input that is loaded in memory, or in a file.
+     * @param merger       creates a row from a row of the outer input and a row of the inner input.
+     * @param memoryBudget the estimated size in bytes of the rows kept in memory.
+     * @param pool         the pool that computes the tasks, null to compute them sequentially.
+     */
+    public BlockNestedLoopJoin(Stream<DataPoint> outer, Stream<DataPoint> inner,
+                               BiFunction<DataPoint, DataPoint, DataPoint> merger, long memoryBudget,
+                               ForkJoinPool pool) {
+        checkArgument(memoryBudget > 1, "invalid memory budget %s", memoryBudget);
+        this.outer = checkNotNull(outer);
+        this.inner = checkNotNull(inner);
+        this.merger = checkNotNull(merger);
+        this.memoryBudget = memoryBudget;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the product. The inner input is loaded when the stream is consumed and closing the stream closes
+     * the inputs and deletes the temporary file.
+     */
+    public Stream<DataPoint> stream() {
+        Stream<Task> tasks = StreamSupport.stream(
+                () -> Spliterators.spliteratorUnknownSize(new TaskIterator(), Spliterator.ORDERED),
+                Spliterator.ORDERED, false
+        );
+        return DataPartitions.parallelMap(tasks, Task::compute, pool)
+                .flatMap(List::stream)
+                .onClose(this::closeUnchecked);
+    }
+
+    private void closeUnchecked() {
+        try {
+            close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            outer.close();
+            inner.close();
+        } finally {
+            if (buffer != null)
+                buffer.close();
+        }
+    }
+
+    /**
+     * The product of rows of the outer input and rows of the inner input.
+     */
+    private final class Task {
+
+        private final List<DataPoint> outerRows;
+        private final List<DataPoint> innerRows;
+
+        private Task(List<DataPoint> outerRows, List<DataPoint> innerRows) {
+            this.outerRows = outerRows;
+            this.innerRows = innerRows;
+        }
+
+        private List<DataPoint> compute() {
+            List<DataPoint> rows = Lists.newArrayListWithCapacity(outerRows.size() * innerRows.size());
+            for (DataPoint outerRow : outerRows) {
+                for (DataPoint innerRow : innerRows) {
+                    rows.add(merger.apply(outerRow, innerRow));
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Loads the inner input and then reads a block of the outer input each time the tasks of the previous block
+     * were returned.
+     */
+    private final class TaskIterator extends AbstractIterator<Task> {
+
+        private Iterator<DataPoint> outerIterator;
+        private List<DataPoint> block = Collections.emptyList();
+        private Iterator<List<DataPoint>> innerParts = Collections.emptyIterator();
+
+        private void load() {
+            buffer = new DataPointBuffer(memoryBudget / 2);
+            inner.forEach(buffer::add);
+            outerIterator = buffer.size() == 0 ? Collections.emptyIterator() : outer.iterator();
+        }
+
+        private List<DataPoint> readBlock() {
+            List<DataPoint> rows = Lists.newArrayList();
+            if (!buffer.isSpilled()) {
+                long count = Math.max(1, TASK_ROWS / Math.max(1, buffer.size()));
+                while (rows.size() < count && outerIterator.hasNext()) {
+                    rows.add(outerIterator.next());
+                }
+            } else {
+                long used = 0;
+                while (used < memoryBudget / 2 && outerIterator.hasNext()) {
+                    DataPoint row = outerIterator.next();
+                    rows.add(row);
+                    used += DataPointBuffer.estimateSize(row);
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        protected Task computeNext() {
+            if (outerIterator == null)
+                load();
+            while (!innerParts.hasNext()) {
+                block = readBlock();
+                if (block.isEmpty())
+                    return endOfData();
+                innerParts = Iterators.partition(buffer.iterator(), Math.max(1, TASK_ROWS / block.size()));
+            }
+            return new Task(block, innerParts.next());
+        }
+    }
+}
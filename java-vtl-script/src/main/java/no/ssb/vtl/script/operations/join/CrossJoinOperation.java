@@ -39,35 +39,160 @@ package no.ssb.vtl.script.operations.join;
  * #L%
  */
 
-import com.google.common.collect.Streams;
+import com.google.common.collect.Sets;
+import com.google.common.math.LongMath;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
-import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.script.ExecutionSettings;
+import no.ssb.vtl.script.support.Closer;
 
+import java.io.IOException;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * TODO(hk): Finish this.
+ * Cartesian product of the datasets.
+ * <p>
+ * The datasets do not need common identifiers. Each step joins the result of the previous steps with the next
+ * dataset using a {@link BlockNestedLoopJoin} that loads the next dataset, or the first dataset in the first
+ * step if it is known to be smaller. The memory budget is the one of the sorts
+ * ({@link ExecutionSettings#getSortMemoryBudget()}).
+ * <p>
+ * The values of the columns with the same name are the ones of the last dataset, like in outer joins. The data
+ * is sorted after the product when an order is requested.
  */
-public class CrossJoinOperation extends OuterJoinOperation {
+public class CrossJoinOperation extends AbstractJoinOperation {
 
     CrossJoinOperation(Map<String, Dataset> namedDatasets) {
-        super(namedDatasets, Collections.emptySet());
+        this(namedDatasets, Collections.emptySet());
     }
 
     public CrossJoinOperation(Map<String, Dataset> namedDatasets, Set<Component> identifiers) {
-        super(namedDatasets, identifiers);
+        super(namedDatasets, identifiers, false);
+        ComponentBindings joinScope = this.getJoinScope();
+        for (Component component : getCommonIdentifiers()) {
+            joinScope.put(
+                    getDataStructure().getName(component),
+                    component
+            );
+        }
     }
 
     @Override
     public Optional<Stream<DataPoint>> getData(Order requestedOrder, Filtering filtering, Set<String> components) {
-        throw new UnsupportedOperationException("Not implemented");
+
+        // Conditions that the children cannot evaluate are applied to the result.
+        Filtering residualFiltering = computeResidualFiltering(filtering);
+        Set<String> filteredComponents = computeFilteredComponents(components, residualFiltering);
+        if (!requestedOrder.isEmpty()) {
+            Set<String> orderComponents = requestedOrder.keySet().stream()
+                    .map(getDataStructure()::getName)
+                    .collect(Collectors.toSet());
+            filteredComponents = Sets.union(filteredComponents, orderComponents);
+        }
+
+        List<Dataset> children = datasets.values().asList();
+        long memoryBudget = getSettings().getSortMemoryBudget();
+        ForkJoinPool pool = getSettings().getForkJoinPool();
+
+        Closer closer = Closer.create();
+        try {
+            Dataset first = children.get(0);
+            Stream<DataPoint> result = getUnsortedData(first, computeChildFiltering(first, filtering), filteredComponents)
+                    .map(new DataPointCapacityExpander(getDataStructure().size()));
+            closer.register(result);
+
+            for (int i = 1; i < children.size(); i++) {
+                Dataset child = children.get(i);
+                Stream<DataPoint> childData = getUnsortedData(child, computeChildFiltering(child, filtering),
+                        filteredComponents);
+                closer.register(childData);
+
+                OuterJoinMerger merger = new OuterJoinMerger(this, child);
+                BlockNestedLoopJoin join;
+                if (i == 1 && isSmaller(first, child)) {
+                    join = new BlockNestedLoopJoin(childData, result,
+                            (childRow, resultRow) -> merger.apply(resultRow, childRow), memoryBudget, pool);
+                } else {
+                    join = new BlockNestedLoopJoin(result, childData, merger, memoryBudget, pool);
+                }
+                closer.register(join);
+                result = join.stream();
+            }
+
+            result = filterResult(result, residualFiltering);
+            if (!requestedOrder.isEmpty()) {
+                result = getSettings().sorted(result, requestedOrder);
+            }
+
+            // Close all the underlying streams.
+            return Optional.of(projectResult(result, components).onClose(() -> {
+                try {
+                    closer.close();
+                } catch (IOException e) {
+                    // ignore (cannot happen).
+                }
+            }));
+
+        } catch (Exception ex) {
+            try {
+                closer.close();
+            } catch (IOException ioe) {
+                ex.addSuppressed(ioe);
+            }
+            throw ex;
+        }
+    }
+
+    private boolean isSmaller(Dataset left, Dataset right) {
+        Long leftRows = estimateRowCount(left);
+        Long rightRows = estimateRowCount(right);
+        return leftRows != null && rightRows != null && leftRows < rightRows;
+    }
+
+    /**
+     * The number of rows is the product of the number of rows of the children. The product is not sorted.
+     */
+    @Override
+    public Statistics getStatistics() {
+        return Statistics.copyOf(super.getStatistics())
+                .rowCount(multiplyRowCounts().orElse(null))
+                .clearOrder()
+                .build();
+    }
+
+    private Optional<Long> multiplyRowCounts() {
+        long product = 1;
+        for (Dataset dataset : datasets.values()) {
+            Long rows = estimateRowCount(dataset);
+            if (rows == null)
+                return Optional.empty();
+            product = LongMath.saturatedMultiply(product, rows);
+        }
+        return Optional.of(product);
+    }
+
+    /**
+     * The product of the sizes of the children, if all are known.
+     */
+    @Override
+    public Optional<Long> getSize() {
+        long product = 1;
+        for (Dataset dataset : datasets.values()) {
+            Optional<Long> size = dataset.getSize();
+            if (size == null || !size.isPresent())
+                return Optional.empty();
+            product = LongMath.saturatedMultiply(product, size.get());
+        }
+        return Optional.of(product);
     }
 }
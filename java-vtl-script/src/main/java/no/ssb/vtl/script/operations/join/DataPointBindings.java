@@ -34,6 +34,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static no.ssb.vtl.script.operations.join.ComponentBindings.*;
 
@@ -46,7 +47,6 @@ public class DataPointBindings implements Bindings {
 
     private final ComponentBindings references;
     private final DataStructure structure;
-    private Map<Component, VTLObject> mapView;
     private DataPoint dataPoint;
 
     public DataPointBindings(ComponentBindings references, DataStructure structure) {
@@ -70,14 +70,28 @@ public class DataPointBindings implements Bindings {
     }
 
     public DataPointBindings setDataPoint(DataPoint dataPoint) {
-        this.mapView = structure.asMap(dataPoint);
+        checkArgument(
+                dataPoint.size() >= structure.size(),
+                "inconsistent data point size %s, expected %s",
+                dataPoint.size(), structure.size()
+        );
         this.dataPoint = dataPoint;
         return this;
     }
 
+    /**
+     * Returns the value of the component, or null if the component is not part of the structure.
+     */
+    private VTLObject getValue(Object component) {
+        int index = component instanceof Component ? structure.indexOf((Component) component) : -1;
+        return index < 0 ? null : dataPoint.get(index);
+    }
+
     @Override
     public Object put(String name, Object value) {
-        return mapView.put((Component) extractComponent(references.get(name)), (VTLObject) value);
+        Object component = extractComponent(references.get(name));
+        int index = component instanceof Component ? structure.indexOf((Component) component) : -1;
+        return index < 0 ? null : dataPoint.set(index, (VTLObject) value);
     }
 
     @Override
@@ -88,7 +102,7 @@ public class DataPointBindings implements Bindings {
 
     @Override
     public void clear() {
-        mapView.clear();
+        throw new UnsupportedOperationException();
     }
 
     @Override
@@ -98,7 +112,7 @@ public class DataPointBindings implements Bindings {
 
     @Override
     public Collection<Object> values() {
-        return (Collection) mapView.values();
+        return (Collection) dataPoint.subList(0, structure.size());
     }
 
     @Override
@@ -110,7 +124,7 @@ public class DataPointBindings implements Bindings {
                 return Iterators.transform(iterator, input -> {
                     Object value = extractComponent(input.getValue());
                     if (value instanceof Component)
-                        value = mapView.get(value);
+                        value = getValue(value);
                     return new AbstractMap.SimpleImmutableEntry<>(
                             input.getKey(), value
                     );
@@ -119,7 +133,7 @@ public class DataPointBindings implements Bindings {
 
             @Override
             public int size() {
-                return mapView.size();
+                return structure.size();
             }
         };
     }
@@ -149,11 +163,11 @@ public class DataPointBindings implements Bindings {
         Object reference = extractComponent(references.get(key));
         if (reference instanceof DataPointBindings)
             return reference;
-        return mapView.get(reference);
+        return getValue(reference);
     }
 
     @Override
     public Object remove(Object key) {
-        return mapView.remove(extractComponent(references.get(key)));
+        throw new UnsupportedOperationException();
     }
 }
@@ -24,11 +24,14 @@ import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.VTLObject;
 
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 /**
  * A consumer that expands the size of the {@link DataPoint} it receives.
+ * <p>
+ * Used as a function, immutable data points are copied before being expanded.
  */
-public class DataPointCapacityExpander implements Consumer<DataPoint> {
+public class DataPointCapacityExpander implements Consumer<DataPoint>, UnaryOperator<DataPoint> {
 
     private final int newSize;
 
@@ -43,4 +46,13 @@ public class DataPointCapacityExpander implements Consumer<DataPoint> {
             dataPoint.add(VTLObject.NULL);
         }
     }
+
+    @Override
+    public DataPoint apply(DataPoint dataPoint) {
+        if (dataPoint.size() >= newSize)
+            return dataPoint;
+        DataPoint result = DataPoint.mutable(dataPoint);
+        accept(result);
+        return result;
+    }
 }
@@ -0,0 +1,248 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.math.LongMath;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Joins two inputs by loading one of them, the build side, in a hash table and streaming the other one, the
+ * probe side.
+ * <p>
+ * Only the probe side needs to be sorted with the predicate. The output follows the order of the probe side
+ * and the rows of each key are the Cartesian product of the left and right rows, like with the
+ * {@link InnerJoinSpliterator} and {@link OuterJoinSpliterator}. In outer mode the keys of the build side are
+ * sorted so that the rows without match are output in order.
+ *
+ * @param <B> the type of the rows of the build side.
+ * @param <P> the type of the rows of the probe side.
+ */
+public class HashJoinSpliterator<B, P, K, O> implements Spliterator<O> {
+
+    private final Function<B, K> buildKeyExtractor;
+    private final Function<P, K> probeKeyExtractor;
+    private final JoinKeyComparator<P, P> probeComparator;
+    private final Comparator<K> predicate;
+    private final BiFunction<B, P, O> merger;
+    private final boolean buildLeft;
+    private final boolean outer;
+
+    private final Spliterator<B> buildSpliterator;
+    private final Spliterator<P> probeSpliterator;
+    private final PeekingIterator<P> probeIterator;
+    private final List<P> probeBuffer = Lists.newArrayList();
+
+    private Map<K, List<B>> table;
+    private Iterator<K> buildKeys;
+    private K nextBuildKey;
+    private Iterator<O> output = Collections.emptyIterator();
+
+    private HashJoinSpliterator(
+            Function<B, K> buildKeyExtractor,
+            Function<P, K> probeKeyExtractor,
+            Comparator<K> predicate,
+            BiFunction<B, P, O> merger,
+            Spliterator<B> buildSpliterator,
+            Spliterator<P> probeSpliterator,
+            boolean buildLeft,
+            boolean outer
+    ) {
+        this.buildKeyExtractor = checkNotNull(buildKeyExtractor);
+        this.probeKeyExtractor = checkNotNull(probeKeyExtractor);
+        this.predicate = checkNotNull(predicate);
+        this.probeComparator = JoinKeyComparator.of(probeKeyExtractor, probeKeyExtractor, predicate);
+        this.merger = checkNotNull(merger);
+        this.buildSpliterator = checkNotNull(buildSpliterator);
+        this.probeSpliterator = checkNotNull(probeSpliterator);
+        this.probeIterator = Iterators.peekingIterator(Spliterators.iterator(probeSpliterator));
+        this.buildLeft = buildLeft;
+        this.outer = outer;
+    }
+
+    /**
+     * Creates a hash join that loads the left input and streams the right input.
+     *
+     * @param outer true to also output the rows without match.
+     */
+    public static <L, R, K, O> HashJoinSpliterator<L, R, K, O> buildLeft(
+            Function<L, K> leftKeyExtractor,
+            Function<R, K> rightKeyExtractor,
+            Comparator<K> predicate,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator,
+            boolean outer
+    ) {
+        return new HashJoinSpliterator<>(leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                leftSpliterator, rightSpliterator, true, outer);
+    }
+
+    /**
+     * Creates a hash join that loads the right input and streams the left input.
+     *
+     * @param outer true to also output the rows without match.
+     */
+    public static <L, R, K, O> HashJoinSpliterator<R, L, K, O> buildRight(
+            Function<L, K> leftKeyExtractor,
+            Function<R, K> rightKeyExtractor,
+            Comparator<K> predicate,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator,
+            boolean outer
+    ) {
+        return new HashJoinSpliterator<>(rightKeyExtractor, leftKeyExtractor, predicate,
+                (right, left) -> merger.apply(left, right), rightSpliterator, leftSpliterator, false, outer);
+    }
+
+    private void build() {
+        table = Maps.newHashMap();
+        buildSpliterator.forEachRemaining(row -> table.computeIfAbsent(
+                buildKeyExtractor.apply(row), key -> Lists.newArrayList()
+        ).add(row));
+        if (outer) {
+            List<K> keys = Lists.newArrayList(table.keySet());
+            keys.sort(predicate);
+            buildKeys = keys.iterator();
+            nextBuildKey = buildKeys.hasNext() ? buildKeys.next() : null;
+        }
+    }
+
+    private K nextBuildKey() {
+        K key = nextBuildKey;
+        nextBuildKey = buildKeys.hasNext() ? buildKeys.next() : null;
+        return key;
+    }
+
+    private Iterator<O> product(List<B> buildRows, List<P> probeRows) {
+        if (buildLeft)
+            return new CartesianIterator<>(buildRows, probeRows, merger);
+        return new CartesianIterator<P, B, O>(probeRows, buildRows, (probe, build) -> merger.apply(build, probe));
+    }
+
+    /**
+     * Computes the output of the next key of the probe side, or of the remaining keys of the build side in
+     * outer mode.
+     *
+     * @return false when both sides are exhausted.
+     */
+    private boolean advance() {
+        if (table == null)
+            build();
+
+        if (!probeIterator.hasNext()) {
+            if (!outer || nextBuildKey == null)
+                return false;
+            List<O> rows = Lists.newArrayList();
+            while (nextBuildKey != null) {
+                for (B row : table.get(nextBuildKey())) {
+                    rows.add(merger.apply(row, null));
+                }
+            }
+            output = rows.iterator();
+            return true;
+        }
+
+        // The key of the group is extracted once to look up the table.
+        probeBuffer.clear();
+        P first = probeIterator.next();
+        probeBuffer.add(first);
+        while (probeIterator.hasNext() && probeComparator.compare(first, probeIterator.peek()) == 0) {
+            probeBuffer.add(probeIterator.next());
+        }
+        K key = probeKeyExtractor.apply(first);
+
+        if (!outer) {
+            List<B> matches = table.get(key);
+            output = matches == null ? Collections.emptyIterator() : product(matches, probeBuffer);
+            return true;
+        }
+
+        // The keys of the build side that are before the probe key have no match.
+        List<O> rows = Lists.newArrayList();
+        while (nextBuildKey != null && predicate.compare(nextBuildKey, key) < 0) {
+            for (B row : table.get(nextBuildKey())) {
+                rows.add(merger.apply(row, null));
+            }
+        }
+        if (nextBuildKey != null && predicate.compare(nextBuildKey, key) == 0) {
+            product(table.get(nextBuildKey()), probeBuffer).forEachRemaining(rows::add);
+        } else {
+            for (P row : probeBuffer) {
+                rows.add(merger.apply(null, row));
+            }
+        }
+        output = rows.iterator();
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super O> action) {
+        while (!output.hasNext()) {
+            if (!advance())
+                return false;
+        }
+        action.accept(output.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super O> action) {
+        do {
+            output.forEachRemaining(action);
+        } while (advance());
+    }
+
+    @Override
+    public Spliterator<O> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        try {
+            return LongMath.checkedAdd(buildSpliterator.estimateSize(), probeSpliterator.estimateSize());
+        } catch (ArithmeticException ae) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+    }
+}
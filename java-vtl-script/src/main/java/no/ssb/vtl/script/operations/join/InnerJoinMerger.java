@@ -30,6 +30,7 @@ import no.ssb.vtl.model.DataStructure;
 import java.util.Map;
 import java.util.function.BiFunction;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -59,6 +60,22 @@ public class InnerJoinMerger implements BiFunction<DataPoint, DataPoint, DataPoi
         indexMap = buildIndices(leftList, rightList);
     }
 
+    /**
+     * Create a merger that copies the value at position {@code sources[n]} of the right data point to the position
+     * {@code targets[n]} of the left data point.
+     */
+    InnerJoinMerger(DataStructure leftStructure, DataStructure rightStructure, int[] sources, int[] targets) {
+        this.leftStructure = checkNotNull(leftStructure);
+        this.rightStructure = checkNotNull(rightStructure);
+        checkArgument(sources.length == targets.length, "sources and targets differ");
+
+        ImmutableListMultimap.Builder<Integer, Integer> indexMapBuilder = ImmutableListMultimap.builder();
+        for (int i = 0; i < sources.length; i++) {
+            indexMapBuilder.put(sources[i], targets[i]);
+        }
+        indexMap = indexMapBuilder.build();
+    }
+
     private ImmutableListMultimap<Integer, Integer> buildIndices(ImmutableList<Component> leftList, ImmutableList<Component> rightList) {
         ImmutableListMultimap.Builder<Integer, Integer> indexMapBuilder = ImmutableListMultimap.builder();
         // Save the indices of the right data points that need to be moved to the left.
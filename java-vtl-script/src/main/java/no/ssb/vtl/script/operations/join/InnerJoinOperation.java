@@ -20,24 +20,53 @@ package no.ssb.vtl.script.operations.join;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Streams;
 import com.google.common.collect.Table;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBuffer;
+import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
 import no.ssb.vtl.script.support.Closer;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class InnerJoinOperation extends AbstractJoinOperation {
 
+    /**
+     * The maximum number of rows of the smallest child that are read to filter the larger children.
+     */
+    public static final long MAX_RUNTIME_FILTER_ROWS = 1_000_000;
+
+    /**
+     * The minimum ratio between the number of rows of a child and of the smallest child to filter the child.
+     */
+    public static final long RUNTIME_FILTER_RATIO = 10;
+
+    /**
+     * The maximum number of children that are reordered.
+     */
+    public static final int MAX_REORDERED_DATASETS = 10;
 
     public InnerJoinOperation(Map<String, Dataset> namedDatasets) {
         this(namedDatasets, Collections.emptySet());
@@ -55,6 +84,14 @@ public class InnerJoinOperation extends AbstractJoinOperation {
         }
     }
 
+    /**
+     * Only the rows that have a match in all the children are kept so any condition can be evaluated first.
+     */
+    @Override
+    protected boolean canFilterChildren(Set<Component> components) {
+        return true;
+    }
+
     @Override
     public Optional<Stream<DataPoint>> getData(Order requestedOrder, Dataset.Filtering filtering, Set<String> components) {
 
@@ -70,61 +107,47 @@ public class InnerJoinOperation extends AbstractJoinOperation {
         // Compute the predicate
         Order predicate = computePredicate(requiredOrder);
 
-        Iterator<Dataset> iterator = datasets.values().iterator();
-        Dataset left = iterator.next();
-        Dataset right = left;
+        // Conditions that the children cannot evaluate are applied to the result.
+        Filtering residualFiltering = computeResidualFiltering(filtering);
+        Set<String> filteredComponents = computeFilteredComponents(components, residualFiltering);
+
+        Map<Dataset, Filtering> childFilterings = Maps.newHashMap();
+        for (Dataset child : datasets.values()) {
+            childFilterings.put(child, computeChildFiltering(child, filtering));
+        }
+
+        List<Dataset> children = computeJoinOrder();
+
+        // The first child can be loaded in a hash table if it is the smaller input of the first step.
+        Optional<Side> firstSide = children.size() > 1
+                ? chooseHashSide(children.get(0), children.get(1), requiredOrder)
+                : Optional.empty();
+
+        Optional<Dataset> filterSource = chooseRuntimeFilterSource();
+        List<Dataset> filterTargets = filterSource.isPresent()
+                ? chooseRuntimeFilterTargets(filterSource.get())
+                : Collections.emptyList();
 
         // Close all children
         Closer closer = Closer.create();
         try {
 
-            Table<Component, Dataset, Component> componentMapping = getComponentMapping();
-            Stream<DataPoint> result = getOrSortData(
-                    left,
-                    adjustOrderForStructure(requiredOrder, left.getDataStructure()),
-                    filtering,
-                    components
-            ).peek(new DataPointCapacityExpander(getDataStructure().size()));
-            closer.register(result);
-
-
-            boolean first = true;
-            while (iterator.hasNext()) {
-                left = right;
-                right = iterator.next();
-
-                Stream<DataPoint> rightStream = getOrSortData(
-                        right,
-                        adjustOrderForStructure(requiredOrder, right.getDataStructure()),
-                        filtering,
-                        components
-                );
-                closer.register(rightStream);
-
-                // The first left stream uses its own structure. After that, the left data structure
-                // will always be the resulting structure. We use a flag (first) to handle the first case
-                // since the hotfix needs to quickly released but this code should be refactored.
-
-                result = StreamSupport.stream(
-                        new InnerJoinSpliterator<>(
-                                new JoinKeyExtractor(
-                                        first ? left.getDataStructure() : getDataStructure(),
-                                        predicate,
-                                        first ? componentMapping.column(left)::get : c -> c
-                                ),
-                                new JoinKeyExtractor(right.getDataStructure(), predicate, componentMapping.column(right)),
-                                predicate,
-                                new InnerJoinMerger(getDataStructure(), right.getDataStructure()),
-                                result.spliterator(),
-                                rightStream.spliterator()
-                        ), false
-                );
+            Supplier<Stream<DataPoint>> join = () -> {
+                JoinInputs inputs = new JoinInputs(childFilterings, filteredComponents, closer);
+                if (!filterTargets.isEmpty())
+                    inputs.filterWith(filterSource.get(), filterTargets);
+                return firstSide.orElse(null) == Side.LEFT
+                        ? joinSteps(children, requiredOrder, predicate, inputs, firstSide, closer)
+                        : joinSorted(children, requiredOrder, predicate, inputs, firstSide, closer);
+            };
 
-                first = false;
-            }
+            // The smallest child is only read when the result is consumed.
+            Stream<DataPoint> result = filterTargets.isEmpty()
+                    ? join.get()
+                    : StreamSupport.stream(() -> join.get().spliterator(), Spliterator.ORDERED, false);
 
             // Close all the underlying streams.
-            return Optional.of(result.onClose(() -> {
+            return Optional.of(projectResult(filterResult(result, residualFiltering), components).onClose(() -> {
                 try {
                     closer.close();
                 } catch (IOException e) {
@@ -141,4 +164,347 @@ public class InnerJoinOperation extends AbstractJoinOperation {
             throw ex;
         }
     }
+
+    /**
+     * Returns the smallest child if its rows can be read to filter the larger children.
+     * <p>
+     * Only the children with a known number of rows are considered.
+     */
+    private Optional<Dataset> chooseRuntimeFilterSource() {
+        Dataset smallest = null;
+        Long smallestRows = null;
+        for (Dataset child : datasets.values()) {
+            Long rows = estimateRowCount(child);
+            if (rows != null && (smallestRows == null || rows < smallestRows)) {
+                smallest = child;
+                smallestRows = rows;
+            }
+        }
+        if (smallest == null || smallestRows > MAX_RUNTIME_FILTER_ROWS)
+            return Optional.empty();
+        return Optional.of(smallest);
+    }
+
+    /**
+     * Returns the children that are at least {@link #RUNTIME_FILTER_RATIO} times larger than the given child.
+     * <p>
+     * Children with an unknown number of rows are not filtered since nothing shows that the filter is worth it.
+     */
+    private List<Dataset> chooseRuntimeFilterTargets(Dataset source) {
+        long minimumRows = LongMath.saturatedMultiply(estimateRowCount(source), RUNTIME_FILTER_RATIO);
+        List<Dataset> larger = Lists.newArrayList();
+        for (Dataset child : datasets.values()) {
+            Long rows = estimateRowCount(child);
+            if (child != source && rows != null && rows >= minimumRows)
+                larger.add(child);
+        }
+        return larger;
+    }
+
+    private static boolean isNotBloom(StructuredFiltering condition) {
+        return condition.getOperator() != StructuredFiltering.Operator.BLOOM;
+    }
+
+    /**
+     * The data of the children used by one join.
+     * <p>
+     * When a runtime filter is used, the common identifiers of the smallest child are read first and a filtering on
+     * their values is given to the larger children. The rows of the larger children that cannot have a match are
+     * then dropped by the children, before they are sorted. The {@code bloom} conditions are only evaluated in memory
+     * so they are applied to the data the larger children return instead. The rows of the smallest child are kept in
+     * a buffer so the child is only read once.
+     */
+    private final class JoinInputs {
+
+        private final Map<Dataset, Filtering> filterings;
+        private final Map<Dataset, Filtering> bloomFilterings = Maps.newHashMap();
+        private final Set<String> components;
+        private final Closer closer;
+        private Dataset buffered;
+        private DataPointBuffer buffer;
+
+        private JoinInputs(Map<Dataset, Filtering> filterings, Set<String> components, Closer closer) {
+            this.filterings = Maps.newHashMap(filterings);
+            this.components = components;
+            this.closer = closer;
+        }
+
+        /**
+         * Reads the source and adds a filtering on the values of its common identifiers to the targets.
+         */
+        private void filterWith(Dataset source, List<Dataset> targets) {
+            DataStructure structure = getDataStructure();
+            DataStructure sourceStructure = source.getDataStructure();
+            List<String> columns = Lists.newArrayList();
+            List<String> sourceColumns = Lists.newArrayList();
+            for (Component identifier : getCommonIdentifiers()) {
+                columns.add(structure.getName(identifier));
+                sourceColumns.add(sourceStructure.getName(getComponentMapping().get(identifier, source)));
+            }
+
+            RuntimeFilterBuilder builder = new RuntimeFilterBuilder(structure, columns, sourceStructure, sourceColumns);
+            buffer = closer.register(new DataPointBuffer(getSettings().getSortMemoryBudget()));
+            try (Stream<DataPoint> data = getUnsortedData(source, filterings.get(source), components)) {
+                data.forEach(dataPoint -> {
+                    builder.add(dataPoint);
+                    buffer.add(dataPoint);
+                });
+            }
+            buffered = source;
+
+            Filtering runtimeFiltering = builder.build();
+            Filtering pushed = StructuredFiltering.supported(runtimeFiltering, InnerJoinOperation::isNotBloom);
+            Filtering bloom = StructuredFiltering.unsupported(runtimeFiltering, InnerJoinOperation::isNotBloom);
+            for (Dataset target : targets) {
+                filterings.put(target, StructuredFiltering.combine(
+                        filterings.get(target), computeChildFiltering(target, pushed)
+                ));
+                if (bloom != Filtering.ALL)
+                    bloomFilterings.put(target, computeChildFiltering(target, bloom));
+            }
+        }
+
+        /**
+         * Returns the data of a child sorted by the given order of the join.
+         */
+        private Stream<DataPoint> sorted(Dataset child, Order requiredOrder) {
+            Order order = adjustOrderForStructure(requiredOrder, child.getDataStructure());
+            if (child == buffered)
+                return getSettings().sorted(Streams.stream(buffer), order);
+            return filterBloom(child, getOrSortData(child, order, filterings.get(child), components));
+        }
+
+        /**
+         * Returns the data of a child without sorting it.
+         */
+        private Stream<DataPoint> unsorted(Dataset child) {
+            if (child == buffered)
+                return Streams.stream(buffer);
+            return filterBloom(child, getUnsortedData(child, filterings.get(child), components));
+        }
+
+        private Stream<DataPoint> filterBloom(Dataset child, Stream<DataPoint> data) {
+            Filtering bloom = bloomFilterings.get(child);
+            return bloom == null ? data : data.filter(bloom);
+        }
+    }
+
+    /**
+     * Returns the order in which the children are joined.
+     * <p>
+     * The children are joined one after the other. When the number of rows of all the children is known, the order
+     * that minimizes the estimated number of rows of the intermediate results is used. The estimates are the same as
+     * the ones of {@link #getStatistics()}. Otherwise, or when there are more than {@link #MAX_REORDERED_DATASETS}
+     * children, the order of the datasets is kept.
+     */
+    @VisibleForTesting
+    List<Dataset> computeJoinOrder() {
+        List<Dataset> children = datasets.values().asList();
+        int count = children.size();
+        if (count <= 2 || count > MAX_REORDERED_DATASETS)
+            return children;
+
+        long[] rows = new long[count];
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            Dataset child = children.get(i);
+            Long rowCount = estimateRowCount(child);
+            if (rowCount == null)
+                return children;
+            Statistics statistics = child.getStatistics();
+            Long keyCount = statistics == null ? null : estimateKeyCount(child, statistics);
+            rows[i] = rowCount;
+            keys[i] = keyCount == null ? rowCount : Math.min(keyCount, rowCount);
+        }
+
+        // Best left-deep order of each subset of the children.
+        int subsets = 1 << count;
+        long[] costs = new long[subsets];
+        long[] subsetRows = new long[subsets];
+        long[] subsetKeys = new long[subsets];
+        int[] last = new int[subsets];
+        Arrays.fill(costs, Long.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            costs[1 << i] = 0;
+            subsetRows[1 << i] = rows[i];
+            subsetKeys[1 << i] = keys[i];
+            last[1 << i] = i;
+        }
+        for (int subset = 1; subset < subsets; subset++) {
+            if (costs[subset] == Long.MAX_VALUE)
+                continue;
+            for (int i = 0; i < count; i++) {
+                int next = subset | (1 << i);
+                if (next == subset)
+                    continue;
+                long nextRows = estimateRowCount(subsetRows[subset], subsetKeys[subset], rows[i], keys[i]);
+                long nextCost = LongMath.saturatedAdd(costs[subset], nextRows);
+                if (nextCost < costs[next]) {
+                    costs[next] = nextCost;
+                    subsetRows[next] = nextRows;
+                    subsetKeys[next] = Math.min(nextRows, estimateKeyCount(subsetKeys[subset], keys[i]));
+                    last[next] = i;
+                }
+            }
+        }
+
+        Dataset[] order = new Dataset[count];
+        for (int subset = subsets - 1, i = count - 1; i >= 0; i--) {
+            order[i] = children.get(last[subset]);
+            subset &= ~(1 << last[subset]);
+        }
+        return ImmutableList.copyOf(order);
+    }
+
+    /**
+     * Returns the positions of the values of a child and their positions in the result.
+     * <p>
+     * The layout of the result does not depend on the order of the joins: a component is written by the last
+     * child, in the order of the datasets, that contains it. The common identifiers are written by all the
+     * children since their values are equal.
+     *
+     * @return the positions in the child and in the result.
+     */
+    private int[][] computeCopyPlan(Dataset child) {
+        List<Component> resultComponents = ImmutableList.copyOf(getDataStructure().values());
+        List<Component> childComponents = ImmutableList.copyOf(child.getDataStructure().values());
+        Map<Component, Component> mapping = getComponentMapping().column(child);
+        List<Dataset> children = datasets.values().asList();
+        List<Dataset> following = children.subList(children.indexOf(child) + 1, children.size());
+
+        List<Integer> sources = Lists.newArrayList();
+        List<Integer> targets = Lists.newArrayList();
+        for (int to = 0; to < resultComponents.size(); to++) {
+            Component component = resultComponents.get(to);
+            int from;
+            if (getCommonIdentifiers().contains(component)) {
+                from = childComponents.indexOf(mapping.get(component));
+            } else {
+                from = childComponents.indexOf(component);
+                for (Dataset other : following) {
+                    if (other.getDataStructure().containsValue(component))
+                        from = -1;
+                }
+            }
+            if (from >= 0) {
+                sources.add(from);
+                targets.add(to);
+            }
+        }
+        return new int[][]{Ints.toArray(sources), Ints.toArray(targets)};
+    }
+
+    /**
+     * Merges all the sorted children at once and then joins the children that are loaded in a hash table.
+     */
+    private Stream<DataPoint> joinSorted(List<Dataset> children, Order requiredOrder, Order predicate,
+                                         JoinInputs joinInputs, Optional<Side> firstSide, Closer closer) {
+        Table<Component, Dataset, Component> componentMapping = getComponentMapping();
+
+        List<Spliterator<DataPoint>> inputs = Lists.newArrayList();
+        List<Function<DataPoint, DataPoint>> keyExtractors = Lists.newArrayList();
+        List<int[]> sources = Lists.newArrayList();
+        List<int[]> targets = Lists.newArrayList();
+        List<Dataset> hashed = Lists.newArrayList();
+        for (int i = 0; i < children.size(); i++) {
+            Dataset child = children.get(i);
+            Optional<Side> side = i == 0 ? Optional.empty()
+                    : i == 1 ? firstSide : chooseHashSide(null, child, requiredOrder);
+            if (side.isPresent()) {
+                hashed.add(child);
+                continue;
+            }
+
+            Stream<DataPoint> stream = joinInputs.sorted(child, requiredOrder);
+            closer.register(stream);
+            inputs.add(stream.spliterator());
+            keyExtractors.add(new JoinKeyExtractor(child.getDataStructure(), predicate, componentMapping.column(child)));
+
+            // Same copy as the InnerJoinMerger, without the intermediate data points.
+            int[][] plan = computeCopyPlan(child);
+            sources.add(plan[0]);
+            targets.add(plan[1]);
+        }
+
+        Stream<DataPoint> result = StreamSupport.stream(closer.register(new MultiJoinSpliterator(
+                inputs, keyExtractors, predicate,
+                sources.toArray(new int[0][]), targets.toArray(new int[0][]),
+                getDataStructure().size(), getKeyGroupMemoryBudget(), getSkewMetrics()
+        )), false);
+
+        for (Dataset child : hashed) {
+            Stream<DataPoint> rightStream = joinInputs.unsorted(child);
+            closer.register(rightStream);
+
+            JoinKeyExtractor leftKeyExtractor = new JoinKeyExtractor(getDataStructure(), predicate, c -> c);
+            JoinKeyExtractor rightKeyExtractor = new JoinKeyExtractor(
+                    child.getDataStructure(), predicate, componentMapping.column(child)
+            );
+            int[][] plan = computeCopyPlan(child);
+            InnerJoinMerger merger = new InnerJoinMerger(getDataStructure(), child.getDataStructure(),
+                    plan[0], plan[1]);
+            result = StreamSupport.stream(HashJoinSpliterator.buildRight(
+                    leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                    result.spliterator(), rightStream.spliterator(), false
+            ), false);
+        }
+        return result;
+    }
+
+    /**
+     * Joins the children two by two, the first child being loaded in a hash table.
+     */
+    private Stream<DataPoint> joinSteps(List<Dataset> children, Order requiredOrder, Order predicate,
+                                        JoinInputs joinInputs, Optional<Side> firstSide, Closer closer) {
+        Table<Component, Dataset, Component> componentMapping = getComponentMapping();
+        DataStructure structure = getDataStructure();
+
+        // The rows of the first child are copied in data points that have the structure of the result.
+        Dataset first = children.get(0);
+        int[][] firstPlan = computeCopyPlan(first);
+        InnerJoinMerger firstMerger = new InnerJoinMerger(structure, first.getDataStructure(),
+                firstPlan[0], firstPlan[1]);
+        DataPoint empty = DataPoint.create(structure.size());
+        Stream<DataPoint> result = joinInputs.unsorted(first)
+                .map(dataPoint -> firstMerger.apply(empty, dataPoint));
+        closer.register(result);
+
+        JoinKeyExtractor leftKeyExtractor = new JoinKeyExtractor(structure, predicate, c -> c);
+        for (int i = 1; i < children.size(); i++) {
+            Dataset right = children.get(i);
+
+            Optional<Side> side = i == 1 ? firstSide : chooseHashSide(null, right, requiredOrder);
+            Stream<DataPoint> rightStream = side.orElse(null) == Side.RIGHT
+                    ? joinInputs.unsorted(right)
+                    : joinInputs.sorted(right, requiredOrder);
+            closer.register(rightStream);
+
+            JoinKeyExtractor rightKeyExtractor = new JoinKeyExtractor(
+                    right.getDataStructure(), predicate, componentMapping.column(right)
+            );
+            int[][] plan = computeCopyPlan(right);
+            InnerJoinMerger merger = new InnerJoinMerger(structure, right.getDataStructure(), plan[0], plan[1]);
+
+            Spliterator<DataPoint> joined;
+            if (!side.isPresent()) {
+                joined = closer.register(new InnerJoinSpliterator<>(
+                        leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                        result.spliterator(), rightStream.spliterator(),
+                        getKeyGroupMemoryBudget(), getSkewMetrics()
+                ));
+            } else if (side.get() == Side.LEFT) {
+                joined = HashJoinSpliterator.buildLeft(
+                        leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                        result.spliterator(), rightStream.spliterator(), false
+                );
+            } else {
+                joined = HashJoinSpliterator.buildRight(
+                        leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                        result.spliterator(), rightStream.spliterator(), false
+                );
+            }
+            result = StreamSupport.stream(joined, false);
+        }
+        return result;
+    }
 }
@@ -22,12 +22,10 @@ package no.ssb.vtl.script.operations.join;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.collect.Queues;
 import com.google.common.math.LongMath;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.Iterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -37,19 +35,25 @@ import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
+/**
+ * Inner join of two inputs sorted with the same predicate.
+ * <p>
+ * The rows of each input that have the same key are held in a {@link KeyGroupBuffer}. The groups that exceed
+ * their memory budget are written to a temporary file and read again for each row of the left group.
+ */
+public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O>, AutoCloseable {
 
-    private final Comparator<K> predicate;
+    private final JoinKeyComparator<L, R> comparator;
+    private final JoinKeyComparator<L, L> leftComparator;
+    private final JoinKeyComparator<R, R> rightComparator;
     private final BiFunction<L, R, O> merger;
 
-    private final Function<L, K> leftKeyExtractor;
-    private final Function<R, K> rightKeyExtractor;
     private final Spliterator<L> leftSpliterator;
     private final Spliterator<R> rightSpliterator;
     private final PeekingIterator<L> leftIterator;
     private final PeekingIterator<R> rightIterator;
-    private Deque<L> leftBuffer = Queues.newArrayDeque();
-    private Deque<R> rightBuffer = Queues.newArrayDeque();
+    private final KeyGroupBuffer<L> leftBuffer;
+    private final KeyGroupBuffer<R> rightBuffer;
     private Iterator<O> output = Collections.emptyIterator();
 
     public InnerJoinSpliterator(
@@ -60,45 +64,74 @@ public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             Spliterator<L> leftSpliterator,
             Spliterator<R> rightSpliterator
     ) {
-        this.leftKeyExtractor = leftKeyExtractor;
-        this.rightKeyExtractor = rightKeyExtractor;
-        this.predicate = checkNotNull(predicate);
+        this(leftKeyExtractor, rightKeyExtractor, predicate, merger, leftSpliterator, rightSpliterator,
+                KeyGroupBuffer.getDefaultMemoryBudget(), new JoinSkewMetrics());
+    }
+
+    /**
+     * @param groupMemoryBudget the estimated size in bytes of the rows of a key kept in memory, for each input.
+     * @param metrics           the metrics of the keys that exceed the budget.
+     */
+    public InnerJoinSpliterator(
+            Function<L, K> leftKeyExtractor,
+            Function<R, K> rightKeyExtractor,
+            Comparator<K> predicate,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator,
+            long groupMemoryBudget,
+            JoinSkewMetrics metrics
+    ) {
+        this.comparator = JoinKeyComparator.of(leftKeyExtractor, rightKeyExtractor, checkNotNull(predicate));
+        this.leftComparator = JoinKeyComparator.of(leftKeyExtractor, leftKeyExtractor, predicate);
+        this.rightComparator = JoinKeyComparator.of(rightKeyExtractor, rightKeyExtractor, predicate);
         this.merger = checkNotNull(merger);
 
         this.leftSpliterator = leftSpliterator;
         this.rightSpliterator = rightSpliterator;
         this.leftIterator = Iterators.peekingIterator(Spliterators.iterator(this.leftSpliterator));
         this.rightIterator = Iterators.peekingIterator(Spliterators.iterator(this.rightSpliterator));
+        this.leftBuffer = new KeyGroupBuffer<>(groupMemoryBudget, leftKeyExtractor, metrics);
+        this.rightBuffer = new KeyGroupBuffer<>(groupMemoryBudget, rightKeyExtractor, metrics);
     }
 
-    private <I> K advance(PeekingIterator<I> source, Deque<I> buffer, Function<I, K> keyExtractor, Comparator<K> predicate) {
+    /**
+     * Reads the rows with the same key.
+     *
+     * @return the first row of the group, that stands for its key, or null if the source is exhausted.
+     */
+    private <I> I advance(PeekingIterator<I> source, KeyGroupBuffer<I> buffer, JoinKeyComparator<I, I> comparator) {
         buffer.clear();
 
         if (!source.hasNext())
             return null;
 
-        buffer.addLast(source.next());
-        K key = keyExtractor.apply(buffer.getFirst());
-        while (source.hasNext() && predicate.compare(key, keyExtractor.apply(source.peek())) == 0) {
-            buffer.addLast(source.next());
+        I first = source.next();
+        buffer.add(first);
+        while (source.hasNext() && comparator.compare(first, source.peek()) == 0) {
+            buffer.add(source.next());
         }
-        return key;
+        return first;
     }
 
-    private K advanceRight() {
-        return advance(rightIterator, rightBuffer, rightKeyExtractor, predicate);
+    private R advanceRight() {
+        return advance(rightIterator, rightBuffer, rightComparator);
     }
 
-    private K advanceLeft() {
-        return advance(leftIterator, leftBuffer, leftKeyExtractor, predicate);
+    private L advanceLeft() {
+        return advance(leftIterator, leftBuffer, leftComparator);
     }
 
-    @Override
-    public void forEachRemaining(Consumer<? super O> action) {
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
-        while (!leftBuffer.isEmpty() && !rightBuffer.isEmpty()) {
-            int compare = predicate.compare(leftKey, rightKey);
+    /**
+     * Reads the groups of the next key present in both inputs and sets the output to their product.
+     *
+     * @return false if one of the inputs is exhausted.
+     */
+    private boolean nextMatch() {
+        L leftKey = advanceLeft();
+        R rightKey = advanceRight();
+        while (leftKey != null && rightKey != null) {
+            int compare = comparator.compare(leftKey, rightKey);
             if (0 < compare) {
                 // left > right (right is behind)
                 rightKey = advanceRight();
@@ -108,39 +141,38 @@ public class InnerJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             } else {
                 // output hit
                 output = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
-                output.forEachRemaining(action);
-                leftKey = advanceLeft();
-                rightKey = advanceRight();
+                return true;
             }
         }
+        close();
+        return false;
     }
 
     @Override
-    public boolean tryAdvance(Consumer<? super O> action) {
-        if (output.hasNext()) {
-            action.accept(output.next());
-            return true;
-        }
-
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
+    public void forEachRemaining(Consumer<? super O> action) {
+        do {
+            output.forEachRemaining(action);
+        } while (nextMatch());
+    }
 
-        while (!leftBuffer.isEmpty() && !rightBuffer.isEmpty()) {
-            int compare = predicate.compare(leftKey, rightKey);
-            if (0 < compare) {
-                // left > right (right is behind)
-                rightKey = advanceRight();
-            } else if (compare < 0) {
-                // left < right (left is behind)
-                leftKey = advanceLeft();
-            } else {
-                // output hit
-                output = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
-                return tryAdvance(action);
-            }
+    @Override
+    public boolean tryAdvance(Consumer<? super O> action) {
+        while (!output.hasNext()) {
+            if (!nextMatch())
+                return false;
         }
+        action.accept(output.next());
+        return true;
+    }
 
-        return !(leftBuffer.isEmpty() && rightBuffer.isEmpty());
+    /**
+     * Removes the buffered rows and deletes their temporary files.
+     */
+    @Override
+    public void close() {
+        output = Collections.emptyIterator();
+        leftBuffer.clear();
+        rightBuffer.clear();
     }
 
     @Override
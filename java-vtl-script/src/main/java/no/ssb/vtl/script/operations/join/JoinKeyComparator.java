@@ -0,0 +1,88 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Order;
+
+import java.util.Comparator;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compares the join keys of two rows.
+ * <p>
+ * Join spliterators compare the rows of their inputs with each other instead of extracting their keys, so
+ * that the rows of {@link JoinKeyExtractor}s ordered by an {@link Order} are compared in place, without
+ * creating a key for each row.
+ *
+ * @param <L> the type of the left rows.
+ * @param <R> the type of the right rows.
+ */
+@FunctionalInterface
+public interface JoinKeyComparator<L, R> {
+
+    /**
+     * Returns a comparator of the keys extracted from the rows.
+     * <p>
+     * If both extractors are {@link JoinKeyExtractor}s and the predicate an {@link Order}, the values of the
+     * keys are compared in the rows.
+     */
+    @SuppressWarnings("unchecked")
+    static <L, R, K> JoinKeyComparator<L, R> of(
+            Function<L, K> leftKeyExtractor,
+            Function<R, K> rightKeyExtractor,
+            Comparator<K> predicate
+    ) {
+        checkNotNull(leftKeyExtractor);
+        checkNotNull(rightKeyExtractor);
+        checkNotNull(predicate);
+        if (leftKeyExtractor instanceof JoinKeyExtractor && rightKeyExtractor instanceof JoinKeyExtractor
+                && predicate instanceof Order) {
+            int[] leftIndices = ((JoinKeyExtractor) leftKeyExtractor).getIndices();
+            int[] rightIndices = ((JoinKeyExtractor) rightKeyExtractor).getIndices();
+            Order order = (Order) predicate;
+            return (left, right) -> order.compare(
+                    (DataPoint) left, leftIndices, (DataPoint) right, rightIndices
+            );
+        }
+        return (left, right) -> predicate.compare(leftKeyExtractor.apply(left), rightKeyExtractor.apply(right));
+    }
+
+    /**
+     * Compares the keys of two rows.
+     */
+    int compare(L left, R right);
+
+    /**
+     * Returns a comparator that orders the null rows, the end of an input, first.
+     */
+    default JoinKeyComparator<L, R> nullsFirst() {
+        return (left, right) -> {
+            if (left == null)
+                return right == null ? 0 : -1;
+            if (right == null)
+                return 1;
+            return compare(left, right);
+        };
+    }
+}
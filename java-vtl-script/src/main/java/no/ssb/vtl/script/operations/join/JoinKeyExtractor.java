@@ -38,7 +38,6 @@ import java.util.function.UnaryOperator;
  */
 public class JoinKeyExtractor implements UnaryOperator<DataPoint> {
 
-    private final DataPoint buffer;
     private final int[] indices;
 
     /**
@@ -77,14 +76,21 @@ public class JoinKeyExtractor implements UnaryOperator<DataPoint> {
         }
 
         this.indices = Ints.toArray(indices);
-        this.buffer = DataPoint.create(order.size());
+    }
+
+    /**
+     * Returns the position in the child of each component of the key.
+     */
+    int[] getIndices() {
+        return indices;
     }
 
     @Override
     public DataPoint apply(DataPoint dataPoint) {
+        DataPoint key = DataPoint.create(indices.length);
         for (int i = 0; i < indices.length; i++) {
-            buffer.set(i, dataPoint.get(indices[i]));
+            key.set(i, dataPoint.get(indices[i]));
         }
-        return (DataPoint) buffer.clone();
+        return key;
     }
 }
@@ -0,0 +1,129 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the skewed keys of merge joins.
+ * <p>
+ * A key is skewed when the rows of one input that have this key exceed the memory budget of a group. These
+ * rows are written to a temporary file and read again for each row of the other input. The metrics of a join
+ * operation are also added to the metrics of the engine that created it,
+ * {@link no.ssb.vtl.script.VTLScriptEngine#getJoinSkewMetrics()}.
+ */
+public final class JoinSkewMetrics {
+
+    /**
+     * The number of skewed keys that are kept.
+     */
+    public static final int MAX_KEYS = 16;
+
+    private final JoinSkewMetrics parent;
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAccumulator largestGroup = new LongAccumulator(Math::max, 0);
+    private final List<String> keys = Lists.newArrayList();
+
+    public JoinSkewMetrics() {
+        this(null);
+    }
+
+    /**
+     * @param parent the metrics that are updated with this one, or null.
+     */
+    public JoinSkewMetrics(JoinSkewMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Records a group that exceeded its memory budget, when it exceeds it.
+     *
+     * @param key the key of the group.
+     */
+    void recordGroup(Object key) {
+        groups.increment();
+        synchronized (keys) {
+            if (keys.size() < MAX_KEYS)
+                keys.add(String.valueOf(key));
+        }
+        if (parent != null)
+            parent.recordGroup(key);
+    }
+
+    /**
+     * Records the rows of a group that exceeded its memory budget, once the group is complete or abandoned.
+     *
+     * @param size the number of rows of the group.
+     */
+    void recordRows(long size) {
+        rows.add(size);
+        largestGroup.accumulate(size);
+        if (parent != null)
+            parent.recordRows(size);
+    }
+
+    /**
+     * Returns the number of groups that exceeded their memory budget.
+     */
+    public long getSkewedGroupCount() {
+        return groups.sum();
+    }
+
+    /**
+     * Returns the number of rows of the groups that exceeded their memory budget.
+     */
+    public long getSkewedRowCount() {
+        return rows.sum();
+    }
+
+    /**
+     * Returns the number of rows of the largest group that exceeded its memory budget.
+     */
+    public long getLargestGroupSize() {
+        return largestGroup.get();
+    }
+
+    /**
+     * Returns the first {@value #MAX_KEYS} skewed keys.
+     */
+    public List<String> getSkewedKeys() {
+        synchronized (keys) {
+            return ImmutableList.copyOf(keys);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("groups", getSkewedGroupCount())
+                .add("rows", getSkewedRowCount())
+                .add("largestGroup", getLargestGroupSize())
+                .add("keys", getSkewedKeys())
+                .toString();
+    }
+}
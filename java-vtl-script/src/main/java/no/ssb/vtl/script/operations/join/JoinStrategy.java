@@ -0,0 +1,45 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+/**
+ * The algorithm that joins two inputs of an inner or outer join.
+ *
+ * @see AbstractJoinOperation#setStrategy(JoinStrategy)
+ */
+public enum JoinStrategy {
+
+    /**
+     * Use a hash join when one of the inputs is not sorted and small enough to fit in memory, a merge join
+     * otherwise.
+     */
+    AUTO,
+
+    /**
+     * Sort both inputs by the common identifiers and merge them.
+     */
+    MERGE,
+
+    /**
+     * Load the smaller input in a hash table and stream the other input in order.
+     */
+    HASH
+}
@@ -0,0 +1,153 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBuffer;
+import no.ssb.vtl.script.ExecutionSettings;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The rows of a join input that have the same key.
+ * <p>
+ * The rows are kept in a list until their estimated size exceeds the memory budget. The rows of a larger group
+ * are moved to a {@link DataPointBuffer} that writes them to a temporary file. The key of the group is recorded in
+ * the {@link JoinSkewMetrics} as soon as it exceeds the budget, so that it is reported even if the stream is never
+ * closed, and its rows when it is cleared or closed. Only the groups of {@link DataPoint}s are accounted.
+ * <p>
+ * The buffer is reused for all the groups of an input.
+ */
+final class KeyGroupBuffer<T> implements Iterable<T>, AutoCloseable {
+
+    private final long memoryBudget;
+    private final Function<T, ?> keyExtractor;
+    private final JoinSkewMetrics metrics;
+    private final List<T> rows = Lists.newArrayList();
+
+    private long size;
+    private long memoryUsage;
+    private DataPointBuffer spilled;
+
+    /**
+     * @param memoryBudget the estimated size in bytes of the rows kept in memory.
+     * @param keyExtractor the key of the rows, recorded in the metrics.
+     * @param metrics      the metrics of the groups that exceed the budget.
+     */
+    KeyGroupBuffer(long memoryBudget, Function<T, ?> keyExtractor, JoinSkewMetrics metrics) {
+        checkArgument(memoryBudget > 0, "invalid memory budget %s", memoryBudget);
+        this.memoryBudget = memoryBudget;
+        this.keyExtractor = checkNotNull(keyExtractor);
+        this.metrics = checkNotNull(metrics);
+    }
+
+    /**
+     * Returns the memory budget of a group, a quarter of the memory budget of the sorts.
+     * <p>
+     * A merge join holds one group of each input.
+     */
+    static long getMemoryBudget(long sortMemoryBudget) {
+        return Math.max(1, sortMemoryBudget / 4);
+    }
+
+    /**
+     * Returns the memory budget of a group with the memory budget of the sorts of the default settings.
+     */
+    static long getDefaultMemoryBudget() {
+        return getMemoryBudget(ExecutionSettings.DEFAULT.getSortMemoryBudget());
+    }
+
+    void add(T row) {
+        if (spilled != null) {
+            spilled.add((DataPoint) row);
+        } else {
+            rows.add(row);
+            if (row instanceof DataPoint) {
+                memoryUsage += DataPointBuffer.estimateSize((DataPoint) row);
+                if (memoryUsage > memoryBudget)
+                    spill();
+            }
+        }
+        size++;
+    }
+
+    private void spill() {
+        metrics.recordGroup(keyExtractor.apply(rows.get(0)));
+        spilled = new DataPointBuffer(memoryBudget);
+        for (T row : rows) {
+            spilled.add((DataPoint) row);
+        }
+        rows.clear();
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the rows exceeded the memory budget.
+     */
+    boolean isSpilled() {
+        return spilled != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+        return spilled != null ? (Iterator<T>) spilled.iterator() : rows.iterator();
+    }
+
+    /**
+     * Removes the rows and deletes the temporary file.
+     */
+    void clear() {
+        if (spilled != null) {
+            metrics.recordRows(size);
+            try {
+                spilled.close();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            } finally {
+                spilled = null;
+            }
+        }
+        rows.clear();
+        size = 0;
+        memoryUsage = 0;
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+}
@@ -0,0 +1,303 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.math.LongMath;
+import no.ssb.vtl.model.DataPoint;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Inner join of several inputs sorted with the same predicate.
+ * <p>
+ * All the inputs are advanced together: the input with the smallest key is advanced until all the keys are
+ * equal. The rows of a key are the Cartesian product of the rows of each input, the first input varying the
+ * slowest, which is the order of a chain of {@link InnerJoinSpliterator}. Each row is created once in the
+ * layout of the result: the value at position {@code sources[i][n]} of a row of the input {@code i} is copied
+ * to the position {@code targets[i][n]} of the result, and the values of the last inputs overwrite the values
+ * of the first ones.
+ * <p>
+ * The rows of each input that have the same key are held in a {@link KeyGroupBuffer}. The groups that exceed
+ * their memory budget are written to a temporary file and read again for each combination of the rows of the
+ * previous inputs.
+ */
+public class MultiJoinSpliterator implements Spliterator<DataPoint>, AutoCloseable {
+
+    private final List<Spliterator<DataPoint>> spliterators;
+    private final List<PeekingIterator<DataPoint>> iterators;
+    private final JoinKeyComparator<DataPoint, DataPoint>[][] comparators;
+    private final int[][] sources;
+    private final int[][] targets;
+    private final int size;
+
+    private final List<KeyGroupBuffer<DataPoint>> groups;
+    /**
+     * The first row of the current group of each input, or null when the input is exhausted.
+     */
+    private final DataPoint[] keys;
+    /**
+     * The iterator over the group of each input and its row in the current combination.
+     */
+    private final List<Iterator<DataPoint>> cursors;
+    private final DataPoint[] current;
+    private boolean hasOutput = false;
+
+    /**
+     * Create a new MultiJoinSpliterator.
+     *
+     * @param spliterators  the inputs, sorted with the predicate.
+     * @param keyExtractors the key extractor of each input.
+     * @param predicate     the order of the keys.
+     * @param sources       for each input, the positions of the values to copy.
+     * @param targets       for each input, the positions in the result of the values to copy.
+     * @param size          the size of the result data points.
+     */
+    public MultiJoinSpliterator(
+            List<Spliterator<DataPoint>> spliterators,
+            List<Function<DataPoint, DataPoint>> keyExtractors,
+            Comparator<DataPoint> predicate,
+            int[][] sources,
+            int[][] targets,
+            int size
+    ) {
+        this(spliterators, keyExtractors, predicate, sources, targets, size,
+                KeyGroupBuffer.getDefaultMemoryBudget(), new JoinSkewMetrics());
+    }
+
+    /**
+     * Create a new MultiJoinSpliterator.
+     *
+     * @param groupMemoryBudget the estimated size in bytes of the rows of a key kept in memory, for each input.
+     * @param metrics           the metrics of the keys that exceed the budget.
+     */
+    @SuppressWarnings("unchecked")
+    public MultiJoinSpliterator(
+            List<Spliterator<DataPoint>> spliterators,
+            List<Function<DataPoint, DataPoint>> keyExtractors,
+            Comparator<DataPoint> predicate,
+            int[][] sources,
+            int[][] targets,
+            int size,
+            long groupMemoryBudget,
+            JoinSkewMetrics metrics
+    ) {
+        this.spliterators = ImmutableList.copyOf(spliterators);
+        checkNotNull(predicate);
+        this.sources = checkNotNull(sources);
+        this.targets = checkNotNull(targets);
+        this.size = size;
+
+        int count = this.spliterators.size();
+        checkArgument(count > 0, "no input");
+        checkArgument(keyExtractors.size() == count && sources.length == count && targets.length == count,
+                "expected %s key extractors, sources and targets", count);
+        for (int i = 0; i < count; i++) {
+            checkArgument(sources[i].length == targets[i].length, "sources and targets of input %s differ", i);
+        }
+
+        this.iterators = Lists.newArrayListWithCapacity(count);
+        this.groups = Lists.newArrayListWithCapacity(count);
+        this.cursors = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            iterators.add(Iterators.peekingIterator(Spliterators.iterator(this.spliterators.get(i))));
+            groups.add(new KeyGroupBuffer<>(groupMemoryBudget, keyExtractors.get(i), metrics));
+            cursors.add(Collections.emptyIterator());
+        }
+        this.comparators = new JoinKeyComparator[count][count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < count; j++) {
+                comparators[i][j] = JoinKeyComparator.of(keyExtractors.get(i), keyExtractors.get(j), predicate);
+            }
+        }
+        this.keys = new DataPoint[count];
+        this.current = new DataPoint[count];
+    }
+
+    /**
+     * Reads the next rows with the same key of an input.
+     *
+     * @return false if the input is exhausted.
+     */
+    private boolean readGroup(int input) {
+        PeekingIterator<DataPoint> iterator = iterators.get(input);
+        KeyGroupBuffer<DataPoint> group = groups.get(input);
+        group.clear();
+        if (!iterator.hasNext()) {
+            keys[input] = null;
+            return false;
+        }
+
+        JoinKeyComparator<DataPoint, DataPoint> comparator = comparators[input][input];
+        DataPoint first = iterator.next();
+        group.add(first);
+        while (iterator.hasNext() && comparator.compare(first, iterator.peek()) == 0) {
+            group.add(iterator.next());
+        }
+        keys[input] = first;
+        return true;
+    }
+
+    /**
+     * Reads the next key present in all the inputs.
+     *
+     * @return false if one of the inputs is exhausted.
+     */
+    private boolean nextMatch() {
+        for (int i = 0; i < keys.length; i++) {
+            if (!readGroup(i)) {
+                close();
+                return false;
+            }
+        }
+
+        boolean aligned = false;
+        while (!aligned) {
+            int max = 0;
+            for (int i = 1; i < keys.length; i++) {
+                if (comparators[i][max].compare(keys[i], keys[max]) > 0) {
+                    max = i;
+                }
+            }
+            DataPoint maxKey = keys[max];
+            aligned = true;
+            for (int i = 0; i < keys.length; i++) {
+                int compare = comparators[i][max].compare(keys[i], maxKey);
+                while (compare < 0) {
+                    if (!readGroup(i)) {
+                        close();
+                        return false;
+                    }
+                    compare = comparators[i][max].compare(keys[i], maxKey);
+                }
+                aligned &= compare == 0;
+            }
+        }
+
+        rewind(0);
+        return true;
+    }
+
+    /**
+     * Moves the inputs from the given one to the first row of their group.
+     */
+    private void rewind(int from) {
+        for (int i = from; i < current.length; i++) {
+            Iterator<DataPoint> cursor = groups.get(i).iterator();
+            cursors.set(i, cursor);
+            current[i] = cursor.next();
+        }
+    }
+
+    private DataPoint createRow() {
+        DataPoint row = DataPoint.create(size);
+        for (int i = 0; i < current.length; i++) {
+            DataPoint point = current[i];
+            int[] inputSources = sources[i];
+            int[] inputTargets = targets[i];
+            for (int j = 0; j < inputSources.length; j++) {
+                row.set(inputTargets[j], point.get(inputSources[j]));
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Moves to the next combination of the current groups, the last input varying the fastest.
+     *
+     * @return false if all the combinations were output.
+     */
+    private boolean nextPosition() {
+        int input = current.length - 1;
+        while (input >= 0 && !cursors.get(input).hasNext()) {
+            input--;
+        }
+        if (input < 0) {
+            return false;
+        }
+        current[input] = cursors.get(input).next();
+        rewind(input + 1);
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super DataPoint> action) {
+        if (!hasOutput) {
+            hasOutput = nextMatch();
+            if (!hasOutput) {
+                return false;
+            }
+        }
+        action.accept(createRow());
+        hasOutput = nextPosition();
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super DataPoint> action) {
+        while (tryAdvance(action)) {
+            // Consume all the rows.
+        }
+    }
+
+    /**
+     * Removes the buffered rows and deletes their temporary files.
+     */
+    @Override
+    public void close() {
+        hasOutput = false;
+        for (KeyGroupBuffer<DataPoint> group : groups) {
+            group.clear();
+        }
+    }
+
+    @Override
+    public Spliterator<DataPoint> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long estimate = 0;
+        for (Spliterator<DataPoint> spliterator : spliterators) {
+            estimate = LongMath.saturatedAdd(estimate, spliterator.estimateSize());
+        }
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.IMMUTABLE;
+    }
+}
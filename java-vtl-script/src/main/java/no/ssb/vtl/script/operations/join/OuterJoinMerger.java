@@ -20,27 +20,29 @@ package no.ssb.vtl.script.operations.join;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Table;
 import no.ssb.vtl.model.DataPoint;
-import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
-import no.ssb.vtl.model.VTLObject;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.BiFunction;
-import java.util.function.ToIntFunction;
 
-public class OuterJoinMerger implements BiFunction<DataPoint, DataPoint, DataPoint> {
+import static com.google.common.base.Preconditions.checkArgument;
 
-    private final Map<String, String> rightMapping;
+/**
+ * Merger that copies the values of the right {@link DataPoint} to a copy of the left {@link DataPoint}, or to
+ * an empty data point when there is no left data point.
+ * <p>
+ * The positions of the values are computed once from the column mapping of the join.
+ */
+public class OuterJoinMerger implements BiFunction<DataPoint, DataPoint, DataPoint> {
 
-    private final DataPointView rightView;
-    private final DataPointView resultView;
+    private final int[] rightIndices;
+    private final int[] resultIndices;
     private final int size;
 
     public OuterJoinMerger(AbstractJoinOperation joinOperation, Dataset right) {
@@ -50,117 +52,39 @@ public class OuterJoinMerger implements BiFunction<DataPoint, DataPoint, DataPoi
 
         size = mapping.rowKeySet().size();
 
-        rightMapping = mapping.column(datasetNames.get(right));
-        rightView = new DataPointView(right.getDataStructure());
-        resultView = new DataPointView(joinOperation.getDataStructure());
-    }
-
-    @Override
-    public DataPoint apply(DataPoint left, DataPoint right) {
+        Map<String, String> rightMapping = mapping.column(datasetNames.get(right));
+        ImmutableList<String> rightNames = ImmutableList.copyOf(right.getDataStructure().keySet());
+        ImmutableList<String> resultNames = ImmutableList.copyOf(joinOperation.getDataStructure().keySet());
 
-        resultView.setDataDoint(DataPoint.create(size));
-        rightView.setDataDoint(right);
-
-        if (left != null) {
-            resultView.setDataDoint(DataPoint.create(left));
-        } else {
-            resultView.setDataDoint(DataPoint.create(size));
-        }
-        if (right != null) {
-            for (Map.Entry<String, String> mapping : rightMapping.entrySet()) {
-                resultView.put(mapping.getKey(), rightView.get(mapping.getValue()));
-            }
+        rightIndices = new int[rightMapping.size()];
+        resultIndices = new int[rightMapping.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : rightMapping.entrySet()) {
+            rightIndices[i] = rightNames.indexOf(entry.getValue());
+            resultIndices[i] = resultNames.indexOf(entry.getKey());
+            checkArgument(rightIndices[i] >= 0 && resultIndices[i] >= 0,
+                    "could not find the column %s of %s", entry.getValue(), datasetNames.get(right));
+            i++;
         }
-        return resultView.getDataDoint();
     }
 
-    private final class DataPointView implements Map<String, VTLObject> {
-
-        private final ToIntFunction<String> hash;
-        private DataPoint dp = DataPoint.create(0);
-
-
-        public DataPointView(DataStructure structure) {
-            ImmutableList<String> list = ImmutableSet.copyOf(structure.keySet()).asList();
-            this.hash = list::indexOf;
-        }
-
-        public VTLObject get(String key) {
-            return dp.get(hash.applyAsInt(key));
-        }
-
-        public VTLObject remove(String key) {
-            return dp.set(hash.applyAsInt(key), VTLObject.NULL);
-        }
-
-        public DataPoint getDataDoint() {
-            return dp;
-        }
-
-        public void setDataDoint(DataPoint dp) {
-            this.dp = dp;
-        }
-
-        @Override
-        public int size() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean isEmpty() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean containsKey(Object key) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public boolean containsValue(Object value) {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public VTLObject get(Object key) {
-            return this.get((String) key);
-        }
-
-        @Override
-        public VTLObject put(String key, VTLObject value) {
-            return dp.set(hash.applyAsInt(key), value);
-        }
-
-        @Override
-        public VTLObject remove(Object key) {
-            return this.remove((String) key);
-        }
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("rightIndices", Arrays.toString(rightIndices))
+                .add("resultIndices", Arrays.toString(resultIndices))
+                .add("size", size)
+                .toString();
+    }
 
-        @Override
-        public void putAll(Map<? extends String, ? extends VTLObject> m) {
-            for (Entry<? extends String, ? extends VTLObject> entry : m.entrySet()) {
-                this.put(entry.getKey(), entry.getValue());
+    @Override
+    public DataPoint apply(DataPoint left, DataPoint right) {
+        DataPoint result = left != null ? DataPoint.create(left) : DataPoint.create(size);
+        if (right != null) {
+            for (int i = 0; i < rightIndices.length; i++) {
+                result.set(resultIndices[i], right.get(rightIndices[i]));
             }
         }
-
-        @Override
-        public void clear() {
-            dp.clear();
-        }
-
-        @Override
-        public Set<String> keySet() {
-            throw new UnsupportedOperationException();
-        }
-
-        @Override
-        public Collection<VTLObject> values() {
-            return dp;
-        }
-
-        @Override
-        public Set<Entry<String, VTLObject>> entrySet() {
-            throw new UnsupportedOperationException();
-        }
+        return result;
     }
 }
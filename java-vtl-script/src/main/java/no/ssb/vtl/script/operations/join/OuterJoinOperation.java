@@ -33,6 +33,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -98,21 +99,29 @@ public class OuterJoinOperation extends AbstractJoinOperation {
         // Compute the predicate
         Order predicate = computePredicate(requiredOrder);
 
+        // Conditions that the children cannot evaluate are applied to the result.
+        Filtering residualFiltering = computeResidualFiltering(filtering);
+        Set<String> filteredComponents = computeFilteredComponents(components, residualFiltering);
+
         Iterator<Dataset> iterator = datasets.values().iterator();
         Dataset left = iterator.next();
         Dataset right = left;
 
+        // The first child can be loaded in a hash table if it is the smaller input of the first step.
+        Optional<Side> firstSide = datasets.size() > 1
+                ? chooseHashSide(left, datasets.values().asList().get(1), requiredOrder)
+                : Optional.empty();
+
         // Close all children
         Closer closer = Closer.create();
         try {
 
             Table<Component, Dataset, Component> componentMapping = getComponentMapping();
-            Stream<DataPoint> result = getOrSortData(
-                    left,
-                    adjustOrderForStructure(requiredOrder, left.getDataStructure()),
-                    filtering,
-                    components
-            ).peek(new DataPointCapacityExpander(getDataStructure().size()));
+            Stream<DataPoint> result = firstSide.orElse(null) == Side.LEFT
+                    ? getUnsortedData(left, computeChildFiltering(left, filtering), filteredComponents)
+                    : getOrSortData(left, adjustOrderForStructure(requiredOrder, left.getDataStructure()),
+                    computeChildFiltering(left, filtering), filteredComponents);
+            result = result.map(new DataPointCapacityExpander(getDataStructure().size()));
             closer.register(result);
 
 
@@ -121,38 +130,52 @@ public class OuterJoinOperation extends AbstractJoinOperation {
                 left = right;
                 right = iterator.next();
 
-                Stream<DataPoint> rightStream = getOrSortData(
-                        right,
-                        adjustOrderForStructure(requiredOrder, right.getDataStructure()),
-                        filtering,
-                        components
-                );
+                Optional<Side> side = first ? firstSide : chooseHashSide(null, right, requiredOrder);
+                Stream<DataPoint> rightStream = side.orElse(null) == Side.RIGHT
+                        ? getUnsortedData(right, computeChildFiltering(right, filtering), filteredComponents)
+                        : getOrSortData(right, adjustOrderForStructure(requiredOrder, right.getDataStructure()),
+                        computeChildFiltering(right, filtering), filteredComponents);
                 closer.register(rightStream);
 
                 // The first left stream uses its own structure. After that, the left data structure
                 // will always be the resulting structure. We use a flag (first) to handle the first case
                 // since the hotfix needs to quickly released but this code should be refactored.
 
-                result = StreamSupport.stream(
-                        new OuterJoinSpliterator<>(
-                                new JoinKeyExtractor(
-                                        first ? left.getDataStructure() : getDataStructure(),
-                                        predicate,
-                                        first ? componentMapping.column(left)::get : c -> c
-                                ),
-                                new JoinKeyExtractor(right.getDataStructure(), predicate, componentMapping.column(right)),
-                                predicate,
-                                new OuterJoinMerger(this, right),
-                                result.spliterator(),
-                                rightStream.spliterator()
-                        ), false
+                JoinKeyExtractor leftKeyExtractor = new JoinKeyExtractor(
+                        first ? left.getDataStructure() : getDataStructure(),
+                        predicate,
+                        first ? componentMapping.column(left)::get : c -> c
                 );
+                JoinKeyExtractor rightKeyExtractor = new JoinKeyExtractor(
+                        right.getDataStructure(), predicate, componentMapping.column(right)
+                );
+                OuterJoinMerger merger = new OuterJoinMerger(this, right);
+
+                Spliterator<DataPoint> joined;
+                if (!side.isPresent()) {
+                    joined = closer.register(new OuterJoinSpliterator<>(
+                            leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                            result.spliterator(), rightStream.spliterator(),
+                            getKeyGroupMemoryBudget(), getSkewMetrics()
+                    ));
+                } else if (side.get() == Side.LEFT) {
+                    joined = HashJoinSpliterator.buildLeft(
+                            leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                            result.spliterator(), rightStream.spliterator(), true
+                    );
+                } else {
+                    joined = HashJoinSpliterator.buildRight(
+                            leftKeyExtractor, rightKeyExtractor, predicate, merger,
+                            result.spliterator(), rightStream.spliterator(), true
+                    );
+                }
+                result = StreamSupport.stream(joined, false);
 
                 first = false;
             }
 
             // Close all the underlying streams.
-            return Optional.of(result.onClose(() -> {
+            return Optional.of(projectResult(filterResult(result, residualFiltering), components).onClose(() -> {
                 try {
                     closer.close();
                 } catch (IOException e) {
@@ -169,4 +192,20 @@ public class OuterJoinOperation extends AbstractJoinOperation {
             throw ex;
         }
     }
+
+    /**
+     * Adds the rows whose keys do not exist on the other side to the rows of the inner join.
+     */
+    @Override
+    protected long estimateRowCount(long leftRowCount, long leftKeyCount, long rightRowCount, long rightKeyCount) {
+        long inner = super.estimateRowCount(leftRowCount, leftKeyCount, rightRowCount, rightKeyCount);
+        double leftUnmatched = leftKeyCount == 0 ? 0 : Math.max(0, 1 - (double) rightKeyCount / leftKeyCount);
+        double rightUnmatched = rightKeyCount == 0 ? 0 : Math.max(0, 1 - (double) leftKeyCount / rightKeyCount);
+        return inner + Math.round(leftRowCount * leftUnmatched + rightRowCount * rightUnmatched);
+    }
+
+    @Override
+    protected long estimateKeyCount(long leftKeyCount, long rightKeyCount) {
+        return Math.max(leftKeyCount, rightKeyCount);
+    }
 }
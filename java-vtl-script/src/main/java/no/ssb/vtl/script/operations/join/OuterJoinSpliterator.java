@@ -22,33 +22,48 @@ package no.ssb.vtl.script.operations.join;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
-import com.google.common.collect.Queues;
 import com.google.common.math.LongMath;
 
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
+import java.util.Iterator;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-public class OuterJoinSpliterator<L, R, K, O> implements Spliterator<O> {
+/**
+ * Outer join of two inputs sorted with the same predicate.
+ * <p>
+ * The rows of each input that have the same key are held in a {@link KeyGroupBuffer}. The groups that exceed
+ * their memory budget are written to a temporary file and read again for each row of the left group. The rows
+ * of a key present in only one input are merged with null.
+ */
+public class OuterJoinSpliterator<L, R, K, O> implements Spliterator<O>, AutoCloseable {
 
-    private final Comparator<K> predicate;
+    private final JoinKeyComparator<L, R> comparator;
+    private final JoinKeyComparator<L, L> leftComparator;
+    private final JoinKeyComparator<R, R> rightComparator;
     private final BiFunction<L, R, O> merger;
 
-    private final Function<L, K> leftKeyExtractor;
-    private final Function<R, K> rightKeyExtractor;
     private final PeekingIterator<L> leftIterator;
     private final PeekingIterator<R> rightIterator;
     private final Spliterator<L> leftSpliterator;
     private final Spliterator<R> rightSpliterator;
 
-    private Deque<L> leftBuffer = Queues.newArrayDeque();
-    private Deque<R> rightBuffer = Queues.newArrayDeque();
+    private final KeyGroupBuffer<L> leftBuffer;
+    private final KeyGroupBuffer<R> rightBuffer;
+
+    /**
+     * The first row of the current group of each input, or null when the input is exhausted.
+     */
+    private L leftKey;
+    private R rightKey;
+    private boolean readLeft = true;
+    private boolean readRight = true;
 
-    private Deque<O> outputBuffer = Queues.newArrayDeque();
+    private Iterator<O> output = Collections.emptyIterator();
 
     public OuterJoinSpliterator(
             Function<L, K> leftKeyExtractor,
@@ -58,127 +73,128 @@ public class OuterJoinSpliterator<L, R, K, O> implements Spliterator<O> {
             Spliterator<L> leftSpliterator,
             Spliterator<R> rightSpliterator
     ) {
-        this.predicate = Comparator.nullsFirst(predicate);
+        this(leftKeyExtractor, rightKeyExtractor, predicate, merger, leftSpliterator, rightSpliterator,
+                KeyGroupBuffer.getDefaultMemoryBudget(), new JoinSkewMetrics());
+    }
+
+    /**
+     * @param groupMemoryBudget the estimated size in bytes of the rows of a key kept in memory, for each input.
+     * @param metrics           the metrics of the keys that exceed the budget.
+     */
+    public OuterJoinSpliterator(
+            Function<L, K> leftKeyExtractor,
+            Function<R, K> rightKeyExtractor,
+            Comparator<K> predicate,
+            BiFunction<L, R, O> merger,
+            Spliterator<L> leftSpliterator,
+            Spliterator<R> rightSpliterator,
+            long groupMemoryBudget,
+            JoinSkewMetrics metrics
+    ) {
+        this.comparator = JoinKeyComparator.of(leftKeyExtractor, rightKeyExtractor, predicate);
+        this.leftComparator = JoinKeyComparator.of(leftKeyExtractor, leftKeyExtractor, predicate);
+        this.rightComparator = JoinKeyComparator.of(rightKeyExtractor, rightKeyExtractor, predicate);
         this.merger = merger;
-        this.leftKeyExtractor = leftKeyExtractor;
-        this.rightKeyExtractor = rightKeyExtractor;
 
         this.leftSpliterator = leftSpliterator;
         this.rightSpliterator = rightSpliterator;
         this.leftIterator = Iterators.peekingIterator(Spliterators.iterator(this.leftSpliterator));
         this.rightIterator = Iterators.peekingIterator(Spliterators.iterator(this.rightSpliterator));
+        this.leftBuffer = new KeyGroupBuffer<>(groupMemoryBudget, leftKeyExtractor, metrics);
+        this.rightBuffer = new KeyGroupBuffer<>(groupMemoryBudget, rightKeyExtractor, metrics);
     }
 
-    private <I> K advance(PeekingIterator<I> source, Deque<I> buffer, Function<I, K> keyExtractor, Comparator<K> predicate) {
+    /**
+     * Reads the rows with the same key.
+     *
+     * @return the first row of the group, that stands for its key, or null if the source is exhausted.
+     */
+    private <I> I advance(PeekingIterator<I> source, KeyGroupBuffer<I> buffer, JoinKeyComparator<I, I> comparator) {
         buffer.clear();
 
         if (!source.hasNext())
             return null;
 
-        buffer.addLast(source.next());
-        K key = keyExtractor.apply(buffer.getFirst());
-        while (source.hasNext() && predicate.compare(key, keyExtractor.apply(source.peek())) == 0) {
-            buffer.addLast(source.next());
+        I first = source.next();
+        buffer.add(first);
+        while (source.hasNext() && comparator.compare(first, source.peek()) == 0) {
+            buffer.add(source.next());
         }
-        return key;
+        return first;
     }
 
-    private K advanceRight() {
-        while (!rightBuffer.isEmpty()) {
-            outputBuffer.addLast(merger.apply(null, rightBuffer.removeFirst()));
+    /**
+     * Sets the output to the rows of the smallest key, once the previous output is consumed.
+     *
+     * @return false if both inputs are exhausted.
+     */
+    private boolean nextKey() {
+        if (readLeft) {
+            leftKey = advance(leftIterator, leftBuffer, leftComparator);
+            readLeft = false;
+        }
+        if (readRight) {
+            rightKey = advance(rightIterator, rightBuffer, rightComparator);
+            readRight = false;
+        }
+
+        if (leftKey == null && rightKey == null) {
+            close();
+            return false;
         }
-        return advance(rightIterator, rightBuffer, rightKeyExtractor, predicate);
-    }
 
-    private K advanceLeft() {
-        while (!leftBuffer.isEmpty()) {
-            outputBuffer.addLast(merger.apply(leftBuffer.removeFirst(), null));
+        // An exhausted input is behind all the keys of the other one.
+        int compare;
+        if (leftKey == null) {
+            compare = 1;
+        } else if (rightKey == null) {
+            compare = -1;
+        } else {
+            compare = comparator.compare(leftKey, rightKey);
         }
-        return advance(leftIterator, leftBuffer, leftKeyExtractor, predicate);
+
+        if (0 < compare) {
+            // left > right (right is behind)
+            output = Iterators.transform(rightBuffer.iterator(), right -> merger.apply(null, right));
+            readRight = true;
+        } else if (compare < 0) {
+            // left < right (left is behind)
+            output = Iterators.transform(leftBuffer.iterator(), left -> merger.apply(left, null));
+            readLeft = true;
+        } else {
+            // output hit
+            output = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
+            readLeft = true;
+            readRight = true;
+        }
+        return true;
     }
 
     @Override
     public void forEachRemaining(Consumer<? super O> action) {
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
-
-        while (!leftBuffer.isEmpty() || !rightBuffer.isEmpty()) {
-
-            // TODO: Use always bigger placeholders?
-            // empty source should always be bigger.
-            if (leftBuffer.isEmpty()) {
-                rightKey = advanceRight();
-            } else if (rightBuffer.isEmpty()) {
-                leftKey = advanceLeft();
-            }
-
-            int compare = predicate.compare(leftKey, rightKey);
-            if (0 < compare || leftBuffer.isEmpty()) {
-                // left > right (right is behind)
-                rightKey = advanceRight();
-            } else if (compare < 0 || rightBuffer.isEmpty()) {
-                // left < right (left is behind)
-                leftKey = advanceLeft();
-            } else {
-                // Add cartesian product to output.
-                CartesianIterator<L, R, O> hit = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
-                hit.forEachRemaining(outputBuffer::addLast);
-                leftBuffer.clear();
-                rightBuffer.clear();
-
-                outputBuffer.forEach(action);
-                outputBuffer.clear();
-
-                leftKey = advanceLeft();
-                rightKey = advanceRight();
-            }
-        }
-        outputBuffer.forEach(action);
+        do {
+            output.forEachRemaining(action);
+        } while (nextKey());
     }
 
     @Override
     public boolean tryAdvance(Consumer<? super O> action) {
-        if (!outputBuffer.isEmpty()) {
-            action.accept(outputBuffer.removeFirst());
-            return true;
-        }
-
-        K leftKey = advanceLeft();
-        K rightKey = advanceRight();
-
-        while (!leftBuffer.isEmpty() || !rightBuffer.isEmpty()) {
-
-            // TODO: Use always bigger placeholders?
-            // empty source should always be bigger.
-            if (leftBuffer.isEmpty()) {
-                rightKey = advanceRight();
-            } else if (rightBuffer.isEmpty()) {
-                leftKey = advanceLeft();
-            }
-
-            int compare = predicate.compare(leftKey, rightKey);
-            if (0 < compare || leftBuffer.isEmpty()) {
-                // left > right (right is behind)
-                rightKey = advanceRight();
-            } else if (compare < 0 || rightBuffer.isEmpty()) {
-                // left < right (left is behind)
-                leftKey = advanceLeft();
-            } else {
-                // output hit
-                CartesianIterator<L, R, O> hit = new CartesianIterator<>(leftBuffer, rightBuffer, merger);
-                hit.forEachRemaining(outputBuffer::addLast);
-                leftBuffer.clear();
-                rightBuffer.clear();
-
-                return tryAdvance(action);
-            }
-        }
-
-        if (!outputBuffer.isEmpty()) {
-            return tryAdvance(action);
+        while (!output.hasNext()) {
+            if (!nextKey())
+                return false;
         }
+        action.accept(output.next());
+        return true;
+    }
 
-        return false;
+    /**
+     * Removes the buffered rows and deletes their temporary files.
+     */
+    @Override
+    public void close() {
+        output = Collections.emptyIterator();
+        leftBuffer.clear();
+        rightBuffer.clear();
     }
 
     @Override
@@ -0,0 +1,122 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.model.ValueBloomFilter;
+import no.ssb.vtl.model.VTLObject;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Builds a filtering on the common identifiers from the rows of a join input.
+ * <p>
+ * Each identifier is filtered separately. When the input has few distinct values the filtering is an {@code in}
+ * condition, otherwise a range between the min and max values and a {@code bloom} condition. The identifiers for
+ * which the input contains null are not filtered.
+ */
+final class RuntimeFilterBuilder {
+
+    /**
+     * The maximum number of distinct values compared with {@code in}.
+     */
+    static final int MAX_IN_VALUES = 64;
+
+    static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final DataStructure structure;
+    private final List<String> columns;
+    private final int[] indexes;
+    private final List<Set<VTLObject>> values;
+    private final boolean[] nulls;
+
+    /**
+     * @param structure      the structure of the filtering.
+     * @param columns        the names of the identifiers in the structure of the filtering.
+     * @param childStructure the structure of the rows.
+     * @param childColumns   the names of the same identifiers in the structure of the rows.
+     */
+    RuntimeFilterBuilder(DataStructure structure, List<String> columns, DataStructure childStructure,
+                         List<String> childColumns) {
+        checkArgument(columns.size() == childColumns.size(), "columns and child columns differ");
+        this.structure = structure;
+        this.columns = ImmutableList.copyOf(columns);
+        this.indexes = new int[columns.size()];
+        this.values = Lists.newArrayListWithCapacity(columns.size());
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = childStructure.indexOf(childStructure.get(childColumns.get(i)));
+            values.add(Sets.newHashSet());
+        }
+        this.nulls = new boolean[columns.size()];
+    }
+
+    void add(DataPoint dataPoint) {
+        for (int i = 0; i < indexes.length; i++) {
+            VTLObject value = dataPoint.get(indexes[i]);
+            if (value.get() == null)
+                nulls[i] = true;
+            else if (!nulls[i])
+                values.get(i).add(value);
+        }
+    }
+
+    /**
+     * Returns the filtering that keeps the rows whose identifiers might exist in the input, or
+     * {@link Dataset.Filtering#ALL}.
+     */
+    Dataset.Filtering build() {
+        List<StructuredFiltering> conjuncts = Lists.newArrayList();
+        for (int i = 0; i < indexes.length; i++) {
+            if (nulls[i])
+                continue;
+            String column = columns.get(i);
+            Set<VTLObject> columnValues = values.get(i);
+            if (columnValues.isEmpty()) {
+                // No row can match.
+                conjuncts.add(StructuredFiltering.bloom(structure, column,
+                        ValueBloomFilter.create(0, FALSE_POSITIVE_PROBABILITY)));
+            } else if (columnValues.size() <= MAX_IN_VALUES) {
+                conjuncts.add(StructuredFiltering.in(structure, column,
+                        ImmutableSortedSet.copyOf(VTLObject::compareTo, columnValues)));
+            } else {
+                ValueBloomFilter filter = ValueBloomFilter.create(columnValues.size(), FALSE_POSITIVE_PROBABILITY);
+                columnValues.forEach(filter::put);
+                Comparator<VTLObject> comparator = VTLObject::compareTo;
+                conjuncts.add(StructuredFiltering.greaterOrEqual(structure, column, Collections.min(columnValues, comparator)));
+                conjuncts.add(StructuredFiltering.lessOrEqual(structure, column, Collections.max(columnValues, comparator)));
+                conjuncts.add(StructuredFiltering.bloom(structure, column, filter));
+            }
+        }
+        return conjuncts.isEmpty() ? Dataset.Filtering.ALL : StructuredFiltering.and(conjuncts);
+    }
+}
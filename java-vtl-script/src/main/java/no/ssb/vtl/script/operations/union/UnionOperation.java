@@ -29,10 +29,14 @@ import com.google.common.collect.Sets;
 import no.ssb.vtl.model.AbstractDatasetOperation;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointProjection;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.DatapointNormalizer;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.script.ExecutionSettings;
 
 import java.util.Comparator;
 import java.util.Iterator;
@@ -43,6 +47,7 @@ import java.util.Set;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.Arrays.asList;
 
 /**
@@ -50,6 +55,8 @@ import static java.util.Arrays.asList;
  */
 public class UnionOperation extends AbstractDatasetOperation {
 
+    private ExecutionSettings settings = ExecutionSettings.DEFAULT;
+
     @VisibleForTesting
     UnionOperation(Dataset... dataset) {
         this(asList(dataset));
@@ -68,6 +75,17 @@ public class UnionOperation extends AbstractDatasetOperation {
         return getChildren().get(0).getDataStructure();
     }
 
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sets the settings of the engine that created the operation.
+     */
+    public void setSettings(ExecutionSettings settings) {
+        this.settings = checkNotNull(settings);
+    }
+
     private void checkDataStructures(DataStructure baseDataStructure, DataStructure nextDataStructure) {
         // Identifiers and attribute should be equals in name, role and type.
         Set<String> requiredNames = nonAttributeNames(baseDataStructure);
@@ -113,26 +131,51 @@ public class UnionOperation extends AbstractDatasetOperation {
      * <ul>
      *     <li>the orders sent to the children matches with the child's structure</li>
      *     <li>the streams are sorted</li>
-     *     <li>the datapoint respect the union's structure</li>
+     *     <li>the datapoint respect the union's structure, restricted to the given components</li>
+     *     <li>structured filtering use the child's structure, or are applied after the normalization when the
+     *     child does not have all the filtered components</li>
      * </ul>
      *
      */
     List<Stream<DataPoint>> prepareChildren(Order orders, Filtering filtering, Set<String> components) {
+        DataStructure structure = getDataStructure().project(components);
         List<Stream<DataPoint>> streams = Lists.newArrayList();
         for (Dataset dataset : getChildren()) {
             Order adjustedOrders = adjustOrderForStructure(orders, dataset.getDataStructure());
-            Stream<DataPoint> s = sortIfNeeded(filtering, components, dataset, adjustedOrders);
-            streams.add(s.map(new DatapointNormalizer(dataset.getDataStructure(), getDataStructure())));
+
+            Filtering childFiltering = filtering;
+            Filtering normalizedFiltering = Filtering.ALL;
+            if (filtering instanceof StructuredFiltering) {
+                StructuredFiltering structuredFiltering = (StructuredFiltering) filtering;
+                if (dataset.getDataStructure().keySet().containsAll(structuredFiltering.getColumns())) {
+                    childFiltering = structuredFiltering.withDataStructure(dataset.getDataStructure());
+                } else {
+                    childFiltering = Filtering.ALL;
+                    normalizedFiltering = structuredFiltering.withDataStructure(structure);
+                }
+            }
+
+            Stream<DataPoint> s = sortIfNeeded(childFiltering, components, dataset, adjustedOrders);
+            DataStructure childStructure = dataset.getDataStructure().project(components);
+            s = s.map(new DatapointNormalizer(childStructure, structure));
+            streams.add(normalizedFiltering == Filtering.ALL ? s : s.filter(normalizedFiltering));
         }
         return streams;
     }
 
     /**
-     * Manually sort the the stream if the given dataset failed to do so.
+     * Manually sort the the stream if the given dataset failed to do so. The data points only contain the given
+     * components, even if the dataset returned all its components.
      */
     private Stream<DataPoint> sortIfNeeded(Filtering filtering, Set<String> components, Dataset dataset, Order adjustedOrders) {
+        DataStructure childStructure = dataset.getDataStructure();
+        DataStructure projected = childStructure.project(components);
         Optional<Stream<DataPoint>> stream = dataset.getData(adjustedOrders, filtering, components);
-        return stream.orElseGet(() -> getData().sorted(adjustedOrders).filter(filtering));
+        if (stream.isPresent())
+            return stream.get().map(DataPointProjection.normalize(childStructure, projected, projected));
+        return settings.sorted(dataset.getData().filter(filtering), adjustedOrders).map(
+                new DataPointProjection(childStructure, projected)
+        );
     }
 
     @Override
@@ -145,18 +188,36 @@ public class UnionOperation extends AbstractDatasetOperation {
         // Union requires data to be sorted on all identifiers.
         Order orderWithIdentifiers = createOrderWithIdentifiers(orders);
 
+        // The ordered components are needed to interleave the children, and the filtered ones in case a child
+        // does not have them.
+        DataStructure structure = getDataStructure();
+        Set<String> required = Sets.newHashSet(components);
+        for (Component component : orderWithIdentifiers.keySet()) {
+            required.add(structure.getName(component));
+        }
+        if (filtering instanceof StructuredFiltering)
+            required.addAll(((StructuredFiltering) filtering).getColumns());
+        DataStructure requiredStructure = structure.project(required);
+        Order requiredOrder = Order.create(requiredStructure).putAll(orderWithIdentifiers).build();
+
         List<Stream<DataPoint>> streams = prepareChildren(
                 orderWithIdentifiers,
                 filtering,
-                components
+                required
         );
 
-        if (streams.size() == 1)
-            return Optional.of(streams.get(0));
+        Stream<DataPoint> result;
+        if (streams.size() == 1) {
+            result = streams.get(0);
+        } else {
+            result = StreamUtils.interleave(
+                    createSelector(requiredOrder), streams
+            ).map(new DuplicateChecker(requiredOrder, requiredStructure));
+        }
 
-        Stream<DataPoint> result = StreamUtils.interleave(
-                createSelector(orderWithIdentifiers), streams
-        ).map(new DuplicateChecker(orderWithIdentifiers, getDataStructure()));
+        DataStructure projected = structure.project(components);
+        if (projected != requiredStructure)
+            result = result.map(new DataPointProjection(requiredStructure, projected));
 
         return Optional.of(result);
     }
@@ -223,4 +284,21 @@ public class UnionOperation extends AbstractDatasetOperation {
         return Optional.of(size);
     }
 
+    /**
+     * The rows of the children are added; the data points are sorted by identifiers.
+     */
+    @Override
+    public Statistics getStatistics() {
+        DataStructure structure = getDataStructure();
+        Statistics statistics = null;
+        for (Dataset child : getChildren()) {
+            Statistics childStatistics = child.getStatistics().project(structure);
+            statistics = statistics == null ? childStatistics : statistics.union(childStatistics);
+        }
+        return Statistics.copyOf(statistics)
+                .clearOrder()
+                .order(Order.createDefault(structure), structure)
+                .build();
+    }
+
 }
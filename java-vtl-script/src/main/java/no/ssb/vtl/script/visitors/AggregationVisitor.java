@@ -188,6 +188,8 @@ public class AggregationVisitor extends VTLDatasetExpressionVisitor<AggregationO
 
         Set<Component> components = computeAggregationComponents(aggregationComponents, availableIdentifiers, paramContexts.aggregationClause);
 
-        return getAggregationOperation(dataset, Lists.newArrayList(components), Lists.newArrayList(measureComponents), aggregationFunction);
+        AggregationOperation aggregation = getAggregationOperation(dataset, Lists.newArrayList(components), Lists.newArrayList(measureComponents), aggregationFunction);
+        aggregation.setSettings(datasetExpressionVisitor.getSettings());
+        return aggregation;
     }
 }
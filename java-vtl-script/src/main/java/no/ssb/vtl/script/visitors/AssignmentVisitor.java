@@ -26,6 +26,9 @@ import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.DatasetCache;
+import no.ssb.vtl.script.ExecutionSettings;
+import no.ssb.vtl.script.PutPipeline;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.visitors.foreach.ForeachVisitor;
 
@@ -55,9 +58,22 @@ public class AssignmentVisitor extends VTLBaseVisitor<Object> {
     private final ForeachVisitor foreachVisitor;
 
     public AssignmentVisitor(ScriptContext context, List<Connector> connectors) {
+        this(context, connectors, DatasetCache.NONE, PutPipeline.builder().build());
+    }
+
+    public AssignmentVisitor(ScriptContext context, List<Connector> connectors, DatasetCache datasetCache,
+                             PutPipeline putPipeline) {
+        this(context, connectors, datasetCache, putPipeline, ExecutionSettings.DEFAULT);
+    }
+
+    public AssignmentVisitor(ScriptContext context, List<Connector> connectors, DatasetCache datasetCache,
+                             PutPipeline putPipeline, ExecutionSettings settings) {
         this(
                 checkNotNull(context, "the context was null").getBindings(ScriptContext.ENGINE_SCOPE),
-                connectors
+                connectors,
+                datasetCache,
+                putPipeline,
+                settings
         );
     }
 
@@ -65,15 +81,29 @@ public class AssignmentVisitor extends VTLBaseVisitor<Object> {
         this(bindings, Collections.emptyList());
     }
 
+    public AssignmentVisitor(Bindings bindings, ExecutionSettings settings) {
+        this(bindings, Collections.emptyList(), DatasetCache.NONE, PutPipeline.builder().build(), settings);
+    }
+
     public AssignmentVisitor(Bindings bindings, List<Connector> connectors) {
+        this(bindings, connectors, DatasetCache.NONE, PutPipeline.builder().build());
+    }
+
+    public AssignmentVisitor(Bindings bindings, List<Connector> connectors, DatasetCache datasetCache,
+                             PutPipeline putPipeline) {
+        this(bindings, connectors, datasetCache, putPipeline, ExecutionSettings.DEFAULT);
+    }
+
+    public AssignmentVisitor(Bindings bindings, List<Connector> connectors, DatasetCache datasetCache,
+                             PutPipeline putPipeline, ExecutionSettings settings) {
         this.bindings = checkNotNull(bindings);
         expressionVisitor = new ExpressionVisitor(this.bindings);
 
-        connectorVisitor = new ConnectorVisitor(connectors);
+        connectorVisitor = new ConnectorVisitor(connectors, datasetCache, putPipeline);
         clausesVisitor = new ClauseVisitor();
 
-        datasetExpressionVisitor = new DatasetExpressionVisitor(expressionVisitor);
-        foreachVisitor = new ForeachVisitor(expressionVisitor);
+        datasetExpressionVisitor = new DatasetExpressionVisitor(expressionVisitor, settings);
+        foreachVisitor = new ForeachVisitor(expressionVisitor, settings);
 
         checkVisitor = new CheckVisitor(datasetExpressionVisitor);
         hierarchyVisitor = new HierarchyVisitor(datasetExpressionVisitor);
@@ -115,7 +145,8 @@ public class AssignmentVisitor extends VTLBaseVisitor<Object> {
 
     @Override
     public Object visitPutFunction(VTLParser.PutFunctionContext ctx) {
-        return connectorVisitor.visit(ctx);
+        Dataset dataset = (Dataset) visit(ctx.datasetExpression());
+        return connectorVisitor.put(ctx, dataset);
     }
 
     @Override
@@ -60,7 +60,9 @@ public class CheckVisitor extends VTLBaseVisitor<Dataset> {
         if (errorLevel.isPresent())
             builder.errorLevel(errorLevel.get());
 
-        return builder.build();
+        CheckSingleRuleOperation check = builder.build();
+        check.setSettings(datasetExpressionVisitor.getSettings());
+        return check;
     }
 
     @Override
@@ -22,13 +22,19 @@ package no.ssb.vtl.script.visitors;
 
 import com.google.common.base.Throwables;
 import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorCapabilities;
+import no.ssb.vtl.connectors.ConnectorDataset;
 import no.ssb.vtl.connectors.ConnectorException;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.DatasetCache;
+import no.ssb.vtl.script.PutPipeline;
+import no.ssb.vtl.script.error.ContextualRuntimeException;
 
 import java.util.List;
 
+import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.*;
 
 /**
@@ -39,10 +45,18 @@ import static com.google.common.base.Preconditions.*;
 public class ConnectorVisitor extends VTLBaseVisitor<Dataset> {
 
     final List<Connector> connectors;
+    private final DatasetCache datasetCache;
+    private final PutPipeline putPipeline;
     private final LiteralVisitor literalVisitor = LiteralVisitor.getInstance();
 
     public ConnectorVisitor(List<Connector> connectors) {
+        this(connectors, DatasetCache.NONE, PutPipeline.builder().build());
+    }
+
+    public ConnectorVisitor(List<Connector> connectors, DatasetCache datasetCache, PutPipeline putPipeline) {
         this.connectors = checkNotNull(connectors, "list of connectors was null");
+        this.datasetCache = checkNotNull(datasetCache, "dataset cache was null");
+        this.putPipeline = checkNotNull(putPipeline, "put pipeline was null");
     }
     
     @Override
@@ -53,7 +67,11 @@ public class ConnectorVisitor extends VTLBaseVisitor<Dataset> {
                 if (!connector.canHandle(identifier)) {
                     continue;
                 }
-                return connector.getDataset(identifier);
+                return datasetCache.get(connector, identifier, () -> {
+                    Dataset dataset = connector.getDataset(identifier);
+                    ConnectorCapabilities capabilities = connector.getCapabilities(identifier, dataset);
+                    return ConnectorDataset.of(dataset, firstNonNull(capabilities, ConnectorCapabilities.ALL));
+                });
             }
         } catch (ConnectorException ce) {
             Throwables.propagate(ce);
@@ -61,23 +79,26 @@ public class ConnectorVisitor extends VTLBaseVisitor<Dataset> {
         return null;
     }
     
-    @Override
-    public Dataset visitPutFunction(VTLParser.PutFunctionContext ctx) {
-        // TODO: Get the identifier and the dataset.
-        String identifier = "identifier";
-        Dataset dataset = null;
+    /**
+     * Writes a dataset with the first connector that handles the identifier of the put.
+     * <p>
+     * The dataset expression of the put is evaluated by the caller, see
+     * {@link AssignmentVisitor#visitPutFunction(VTLParser.PutFunctionContext)}.
+     *
+     * @return the dataset returned by the connector.
+     */
+    public Dataset put(VTLParser.PutFunctionContext ctx, Dataset dataset) {
+        String identifier = literalVisitor.visitStringLiteral(ctx.stringLiteral()).get();
         try {
-
             for (Connector connector : connectors) {
                 if (!connector.canHandle(identifier)) {
                     continue;
                 }
-                return connector.putDataset(identifier, dataset);
+                return putPipeline.put(connector, identifier, dataset).getDataset();
             }
-            return super.visitPutFunction(ctx);
         } catch (ConnectorException ce) {
             Throwables.propagate(ce);
         }
-        return null;
+        throw new ContextualRuntimeException("no connector can handle " + identifier, ctx);
     }
 }
@@ -25,6 +25,7 @@ import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.ExecutionSettings;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.operations.union.UnionOperation;
@@ -40,12 +41,25 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class DatasetExpressionVisitor extends VTLBaseVisitor<Dataset> {
 
     private final ExpressionVisitor expressionVisitor;
+    private final ExecutionSettings settings;
 
     public DatasetExpressionVisitor(ExpressionVisitor expressionVisitor) {
+        this(expressionVisitor, ExecutionSettings.DEFAULT);
+    }
+
+    public DatasetExpressionVisitor(ExpressionVisitor expressionVisitor, ExecutionSettings settings) {
         this.expressionVisitor = checkNotNull(expressionVisitor);
+        this.settings = checkNotNull(settings);
         //this.joinVisitor = new JoinExpressionVisitor(context);
     }
 
+    /**
+     * Returns the settings given to the operations.
+     */
+    public ExecutionSettings getSettings() {
+        return settings;
+    }
+
     @Override
     public Dataset visitVariable(VTLParser.VariableContext ctx) {
         VTLExpression expression2 = expressionVisitor.visit(ctx);
@@ -60,7 +74,9 @@ public class DatasetExpressionVisitor extends VTLBaseVisitor<Dataset> {
             datasets.add(visit(datasetExpressionContext));
         }
         try {
-            return new UnionOperation(datasets);
+            UnionOperation union = new UnionOperation(datasets);
+            union.setSettings(settings);
+            return union;
         } catch (Exception e) {
             throw new ContextualRuntimeException(e, ctx);
         }
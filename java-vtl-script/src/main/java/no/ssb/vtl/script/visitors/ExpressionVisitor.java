@@ -33,7 +33,10 @@ import no.ssb.vtl.script.error.ContextualRuntimeException;
 import no.ssb.vtl.script.error.VTLRuntimeException;
 import no.ssb.vtl.script.expressions.FunctionExpression;
 import no.ssb.vtl.script.expressions.IfThenElseExpression;
+import no.ssb.vtl.script.expressions.IsNullExpression;
 import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.MembershipExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
 import no.ssb.vtl.script.expressions.arithmetic.AdditionExpression;
 import no.ssb.vtl.script.expressions.arithmetic.DivisionExpression;
 import no.ssb.vtl.script.expressions.arithmetic.MultiplicationExpression;
@@ -55,7 +58,6 @@ import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 
 import javax.script.Bindings;
-import java.util.function.Predicate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.String.format;
@@ -116,9 +118,9 @@ public class ExpressionVisitor extends VTLBaseVisitor<VTLExpression> {
         VTLExpression operand = visit(ctx.expression());
         switch (ctx.op.getType()) {
             case VTLParser.ISNOTNULL:
-                return getIsNullExpression(object -> object.get() != null, operand);
+                return new IsNullExpression(operand, true);
             case VTLParser.ISNULL:
-                return getIsNullExpression(object -> object.get() == null, operand);
+                return new IsNullExpression(operand, false);
             default:
                 throw new ParseCancellationException("unknown operator " + ctx.op.getText());
         }
@@ -259,21 +261,6 @@ public class ExpressionVisitor extends VTLBaseVisitor<VTLExpression> {
         return expression;
     }
 
-    private VTLExpression getIsNullExpression(Predicate<VTLObject> predicate, VTLExpression expression) {
-        return new VTLExpression() {
-            @Override
-            public VTLObject resolve(Bindings bindings) {
-                VTLObject object = expression.resolve(bindings);
-                return VTLBoolean.of(predicate.test(object));
-            }
-
-            @Override
-            public Class getVTLType() {
-                return VTLBoolean.class;
-            }
-        };
-    }
-
     @Override
     public VTLExpression visitNvlFunction(VTLParser.NvlFunctionContext ctx) {
         return nativeFunctionsVisitor.visit(ctx);
@@ -302,19 +289,7 @@ public class ExpressionVisitor extends VTLBaseVisitor<VTLExpression> {
             Bindings bindings = (Bindings) object;
             String rightIdentifier = checkVariableExist(bindings, ctx.right);
             VTLTyped typed = (VTLTyped) bindings.get(rightIdentifier);
-            return new VTLExpression() {
-
-                @Override
-                public VTLObject resolve(Bindings bindings) {
-                    return (VTLObject) ((Bindings) bindings.get(leftIdentifier)).get(rightIdentifier);
-                }
-
-                @Override
-                public Class getVTLType() {
-                    return typed.getVTLType();
-                }
-
-            };
+            return new MembershipExpression(leftIdentifier, rightIdentifier, typed);
         } else {
             throw new UnsupportedOperationException("[" + leftIdentifier + "] was not a dataset");
         }
@@ -327,20 +302,7 @@ public class ExpressionVisitor extends VTLBaseVisitor<VTLExpression> {
         if (object instanceof VTLTyped) {
 
             // Save the type and identifier.
-            // TODO: VariableReference extends VTLExpression2 ?
-            VTLTyped typed = (VTLTyped) object;
-            return new VTLExpression() {
-
-                @Override
-                public Class<?> getVTLType() {
-                    return typed.getVTLType();
-                }
-
-                @Override
-                public VTLObject resolve(Bindings bindings) {
-                    return (VTLObject) bindings.get(identifier);
-                }
-            };
+            return new VariableExpression(identifier, (VTLTyped) object);
 
         }
         if (object instanceof Dataset) {
@@ -52,7 +52,9 @@ public class HierarchyVisitor extends VTLBaseVisitor<Dataset> {
 
         Dataset hierarchyDataset = datasetExpressionVisitor.visit(ctx.hierarchyReference());
 
-        return new HierarchyOperation(dataset, hierarchyDataset, component);
+        HierarchyOperation hierarchy = new HierarchyOperation(dataset, hierarchyDataset, component);
+        hierarchy.setSettings(datasetExpressionVisitor.getSettings());
+        return hierarchy;
 
     }
 }
@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableSet;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.parser.VTLBaseVisitor;
+import no.ssb.vtl.script.ExecutionSettings;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.operations.foreach.ForeachOperation;
 import no.ssb.vtl.script.visitors.AssignmentVisitor;
@@ -38,9 +39,15 @@ import static no.ssb.vtl.parser.VTLParser.VariableContext;
 public class ForeachVisitor extends VTLBaseVisitor<ForeachOperation> {
 
     private final ExpressionVisitor expressionVisitor;
+    private final ExecutionSettings settings;
 
     public ForeachVisitor(ExpressionVisitor expressionVisitor) {
+        this(expressionVisitor, ExecutionSettings.DEFAULT);
+    }
+
+    public ForeachVisitor(ExpressionVisitor expressionVisitor, ExecutionSettings settings) {
         this.expressionVisitor = checkNotNull(expressionVisitor);
+        this.settings = checkNotNull(settings);
     }
 
     @Override
@@ -65,9 +72,10 @@ public class ForeachVisitor extends VTLBaseVisitor<ForeachOperation> {
         }
 
         ForeachOperation foreachOperation = new ForeachOperation(datasets.build(), identifiers.build());
+        foreachOperation.setSettings(settings);
 
         foreachOperation.setBlock(bindings -> {
-            AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings);
+            AssignmentVisitor assignmentVisitor = new AssignmentVisitor(bindings, settings);
             Object last = null;
             for (StatementContext statementContext : ctx.statement()) {
                 last = assignmentVisitor.visit(statementContext);
@@ -25,7 +25,13 @@ import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.VTLExpression;
 import no.ssb.vtl.parser.VTLBaseVisitor;
 import no.ssb.vtl.parser.VTLParser;
+import no.ssb.vtl.script.ExecutionSettings;
+import no.ssb.vtl.script.operations.DropOperation;
+import no.ssb.vtl.script.operations.FilterOperation;
+import no.ssb.vtl.script.operations.FoldOperation;
 import no.ssb.vtl.script.operations.JoinAssignment;
+import no.ssb.vtl.script.operations.KeepOperation;
+import no.ssb.vtl.script.operations.UnfoldOperation;
 import no.ssb.vtl.script.operations.join.AbstractJoinOperation;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
 import no.ssb.vtl.script.visitors.ComponentRoleVisitor;
@@ -42,6 +48,7 @@ import static no.ssb.vtl.script.visitors.AbstractVariableVisitor.unEscape;
 public class JoinBodyVisitor extends VTLBaseVisitor<Dataset> {
 
     private final JoinDefinitionVisitor joinDefVisitor;
+    private final ExecutionSettings settings;
 
     private ExpressionVisitor expressionVisitor;
     private Dataset workingDataset;
@@ -51,6 +58,7 @@ public class JoinBodyVisitor extends VTLBaseVisitor<Dataset> {
 
     public JoinBodyVisitor(DatasetExpressionVisitor datasetExpressionVisitor) {
         joinDefVisitor = new JoinDefinitionVisitor(datasetExpressionVisitor);
+        settings = datasetExpressionVisitor.getSettings();
     }
 
     @Override
@@ -99,6 +107,7 @@ public class JoinBodyVisitor extends VTLBaseVisitor<Dataset> {
                 implicit,
                 componentBindings
         );
+        result.setSettings(settings);
         componentBindings.putAll(new ComponentBindings(result));
         return result;
     }
@@ -106,31 +115,41 @@ public class JoinBodyVisitor extends VTLBaseVisitor<Dataset> {
     @Override
     public Dataset visitJoinFoldClause(VTLParser.JoinFoldClauseContext ctx) {
         FoldVisitor visitor = new FoldVisitor(workingDataset, componentVisitor);
-        return visitor.visit(ctx);
+        FoldOperation fold = visitor.visit(ctx);
+        fold.setSettings(settings);
+        return fold;
     }
 
     @Override
     public Dataset visitJoinUnfoldClause(VTLParser.JoinUnfoldClauseContext ctx) {
         UnfoldVisitor visitor = new UnfoldVisitor(workingDataset, componentVisitor);
-        return visitor.visit(ctx);
+        UnfoldOperation unfold = visitor.visit(ctx);
+        unfold.setSettings(settings);
+        return unfold;
     }
 
     @Override
     public Dataset visitJoinKeepClause(VTLParser.JoinKeepClauseContext ctx) {
         KeepVisitor visitor = new KeepVisitor(workingDataset, componentVisitor);
-        return visitor.visit(ctx);
+        KeepOperation keep = visitor.visit(ctx);
+        keep.setSettings(settings);
+        return keep;
     }
 
     @Override
     public Dataset visitJoinDropClause(VTLParser.JoinDropClauseContext ctx) {
         DropVisitor visitor = new DropVisitor(workingDataset, componentVisitor);
-        return visitor.visit(ctx);
+        DropOperation drop = visitor.visit(ctx);
+        drop.setSettings(settings);
+        return drop;
     }
 
     @Override
     public Dataset visitJoinFilterClause(VTLParser.JoinFilterClauseContext ctx) {
         FilterVisitor visitor = new FilterVisitor(workingDataset, componentBindings, expressionVisitor);
-        return visitor.visit(ctx);
+        FilterOperation filter = visitor.visit(ctx);
+        filter.setSettings(settings);
+        return filter;
     }
 
     @Override
@@ -85,15 +85,21 @@ public class JoinDefinitionVisitor extends VTLDatasetExpressionVisitor<AbstractJ
         ImmutableSet<Component> identifiers = extractIdentifierComponents(ctx.variableExpression(), datasets);
 
         Integer joinType = Optional.ofNullable(ctx.type).map(Token::getType).orElse(VTLParser.INNER);
+        AbstractJoinOperation join;
         switch (joinType) {
             case VTLParser.INNER:
-                return new InnerJoinOperation(datasets, identifiers);
+                join = new InnerJoinOperation(datasets, identifiers);
+                break;
             case VTLParser.OUTER:
-                return new OuterJoinOperation(datasets, identifiers);
+                join = new OuterJoinOperation(datasets, identifiers);
+                break;
             case VTLParser.CROSS:
-                return new CrossJoinOperation(datasets, identifiers);
-
+                join = new CrossJoinOperation(datasets, identifiers);
+                break;
+            default:
+                return super.visitJoinDefinition(ctx);
         }
-        return super.visitJoinDefinition(ctx);
+        join.setSettings(datasetExpressionVisitor.getSettings());
+        return join;
     }
 }
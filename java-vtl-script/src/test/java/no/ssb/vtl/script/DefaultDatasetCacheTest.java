@@ -0,0 +1,222 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.base.Ticker;
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DefaultDatasetCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Dataset dataset = StaticDataset.create()
+            .addComponent("id", IDENTIFIER, String.class)
+            .addComponent("m", MEASURE, Long.class)
+            .addPoints("a", 1L)
+            .addPoints("b", 2L)
+            .addPoints("a", 3L)
+            .build();
+
+    private final CountingConnector connector = new CountingConnector();
+
+    private static List<DataPoint> collect(Dataset dataset) {
+        try (Stream<DataPoint> data = dataset.getData()) {
+            return data.collect(Collectors.toList());
+        }
+    }
+
+    private Dataset get(DatasetCache cache, String identifier) throws ConnectorException {
+        return cache.get(connector, identifier, () -> connector.getDataset(identifier));
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        DefaultDatasetCache cache = DefaultDatasetCache.builder().build();
+
+        Dataset first = get(cache, "first");
+        assertThat(get(cache, "first")).isSameAs(first);
+        assertThat(get(cache, "second")).isNotSameAs(first);
+
+        assertThat(connector.loads.get()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+
+        // Same identifier, other connector.
+        Connector other = new CountingConnector();
+        assertThat(cache.get(other, "first", () -> other.getDataset("first"))).isNotSameAs(first);
+
+        cache.invalidate(connector, "first");
+        assertThat(get(cache, "first")).isNotSameAs(first);
+        assertThat(connector.loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testVersion() throws Exception {
+        DefaultDatasetCache cache = DefaultDatasetCache.builder().build();
+
+        connector.version = "1";
+        Dataset first = get(cache, "id");
+        assertThat(get(cache, "id")).isSameAs(first);
+
+        connector.version = "2";
+        Dataset second = get(cache, "id");
+        assertThat(second).isNotSameAs(first);
+        assertThat(get(cache, "id")).isSameAs(second);
+
+        assertThat(connector.loads.get()).isEqualTo(2);
+        assertThat(cache.getStaleCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        DefaultDatasetCache cache = DefaultDatasetCache.builder().maximumRows(5).build();
+        get(cache, "first");
+        get(cache, "second");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+
+        AtomicLong nanos = new AtomicLong();
+        cache = DefaultDatasetCache.builder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos.get();
+                    }
+                })
+                .build();
+        Dataset first = get(cache, "first");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertThat(get(cache, "first")).isSameAs(first);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(get(cache, "first")).isNotSameAs(first);
+    }
+
+    @Test
+    public void testMemory() throws Exception {
+        DefaultDatasetCache cache = DefaultDatasetCache.builder()
+                .materialization(DefaultDatasetCache.Materialization.MEMORY)
+                .build();
+
+        Dataset cached = get(cache, "id");
+        assertThat(cached).isInstanceOf(StaticDataset.class);
+        List<DataPoint> data = collect(cached);
+        assertThat(data).containsExactlyElementsOf(collect(dataset));
+        assertThat(data.get(2).get(0)).isSameAs(data.get(0).get(0));
+    }
+
+    @Test
+    public void testStringPool() throws Exception {
+        VTLScriptEngine engine = new VTLScriptEngine();
+        DefaultDatasetCache cache = DefaultDatasetCache.builder()
+                .materialization(DefaultDatasetCache.Materialization.MEMORY)
+                .stringPool(engine.getStringPool())
+                .build();
+
+        List<DataPoint> data = collect(get(cache, "id"));
+        String value = (String) data.get(0).get(0).get();
+        assertThat(data.get(0).get(0)).isSameAs(engine.getStringPool().of(value));
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        DefaultDatasetCache cache = DefaultDatasetCache.builder()
+                .materialization(DefaultDatasetCache.Materialization.FILE)
+                .directory(directory)
+                .build();
+
+        Dataset cached = get(cache, "id");
+        assertThat(collect(cached)).containsExactlyInAnyOrder(collect(dataset).toArray(new DataPoint[0]));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+
+        cache.invalidateAll();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        DefaultDatasetCache cache = DefaultDatasetCache.builder().build();
+        assertThatThrownBy(() -> cache.get(connector, "id", () -> {
+            throw new ConnectorException("failed");
+        })).isInstanceOf(ConnectorException.class).hasMessage("failed");
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    private final class CountingConnector implements Connector {
+
+        private final AtomicInteger loads = new AtomicInteger();
+        private volatile String version;
+
+        @Override
+        public boolean canHandle(String identifier) {
+            return true;
+        }
+
+        @Override
+        public Dataset getDataset(String identifier) throws ConnectorException {
+            loads.incrementAndGet();
+            return StaticDataset.create(dataset.getDataStructure())
+                    .addPoints(DataPoint.create("a", 1L))
+                    .addPoints(DataPoint.create("b", 2L))
+                    .addPoints(DataPoint.create("a", 3L))
+                    .build();
+        }
+
+        @Override
+        public Optional<String> getVersion(String identifier) throws ConnectorException {
+            return Optional.ofNullable(version);
+        }
+
+        @Override
+        public Dataset putDataset(String identifier, Dataset dataset) throws ConnectorException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
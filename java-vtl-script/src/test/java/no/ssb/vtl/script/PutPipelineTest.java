@@ -0,0 +1,230 @@
+package no.ssb.vtl.script;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorException;
+import no.ssb.vtl.connectors.DataPointSink;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PutPipelineTest {
+
+    private static final DataStructure STRUCTURE = DataStructure.of("id", IDENTIFIER, Long.class);
+
+    /**
+     * A dataset that counts the data points it produced.
+     */
+    private static Dataset createDataset(int size, AtomicInteger produced) {
+        return new Dataset() {
+            @Override
+            public Stream<DataPoint> getData() {
+                return IntStream.range(0, size)
+                        .mapToObj(i -> DataPoint.create((long) i))
+                        .peek(dataPoint -> produced.incrementAndGet());
+            }
+
+            @Override
+            public Optional<Map<String, Integer>> getDistinctValuesCount() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Long> getSize() {
+                return Optional.empty();
+            }
+
+            @Override
+            public DataStructure getDataStructure() {
+                return STRUCTURE;
+            }
+        };
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        for (int bufferedBatches : new int[]{0, 1, 4}) {
+            SinkConnector connector = new SinkConnector();
+            List<PutPipeline.Report> reports = Lists.newArrayList();
+            PutPipeline pipeline = PutPipeline.builder()
+                    .batchSize(3)
+                    .bufferedBatches(bufferedBatches)
+                    .listener(reports::add)
+                    .build();
+
+            PutPipeline.Report report = pipeline.put(connector, "id", createDataset(10, new AtomicInteger()));
+
+            assertThat(connector.batches).extracting(List::size).containsExactly(3, 3, 3, 1);
+            assertThat(connector.written()).containsExactlyElementsOf(
+                    LongStream.range(0, 10).boxed().collect(Collectors.toList()));
+            assertThat(report.getRowCount()).isEqualTo(10);
+            assertThat(report.getBatchCount()).isEqualTo(4);
+            assertThat(report.getBytesWritten()).isEqualTo(80);
+            assertThat(report.getDataset()).isSameAs(connector.result);
+            assertThat(reports).containsExactly(report);
+            assertThat(connector.committed).isTrue();
+            assertThat(connector.closed).isTrue();
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        SinkConnector connector = new SinkConnector() {
+            @Override
+            void onWrite(List<DataPoint> batch) throws ConnectorException {
+                // The writer is slow: the evaluation can only be a few batches ahead.
+                int written = written().size();
+                assertThat(produced.get() - written).isLessThanOrEqualTo(5 * 10);
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ie) {
+                    throw new ConnectorException(ie);
+                }
+            }
+        };
+        PutPipeline pipeline = PutPipeline.builder().batchSize(10).bufferedBatches(2).build();
+
+        PutPipeline.Report report = pipeline.put(connector, "id", createDataset(1000, produced));
+        assertThat(report.getRowCount()).isEqualTo(1000);
+        assertThat(connector.written()).hasSize(1000);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        SinkConnector connector = new SinkConnector() {
+            @Override
+            void onWrite(List<DataPoint> batch) throws ConnectorException {
+                if (batches.size() == 2)
+                    throw new ConnectorException("failed");
+            }
+        };
+        PutPipeline pipeline = PutPipeline.builder().batchSize(10).bufferedBatches(1).build();
+
+        assertThatThrownBy(() -> pipeline.put(connector, "id", createDataset(100_000, produced)))
+                .isInstanceOf(ConnectorException.class)
+                .hasMessage("failed");
+        assertThat(produced.get()).isLessThan(100_000);
+        assertThat(connector.committed).isFalse();
+        assertThat(connector.closed).isTrue();
+    }
+
+    @Test
+    public void testPutDataset() throws Exception {
+        Dataset dataset = StaticDataset.create(STRUCTURE).addPoints(1L).build();
+        List<Dataset> put = Lists.newArrayList();
+        Connector connector = new SinkConnector() {
+            @Override
+            public Optional<DataPointSink> openSink(String identifier, DataStructure structure) {
+                return Optional.empty();
+            }
+
+            @Override
+            public Dataset putDataset(String identifier, Dataset dataset) {
+                put.add(dataset);
+                return dataset;
+            }
+        };
+
+        PutPipeline.Report report = PutPipeline.builder().build().put(connector, "id", dataset);
+        assertThat(put).containsExactly(dataset);
+        assertThat(report.getDataset()).isSameAs(dataset);
+        assertThat(report.getRowCount()).isEqualTo(-1);
+    }
+
+    private static class SinkConnector implements Connector {
+
+        final List<List<DataPoint>> batches = Lists.newCopyOnWriteArrayList();
+        final Dataset result = StaticDataset.create(STRUCTURE).build();
+        volatile boolean committed;
+        volatile boolean closed;
+
+        List<Long> written() {
+            return batches.stream()
+                    .flatMap(List::stream)
+                    .map(dataPoint -> (Long) dataPoint.get(0).get())
+                    .collect(Collectors.toList());
+        }
+
+        void onWrite(List<DataPoint> batch) throws ConnectorException {
+        }
+
+        @Override
+        public boolean canHandle(String identifier) {
+            return true;
+        }
+
+        @Override
+        public Dataset getDataset(String identifier) throws ConnectorException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Dataset putDataset(String identifier, Dataset dataset) throws ConnectorException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<DataPointSink> openSink(String identifier, DataStructure structure) {
+            return Optional.of(new DataPointSink() {
+                @Override
+                public void write(List<DataPoint> batch) throws ConnectorException {
+                    onWrite(batch);
+                    batches.add(Lists.newArrayList(batch));
+                }
+
+                @Override
+                public long getBytesWritten() {
+                    return written().size() * 8L;
+                }
+
+                @Override
+                public Dataset commit() {
+                    committed = true;
+                    return result;
+                }
+
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            });
+        }
+    }
+}
@@ -24,14 +24,18 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.connectors.Connector;
+import no.ssb.vtl.connectors.ConnectorDataset;
 import no.ssb.vtl.model.Component;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointSorter;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.parser.VTLLexer;
+import no.ssb.vtl.script.operations.join.JoinStrategy;
+import no.ssb.vtl.script.operations.union.UnionOperation;
 import no.ssb.vtl.script.support.VTLPrintStream;
 import org.antlr.v4.runtime.Vocabulary;
 import org.apache.maven.artifact.versioning.ComparableVersion;
@@ -51,6 +55,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -61,6 +66,7 @@ import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class VTLScriptEngineTest {
@@ -290,7 +296,9 @@ public class VTLScriptEngineTest {
         bindings.put("ds1", dataset);
         engine.eval("ds2 := get(\"todo\")");
 
-        assertThat(bindings).contains(entry("ds2", dataset));
+        // The dataset is adapted to the capabilities of the connector.
+        assertThat(bindings.get("ds2")).isInstanceOf(ConnectorDataset.class);
+        assertThat(((ConnectorDataset) bindings.get("ds2")).getSource()).isSameAs(dataset);
 
     }
 
@@ -299,9 +307,12 @@ public class VTLScriptEngineTest {
 
         when(connector.canHandle(anyString())).thenReturn(true);
         when(connector.putDataset(anyString(), any())).thenReturn(dataset);
-        engine.eval("ds1 := put(\"todo\")");
+        Dataset ds2 = mock(Dataset.class);
+        bindings.put("ds2", ds2);
+        engine.eval("ds1 := put(ds2, \"todo\")");
 
         assertThat(bindings).contains(entry("ds1", dataset));
+        verify(connector).putDataset("todo", ds2);
 
     }
 
@@ -361,6 +372,36 @@ public class VTLScriptEngineTest {
                 );
     }
 
+    @Test
+    public void testCrossJoin() throws Exception {
+
+        Dataset ds1 = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .addPoints("b", 2L)
+                .build();
+
+        Dataset ds2 = StaticDataset.create()
+                .addComponent("id2", Role.IDENTIFIER, String.class)
+                .addComponent("m2", Role.MEASURE, Long.class)
+                .addPoints("x", 10L)
+                .addPoints("y", 20L)
+                .build();
+
+        bindings.put("ds1", ds1);
+        bindings.put("ds2", ds2);
+
+        engine.eval("ds3 := [cross ds1, ds2] { m := m1 + m2 }");
+
+        Dataset ds3 = (Dataset) bindings.get("ds3");
+        assertThat(ds3.getDataStructure()).containsOnlyKeys("id1", "m1", "id2", "m2", "m");
+        assertThat(ds3.getData())
+                .extracting(dataPoint -> ds3.getDataStructure().asMap(dataPoint).get(ds3.getDataStructure().get("m")))
+                .extracting(VTLObject::get)
+                .containsExactly(11L, 21L, 12L, 22L);
+    }
+
     @Test
     public void testJoin() throws Exception {
 
@@ -920,6 +961,7 @@ public class VTLScriptEngineTest {
         when(ds1.getDataStructure()).thenReturn(structure);
 
         when(ds1.getData(any(Order.class))).thenReturn(Optional.empty());
+        when(ds1.getData(any(Order.class), any(), any())).thenReturn(Optional.empty());
         when(ds1.getData()).then(invocation -> Stream.of(
                 (Map) ImmutableMap.of(
                         "id1", 1L,
@@ -1028,6 +1070,7 @@ public class VTLScriptEngineTest {
         when(ds1.getDataStructure()).thenReturn(structure);
 
         when(ds1.getData(any(Order.class))).thenReturn(Optional.empty());
+        when(ds1.getData(any(Order.class), any(), any())).thenReturn(Optional.empty());
         when(ds1.getData()).then(invocation -> Stream.of(
                 (Map) ImmutableMap.of(
                         "id1", 1L,
@@ -1097,6 +1140,7 @@ public class VTLScriptEngineTest {
         when(ds1.getDataStructure()).thenReturn(structure);
 
         when(ds1.getData(any(Order.class))).thenReturn(Optional.empty());
+        when(ds1.getData(any(Order.class), any(), any())).thenReturn(Optional.empty());
         when(ds1.getData()).then(invocation -> Stream.of(
                 (Map) ImmutableMap.of(
                         "id1", 1L,
@@ -1212,4 +1256,38 @@ public class VTLScriptEngineTest {
                         "4", 300L, 400D, "attr2-2"
                 );
     }
+
+    @Test
+    public void testExecutionSettings() throws Exception {
+        Dataset ds1 = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addPoints("1", 10L)
+                .build();
+
+        VTLScriptEngine first = new VTLScriptEngine(connector);
+        VTLScriptEngine second = new VTLScriptEngine(connector);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        first.setSortMemoryBudget(4096);
+        first.setForkJoinPool(pool);
+        first.setJoinStrategy(JoinStrategy.HASH);
+
+        // The settings are not shared.
+        assertThat(first.getSortMemoryBudget()).isEqualTo(4096);
+        assertThat(second.getSortMemoryBudget()).isEqualTo(DataPointSorter.DEFAULT_MEMORY_BUDGET);
+        assertThat(first.getForkJoinPool()).isSameAs(pool);
+        assertThat(second.getForkJoinPool()).isNull();
+        assertThat(first.getJoinStrategy()).isEqualTo(JoinStrategy.HASH);
+        assertThat(second.getJoinStrategy()).isEqualTo(JoinStrategy.AUTO);
+        assertThat(first.getJoinSkewMetrics()).isNotSameAs(second.getJoinSkewMetrics());
+        pool.shutdown();
+
+        // The operations use the settings of the engine that created them.
+        Bindings firstBindings = first.getBindings(ScriptContext.ENGINE_SCOPE);
+        firstBindings.put("ds1", ds1);
+        first.eval("ds2 := union(ds1, ds1)");
+        UnionOperation union = (UnionOperation) firstBindings.get("ds2");
+        assertThat(union.getSettings()).isSameAs(first.getExecutionSettings());
+        assertThat(union.getSettings().getSortMemoryBudget()).isEqualTo(4096);
+    }
 }
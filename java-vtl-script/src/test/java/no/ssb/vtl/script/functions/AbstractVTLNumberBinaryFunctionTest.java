@@ -48,7 +48,7 @@ public abstract class AbstractVTLNumberBinaryFunctionTest implements VTLNumberFu
                 )
         ))
                 .as("exception when passing a String where Number is expected")
-                .hasMessage("invalid type class no.ssb.vtl.model.VTLString$1 for argument ds, expected class no.ssb.vtl.model.VTLNumber")
+                .hasMessage("invalid type class no.ssb.vtl.model.VTLString for argument ds, expected class no.ssb.vtl.model.VTLNumber")
                 .isExactlyInstanceOf(IllegalArgumentException.class);
     }
 
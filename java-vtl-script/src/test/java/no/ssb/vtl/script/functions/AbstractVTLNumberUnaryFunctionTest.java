@@ -54,7 +54,7 @@ public abstract class AbstractVTLNumberUnaryFunctionTest
                 )
         ))
                 .as("Exception when passing String argument where Number is expected")
-                .hasMessage("invalid type class no.ssb.vtl.model.VTLString$1 for argument ds, expected class no.ssb.vtl.model.VTLNumber")
+                .hasMessage("invalid type class no.ssb.vtl.model.VTLString for argument ds, expected class no.ssb.vtl.model.VTLNumber")
                 .isExactlyInstanceOf(IllegalArgumentException.class);
     }
 
@@ -47,7 +47,7 @@ public class AggregationSumFunctionTest {
         );
         VTLNumber<?> result = new AggregationSumFunction().apply(numbers);
         assertThat(result).isEqualTo(VTLNumber.of(number1 + number2));
-        assertThat(result.getClass().getSuperclass()).isEqualTo(VTLInteger.class);
+        assertThat(result.getClass()).isEqualTo(VTLInteger.class);
     }
 
     @Test
@@ -61,7 +61,7 @@ public class AggregationSumFunctionTest {
         );
         VTLNumber<?> result = new AggregationSumFunction().apply(numbers);
         assertThat(result).isEqualTo(VTLNumber.of(number1 + number2));
-        assertThat(result.getClass().getSuperclass()).isEqualTo(VTLFloat.class);
+        assertThat(result.getClass()).isEqualTo(VTLFloat.class);
     }
 
     @Test
@@ -75,7 +75,7 @@ public class AggregationSumFunctionTest {
         );
         VTLNumber<?> result = new AggregationSumFunction().apply(numbers);
         assertThat(result).isEqualTo(VTLNumber.of(number1 + number2));
-        assertThat(result.getClass().getSuperclass()).isEqualTo(VTLFloat.class);
+        assertThat(result.getClass()).isEqualTo(VTLFloat.class);
     }
 
     @Test
@@ -91,7 +91,7 @@ public class AggregationSumFunctionTest {
         );
         VTLNumber<?> result = new AggregationSumFunction().apply(numbers);
         assertThat(result).isEqualTo(VTLNumber.of(number1 + number2));
-        assertThat(result.getClass().getSuperclass()).isEqualTo(VTLInteger.class);
+        assertThat(result.getClass()).isEqualTo(VTLInteger.class);
     }
 
     @Test
@@ -107,6 +107,6 @@ public class AggregationSumFunctionTest {
         );
         VTLNumber<?> result = new AggregationSumFunction().apply(numbers);
         assertThat(result).isEqualTo(VTLNumber.of(number1 + number2));
-        assertThat(result.getClass().getSuperclass()).isEqualTo(VTLFloat.class);
+        assertThat(result.getClass()).isEqualTo(VTLFloat.class);
     }
 }
@@ -26,10 +26,15 @@ package no.ssb.vtl.script.operations;
 
 import com.google.common.collect.ImmutableList;
 import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataPointBatch;
 import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
 import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.Statistics;
 import no.ssb.vtl.script.functions.AggregationSumFunction;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
+import no.ssb.vtl.script.support.FullWidthDataset;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -92,4 +97,79 @@ public class AggregationOperationTest {
         }
 
     }
+
+    @Test
+    public void testAggregateBatches() {
+
+        DataStructure structure = this.dataset.getDataStructure();
+        AggregationOperation aggregationOperation = new AggregationOperation(
+                this.dataset,
+                ImmutableList.of(structure.get("id1")),
+                ImmutableList.of(structure.get("m1")),
+                new AggregationSumFunction()
+        );
+
+        try (Stream<DataPointBatch> batches = aggregationOperation.getBatches()) {
+            assertThat(DataPointBatch.toDataPoints(batches)).containsExactly(
+                    DataPoint.create("a", 15),
+                    DataPoint.create("b", 15),
+                    DataPoint.create("c", 15)
+            );
+        } finally {
+            assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+
+    }
+
+    @Test
+    public void testChildIgnoringComponents() {
+
+        StaticDataset staticDataset = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addComponent("m2", Role.MEASURE, Long.class)
+                .addPoints("a", 1L, 2L)
+                .addPoints("b", 3L, 4L)
+                .build();
+
+        // The child returns all its components.
+        Dataset child = FullWidthDataset.wrap(staticDataset);
+        DataStructure structure = child.getDataStructure();
+        AggregationOperation aggregationOperation = new AggregationOperation(
+                child,
+                ImmutableList.of(structure.get("id1")),
+                ImmutableList.of(structure.get("m2")),
+                new AggregationSumFunction()
+        );
+
+        assertThat(aggregationOperation.getData()).containsExactly(
+                DataPoint.create("a", 2),
+                DataPoint.create("b", 4)
+        );
+        assertThat(DataPointBatch.toDataPoints(aggregationOperation.getBatches())).containsExactly(
+                DataPoint.create("a", 2),
+                DataPoint.create("b", 4)
+        );
+    }
+
+    @Test
+    public void testStatistics() {
+
+        DataStructure structure = this.dataset.getDataStructure();
+        AggregationOperation aggregationOperation = new AggregationOperation(
+                this.dataset,
+                ImmutableList.of(structure.get("id1")),
+                ImmutableList.of(structure.get("m1")),
+                new AggregationSumFunction()
+        );
+
+        Statistics statistics = aggregationOperation.getStatistics();
+        assertThat(statistics.getRowCount()).contains(3L);
+        assertThat(statistics.getColumn("id1").getDistinctCount()).contains(3L);
+        assertThat(statistics.isSortedBy(
+                Order.create(aggregationOperation.getDataStructure())
+                        .put("id1", Order.Direction.ASC).build(),
+                aggregationOperation.getDataStructure()
+        )).isTrue();
+    }
 }
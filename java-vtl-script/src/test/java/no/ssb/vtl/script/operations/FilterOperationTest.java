@@ -20,7 +20,16 @@ package no.ssb.vtl.script.operations;
  * =========================LICENSE_END==================================
  */
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import no.ssb.vtl.model.*;
+import no.ssb.vtl.script.ExecutionSettings;
+import no.ssb.vtl.script.expressions.LiteralExpression;
+import no.ssb.vtl.script.expressions.VariableExpression;
+import no.ssb.vtl.script.expressions.equality.EqualExpression;
+import no.ssb.vtl.script.expressions.equality.GraterThanExpression;
+import no.ssb.vtl.script.expressions.logic.AndExpression;
+import no.ssb.vtl.script.expressions.logic.OrExpression;
 import no.ssb.vtl.script.operations.join.ComponentBindings;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
 import org.junit.Before;
@@ -28,6 +37,12 @@ import org.junit.Test;
 
 import javax.script.Bindings;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -115,5 +130,184 @@ public class FilterOperationTest {
             assertThat(dataset.allStreamWereClosed()).isTrue();
         }
     }
-}
 
+    @Test
+    public void testBatches() {
+
+        FilterOperation result = new FilterOperation(dataset, TRUE, componentBindings);
+        try (Stream<DataPointBatch> batches = result.getBatches()) {
+            assertThat(DataPointBatch.toDataPoints(batches)).containsExactly(
+                    DataPoint.create("idValue", null)
+            );
+        } finally {
+            assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+
+        FilterOperation empty = new FilterOperation(dataset, FALSE, componentBindings);
+        try (Stream<DataPointBatch> batches = empty.getBatches()) {
+            assertThat(batches).isEmpty();
+        } finally {
+            assertThat(dataset.allStreamWereClosed()).isTrue();
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        StaticDataset.ValueBuilder builder = StaticDataset.create(DataStructure.of(
+                "id", Component.Role.IDENTIFIER, Long.class,
+                "m", Component.Role.MEASURE, Long.class
+        ));
+        for (long i = 0; i < 10_000; i++) {
+            builder.addPoints(i, i % 7);
+        }
+        StaticDataset data = builder.build();
+        ComponentBindings bindings = new ComponentBindings(data);
+
+        // Cannot be given to the child.
+        Set<String> threads = Sets.newConcurrentHashSet();
+        VTLExpression predicate = new VTLExpression() {
+            @Override
+            public VTLObject resolve(Bindings bindings) {
+                threads.add(Thread.currentThread().getName());
+                return VTLBoolean.of((Long) ((VTLObject) bindings.get("m")).get() % 3 == 0);
+            }
+
+            @Override
+            public Class getVTLType() {
+                return VTLBoolean.class;
+            }
+        };
+        FilterOperation result = new FilterOperation(data, predicate, bindings);
+        List<DataPoint> sequential = result.getData().collect(Collectors.toList());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        result.setSettings(ExecutionSettings.DEFAULT.withForkJoinPool(pool));
+        try {
+            threads.clear();
+            assertThat(result.getPartitions(4)).hasSize(4);
+            try (Stream<DataPoint> parallel = result.getData()) {
+                assertThat(parallel.collect(Collectors.toList())).containsExactlyElementsOf(sequential);
+            }
+            assertThat(threads).doesNotContain(Thread.currentThread().getName());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPushdown() {
+        StaticDataset data = StaticDataset.create()
+                .addComponent("id", Component.Role.IDENTIFIER, String.class)
+                .addComponent("m", Component.Role.MEASURE, Long.class)
+                .addPoints("a", 1L)
+                .addPoints("b", 2L)
+                .addPoints("c", 3L)
+                .build();
+        ComponentBindings bindings = new ComponentBindings(data);
+        VTLExpression id = new VariableExpression("id", (VTLTyped) bindings.get("id"));
+        VTLExpression m = new VariableExpression("m", (VTLTyped) bindings.get("m"));
+
+        // (id = "a" or "b" = id) and m > 1 and true
+        VTLExpression predicate = new AndExpression(
+                new AndExpression(
+                        new OrExpression(
+                                new EqualExpression(id, new LiteralExpression(VTLObject.of("a"))),
+                                new EqualExpression(new LiteralExpression(VTLObject.of("b")), id)
+                        ),
+                        new GraterThanExpression(m, new LiteralExpression(VTLObject.of(1L)))
+                ),
+                TRUE
+        );
+
+        List<Dataset.Filtering> requests = Lists.newArrayList();
+        FilterOperation result = new FilterOperation(recordFiltering(data, requests), predicate, bindings);
+        assertThat(result.getData()).containsExactly(DataPoint.create("b", 2L));
+
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0)).isInstanceOf(StructuredFiltering.class);
+        StructuredFiltering filtering = (StructuredFiltering) requests.get(0);
+        assertThat(filtering.getConjuncts()).extracting(StructuredFiltering::getOperator).containsExactly(
+                StructuredFiltering.Operator.IN, StructuredFiltering.Operator.GT
+        );
+        assertThat(filtering.toString()).isEqualTo("(id in (a, b) and m > 1)");
+
+        // The filtering of the parent is given to the child along with the predicate.
+        requests.clear();
+        StructuredFiltering parentFiltering = StructuredFiltering.lessThan(
+                result.getDataStructure(), "m", VTLObject.of(2L)
+        );
+        Optional<Stream<DataPoint>> filtered = result.getData(
+                Order.create(result.getDataStructure()).build(), parentFiltering, result.getDataStructure().keySet()
+        );
+        assertThat(filtered).isPresent();
+        assertThat(filtered.get()).isEmpty();
+        assertThat(requests).hasSize(1);
+        assertThat(((StructuredFiltering) requests.get(0)).getConjuncts()).hasSize(3);
+
+        // A filtering that is not structured is applied after the predicate, which is still given to the child.
+        requests.clear();
+        Dataset.Filtering notStructured = dataPoint -> !VTLObject.of("b").equals(dataPoint.get(0));
+        Optional<Stream<DataPointBatch>> batches = result.getBatches(
+                Order.create(result.getDataStructure()).build(), notStructured, result.getDataStructure().keySet()
+        );
+        assertThat(batches).isPresent();
+        assertThat(DataPointBatch.toDataPoints(batches.get())).isEmpty();
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0).toString()).isEqualTo("(id in (a, b) and m > 1)");
+    }
+
+    @Test
+    public void testPushdownKeepsOrder() {
+        StaticDataset data = StaticDataset.create()
+                .addComponent("id", Component.Role.IDENTIFIER, String.class)
+                .addComponent("m", Component.Role.MEASURE, Long.class)
+                .addPoints("c", 3L)
+                .addPoints("a", 1L)
+                .addPoints("b", 2L)
+                .build();
+        ComponentBindings bindings = new ComponentBindings(data);
+        VTLExpression id = new VariableExpression("id", (VTLTyped) bindings.get("id"));
+
+        // id = "a" or id = "c", found with the index of the dataset.
+        VTLExpression predicate = new OrExpression(
+                new EqualExpression(id, new LiteralExpression(VTLObject.of("a"))),
+                new EqualExpression(id, new LiteralExpression(VTLObject.of("c")))
+        );
+
+        FilterOperation result = new FilterOperation(data, predicate, bindings);
+        assertThat(result.getData()).containsExactly(
+                DataPoint.create("c", 3L),
+                DataPoint.create("a", 1L)
+        );
+    }
+
+    private static Dataset recordFiltering(Dataset dataset, List<Dataset.Filtering> requests) {
+        return new Dataset() {
+            @Override
+            public Stream<DataPoint> getData() {
+                return dataset.getData();
+            }
+
+            @Override
+            public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+                requests.add(filtering);
+                return dataset.getData(orders, filtering, components);
+            }
+
+            @Override
+            public Optional<Map<String, Integer>> getDistinctValuesCount() {
+                return dataset.getDistinctValuesCount();
+            }
+
+            @Override
+            public Optional<Long> getSize() {
+                return dataset.getSize();
+            }
+
+            @Override
+            public DataStructure getDataStructure() {
+                return dataset.getDataStructure();
+            }
+        };
+    }
+}
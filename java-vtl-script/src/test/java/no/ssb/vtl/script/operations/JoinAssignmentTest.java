@@ -196,6 +196,26 @@ public class JoinAssignmentTest {
 
     }
 
+    // The shared data points of the child are not modified.
+    @Test
+    public void testDoesNotModifyChild() {
+
+        JoinAssignment operation = new JoinAssignment(
+                dataset,
+                expression,
+                "measure",
+                Component.Role.MEASURE,
+                false,
+                new ComponentBindings(Collections.emptyMap())
+        );
+        try (Stream<DataPoint> data = operation.getData()) {
+            assertThat(data.map(dp -> dp.get(1))).containsExactly(VTLObject.of("changed"));
+        }
+        try (Stream<DataPoint> data = dataset.getData()) {
+            assertThat(data.map(dp -> dp.get(1))).containsExactly(VTLObject.of("measureValue"));
+        }
+    }
+
     // Measure and attribute roles can be changed.
     @Test
     public void testChangeRoles() {
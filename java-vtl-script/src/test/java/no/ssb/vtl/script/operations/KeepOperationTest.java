@@ -0,0 +1,78 @@
+package no.ssb.vtl.script.operations;
+
+/*
+ * -
+ *  * ========================LICENSE_START=================================
+ * * Java VTL
+ *  *
+ * %%
+ * Copyright (C) 2017 Hadrien Kohl
+ *  *
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ *
+ */
+
+
+import com.google.common.collect.ImmutableSet;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.script.support.FullWidthDataset;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeepOperationTest {
+
+    @Test
+    public void testChildIgnoringComponents() {
+
+        StaticDataset staticDataset = StaticDataset.create()
+                .addComponent("id1", Role.IDENTIFIER, String.class)
+                .addComponent("m1", Role.MEASURE, Long.class)
+                .addComponent("m2", Role.MEASURE, Long.class)
+                .addPoints("a", 1L, 2L)
+                .addPoints("b", 3L, 4L)
+                .build();
+
+        // The child returns all its components.
+        Dataset child = FullWidthDataset.wrap(staticDataset);
+        DataStructure structure = child.getDataStructure();
+        KeepOperation keepOperation = new KeepOperation(
+                child, ImmutableSet.of(structure.get("id1"), structure.get("m1"))
+        );
+
+        assertThat(keepOperation.getData()).containsExactly(
+                DataPoint.create("a", 1L),
+                DataPoint.create("b", 3L)
+        );
+
+        Order order = Order.createDefault(keepOperation.getDataStructure());
+        Optional<Stream<DataPoint>> data = keepOperation.getData(
+                order, Dataset.Filtering.ALL, ImmutableSet.of("m1")
+        );
+        assertThat(data).isPresent();
+        assertThat(data.get()).containsExactly(
+                DataPoint.create(1L),
+                DataPoint.create(3L)
+        );
+    }
+}
@@ -27,6 +27,8 @@ import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
 import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.StructuredFiltering;
+import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.VTLDataset;
 import no.ssb.vtl.script.VTLScriptEngine;
 import no.ssb.vtl.script.operations.hierarchy.HierarchyOperation;
@@ -107,6 +109,34 @@ public class ForeachOperationTest {
 
     }
 
+    @Test
+    public void testFiltering() {
+        ForeachOperation foreachOperation = new ForeachOperation(
+                ImmutableMap.of("t1", createInnerJoin1(), "t2", createInnerJoin2()), ImmutableSet.of("year")
+        );
+        foreachOperation.setBlock(bindings -> {
+            VTLDataset t1 = (VTLDataset) bindings.get("t1");
+            VTLDataset t2 = (VTLDataset) bindings.get("t2");
+            return VTLDataset.of(new InnerJoinOperation(ImmutableMap.of("t1", t1.get(), "t2", t2.get())));
+        });
+
+        Order orderedByYear = Order.create(foreachOperation.getDataStructure())
+                .put("year", Order.Direction.DESC).build();
+        StructuredFiltering filtering = StructuredFiltering.equal(
+                foreachOperation.getDataStructure(), "id", VTLObject.of(2L)
+        );
+
+        Optional<Stream<DataPoint>> data = foreachOperation.getData(
+                orderedByYear, filtering, foreachOperation.getDataStructure().keySet()
+        );
+        assertThat(data).isNotEmpty();
+        assertThat(data.get()).containsExactly(
+                DataPoint.create(2004, 2, "m2", "t1-2004", "m2", "t2-2004"),
+                DataPoint.create(2003, 2, "m2", "t1-2003", "m2", "t2-2003"),
+                DataPoint.create(2000, 2, "m2", "t1-2000", "m2", "t2-2000")
+        );
+    }
+
     private DataPoint[] createInnerJoinResult() {
         return new DataPoint[]{DataPoint.create(2004, 1, "m1", "t1-2004", "m1", "t2-2004"),
                 DataPoint.create(2004, 2, "m2", "t1-2004", "m2", "t2-2004"),
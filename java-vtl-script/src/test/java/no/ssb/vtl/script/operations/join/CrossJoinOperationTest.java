@@ -1,3 +1,5 @@
+package no.ssb.vtl.script.operations.join;
+
 /*-
  * ========================LICENSE_START=================================
  * Java VTL
@@ -17,3 +19,143 @@
  * limitations under the License.
  * =========================LICENSE_END==================================
  */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.script.ExecutionSettings;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CrossJoinOperationTest {
+
+    private static Dataset createDataset(String id, String measure, int size) {
+        StaticDataset.ValueBuilder builder = StaticDataset.create(
+                DataStructure.of(id, IDENTIFIER, String.class, measure, MEASURE, Long.class)
+        );
+        for (int i = 0; i < size; i++) {
+            builder.addPoints(id + "-" + i, (long) i);
+        }
+        return builder.build();
+    }
+
+    private static List<DataPoint> collect(Dataset dataset) {
+        try (Stream<DataPoint> data = dataset.getData()) {
+            return data.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testProduct() {
+        Dataset ds1 = createDataset("id1", "m1", 3);
+        Dataset ds2 = createDataset("id2", "m2", 2);
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of("ds1", ds1, "ds2", ds2));
+
+        assertThat(join.getDataStructure().keySet()).containsExactly("id1", "m1", "id2", "m2");
+        assertThat(collect(join)).containsExactly(
+                DataPoint.create("id1-0", 0L, "id2-0", 0L),
+                DataPoint.create("id1-0", 0L, "id2-1", 1L),
+                DataPoint.create("id1-1", 1L, "id2-0", 0L),
+                DataPoint.create("id1-1", 1L, "id2-1", 1L),
+                DataPoint.create("id1-2", 2L, "id2-0", 0L),
+                DataPoint.create("id1-2", 2L, "id2-1", 1L)
+        );
+        assertThat(join.getSize()).contains(6L);
+        assertThat(join.getStatistics().getRowCount()).contains(6L);
+        assertThat(join.getStatistics().getOrder()).isEmpty();
+    }
+
+    @Test
+    public void testSmallerFirstDataset() {
+        // The first dataset is loaded, the rows are in the order of the second one.
+        Dataset ds1 = createDataset("id1", "m1", 2);
+        Dataset ds2 = createDataset("id2", "m2", 3);
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of("ds1", ds1, "ds2", ds2));
+
+        assertThat(collect(join)).containsExactly(
+                DataPoint.create("id1-0", 0L, "id2-0", 0L),
+                DataPoint.create("id1-1", 1L, "id2-0", 0L),
+                DataPoint.create("id1-0", 0L, "id2-1", 1L),
+                DataPoint.create("id1-1", 1L, "id2-1", 1L),
+                DataPoint.create("id1-0", 0L, "id2-2", 2L),
+                DataPoint.create("id1-1", 1L, "id2-2", 2L)
+        );
+    }
+
+    @Test
+    public void testThreeDatasets() {
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of(
+                "ds1", createDataset("id1", "m1", 3),
+                "ds2", createDataset("id2", "m2", 4),
+                "ds3", createDataset("id3", "m3", 5)
+        ));
+        List<DataPoint> data = collect(join);
+        assertThat(data).hasSize(60);
+        assertThat(data.stream().distinct().count()).isEqualTo(60);
+        assertThat(join.getSize()).contains(60L);
+    }
+
+    @Test
+    public void testOrder() {
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of(
+                "ds1", createDataset("id1", "m1", 3),
+                "ds2", createDataset("id2", "m2", 4)
+        ));
+        Order order = Order.create(join.getDataStructure())
+                .put("m2", Order.Direction.DESC)
+                .put("m1", Order.Direction.ASC)
+                .build();
+        try (Stream<DataPoint> data = join.getData(order).get()) {
+            assertThat(data.collect(Collectors.toList())).isSortedAccordingTo(order).hasSize(12);
+        }
+    }
+
+    @Test
+    public void testSpill() {
+        Dataset ds1 = createDataset("id1", "m1", 300);
+        Dataset ds2 = createDataset("id2", "m2", 200);
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of("ds1", ds1, "ds2", ds2));
+        List<DataPoint> expected = collect(join);
+
+        join.setSettings(ExecutionSettings.DEFAULT.withSortMemoryBudget(4096));
+        assertThat(collect(join)).hasSize(60000)
+                .containsExactlyInAnyOrder(expected.toArray(new DataPoint[0]));
+    }
+
+    @Test
+    public void testParallel() {
+        Dataset ds1 = createDataset("id1", "m1", 500);
+        Dataset ds2 = createDataset("id2", "m2", 100);
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of("ds1", ds1, "ds2", ds2));
+        List<DataPoint> sequential = collect(join);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        join.setSettings(ExecutionSettings.DEFAULT.withForkJoinPool(pool));
+        try {
+            assertThat(collect(join)).containsExactlyElementsOf(sequential);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        CrossJoinOperation join = new CrossJoinOperation(ImmutableMap.of(
+                "ds1", createDataset("id1", "m1", 3),
+                "ds2", createDataset("id2", "m2", 0)
+        ));
+        assertThat(collect(join)).isEmpty();
+        assertThat(join.getSize()).contains(0L);
+    }
+}
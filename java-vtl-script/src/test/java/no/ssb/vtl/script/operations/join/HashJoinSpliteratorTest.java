@@ -0,0 +1,146 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashJoinSpliteratorTest {
+
+    private final List<List<String>> left = asList(
+            asList("A", "1"),
+            asList("A", "2"),
+            asList("B", "3"),
+            asList("D", "4"),
+            asList("D", "5"),
+            asList("E", "6"),
+            asList("G", "7")
+    );
+
+    private final List<List<String>> right = asList(
+            asList("A", "1"),
+            asList("C", "2"),
+            asList("D", "3"),
+            asList("D", "4"),
+            asList("F", "5"),
+            asList("G", "6"),
+            asList("H", "7")
+    );
+
+    private final Function<List<String>, String> key = list -> list.get(0);
+    private final Comparator<String> predicate = Comparator.naturalOrder();
+    private final BiFunction<List<String>, List<String>, String> merger = (l, r) ->
+            (l == null ? "-" : l.get(0) + l.get(1)) + "|" + (r == null ? "-" : r.get(0) + r.get(1));
+
+    private static List<List<String>> shuffle(List<List<String>> list) {
+        List<List<String>> shuffled = new ArrayList<>(list);
+        Collections.shuffle(shuffled, new Random(42));
+        return shuffled;
+    }
+
+    private static List<String> collect(Spliterator<String> spliterator, boolean forEach) {
+        List<String> result = new ArrayList<>();
+        if (forEach) {
+            spliterator.forEachRemaining(result::add);
+        } else {
+            Consumer<String> add = result::add;
+            while (spliterator.tryAdvance(add)) ;
+        }
+        return result;
+    }
+
+    @Test
+    public void testInner() {
+        List<String> expected = collect(new InnerJoinSpliterator<>(
+                key, key, predicate, merger, left.spliterator(), right.spliterator()
+        ), true);
+        assertThat(expected).containsExactly("A1|A1", "A2|A1", "D4|D3", "D4|D4", "D5|D3", "D5|D4", "G7|G6");
+
+        for (boolean forEach : new boolean[]{true, false}) {
+            assertThat(collect(HashJoinSpliterator.buildLeft(
+                    key, key, predicate, merger, left.spliterator(), right.spliterator(), false
+            ), forEach)).containsExactlyElementsOf(expected);
+            assertThat(collect(HashJoinSpliterator.buildRight(
+                    key, key, predicate, merger, left.spliterator(), right.spliterator(), false
+            ), forEach)).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testOuter() {
+        List<String> expected = collect(new OuterJoinSpliterator<>(
+                key, key, predicate, merger, left.spliterator(), right.spliterator()
+        ), true);
+
+        for (boolean forEach : new boolean[]{true, false}) {
+            assertThat(collect(HashJoinSpliterator.buildLeft(
+                    key, key, predicate, merger, left.spliterator(), right.spliterator(), true
+            ), forEach)).containsExactlyElementsOf(expected);
+            assertThat(collect(HashJoinSpliterator.buildRight(
+                    key, key, predicate, merger, left.spliterator(), right.spliterator(), true
+            ), forEach)).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    public void testBuildSideNotSorted() {
+        // Only the probe side needs to be sorted. The rows of the same key keep the order of the build side.
+        List<String> result = collect(HashJoinSpliterator.buildLeft(
+                key, key, predicate, merger, shuffle(left).spliterator(), right.spliterator(), true
+        ), true);
+        assertThat(Lists.transform(result, row -> row.replace("-|", "").substring(0, 1))).isSorted();
+        assertThat(result).containsExactlyInAnyOrder(
+                "A1|A1", "A2|A1", "B3|-", "-|C2", "D4|D3", "D4|D4", "D5|D3", "D5|D4", "E6|-", "-|F5", "G7|G6", "-|H7"
+        );
+        assertThat(collect(HashJoinSpliterator.buildRight(
+                key, key, predicate, merger, left.spliterator(), shuffle(right).spliterator(), false
+        ), true)).containsExactlyInAnyOrder(
+                "A1|A1", "A2|A1", "D4|D3", "D4|D4", "D5|D3", "D5|D4", "G7|G6"
+        );
+    }
+
+    @Test
+    public void testEmpty() {
+        List<List<String>> empty = Collections.emptyList();
+        assertThat(collect(HashJoinSpliterator.buildLeft(
+                key, key, predicate, merger, empty.spliterator(), right.spliterator(), false
+        ), true)).isEmpty();
+        assertThat(collect(HashJoinSpliterator.buildRight(
+                key, key, predicate, merger, left.spliterator(), empty.spliterator(), true
+        ), false)).containsExactly("A1|-", "A2|-", "B3|-", "D4|-", "D5|-", "E6|-", "G7|-");
+        assertThat(HashJoinSpliterator.buildLeft(
+                key, key, predicate, merger, left.spliterator(), right.spliterator(), false
+        ).estimateSize()).isEqualTo(left.size() + right.size());
+    }
+}
@@ -24,6 +24,8 @@ import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.carrotsearch.randomizedtesting.annotations.Seed;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import no.ssb.vtl.model.Component;
@@ -32,8 +34,11 @@ import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
 import no.ssb.vtl.model.StaticDataset;
+import no.ssb.vtl.model.Statistics;
+import no.ssb.vtl.model.StructuredFiltering;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.support.DatasetCloseWatcher;
+import no.ssb.vtl.script.support.FullWidthDataset;
 import no.ssb.vtl.script.support.VTLPrintStream;
 import org.junit.Test;
 
@@ -45,6 +50,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -54,6 +60,8 @@ import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
 import static no.ssb.vtl.model.Component.Role.MEASURE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class InnerJoinOperationTest extends RandomizedTest {
 
@@ -96,6 +104,147 @@ public class InnerJoinOperationTest extends RandomizedTest {
 
     }
 
+    @Test
+    public void testProjection() {
+        StaticDataset t1 = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms1", MEASURE, Long.class)
+                .addComponent("ms2", MEASURE, Long.class)
+                .addPoints("1", 1L, 2L)
+                .addPoints("2", 3L, 4L)
+                .build();
+
+        StaticDataset t2 = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms3", MEASURE, Long.class)
+                .addComponent("ms4", MEASURE, Long.class)
+                .addPoints("2", 5L, 6L)
+                .addPoints("1", 7L, 8L)
+                .build();
+
+        List<Set<String>> t1Requests = Lists.newArrayList();
+        List<Set<String>> t2Requests = Lists.newArrayList();
+        InnerJoinOperation result = new InnerJoinOperation(ImmutableMap.of(
+                "t1", recordProjections(t1, t1Requests),
+                "t2", recordProjections(t2, t2Requests)
+        ));
+
+        Order order = Order.create(result.getDataStructure()).put("id1", Order.Direction.ASC).build();
+        Optional<Stream<DataPoint>> data = result.getData(
+                order, Dataset.Filtering.ALL, ImmutableSet.of("id1", "ms2", "ms3")
+        );
+
+        assertThat(data).isPresent();
+        assertThat(data.get()).containsExactly(
+                DataPoint.create("1", 2L, 7L),
+                DataPoint.create("2", 4L, 5L)
+        );
+        assertThat(t1Requests).containsExactly(ImmutableSet.of("id1", "ms2"));
+        assertThat(t2Requests).containsExactly(ImmutableSet.of("id1", "ms3"));
+    }
+
+    @Test
+    public void testChildIgnoringComponents() {
+        StaticDataset t1 = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms1", MEASURE, Long.class)
+                .addComponent("ms2", MEASURE, Long.class)
+                .addPoints("1", 1L, 2L)
+                .addPoints("2", 3L, 4L)
+                .build();
+
+        StaticDataset t2 = StaticDataset.create()
+                .addComponent("ms3", MEASURE, Long.class)
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms4", MEASURE, Long.class)
+                .addPoints(5L, "2", 6L)
+                .addPoints(7L, "1", 8L)
+                .build();
+
+        // The children return all their components.
+        InnerJoinOperation result = new InnerJoinOperation(ImmutableMap.of(
+                "t1", FullWidthDataset.wrap(t1),
+                "t2", FullWidthDataset.wrap(t2)
+        ));
+
+        Order order = Order.create(result.getDataStructure()).put("id1", Order.Direction.ASC).build();
+        Optional<Stream<DataPoint>> data = result.getData(
+                order, Dataset.Filtering.ALL, ImmutableSet.of("id1", "ms2", "ms4")
+        );
+
+        assertThat(data).isPresent();
+        assertThat(data.get()).containsExactly(
+                DataPoint.create("1", 2L, 8L),
+                DataPoint.create("2", 4L, 6L)
+        );
+    }
+
+    @Test
+    public void testStatistics() {
+        StaticDataset t1 = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms1", MEASURE, Long.class)
+                .addPoints("1", 1L)
+                .addPoints("2", 2L)
+                .addPoints("3", 3L)
+                .addPoints("4", 4L)
+                .build();
+
+        StaticDataset t2 = StaticDataset.create()
+                .addComponent("id1", IDENTIFIER, String.class)
+                .addComponent("ms2", MEASURE, Long.class)
+                .addPoints("1", 5L)
+                .addPoints("2", 6L)
+                .build();
+
+        InnerJoinOperation inner = new InnerJoinOperation(ImmutableMap.of("t1", t1, "t2", t2));
+        Statistics statistics = inner.getStatistics();
+        assertThat(statistics.getRowCount()).contains(2L);
+        assertThat(statistics.getColumn("ms1").getMin()).contains(VTLObject.of(1L));
+        assertThat(statistics.isSortedBy(
+                Order.create(inner.getDataStructure()).put("id1", Order.Direction.ASC).build(),
+                inner.getDataStructure()
+        )).isTrue();
+
+        OuterJoinOperation outer = new OuterJoinOperation(ImmutableMap.of("t1", t1, "t2", t2));
+        assertThat(outer.getStatistics().getRowCount()).contains(4L);
+    }
+
+    private static Dataset recordProjections(Dataset dataset, List<Set<String>> requests) {
+        return recordRequests(dataset, requests, Lists.newArrayList());
+    }
+
+    private static Dataset recordRequests(Dataset dataset, List<Set<String>> requests, List<Dataset.Filtering> filterings) {
+        return new Dataset() {
+            @Override
+            public Stream<DataPoint> getData() {
+                return dataset.getData();
+            }
+
+            @Override
+            public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+                requests.add(ImmutableSet.copyOf(components));
+                filterings.add(filtering);
+                return dataset.getData(orders, filtering, components);
+            }
+
+            @Override
+            public Optional<Map<String, Integer>> getDistinctValuesCount() {
+                return dataset.getDistinctValuesCount();
+            }
+
+            @Override
+            public Optional<Long> getSize() {
+                return dataset.getSize();
+            }
+
+            @Override
+            public DataStructure getDataStructure() {
+                return dataset.getDataStructure();
+            }
+        };
+    }
+
     @Test
     @Seed("9DC9B02FF9A216E4")
     public void testRegression() throws Exception {
@@ -337,4 +486,249 @@ public class InnerJoinOperationTest extends RandomizedTest {
                         "0111", Instant.parse("2014-01-01T00:00:00.00Z"), 101L, "attr2", "Hvaler", Instant.parse("2015-01-01T00:00:00.00Z"), null
                 );
     }
+
+    private static StaticDataset createStrategyDataset(String measure, int rows, int keys, int seed) {
+        StaticDataset.ValueBuilder builder = StaticDataset.create()
+                .withName("id1", measure)
+                .andRoles(IDENTIFIER, MEASURE)
+                .andTypes(String.class, Long.class);
+        Random random = new Random(seed);
+        for (long i = 0; i < rows; i++) {
+            builder.addPoints("key" + random.nextInt(keys), i);
+        }
+        return builder.build();
+    }
+
+    private static List<DataPoint> collectWithStrategy(AbstractJoinOperation join, JoinStrategy strategy) {
+        join.setStrategy(strategy);
+        try (Stream<DataPoint> data = join.getData()) {
+            return data.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testStrategies() {
+        StaticDataset large = createStrategyDataset("m1", 500, 40, 1);
+        StaticDataset small = createStrategyDataset("m2", 20, 60, 2);
+        StaticDataset medium = createStrategyDataset("m3", 100, 30, 3);
+
+        for (Map<String, Dataset> datasets : Lists.<Map<String, Dataset>>newArrayList(
+                ImmutableMap.of("large", large, "small", small),
+                ImmutableMap.of("small", small, "large", large),
+                ImmutableMap.of("small", small, "large", large, "medium", medium)
+        )) {
+            InnerJoinOperation join = new InnerJoinOperation(datasets);
+            List<DataPoint> merged = collectWithStrategy(join, JoinStrategy.MERGE);
+            assertThat(merged).isNotEmpty();
+            assertThat(collectWithStrategy(join, JoinStrategy.HASH)).containsExactlyElementsOf(merged);
+            assertThat(collectWithStrategy(join, JoinStrategy.AUTO)).containsExactlyElementsOf(merged);
+        }
+    }
+
+    @Test
+    public void testRuntimeFilter() {
+        StaticDataset large = createStrategyDataset("m1", 2000, 200, 1);
+        StaticDataset few = createStrategyDataset("m2", 20, 400, 2);
+        StaticDataset many = createStrategyDataset("m3", 150, 1000, 3);
+
+        // Few keys are compared with in, more keys with a range. The bloom filter is applied by the join.
+        assertRuntimeFilter(large, few, "m2", StructuredFiltering.Operator.IN);
+        assertRuntimeFilter(large, many, "m3", StructuredFiltering.Operator.GE, StructuredFiltering.Operator.LE);
+    }
+
+    private static void assertRuntimeFilter(StaticDataset large, StaticDataset small, String measure,
+                                            StructuredFiltering.Operator... operators) {
+        List<Dataset.Filtering> filterings = Lists.newArrayList();
+        List<Set<String>> smallRequests = Lists.newArrayList();
+        InnerJoinOperation join = new InnerJoinOperation(ImmutableMap.of(
+                "large", recordRequests(large, Lists.newArrayList(), filterings),
+                "small", recordProjections(small, smallRequests)
+        ));
+
+        List<DataPoint> expected = Lists.newArrayList();
+        for (DataPoint left : large.getData().collect(Collectors.toList())) {
+            for (DataPoint right : small.getData().collect(Collectors.toList())) {
+                if (left.get(0).equals(right.get(0)))
+                    expected.add(DataPoint.create(left.get(0), left.get(1), right.get(1)));
+            }
+        }
+
+        try (Stream<DataPoint> data = join.getData()) {
+            // The filter is built when the data is consumed.
+            assertThat(smallRequests).isEmpty();
+            assertThat(data).containsExactlyInAnyOrder(expected.toArray(new DataPoint[0]));
+        }
+        assertThat(join.getDataStructure().keySet()).containsExactly("id1", "m1", measure);
+
+        // The small child is read once.
+        assertThat(smallRequests).hasSize(1);
+
+        // The large child only returns the rows whose key exists in the small child.
+        assertThat(filterings).hasSize(1);
+        assertThat(filterings.get(0)).isInstanceOf(StructuredFiltering.class);
+        assertThat(((StructuredFiltering) filterings.get(0)).getConjuncts())
+                .extracting(StructuredFiltering::getOperator)
+                .containsExactly(operators);
+    }
+
+    @Test
+    public void testRuntimeFilterUnknownSize() {
+        StaticDataset large = createStrategyDataset("m1", 2000, 200, 1);
+        StaticDataset small = createStrategyDataset("m2", 20, 400, 2);
+
+        // Nothing shows that the child of unknown size is larger.
+        List<Dataset.Filtering> filterings = Lists.newArrayList();
+        InnerJoinOperation join = new InnerJoinOperation(ImmutableMap.of(
+                "large", withoutSize(recordRequests(large, Lists.newArrayList(), filterings)),
+                "small", small
+        ));
+        try (Stream<DataPoint> data = join.getData()) {
+            assertThat(data).isNotEmpty();
+        }
+        assertThat(filterings).containsExactly(Dataset.Filtering.ALL);
+    }
+
+    private static Dataset withoutSize(Dataset dataset) {
+        return new Dataset() {
+            @Override
+            public Stream<DataPoint> getData() {
+                return dataset.getData();
+            }
+
+            @Override
+            public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+                return dataset.getData(orders, filtering, components);
+            }
+
+            @Override
+            public Optional<Map<String, Integer>> getDistinctValuesCount() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<Long> getSize() {
+                return Optional.empty();
+            }
+
+            @Override
+            public DataStructure getDataStructure() {
+                return dataset.getDataStructure();
+            }
+        };
+    }
+
+    @Test
+    public void testJoinOrder() {
+        DataStructure structure = DataStructure.builder()
+                .put("id1", IDENTIFIER, Long.class)
+                .put("me1", MEASURE, Long.class)
+                .build();
+        Dataset large = mockDataset(structure, 20_000_000L, false);
+        Dataset medium = mockDataset(structure, 10_000_000L, false);
+        Dataset small = mockDataset(structure, 300L, false);
+        Dataset unknown = mockDataset(structure, null, false);
+
+        // The small dataset reduces the rows of the first step.
+        InnerJoinOperation join = new InnerJoinOperation(ImmutableMap.of(
+                "large", large, "medium", medium, "small", small
+        ));
+        assertThat(join.computeJoinOrder()).containsExactly(large, small, medium);
+
+        join = new InnerJoinOperation(ImmutableMap.of("large", large, "small", small));
+        assertThat(join.computeJoinOrder()).containsExactly(large, small);
+
+        join = new InnerJoinOperation(ImmutableMap.of(
+                "large", large, "medium", medium, "small", small, "unknown", unknown
+        ));
+        assertThat(join.computeJoinOrder()).containsExactly(large, medium, small, unknown);
+    }
+
+    @Test
+    public void testJoinOrderKeepsLayout() {
+        StaticDataset.ValueBuilder t1 = StaticDataset.create()
+                .withName("id1", "ms1")
+                .andRoles(IDENTIFIER, MEASURE)
+                .andTypes(String.class, Long.class);
+        StaticDataset.ValueBuilder t2 = StaticDataset.create()
+                .withName("ms2", "id1")
+                .andRoles(MEASURE, IDENTIFIER)
+                .andTypes(Long.class, String.class);
+        for (long i = 0; i < 100; i++) {
+            t1.addPoints("k" + i, i);
+            t2.addPoints(i * 10, "k" + i);
+        }
+        StaticDataset t3 = StaticDataset.create()
+                .withName("id1", "ms3")
+                .andRoles(IDENTIFIER, MEASURE)
+                .andTypes(String.class, Long.class)
+                .addPoints("k2", 200L)
+                .addPoints("k1", 100L)
+                .build();
+
+        StaticDataset large1 = t1.build();
+        StaticDataset large2 = t2.build();
+        InnerJoinOperation join = new InnerJoinOperation(ImmutableMap.of("t1", large1, "t2", large2, "t3", t3));
+        assertThat(join.computeJoinOrder()).containsExactly(large1, t3, large2);
+        assertThat(join.getDataStructure().keySet()).containsExactly("id1", "ms1", "ms2", "ms3");
+
+        for (JoinStrategy strategy : JoinStrategy.values()) {
+            assertThat(collectWithStrategy(join, strategy)).containsExactly(
+                    DataPoint.create("k1", 1L, 10L, 100L),
+                    DataPoint.create("k2", 2L, 20L, 200L)
+            );
+        }
+    }
+
+    @Test
+    public void testChooseHashSide() {
+        DataStructure structure = DataStructure.builder()
+                .put("id1", IDENTIFIER, Long.class)
+                .put("me1", MEASURE, Long.class)
+                .build();
+        Dataset small = mockDataset(structure, 300L, false);
+        Dataset large = mockDataset(structure, 20_000_000L, false);
+        Dataset unknown = mockDataset(structure, null, false);
+        Dataset sorted = mockDataset(structure, 300L, true);
+
+        InnerJoinOperation join = new InnerJoinOperation(ImmutableMap.of("small", small, "large", large));
+        Order order = Order.create(join.getDataStructure()).put("id1", Order.Direction.ASC).build();
+
+        assertThat(join.chooseHashSide(small, large, order)).contains(AbstractJoinOperation.Side.LEFT);
+        assertThat(join.chooseHashSide(large, small, order)).contains(AbstractJoinOperation.Side.RIGHT);
+        assertThat(join.chooseHashSide(null, small, order)).contains(AbstractJoinOperation.Side.RIGHT);
+        assertThat(join.chooseHashSide(small, unknown, order)).contains(AbstractJoinOperation.Side.LEFT);
+
+        // Too large or unknown.
+        assertThat(join.chooseHashSide(large, unknown, order)).isEmpty();
+        assertThat(join.chooseHashSide(null, large, order)).isEmpty();
+
+        // Both sorted.
+        assertThat(join.chooseHashSide(sorted, sorted, order)).isEmpty();
+        assertThat(join.chooseHashSide(null, sorted, order)).isEmpty();
+        assertThat(join.chooseHashSide(sorted, small, order)).contains(AbstractJoinOperation.Side.RIGHT);
+
+        // The rows of the hash table are not sorted.
+        Order measureOrder = Order.create(join.getDataStructure())
+                .put("id1", Order.Direction.ASC).put("small_me1", Order.Direction.ASC).build();
+        assertThat(join.chooseHashSide(small, large, measureOrder)).isEmpty();
+
+        join.setStrategy(JoinStrategy.MERGE);
+        assertThat(join.chooseHashSide(small, large, order)).isEmpty();
+
+        join.setStrategy(JoinStrategy.HASH);
+        assertThat(join.chooseHashSide(large, unknown, order)).contains(AbstractJoinOperation.Side.LEFT);
+        assertThat(join.chooseHashSide(sorted, sorted, order)).contains(AbstractJoinOperation.Side.RIGHT);
+        assertThat(join.chooseHashSide(null, large, order)).contains(AbstractJoinOperation.Side.RIGHT);
+    }
+
+    private static Dataset mockDataset(DataStructure structure, Long rows, boolean sorted) {
+        Dataset dataset = mock(Dataset.class);
+        when(dataset.getDataStructure()).thenReturn(structure);
+        when(dataset.getSize()).thenReturn(Optional.ofNullable(rows));
+        Statistics.Builder statistics = Statistics.builder().rowCount(rows);
+        if (sorted)
+            statistics.order("id1", Order.Direction.ASC);
+        when(dataset.getStatistics()).thenReturn(statistics.build());
+        return dataset;
+    }
 }
@@ -0,0 +1,99 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Order;
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JoinKeyComparatorTest {
+
+    @Test
+    public void testInPlace() {
+        DataStructure left = DataStructure.builder()
+                .put("id1", IDENTIFIER, String.class)
+                .put("m", MEASURE, Long.class)
+                .put("id2", IDENTIFIER, Long.class)
+                .build();
+        // Other positions in the right structure.
+        DataStructure right = DataStructure.builder()
+                .put("id2", IDENTIFIER, Long.class)
+                .put("id1", IDENTIFIER, String.class)
+                .build();
+        DataStructure keyStructure = DataStructure.builder()
+                .put("id1", left.get("id1"))
+                .put("id2", left.get("id2"))
+                .build();
+        Order predicate = Order.create(keyStructure)
+                .put("id1", Order.Direction.ASC)
+                .put("id2", Order.Direction.DESC)
+                .build();
+
+        JoinKeyExtractor leftExtractor = new JoinKeyExtractor(left, predicate, c -> c);
+        JoinKeyExtractor rightExtractor = new JoinKeyExtractor(right, predicate, ImmutableMap.of(
+                left.get("id1"), right.get("id1"),
+                left.get("id2"), right.get("id2")
+        ));
+
+        JoinKeyComparator<DataPoint, DataPoint> inPlace = JoinKeyComparator.of(leftExtractor, rightExtractor, predicate);
+        // Wrapping the extractors disables the comparison in place.
+        Function<DataPoint, DataPoint> leftFunction = leftExtractor::apply;
+        Function<DataPoint, DataPoint> rightFunction = rightExtractor::apply;
+        JoinKeyComparator<DataPoint, DataPoint> extracting = JoinKeyComparator.of(leftFunction, rightFunction, predicate);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            String id1 = random.nextInt(5) == 0 ? null : "id" + random.nextInt(3);
+            long id2 = random.nextInt(3);
+            DataPoint leftPoint = DataPoint.create(id1, (long) random.nextInt(), id2);
+            DataPoint rightPoint = DataPoint.create((long) random.nextInt(3), random.nextBoolean() ? id1 : "id1");
+            assertThat(Integer.signum(inPlace.compare(leftPoint, rightPoint)))
+                    .isEqualTo(Integer.signum(extracting.compare(leftPoint, rightPoint)));
+        }
+
+        assertThat(inPlace.compare(DataPoint.create("a", 1L, 2L), DataPoint.create(2L, "a"))).isZero();
+        assertThat(inPlace.compare(DataPoint.create("a", 1L, 3L), DataPoint.create(2L, "a"))).isNegative();
+        assertThat(inPlace.compare(DataPoint.create("b", 1L, 0L), DataPoint.create(2L, "a"))).isPositive();
+    }
+
+    @Test
+    public void testNullsFirst() {
+        JoinKeyComparator<List<String>, List<String>> comparator = JoinKeyComparator.of(
+                (List<String> list) -> list.get(0), (List<String> list) -> list.get(0), Comparator.<String>naturalOrder()
+        ).nullsFirst();
+        assertThat(comparator.compare(null, null)).isZero();
+        assertThat(comparator.compare(null, asList("A"))).isNegative();
+        assertThat(comparator.compare(asList("A"), null)).isPositive();
+        assertThat(comparator.compare(asList("A"), asList("B"))).isNegative();
+    }
+}
@@ -0,0 +1,169 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.Component;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.VTLObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+
+/**
+ * Joins two sorted inputs with the merge join spliterators, with the key extractors and predicate used by the
+ * join operations.
+ */
+public class JoinSpliteratorBenchmark {
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public void innerJoin(JoinState state, Blackhole blackhole) {
+        new InnerJoinSpliterator<>(
+                state.leftKeyExtractor, state.rightKeyExtractor, state.predicate, state.merger,
+                state.left.spliterator(), state.right.spliterator()
+        ).forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public void outerJoin(JoinState state, Blackhole blackhole) {
+        new OuterJoinSpliterator<>(
+                state.leftKeyExtractor, state.rightKeyExtractor, state.predicate, state.outerMerger,
+                state.left.spliterator(), state.right.spliterator()
+        ).forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    @Fork(value = 4, warmups = 1)
+    @Warmup(iterations = 5)
+    @BenchmarkMode(Mode.Throughput)
+    @Measurement(iterations = 10)
+    public void multiJoin(JoinState state, Blackhole blackhole) {
+        new MultiJoinSpliterator(
+                Arrays.asList(state.left.spliterator(), state.right.spliterator()),
+                Arrays.<Function<DataPoint, DataPoint>>asList(state.leftKeyExtractor, state.rightKeyExtractor),
+                state.predicate, new int[][]{{0, 1, 2}, {2}}, new int[][]{{0, 1, 2}, {3}}, 4
+        ).forEachRemaining(blackhole::consume);
+    }
+
+    @State(Scope.Benchmark)
+    public static class JoinState {
+
+        private List<DataPoint> left;
+        private List<DataPoint> right;
+        private JoinKeyExtractor leftKeyExtractor;
+        private JoinKeyExtractor rightKeyExtractor;
+        private Order predicate;
+        private InnerJoinMerger merger;
+        private BiFunction<DataPoint, DataPoint, DataPoint> outerMerger;
+
+        private static List<DataPoint> createData(Random random, int size, int capacity) {
+            List<DataPoint> points = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                // About two rows out of three have a match.
+                long id = random.nextInt(size * 3 / 2);
+                DataPoint point = DataPoint.create(capacity);
+                point.set(0, VTLObject.of("id-" + id / 100));
+                point.set(1, VTLObject.of(id % 100));
+                point.set(2, VTLObject.of(random.nextDouble()));
+                points.add(point);
+            }
+            return points;
+        }
+
+        @Setup
+        public void setup() {
+            DataStructure leftStructure = DataStructure.builder()
+                    .put("id1", IDENTIFIER, String.class)
+                    .put("id2", IDENTIFIER, Long.class)
+                    .put("m1", MEASURE, Double.class)
+                    .build();
+            DataStructure rightStructure = DataStructure.builder()
+                    .put("id1", IDENTIFIER, String.class)
+                    .put("id2", IDENTIFIER, Long.class)
+                    .put("m2", MEASURE, Double.class)
+                    .build();
+            DataStructure structure = DataStructure.builder()
+                    .putAll(leftStructure)
+                    .put("m2", rightStructure.get("m2"))
+                    .build();
+
+            DataStructure keyStructure = DataStructure.builder()
+                    .put("id1", leftStructure.get("id1"))
+                    .put("id2", leftStructure.get("id2"))
+                    .build();
+            predicate = Order.create(keyStructure)
+                    .put("id1", Order.Direction.ASC)
+                    .put("id2", Order.Direction.ASC)
+                    .build();
+
+            Map<Component, Component> leftMapping = ImmutableMap.of(
+                    leftStructure.get("id1"), leftStructure.get("id1"),
+                    leftStructure.get("id2"), leftStructure.get("id2")
+            );
+            Map<Component, Component> rightMapping = ImmutableMap.of(
+                    leftStructure.get("id1"), rightStructure.get("id1"),
+                    leftStructure.get("id2"), rightStructure.get("id2")
+            );
+            leftKeyExtractor = new JoinKeyExtractor(leftStructure, predicate, leftMapping);
+            rightKeyExtractor = new JoinKeyExtractor(rightStructure, predicate, rightMapping);
+            merger = new InnerJoinMerger(structure, rightStructure);
+            // Only the comparisons are measured, the rows without match are output as they are.
+            outerMerger = (leftPoint, rightPoint) -> leftPoint == null ? rightPoint
+                    : rightPoint == null ? leftPoint : merger.apply(leftPoint, rightPoint);
+
+            // The left rows have the size of the result, as after the DataPointCapacityExpander.
+            Random random = new Random(42);
+            left = createData(random, 100000, structure.size());
+            right = createData(random, 100000, rightStructure.size());
+            left.sort(Comparator.comparing(leftKeyExtractor, predicate));
+            right.sort(Comparator.comparing(rightKeyExtractor, predicate));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.Lists;
+import no.ssb.vtl.model.DataPoint;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyGroupBufferTest {
+
+    private final Function<DataPoint, Object> key = point -> point.get(0).get();
+
+    private static List<DataPoint> points(long count) {
+        List<DataPoint> points = Lists.newArrayList();
+        for (long i = 0; i < count; i++) {
+            points.add(DataPoint.create("key", i));
+        }
+        return points;
+    }
+
+    @Test
+    public void testInMemory() {
+        JoinSkewMetrics metrics = new JoinSkewMetrics();
+        KeyGroupBuffer<DataPoint> buffer = new KeyGroupBuffer<>(Long.MAX_VALUE, key, metrics);
+        List<DataPoint> points = points(10);
+        points.forEach(buffer::add);
+
+        assertThat(buffer.size()).isEqualTo(10);
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(buffer).containsExactlyElementsOf(points);
+
+        buffer.clear();
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer).isEmpty();
+        assertThat(metrics.getSkewedGroupCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSpill() {
+        JoinSkewMetrics total = new JoinSkewMetrics();
+        JoinSkewMetrics metrics = new JoinSkewMetrics(total);
+        KeyGroupBuffer<DataPoint> buffer = new KeyGroupBuffer<>(256, key, metrics);
+        List<DataPoint> points = points(100);
+        points.forEach(buffer::add);
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(buffer.size()).isEqualTo(100);
+        // The key is recorded when the group exceeds the budget, the rows when it is cleared.
+        assertThat(metrics.getSkewedGroupCount()).isEqualTo(1);
+        assertThat(metrics.getSkewedKeys()).containsExactly("key");
+        assertThat(metrics.getSkewedRowCount()).isEqualTo(0);
+        // The group can be read several times.
+        assertThat(buffer).containsExactlyElementsOf(points);
+        assertThat(buffer).containsExactlyElementsOf(points);
+
+        buffer.clear();
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(buffer).isEmpty();
+        for (JoinSkewMetrics m : asList(metrics, total)) {
+            assertThat(m.getSkewedGroupCount()).isEqualTo(1);
+            assertThat(m.getSkewedRowCount()).isEqualTo(100);
+            assertThat(m.getLargestGroupSize()).isEqualTo(100);
+            assertThat(m.getSkewedKeys()).containsExactly("key");
+        }
+
+        // The buffer is reused for the next group.
+        points(1).forEach(buffer::add);
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(buffer).hasSize(1);
+        buffer.close();
+        assertThat(metrics.getSkewedGroupCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCloseSpilled() {
+        JoinSkewMetrics metrics = new JoinSkewMetrics();
+        KeyGroupBuffer<DataPoint> buffer = new KeyGroupBuffer<>(256, key, metrics);
+        points(100).forEach(buffer::add);
+
+        // The last group of an input is recorded when the buffer is closed.
+        buffer.close();
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(metrics.getSkewedGroupCount()).isEqualTo(1);
+        assertThat(metrics.getSkewedRowCount()).isEqualTo(100);
+        assertThat(metrics.getLargestGroupSize()).isEqualTo(100);
+    }
+
+    @Test
+    public void testOtherRows() {
+        JoinSkewMetrics metrics = new JoinSkewMetrics();
+        KeyGroupBuffer<List<String>> buffer = new KeyGroupBuffer<>(1, row -> row.get(0), metrics);
+        buffer.add(asList("a", "1"));
+        buffer.add(asList("a", "2"));
+
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(buffer).containsExactly(asList("a", "1"), asList("a", "2"));
+        buffer.clear();
+        assertThat(metrics.getSkewedGroupCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,162 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.VTLObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MultiJoinSpliteratorTest {
+
+    private final Function<DataPoint, DataPoint> key = point -> DataPoint.create(point.get(0));
+    private final Comparator<DataPoint> predicate = Comparator.comparing(point -> (String) point.get(0).get());
+
+    // Each input copies its value to its own column, the first input also copies the key.
+    private final int[][] sources = {{0, 1}, {1}, {1}};
+    private final int[][] targets = {{0, 1}, {2}, {3}};
+
+    private static List<DataPoint> points(String... values) {
+        List<DataPoint> points = new ArrayList<>();
+        for (String value : values) {
+            points.add(DataPoint.create(value.substring(0, 1), value.substring(1)));
+        }
+        return points;
+    }
+
+    private static List<String> collect(Spliterator<DataPoint> spliterator, boolean forEach) {
+        List<DataPoint> result = new ArrayList<>();
+        if (forEach) {
+            spliterator.forEachRemaining(result::add);
+        } else {
+            Consumer<DataPoint> add = result::add;
+            while (spliterator.tryAdvance(add)) ;
+        }
+        return result.stream()
+                .map(point -> point.stream().map(VTLObject::get).map(String::valueOf).collect(Collectors.joining()))
+                .collect(Collectors.toList());
+    }
+
+    private MultiJoinSpliterator join(List<DataPoint> first, List<DataPoint> second, List<DataPoint> third) {
+        return new MultiJoinSpliterator(
+                asList(first.spliterator(), second.spliterator(), third.spliterator()),
+                asList(key, key, key), predicate, sources, targets, 4
+        );
+    }
+
+    @Test
+    public void testJoin() {
+        List<DataPoint> first = points("A1", "A2", "B3", "D4", "D5", "G7");
+        List<DataPoint> second = points("A1", "C2", "D3", "D4", "G6", "H7");
+        List<DataPoint> third = points("A9", "D8", "E7", "G5", "G6");
+
+        for (boolean forEach : new boolean[]{true, false}) {
+            assertThat(collect(join(first, second, third), forEach)).containsExactly(
+                    "A119", "A219",
+                    "D438", "D448", "D538", "D548",
+                    "G765", "G766"
+            );
+        }
+    }
+
+    @Test
+    public void testSkewedGroups() {
+        List<DataPoint> first = points("A1", "A2", "B3", "D4", "D5", "G7");
+        List<DataPoint> second = points("A1", "C2", "D3", "D4", "G6", "H7");
+        List<DataPoint> third = points("A9", "D8", "E7", "G5", "G6");
+
+        // All the groups exceed the budget.
+        for (boolean forEach : new boolean[]{true, false}) {
+            JoinSkewMetrics metrics = new JoinSkewMetrics();
+            MultiJoinSpliterator spliterator = new MultiJoinSpliterator(
+                    asList(first.spliterator(), second.spliterator(), third.spliterator()),
+                    asList(key, key, key), predicate, sources, targets, 4, 1, metrics
+            );
+            assertThat(collect(spliterator, forEach)).containsExactly(
+                    "A119", "A219",
+                    "D438", "D448", "D538", "D548",
+                    "G765", "G766"
+            );
+            assertThat(metrics.getSkewedKeys()).contains("[A]", "[D]", "[G]");
+            assertThat(metrics.getLargestGroupSize()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testSkewedGroupsEarlyClose() {
+        List<DataPoint> first = points("A1", "A2", "D4");
+        List<DataPoint> second = points("A1", "D3");
+        List<DataPoint> third = points("A9", "D8");
+
+        JoinSkewMetrics metrics = new JoinSkewMetrics();
+        MultiJoinSpliterator spliterator = new MultiJoinSpliterator(
+                asList(first.spliterator(), second.spliterator(), third.spliterator()),
+                asList(key, key, key), predicate, sources, targets, 4, 1, metrics
+        );
+        assertThat(spliterator.tryAdvance(point -> {
+        })).isTrue();
+        spliterator.close();
+
+        // The group that was being joined is reported.
+        assertThat(metrics.getSkewedKeys()).contains("[A]");
+        assertThat(metrics.getLargestGroupSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLastInputWins() {
+        // Both inputs write to the second column.
+        MultiJoinSpliterator spliterator = new MultiJoinSpliterator(
+                asList(points("A1").spliterator(), points("A2").spliterator()),
+                asList(key, key), predicate,
+                new int[][]{{0, 1}, {1}}, new int[][]{{0, 1}, {1}}, 2
+        );
+        assertThat(collect(spliterator, true)).containsExactly("A2");
+    }
+
+    @Test
+    public void testEmpty() {
+        List<DataPoint> empty = Collections.emptyList();
+        List<DataPoint> first = points("A1", "B2");
+        assertThat(collect(join(first, empty, first), true)).isEmpty();
+        assertThat(collect(join(first, first, points("C1")), false)).isEmpty();
+        assertThat(join(first, first, empty).estimateSize()).isEqualTo(4);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThatThrownBy(() -> new MultiJoinSpliterator(
+                asList(points("A1").spliterator(), points("A1").spliterator()),
+                asList(key, key), predicate, sources, targets, 4
+        )).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,76 @@
+package no.ssb.vtl.script.operations.join;
+
+/*-
+ * ========================LICENSE_START=================================
+ * Java VTL
+ * %%
+ * Copyright (C) 2016 - 2017 Hadrien Kohl
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ */
+
+import com.google.common.collect.ImmutableMap;
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.StaticDataset;
+import org.junit.Test;
+
+import static no.ssb.vtl.model.Component.Role.IDENTIFIER;
+import static no.ssb.vtl.model.Component.Role.MEASURE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OuterJoinMergerTest {
+
+    private final Dataset ds1 = StaticDataset.create()
+            .addComponent("id1", IDENTIFIER, String.class)
+            .addComponent("m1", MEASURE, Long.class)
+            .build();
+
+    // Other column order.
+    private final Dataset ds2 = StaticDataset.create()
+            .addComponent("m2", MEASURE, Long.class)
+            .addComponent("id1", IDENTIFIER, String.class)
+            .build();
+
+    private final OuterJoinOperation join = new OuterJoinOperation(ImmutableMap.of("ds1", ds1, "ds2", ds2));
+
+    @Test
+    public void testMerge() {
+        assertThat(join.getDataStructure().keySet()).containsExactly("id1", "m1", "m2");
+        OuterJoinMerger merger = new OuterJoinMerger(join, ds2);
+
+        DataPoint left = DataPoint.create("a", 1L, null);
+        DataPoint merged = merger.apply(left, DataPoint.create(2L, "a"));
+        assertThat(merged).isNotSameAs(left).containsExactlyElementsOf(DataPoint.create("a", 1L, 2L));
+        assertThat(left).containsExactlyElementsOf(DataPoint.create("a", 1L, null));
+    }
+
+    @Test
+    public void testOneSided() {
+        OuterJoinMerger merger = new OuterJoinMerger(join, ds2);
+
+        DataPoint left = DataPoint.create("a", 1L, null);
+        DataPoint leftOnly = merger.apply(left, null);
+        assertThat(leftOnly).isNotSameAs(left).containsExactlyElementsOf(left);
+
+        assertThat(merger.apply(null, DataPoint.create(2L, "b")))
+                .containsExactlyElementsOf(DataPoint.create("b", null, 2L));
+    }
+
+    @Test
+    public void testToString() {
+        assertThat(new OuterJoinMerger(join, ds2).toString())
+                .contains("rightIndices=", "resultIndices=", "size=3");
+    }
+}
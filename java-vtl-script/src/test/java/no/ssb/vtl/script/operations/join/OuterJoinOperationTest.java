@@ -38,6 +38,7 @@ import org.junit.Test;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -316,4 +317,42 @@ public class OuterJoinOperationTest extends RandomizedTest {
     private DataPoint tuple(List<VTLObject> components) {
         return DataPoint.create(components);
     }
+
+    private static StaticDataset createStrategyDataset(String measure, int rows, int keys, int seed) {
+        StaticDataset.ValueBuilder builder = StaticDataset.create()
+                .withName("id1", measure)
+                .andRoles(IDENTIFIER, MEASURE)
+                .andTypes(String.class, Long.class);
+        Random random = new Random(seed);
+        for (long i = 0; i < rows; i++) {
+            builder.addPoints("key" + random.nextInt(keys), i);
+        }
+        return builder.build();
+    }
+
+    private static List<DataPoint> collectWithStrategy(AbstractJoinOperation join, JoinStrategy strategy) {
+        join.setStrategy(strategy);
+        try (Stream<DataPoint> data = join.getData()) {
+            return data.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testStrategies() {
+        StaticDataset large = createStrategyDataset("m1", 500, 40, 1);
+        StaticDataset small = createStrategyDataset("m2", 20, 60, 2);
+        StaticDataset medium = createStrategyDataset("m3", 100, 30, 3);
+
+        for (Map<String, Dataset> datasets : Lists.<Map<String, Dataset>>newArrayList(
+                ImmutableMap.of("large", large, "small", small),
+                ImmutableMap.of("small", small, "large", large),
+                ImmutableMap.of("small", small, "large", large, "medium", medium)
+        )) {
+            OuterJoinOperation join = new OuterJoinOperation(datasets);
+            List<DataPoint> merged = collectWithStrategy(join, JoinStrategy.MERGE);
+            assertThat(merged).isNotEmpty();
+            assertThat(collectWithStrategy(join, JoinStrategy.HASH)).containsExactlyElementsOf(merged);
+            assertThat(collectWithStrategy(join, JoinStrategy.AUTO)).containsExactlyElementsOf(merged);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.Repeat;
 import com.carrotsearch.randomizedtesting.annotations.Seed;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
@@ -32,6 +33,7 @@ import no.ssb.vtl.model.Order;
 import no.ssb.vtl.model.StaticDataset;
 import no.ssb.vtl.model.VTLObject;
 import no.ssb.vtl.script.error.VTLRuntimeException;
+import no.ssb.vtl.script.support.FullWidthDataset;
 import no.ssb.vtl.test.RandomizedDataset;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.Before;
@@ -278,6 +280,47 @@ public class UnionOperationTest extends RandomizedTest {
 
     }
 
+    @Test
+    public void testChildIgnoringComponents() {
+
+        StaticDataset dataset1 = StaticDataset.create()
+                .addComponent("TIME", Role.IDENTIFIER, String.class)
+                .addComponent("GEO", Role.IDENTIFIER, String.class)
+                .addComponent("POP", Role.MEASURE, Long.class)
+                .addComponent("AREA", Role.MEASURE, Long.class)
+                .addPoints("2012", "Belgium", 1L, 31L)
+                .addPoints("2012", "Greece", 2L, 132L)
+                .build();
+
+        StaticDataset dataset2 = StaticDataset.create()
+                .addComponent("TIME", Role.IDENTIFIER, String.class)
+                .addComponent("GEO", Role.IDENTIFIER, String.class)
+                .addComponent("POP", Role.MEASURE, Long.class)
+                .addComponent("AREA", Role.MEASURE, Long.class)
+                .addPoints("2011", "Belgium", 10L, 31L)
+                .addPoints("2011", "Greece", 20L, 132L)
+                .build();
+
+        // The children return all their components.
+        UnionOperation union = new UnionOperation(FullWidthDataset.wrap(dataset1), FullWidthDataset.wrap(dataset2));
+
+        Order order = Order.create(union.getDataStructure())
+                .put("TIME", Order.Direction.ASC)
+                .put("GEO", Order.Direction.ASC)
+                .build();
+        Optional<Stream<DataPoint>> data = union.getData(
+                order, Dataset.Filtering.ALL, ImmutableSet.of("TIME", "GEO", "AREA")
+        );
+
+        assertThat(data).isPresent();
+        assertThat(data.get()).containsExactly(
+                dataPoint("2011", "Belgium", 31L),
+                dataPoint("2011", "Greece", 132L),
+                dataPoint("2012", "Belgium", 31L),
+                dataPoint("2012", "Greece", 132L)
+        );
+    }
+
     @Test(expected = VTLRuntimeException.class)
     public void testUnionWithDuplicate() throws Exception {
 
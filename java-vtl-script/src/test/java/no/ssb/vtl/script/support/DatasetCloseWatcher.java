@@ -29,6 +29,7 @@ import no.ssb.vtl.model.DataPoint;
 import no.ssb.vtl.model.DataStructure;
 import no.ssb.vtl.model.Dataset;
 import no.ssb.vtl.model.Order;
+import no.ssb.vtl.model.Statistics;
 
 import java.util.Map;
 import java.util.Optional;
@@ -107,6 +108,11 @@ public abstract class DatasetCloseWatcher extends ForwardingObject implements Da
         return delegate().getSize();
     }
 
+    @Override
+    public Statistics getStatistics() {
+        return delegate().getStatistics();
+    }
+
     @Override
     public DataStructure getDataStructure() {
         return delegate().getDataStructure();
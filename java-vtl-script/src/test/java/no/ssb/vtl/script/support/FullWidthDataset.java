@@ -0,0 +1,77 @@
+package no.ssb.vtl.script.support;
+
+/*
+ * -
+ *  * ========================LICENSE_START=================================
+ * * Java VTL
+ *  *
+ * %%
+ * Copyright (C) 2017 Hadrien Kohl
+ *  *
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =========================LICENSE_END==================================
+ *
+ */
+
+import no.ssb.vtl.model.DataPoint;
+import no.ssb.vtl.model.DataStructure;
+import no.ssb.vtl.model.Dataset;
+import no.ssb.vtl.model.Order;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Dataset that ignores the requested components and returns all of them, like the datasets written before
+ * {@link Dataset#getData(Order, Filtering, Set)} had to return the requested components only.
+ */
+public final class FullWidthDataset implements Dataset {
+
+    private final Dataset delegate;
+
+    private FullWidthDataset(Dataset delegate) {
+        this.delegate = delegate;
+    }
+
+    public static FullWidthDataset wrap(Dataset dataset) {
+        return new FullWidthDataset(dataset);
+    }
+
+    @Override
+    public Stream<DataPoint> getData() {
+        return delegate.getData();
+    }
+
+    @Override
+    public Optional<Stream<DataPoint>> getData(Order orders, Filtering filtering, Set<String> components) {
+        return delegate.getData(orders, filtering, delegate.getDataStructure().keySet());
+    }
+
+    @Override
+    public Optional<Map<String, Integer>> getDistinctValuesCount() {
+        return delegate.getDistinctValuesCount();
+    }
+
+    @Override
+    public Optional<Long> getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public DataStructure getDataStructure() {
+        return delegate.getDataStructure();
+    }
+}